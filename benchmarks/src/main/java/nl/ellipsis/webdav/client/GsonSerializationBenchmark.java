@@ -0,0 +1,66 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.jackrabbit.webdav.DavException;
+
+import com.google.gson.Gson;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.WebDAVResourceJsonWriter;
+
+/**
+ * Gson serialization of a listing, as a String and streamed with WebDAVResourceJsonWriter
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GsonSerializationBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	public int size;
+
+	private List<WebDAVResourceType> resources;
+	private Gson gson;
+
+	@Setup
+	public void setup() {
+		resources = WebDAVBenchmarkData.createResources(size);
+		gson = new Gson();
+	}
+
+	@Benchmark
+	public String toJson() {
+		return gson.toJson(resources);
+	}
+
+	@Benchmark
+	public int streamJson() throws IOException, DavException {
+		OutputStream out = NullOutputStream.NULL_OUTPUT_STREAM;
+		WebDAVResourceJsonWriter writer = new WebDAVResourceJsonWriter(out);
+		for(WebDAVResourceType resource : resources) {
+			writer.handleResource(resource);
+		}
+		writer.close();
+		return writer.getCount();
+	}
+}
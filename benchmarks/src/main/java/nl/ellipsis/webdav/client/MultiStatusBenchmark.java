@@ -0,0 +1,97 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.MultiStatus;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of a Depth: 1 multistatus as getCollectionProperties does it, and the 
+ * DavPropertySet to WebDAVResourceType mapping on its own.
+ *
+ * parseStreaming is the current code path; parseDom is the DOM based MultiStatus it replaced, for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiStatusBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	public int size;
+
+	private byte[] multiStatus;
+	private WebDAVResourceMapper mapper;
+	private List<MultiStatusResponse> responses;
+	private DocumentBuilderFactory documentBuilderFactory;
+
+	@Setup
+	public void setup() throws Exception {
+		multiStatus = WebDAVBenchmarkData.createMultiStatus(size);
+		mapper = new WebDAVResourceMapper(WebDAVBenchmarkData.SERVER_URI);
+		responses = new ArrayList<MultiStatusResponse>(size + 1);
+		MultiStatusReader reader = new MultiStatusReader(new ByteArrayInputStream(multiStatus));
+		try {
+			MultiStatusResponse response;
+			while((response = reader.nextResponse()) != null) {
+				responses.add(response);
+			}
+		} finally {
+			reader.close();
+		}
+		documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+	}
+
+	@Benchmark
+	public void parseStreaming(Blackhole blackhole) throws Exception {
+		MultiStatusReader reader = new MultiStatusReader(new ByteArrayInputStream(multiStatus));
+		try {
+			MultiStatusResponse response;
+			while((response = reader.nextResponse()) != null) {
+				blackhole.consume(mapper.getWebDAVResource(response.getHref(), response.getProperties(HttpStatus.SC_OK)));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public void parseDom(Blackhole blackhole) throws Exception {
+		DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
+		MultiStatus multistatus = MultiStatus.createFromXml(builder.parse(new ByteArrayInputStream(multiStatus)).getDocumentElement());
+		for(MultiStatusResponse response : multistatus.getResponses()) {
+			blackhole.consume(mapper.getWebDAVResource(response.getHref(), response.getProperties(HttpStatus.SC_OK)));
+		}
+	}
+
+	@Benchmark
+	public void mapResources(Blackhole blackhole) throws Exception {
+		for(MultiStatusResponse response : responses) {
+			DavPropertySet properties = response.getProperties(HttpStatus.SC_OK);
+			blackhole.consume(mapper.getWebDAVResource(response.getHref(), properties));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution between relative URIs, absolute URIs and hrefs, which runs for every request and every listed resource
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UriResolutionBenchmark {
+
+	private WebDAVResourceMapper mapper;
+	private URI relativeUri;
+	private String href;
+
+	@Setup
+	public void setup() {
+		mapper = new WebDAVResourceMapper(WebDAVBenchmarkData.SERVER_URI);
+		relativeUri = URI.create(WebDAVBenchmarkData.COLLECTION_PATH + "/" + WebDAVBenchmarkData.getFilename(42));
+		href = WebDAVBenchmarkData.COLLECTION_HREF + WebDAVBenchmarkData.getFilename(42);
+	}
+
+	@Benchmark
+	public URI getAbsoluteURI() throws Exception {
+		return mapper.getAbsoluteURI(relativeUri);
+	}
+
+	@Benchmark
+	public URI getAbsoluteURIForHref() throws Exception {
+		return mapper.getAbsoluteURI(href);
+	}
+
+	@Benchmark
+	public URI getResourcePath() throws Exception {
+		return mapper.getResourcePath(relativeUri);
+	}
+
+	@Benchmark
+	public URI getRelativeURI() throws Exception {
+		return mapper.getRelativeURI(href);
+	}
+
+	@Benchmark
+	public boolean assertResourcePathEquals() throws Exception {
+		return mapper.assertResourcePathEquals(relativeUri, href);
+	}
+}
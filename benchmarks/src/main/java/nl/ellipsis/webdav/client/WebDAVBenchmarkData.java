@@ -0,0 +1,83 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Canned inputs for the benchmarks: a collection listing as a server returns it, and the resources mapped from it
+ */
+class WebDAVBenchmarkData {
+
+	final static URI SERVER_URI = URI.create("http://localhost:8080/webdav");
+	final static String COLLECTION_PATH = "/PFX/benchmark";
+	final static String COLLECTION_HREF = "/webdav" + COLLECTION_PATH + "/";
+
+	private WebDAVBenchmarkData() {
+	}
+
+	/**
+	 * @return Depth: 1 PROPFIND multistatus of a collection with size files, preceded by the collection itself
+	 */
+	static byte[] createMultiStatus(int size) {
+		StringBuilder sb = new StringBuilder(size * 600);
+		sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		sb.append("<D:multistatus xmlns:D=\"DAV:\" xmlns:ns0=\"http://www.ellipsis.nl/pfx\">\n");
+		sb.append("<D:response><D:href>").append(COLLECTION_HREF).append("</D:href><D:propstat><D:prop>")
+			.append("<D:displayname>benchmark</D:displayname><D:resourcetype><D:collection/></D:resourcetype>")
+			.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+		for(int i=0; i<size; i++) {
+			String name = getFilename(i);
+			sb.append("<D:response><D:href>").append(COLLECTION_HREF).append(name).append("</D:href><D:propstat><D:prop>")
+				.append("<D:displayname>").append(name).append("</D:displayname>")
+				.append("<D:creationdate>2017-03-01T10:15:30Z</D:creationdate>")
+				.append("<D:getcontentlength>").append(10000 + i).append("</D:getcontentlength>")
+				.append("<D:getcontenttype>application/pdf</D:getcontenttype>")
+				.append("<D:getetag>\"").append(Integer.toHexString(0x10000 + i)).append("-5a1b2c3d\"</D:getetag>")
+				.append("<D:getlastmodified>Wed, 01 Mar 2017 10:15:30 GMT</D:getlastmodified>")
+				.append("<D:resourcetype/>")
+				.append("<ns0:assessment>A").append(i % 100).append("</ns0:assessment>")
+				.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+		}
+		sb.append("</D:multistatus>\n");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return resources like WebDAVResourceMapper creates them for createMultiStatus(size)
+	 */
+	static List<WebDAVResourceType> createResources(int size) {
+		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>(size);
+		for(int i=0; i<size; i++) {
+			String name = getFilename(i);
+			WebDAVResourceType resource = new WebDAVResourceType();
+			resource.setHref(COLLECTION_HREF + name);
+			resource.setUri(SERVER_URI + COLLECTION_PATH + "/" + name);
+			resource.setDisplayName(name);
+			resource.setCollection(false);
+			addProperty(resource, "creationdate", "2017-03-01T10:15:30Z");
+			addProperty(resource, "getcontentlength", Integer.toString(10000 + i));
+			addProperty(resource, "getcontenttype", "application/pdf");
+			addProperty(resource, "getetag", "\"" + Integer.toHexString(0x10000 + i) + "-5a1b2c3d\"");
+			addProperty(resource, "getlastmodified", "Wed, 01 Mar 2017 10:15:30 GMT");
+			addProperty(resource, "assessment", "A" + (i % 100));
+			resources.add(resource);
+		}
+		return resources;
+	}
+
+	static String getFilename(int i) {
+		return String.format("document-%06d.pdf", i);
+	}
+
+	private static void addProperty(WebDAVResourceType resource, String name, String value) {
+		WebDAVPropertyType property = new WebDAVPropertyType();
+		property.setName(name);
+		property.setValue(value);
+		resource.getProperties().add(property);
+	}
+}
@@ -0,0 +1,280 @@
+package nl.ellipsis.webdav.client;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of a WebDAVLoadGenerator run, read from properties:
+ *
+ * <pre>
+ * server.uri=http://localhost:8080/PfxWebDAV
+ * server.user=pfxuser
+ * server.password=pfxpwd
+ * base.path=/PFX/load
+ * threads=16
+ * duration=60
+ * rampup=10
+ * mix=list:30,stat:30,get:25,put:10,mkcol:3,delete:2
+ * put.sizes=1024,65536,1048576
+ * seed.files=20
+ * seed.size=65536
+ * format=text,json
+ * client.metadataCacheSize=1000
+ * client.readBack=false
+ * </pre>
+ *
+ * Properties starting with client. are passed to the setter of the same name of WebDAVClientConfig,
+ * so client modes can be compared against the same server.
+ */
+public class WebDAVLoadConfig {
+
+	private final static String CLIENT_PREFIX = "client.";
+
+	private URI serverUri;
+	private String user;
+	private String password;
+	private String basePath = "/load";
+	private int threads = 8;
+	private long durationSeconds = 60;
+	private long rampUpSeconds = 10;
+	private Map<WebDAVLoadOperation, Integer> mix = parseMix("list:30,stat:30,get:25,put:10,mkcol:3,delete:2");
+	private long[] putSizes = { 1024, 64 * 1024, 1024 * 1024 };
+	private int seedFiles = 20;
+	private long seedSize = 64 * 1024;
+	private boolean textReport = true;
+	private boolean jsonReport = false;
+	private boolean cleanup = true;
+	private WebDAVClientConfig clientConfig = new WebDAVClientConfig();
+
+	public static WebDAVLoadConfig fromProperties(Properties properties) {
+		WebDAVLoadConfig config = new WebDAVLoadConfig();
+		String serverUri = properties.getProperty("server.uri");
+		if(serverUri == null) {
+			throw new IllegalArgumentException("server.uri is required");
+		}
+		config.setServerUri(URI.create(serverUri));
+		config.setUser(properties.getProperty("server.user"));
+		config.setPassword(properties.getProperty("server.password"));
+		config.setBasePath(properties.getProperty("base.path", config.getBasePath()));
+		config.setThreads(Integer.parseInt(properties.getProperty("threads", Integer.toString(config.getThreads()))));
+		config.setDurationSeconds(Long.parseLong(properties.getProperty("duration", Long.toString(config.getDurationSeconds()))));
+		config.setRampUpSeconds(Long.parseLong(properties.getProperty("rampup", Long.toString(config.getRampUpSeconds()))));
+		if(properties.getProperty("mix") != null) {
+			config.setMix(parseMix(properties.getProperty("mix")));
+		}
+		if(properties.getProperty("put.sizes") != null) {
+			String[] sizes = properties.getProperty("put.sizes").split(",");
+			long[] putSizes = new long[sizes.length];
+			for(int i=0; i<sizes.length; i++) {
+				putSizes[i] = Long.parseLong(sizes[i].trim());
+			}
+			config.setPutSizes(putSizes);
+		}
+		config.setSeedFiles(Integer.parseInt(properties.getProperty("seed.files", Integer.toString(config.getSeedFiles()))));
+		config.setSeedSize(Long.parseLong(properties.getProperty("seed.size", Long.toString(config.getSeedSize()))));
+		if(properties.getProperty("format") != null) {
+			String format = properties.getProperty("format").toLowerCase();
+			config.setTextReport(format.contains("text"));
+			config.setJsonReport(format.contains("json"));
+		}
+		config.setCleanup(Boolean.parseBoolean(properties.getProperty("cleanup", Boolean.toString(config.isCleanup()))));
+		for(String name : properties.stringPropertyNames()) {
+			if(name.startsWith(CLIENT_PREFIX)) {
+				setClientProperty(config.getClientConfig(), name.substring(CLIENT_PREFIX.length()), properties.getProperty(name));
+			}
+		}
+		return config;
+	}
+
+	/**
+	 * @param mix	comma separated operation:weight pairs, e.g. list:30,get:70
+	 */
+	public static Map<WebDAVLoadOperation, Integer> parseMix(String mix) {
+		Map<WebDAVLoadOperation, Integer> result = new EnumMap<WebDAVLoadOperation, Integer>(WebDAVLoadOperation.class);
+		for(String entry : mix.split(",")) {
+			String[] parts = entry.split(":");
+			int weight = (parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1);
+			if(weight < 0) {
+				throw new IllegalArgumentException("negative weight in mix: " + entry);
+			}
+			result.put(WebDAVLoadOperation.parse(parts[0]), weight);
+		}
+		return result;
+	}
+
+	private static void setClientProperty(WebDAVClientConfig clientConfig, String name, String value) {
+		String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		List<String> types = new ArrayList<String>();
+		for(Method method : WebDAVClientConfig.class.getMethods()) {
+			if(method.getName().equals(setter) && method.getParameterTypes().length == 1) {
+				Class<?> type = method.getParameterTypes()[0];
+				types.add(type.getSimpleName());
+				try {
+					if(type == int.class) {
+						method.invoke(clientConfig, Integer.parseInt(value));
+					} else if(type == long.class) {
+						method.invoke(clientConfig, Long.parseLong(value));
+					} else if(type == boolean.class) {
+						method.invoke(clientConfig, Boolean.parseBoolean(value));
+					} else if(type == Path.class) {
+						method.invoke(clientConfig, Paths.get(value));
+					} else {
+						continue;
+					}
+					return;
+				} catch (ReflectiveOperationException e) {
+					throw new IllegalArgumentException("cannot set client." + name, e);
+				}
+			}
+		}
+		throw new IllegalArgumentException("unsupported client setting client." + name + (types.isEmpty() ? "" : " of type " + types));
+	}
+
+	public URI getServerUri() {
+		return serverUri;
+	}
+
+	public void setServerUri(URI serverUri) {
+		this.serverUri = serverUri;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	/**
+	 * @return path of the collection below which the run creates its own collection
+	 */
+	public String getBasePath() {
+		return basePath;
+	}
+
+	public void setBasePath(String basePath) {
+		this.basePath = basePath;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return measured duration in seconds, after the ramp-up
+	 */
+	public long getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	public void setDurationSeconds(long durationSeconds) {
+		this.durationSeconds = durationSeconds;
+	}
+
+	/**
+	 * @return seconds over which the threads are started one by one; operations during the ramp-up are not reported
+	 */
+	public long getRampUpSeconds() {
+		return rampUpSeconds;
+	}
+
+	public void setRampUpSeconds(long rampUpSeconds) {
+		this.rampUpSeconds = rampUpSeconds;
+	}
+
+	/**
+	 * @return relative weight of each operation
+	 */
+	public Map<WebDAVLoadOperation, Integer> getMix() {
+		return mix;
+	}
+
+	public void setMix(Map<WebDAVLoadOperation, Integer> mix) {
+		this.mix = mix;
+	}
+
+	/**
+	 * @return sizes in bytes of uploaded files, chosen at random for every PUT
+	 */
+	public long[] getPutSizes() {
+		return putSizes;
+	}
+
+	public void setPutSizes(long[] putSizes) {
+		this.putSizes = putSizes;
+	}
+
+	/**
+	 * @return number of files uploaded before the run for STAT and GET
+	 */
+	public int getSeedFiles() {
+		return seedFiles;
+	}
+
+	public void setSeedFiles(int seedFiles) {
+		this.seedFiles = seedFiles;
+	}
+
+	public long getSeedSize() {
+		return seedSize;
+	}
+
+	public void setSeedSize(long seedSize) {
+		this.seedSize = seedSize;
+	}
+
+	public boolean isTextReport() {
+		return textReport;
+	}
+
+	public void setTextReport(boolean textReport) {
+		this.textReport = textReport;
+	}
+
+	public boolean isJsonReport() {
+		return jsonReport;
+	}
+
+	public void setJsonReport(boolean jsonReport) {
+		this.jsonReport = jsonReport;
+	}
+
+	/**
+	 * @return true to delete the collection of the run afterwards
+	 */
+	public boolean isCleanup() {
+		return cleanup;
+	}
+
+	public void setCleanup(boolean cleanup) {
+		this.cleanup = cleanup;
+	}
+
+	public WebDAVClientConfig getClientConfig() {
+		return clientConfig;
+	}
+
+	public void setClientConfig(WebDAVClientConfig clientConfig) {
+		this.clientConfig = clientConfig;
+	}
+}
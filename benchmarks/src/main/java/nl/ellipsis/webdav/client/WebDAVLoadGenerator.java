@@ -0,0 +1,331 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavException;
+
+/**
+ * Load generator for a WebDAV server, on top of WebDAVClientAPI.
+ *
+ * A run creates its own collection below the base path, uploads the seed files that STAT and GET read,
+ * starts the threads evenly spread over the ramp-up, and then lets every thread pick operations at random
+ * from the weighted mix until the duration has passed. Only operations that start after the ramp-up are
+ * reported. A DELETE removes the oldest file or collection the thread created itself; when there is none,
+ * the thread does a PUT instead.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar nl.ellipsis.webdav.client.WebDAVLoadGenerator load.properties threads=32 client.readBack=false
+ * </pre>
+ *
+ * The arguments are a properties file as described in WebDAVLoadConfig, followed by key=value overrides.
+ */
+public class WebDAVLoadGenerator {
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	private final WebDAVLoadConfig config;
+	private final WebDAVLoadOperation[] operations;
+	private final int[] cumulativeWeights;
+	private final byte[] content;
+
+	private final WebDAVInMemoryMetrics operationMetrics = new WebDAVInMemoryMetrics();
+	private final StatusMetrics clientMetrics = new StatusMetrics();
+	private WebDAVClientAPI client;
+	private String runPath;
+	private long measureStart;
+	private long end;
+
+	public WebDAVLoadGenerator(WebDAVLoadConfig config) {
+		this.config = config;
+		List<WebDAVLoadOperation> operations = new ArrayList<WebDAVLoadOperation>();
+		List<Integer> weights = new ArrayList<Integer>();
+		int total = 0;
+		for(Map.Entry<WebDAVLoadOperation, Integer> e : config.getMix().entrySet()) {
+			if(e.getValue() > 0) {
+				total += e.getValue();
+				operations.add(e.getKey());
+				weights.add(total);
+			}
+		}
+		if(operations.isEmpty()) {
+			throw new IllegalArgumentException("operation mix is empty");
+		}
+		this.operations = operations.toArray(new WebDAVLoadOperation[operations.size()]);
+		this.cumulativeWeights = new int[weights.size()];
+		for(int i=0; i<cumulativeWeights.length; i++) {
+			cumulativeWeights[i] = weights.get(i);
+		}
+		// random bytes, so compression does not flatter the results
+		this.content = new byte[BUFFER_SIZE];
+		new Random(0).nextBytes(content);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length == 0) {
+			System.err.println("usage: WebDAVLoadGenerator <file.properties> [key=value ...]");
+			System.exit(1);
+		}
+		Properties properties = new Properties();
+		try (InputStream is = new FileInputStream(args[0])) {
+			properties.load(is);
+		}
+		for(int i=1; i<args.length; i++) {
+			int index = args[i].indexOf('=');
+			if(index <= 0) {
+				throw new IllegalArgumentException("expected key=value: " + args[i]);
+			}
+			properties.setProperty(args[i].substring(0, index), args[i].substring(index + 1));
+		}
+		WebDAVLoadConfig config = WebDAVLoadConfig.fromProperties(properties);
+		WebDAVLoadReport report = new WebDAVLoadGenerator(config).run();
+		if(config.isTextReport()) {
+			System.out.println(report.toText());
+		}
+		if(config.isJsonReport()) {
+			System.out.println(report.toJson());
+		}
+	}
+
+	/**
+	 * Set up the collection of the run, apply the load, and remove the collection again when cleanup is set
+	 */
+	public WebDAVLoadReport run() throws IOException, DavException, InterruptedException {
+		WebDAVClientConfig clientConfig = config.getClientConfig();
+		clientConfig.setMetrics(clientMetrics);
+		try (WebDAVClientAPI client = new WebDAVClientImpl(config.getUser(), config.getPassword(), config.getServerUri(), clientConfig)) {
+			this.client = client;
+			this.runPath = config.getBasePath() + "/run-" + System.currentTimeMillis();
+			client.createCollection(URI.create(runPath));
+			try {
+				for(int i=0; i<config.getSeedFiles(); i++) {
+					client.putResource(getSeedUri(i), new ContentInputStream(config.getSeedSize()), config.getSeedSize(), ContentType.APPLICATION_OCTET_STREAM);
+				}
+				return applyLoad();
+			} finally {
+				if(config.isCleanup()) {
+					client.deleteResource(URI.create(runPath));
+				}
+			}
+		}
+	}
+
+	private WebDAVLoadReport applyLoad() throws IOException, InterruptedException {
+		int threads = config.getThreads();
+		long rampUp = TimeUnit.SECONDS.toNanos(config.getRampUpSeconds());
+		long start = System.nanoTime();
+		measureStart = start + rampUp;
+		end = measureStart + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(int i=0; i<threads; i++) {
+				futures.add(executor.submit(new Worker(i, start + rampUp * i / threads)));
+			}
+			sleepUntil(measureStart);
+			operationMetrics.reset();
+			clientMetrics.reset();
+			for(Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new IOException("load thread failed", e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		double duration = (System.nanoTime() - measureStart) / 1e9;
+		return new WebDAVLoadReport(config.getServerUri().toString(), threads, duration, operationMetrics, clientMetrics);
+	}
+
+	private URI getSeedUri(int index) {
+		return URI.create(runPath + "/seed-" + index + ".bin");
+	}
+
+	private WebDAVLoadOperation nextOperation(Random random) {
+		int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for(int i=0; i<cumulativeWeights.length; i++) {
+			if(value < cumulativeWeights[i]) {
+				return operations[i];
+			}
+		}
+		return operations[operations.length - 1];
+	}
+
+	private static void sleepUntil(long nanoTime) throws InterruptedException {
+		long delay = nanoTime - System.nanoTime();
+		if(delay > 0) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	private class Worker implements Callable<Void> {
+		private final int index;
+		private final long start;
+		private final Deque<URI> created = new ArrayDeque<URI>();
+		private int counter;
+
+		private Worker(int index, long start) {
+			this.index = index;
+			this.start = start;
+		}
+
+		public Void call() throws Exception {
+			sleepUntil(start);
+			Random random = ThreadLocalRandom.current();
+			while(System.nanoTime() < end) {
+				WebDAVLoadOperation operation = nextOperation(random);
+				if(operation == WebDAVLoadOperation.DELETE && created.isEmpty()) {
+					operation = WebDAVLoadOperation.PUT;
+				}
+				long operationStart = System.nanoTime();
+				int status = HttpStatus.SC_OK;
+				try {
+					execute(operation, random);
+				} catch (DavException e) {
+					status = (e.getErrorCode() >= HttpStatus.SC_BAD_REQUEST ? e.getErrorCode() : HttpStatus.SC_INTERNAL_SERVER_ERROR);
+				} catch (IOException e) {
+					status = WebDAVMetrics.STATUS_IO_ERROR;
+				}
+				if(operationStart >= measureStart) {
+					operationMetrics.recordRequest(operation.name(), status, System.nanoTime() - operationStart);
+				}
+			}
+			return null;
+		}
+
+		private void execute(WebDAVLoadOperation operation, Random random) throws IOException, DavException {
+			switch(operation) {
+			case LIST:
+				client.getChildResources(URI.create(runPath));
+				break;
+			case STAT:
+				client.getResource(getSeedUri(random.nextInt(Math.max(1, config.getSeedFiles()))));
+				break;
+			case GET:
+				URI seedUri = getSeedUri(random.nextInt(Math.max(1, config.getSeedFiles())));
+				clientMetrics.clearStatus();
+				WebDAVResourceStream stream = client.getResourceStream(seedUri);
+				if(stream == null) {
+					// the client returns no stream for an error response, its status is only seen by the metrics
+					throw new DavException(clientMetrics.getStatus(), "GET " + seedUri + " failed");
+				}
+				try {
+					InputStream is = stream.getInputStream();
+					byte[] buffer = new byte[BUFFER_SIZE];
+					while(is.read(buffer) != -1) {
+						// discard
+					}
+				} finally {
+					stream.close();
+				}
+				break;
+			case PUT:
+				long[] sizes = config.getPutSizes();
+				long size = sizes[random.nextInt(sizes.length)];
+				URI uri = getNextUri(".bin");
+				client.putResource(uri, new ContentInputStream(size), size, ContentType.APPLICATION_OCTET_STREAM);
+				created.add(uri);
+				break;
+			case MKCOL:
+				URI collection = getNextUri("");
+				client.createCollection(collection);
+				created.add(collection);
+				break;
+			case DELETE:
+				client.deleteResource(created.poll());
+				break;
+			}
+		}
+
+		private URI getNextUri(String extension) {
+			return URI.create(runPath + "/t" + index + "-" + (counter++) + extension);
+		}
+	}
+
+	/**
+	 * Client metrics that also keep the status of the last response of every thread
+	 */
+	private static class StatusMetrics extends WebDAVInMemoryMetrics {
+		private final ThreadLocal<Integer> status = new ThreadLocal<Integer>();
+
+		@Override
+		public void recordRequest(String method, int status, long durationNanos) {
+			super.recordRequest(method, status, durationNanos);
+			this.status.set(status);
+		}
+
+		@Override
+		public void recordRejected(String method) {
+			super.recordRejected(method);
+			// the circuit breaker answers for the server
+			this.status.set(HttpStatus.SC_SERVICE_UNAVAILABLE);
+		}
+
+		private void clearStatus() {
+			status.remove();
+		}
+
+		/**
+		 * @return status of the last response on this thread, or STATUS_IO_ERROR when there was none
+		 */
+		private int getStatus() {
+			Integer value = status.get();
+			return (value != null ? value : STATUS_IO_ERROR);
+		}
+	}
+
+	/**
+	 * Upload body of the given length that repeats the random content buffer
+	 */
+	private class ContentInputStream extends InputStream {
+		private long remaining;
+		private int position;
+
+		private ContentInputStream(long length) {
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(remaining <= 0) {
+				return -1;
+			}
+			remaining--;
+			int b = content[position] & 0xff;
+			position = (position + 1) % content.length;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(remaining <= 0) {
+				return -1;
+			}
+			int n = (int)Math.min(Math.min(len, remaining), content.length - position);
+			System.arraycopy(content, position, b, off, n);
+			position = (position + n) % content.length;
+			remaining -= n;
+			return n;
+		}
+	}
+}
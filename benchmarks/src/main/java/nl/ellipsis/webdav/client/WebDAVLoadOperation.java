@@ -0,0 +1,24 @@
+package nl.ellipsis.webdav.client;
+
+/**
+ * Operations of the load generator, each a single WebDAVClientAPI call
+ */
+public enum WebDAVLoadOperation {
+
+	/** getChildResources of the load collection */
+	LIST,
+	/** getResource of a seed file */
+	STAT,
+	/** getResourceStream of a seed file, read to the end */
+	GET,
+	/** putResource of a new file, with one of the configured sizes */
+	PUT,
+	/** createCollection of a new collection */
+	MKCOL,
+	/** deleteResource of a file or collection created earlier by the same thread */
+	DELETE;
+
+	public static WebDAVLoadOperation parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,180 @@
+package nl.ellipsis.webdav.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Result of a WebDAVLoadGenerator run: throughput, error rate and latency percentiles per operation,
+ * and the HTTP requests the client sent for them
+ */
+public class WebDAVLoadReport {
+
+	private String serverUri;
+	private int threads;
+	private double durationSeconds;
+	private List<OperationResult> operations = new ArrayList<OperationResult>();
+	private List<OperationResult> requests = new ArrayList<OperationResult>();
+	private Map<String, Long> statusCounts = new TreeMap<String, Long>();
+	private long bytesRead;
+	private long bytesWritten;
+	private long retries;
+
+	WebDAVLoadReport(String serverUri, int threads, double durationSeconds, WebDAVInMemoryMetrics operationMetrics, WebDAVInMemoryMetrics clientMetrics) {
+		this.serverUri = serverUri;
+		this.threads = threads;
+		this.durationSeconds = durationSeconds;
+		for(WebDAVOperationStats stats : operationMetrics.getOperations().values()) {
+			operations.add(new OperationResult(stats, durationSeconds));
+		}
+		for(WebDAVOperationStats stats : clientMetrics.getOperations().values()) {
+			requests.add(new OperationResult(stats, durationSeconds));
+		}
+		this.statusCounts.putAll(clientMetrics.getStatusCounts());
+		this.bytesRead = clientMetrics.getBytesRead();
+		this.bytesWritten = clientMetrics.getBytesWritten();
+		this.retries = clientMetrics.getRetries();
+	}
+
+	public String getServerUri() {
+		return serverUri;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	/**
+	 * @return one result per WebDAVLoadOperation, timed around the WebDAVClientAPI call
+	 */
+	public List<OperationResult> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * @return one result per HTTP method, timed by the client up to the response headers
+	 */
+	public List<OperationResult> getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return number of HTTP requests by "METHOD status"
+	 */
+	public Map<String, Long> getStatusCounts() {
+		return statusCounts;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public long getRetries() {
+		return retries;
+	}
+
+	public String toJson() {
+		return new GsonBuilder().setPrettyPrinting().create().toJson(this);
+	}
+
+	public String toText() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s, %d threads, %.1f s%n", serverUri, threads, durationSeconds));
+		appendTable(sb, "operation", operations);
+		appendTable(sb, "request", requests);
+		sb.append(String.format("read %d bytes (%.1f MB/s), written %d bytes (%.1f MB/s), %d retries%n",
+				bytesRead, bytesRead / durationSeconds / 1e6, bytesWritten, bytesWritten / durationSeconds / 1e6, retries));
+		for(Map.Entry<String, Long> e : statusCounts.entrySet()) {
+			sb.append(String.format("  %-20s %10d%n", e.getKey(), e.getValue()));
+		}
+		return sb.toString();
+	}
+
+	private static void appendTable(StringBuilder sb, String title, List<OperationResult> results) {
+		sb.append(String.format("%n%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n", title, "count", "errors", "ops/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for(OperationResult r : results) {
+			sb.append(String.format("%-10s %10d %7.2f%% %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+					r.name, r.count, r.errorRate * 100, r.throughput, r.meanMillis, r.p50Millis, r.p90Millis, r.p99Millis, r.maxMillis));
+		}
+	}
+
+	public static class OperationResult {
+		private final String name;
+		private final long count;
+		private final long errors;
+		private final double errorRate;
+		private final double throughput;
+		private final double meanMillis;
+		private final double p50Millis;
+		private final double p90Millis;
+		private final double p99Millis;
+		private final double maxMillis;
+
+		private OperationResult(WebDAVOperationStats stats, double durationSeconds) {
+			this.name = stats.getMethod();
+			this.count = stats.getCount();
+			this.errors = stats.getErrorCount();
+			this.errorRate = (count > 0 ? (double)errors / count : 0);
+			this.throughput = (durationSeconds > 0 ? count / durationSeconds : 0);
+			this.meanMillis = stats.getMeanMillis();
+			this.p50Millis = stats.getP50Millis();
+			this.p90Millis = stats.getP90Millis();
+			this.p99Millis = stats.getP99Millis();
+			this.maxMillis = stats.getMaxMillis();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getErrorRate() {
+			return errorRate;
+		}
+
+		/**
+		 * @return completed operations per second, including failed ones
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP90Millis() {
+			return p90Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package nl.ellipsis.webdav.rest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Placeholder substitution of PfxDocumentJSONObject, which runs for every url of every upload response
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlTemplateBenchmark {
+
+	private Map<String,String> urlMap;
+	private PfxDocumentJSONObject document;
+
+	@Setup
+	public void setup() {
+		urlMap = new HashMap<String,String>();
+		urlMap.put(PfxDocumentJSONObject.KEY_WEBDAV_UPLOAD_RESOURCE_URL, "/PFX/{domain}/{assessmentIdentifier}/{surveyIdentifier}/{itembankIdentifier}/{filename}");
+		urlMap.put(PfxDocumentJSONObject.KEY_UPLOAD_RESOURCE_URL, "/rest/document/{sessionId}/{domain}/{assessmentIdentifier}/{filename}");
+		urlMap.put(PfxDocumentJSONObject.KEY_RESPONSE_DELETE_RESOURCE_URL, "/rest/document/delete/{sessionId}/{domain}/{filename}");
+		Map<String,String> fileparts = new HashMap<String,String>();
+		fileparts.put("domain", "ellipsis");
+		fileparts.put("assessmentIdentifier", "A123");
+		fileparts.put("surveyIdentifier", "S45");
+		fileparts.put("itembankIdentifier", "I6");
+		fileparts.put(PfxDocumentConstants.PfxFilePartKeys.FILENAME, "document-000042.pdf");
+		fileparts.put("sessionId", "0123456789abcdef");
+		document = new PfxDocumentJSONObject(fileparts, 12345L, false);
+	}
+
+	@Benchmark
+	public String getResourceUrl() {
+		return document.getResourceUrl(urlMap);
+	}
+
+	@Benchmark
+	public Object getJSONObject() {
+		return document.getJSONObject(urlMap);
+	}
+}
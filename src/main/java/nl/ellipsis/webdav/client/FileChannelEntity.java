@@ -0,0 +1,107 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.Args;
+
+/**
+ * Repeatable entity that streams a file straight from a FileChannel with a fixed Content-Length.
+ *
+ * The file is never buffered in memory: writeTo uses FileChannel.transferTo, which lets the JDK move
+ * the bytes without copying them into the heap when the target channel allows it, and falls back to
+ * a small transfer buffer otherwise. Every call of writeTo opens the file again, so the request can be 
+ * resent after an authentication challenge or a retry. A region of the file can be sent as the body 
+ * of a partial upload.
+ */
+public class FileChannelEntity extends AbstractHttpEntity implements Cloneable {
+
+	private final static long MAX_TRANSFER_SIZE = 8L * 1024 * 1024;
+
+	private final File file;
+	private final long offset;
+	private final long length;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param file
+	 * @param contentType
+	 */
+	public FileChannelEntity(final File file, final ContentType contentType) {
+		this(file, 0, -1, contentType);
+	}
+
+	/**
+	 * Constructor for a region of the file
+	 * 
+	 * @param file
+	 * @param offset	position of the first byte to send
+	 * @param length	number of bytes to send, -1 for the remainder of the file
+	 * @param contentType
+	 */
+	public FileChannelEntity(final File file, final long offset, final long length, final ContentType contentType) {
+		this.file = Args.notNull(file, "File");
+		this.offset = Args.notNegative(offset, "Offset");
+		this.length = length;
+		if (contentType != null) {
+			setContentType(contentType.toString());
+		}
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public long getContentLength() {
+		return (length >= 0 ? length : file.length() - offset);
+	}
+
+	public InputStream getContent() throws IOException {
+		FileInputStream instream = new FileInputStream(file);
+		if(offset > 0) {
+			instream.getChannel().position(offset);
+		}
+		return (length >= 0 ? new BoundedInputStream(instream, length) : instream);
+	}
+
+	public void writeTo(final OutputStream outstream) throws IOException {
+		Args.notNull(outstream, "Output stream");
+		FileInputStream instream = new FileInputStream(file);
+		try {
+			FileChannel channel = instream.getChannel();
+			WritableByteChannel target = Channels.newChannel(outstream);
+			long size = (length >= 0 ? offset + length : channel.size());
+			long position = offset;
+			while(position < size) {
+				long transferred = channel.transferTo(position, Math.min(MAX_TRANSFER_SIZE, size - position), target);
+				if(transferred <= 0) {
+					// file has been truncated while sending
+					throw new IOException("Unexpected end of file " + file + " at " + position + " of " + size + " bytes");
+				}
+				position += transferred;
+			}
+			outstream.flush();
+		} finally {
+			instream.close();
+		}
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public Object clone() throws CloneNotSupportedException {
+		return super.clone();
+	}
+}
@@ -0,0 +1,159 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Pull parser for a WebDAV multistatus response body.
+ *
+ * Unlike BaseDavRequest.getResponseBodyAsMultiStatus, which builds a DOM of the complete body,
+ * only the &lt;response&gt; element that is currently being read is held in memory.
+ * Each element is handed to MultiStatusResponse.createFromXml, so the result is identical
+ * to the responses of the DOM based MultiStatus.
+ */
+public class MultiStatusReader implements Closeable {
+
+	private final static XMLInputFactory INPUT_FACTORY = createInputFactory();
+	private final static DocumentBuilderFactory DOCUMENT_FACTORY = createDocumentFactory();
+
+	private final XMLStreamReader reader;
+	private final DocumentBuilder documentBuilder;
+
+	/**
+	 * Constructor
+	 *
+	 * @param inputStream	multistatus body; it is not closed by this reader
+	 * @throws DavException
+	 */
+	public MultiStatusReader(InputStream inputStream) throws DavException {
+		try {
+			this.reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+			this.documentBuilder = DOCUMENT_FACTORY.newDocumentBuilder();
+		} catch (XMLStreamException e) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+		} catch (ParserConfigurationException e) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+		}
+	}
+
+	/**
+	 * Read up to and including the next &lt;response&gt; element
+	 *
+	 * @return the next response, or null at the end of the multistatus
+	 * @throws DavException
+	 */
+	public MultiStatusResponse nextResponse() throws DavException {
+		try {
+			while(reader.hasNext()) {
+				if(reader.next() == XMLStreamConstants.START_ELEMENT
+						&& DavConstants.XML_RESPONSE.equals(reader.getLocalName())
+						&& DavConstants.NAMESPACE.getURI().equals(reader.getNamespaceURI())) {
+					return MultiStatusResponse.createFromXml(readElement(documentBuilder.newDocument()));
+				}
+			}
+			return null;
+		} catch (XMLStreamException e) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			reader.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Copy the element at the current START_ELEMENT event, including its descendants, to a DOM element.
+	 * The reader is left at the matching END_ELEMENT event.
+	 */
+	private Element readElement(Document document) throws XMLStreamException {
+		Element root = createElement(document);
+		Node current = root;
+		int depth = 1;
+		while(depth > 0) {
+			switch(reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = createElement(document);
+				current.appendChild(child);
+				current = child;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				current = current.getParentNode();
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				current.appendChild(document.createTextNode(reader.getText()));
+				break;
+			default:
+				// comments and processing instructions are not part of a property value
+				break;
+			}
+		}
+		return root;
+	}
+
+	private Element createElement(Document document) {
+		String prefix = reader.getPrefix();
+		String localName = reader.getLocalName();
+		String qualifiedName = (prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName);
+		Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), qualifiedName);
+		for(int i=0; i<reader.getAttributeCount(); i++) {
+			String attributePrefix = reader.getAttributePrefix(i);
+			String attributeName = reader.getAttributeLocalName(i);
+			if(attributePrefix != null && !attributePrefix.isEmpty()) {
+				attributeName = attributePrefix + ":" + attributeName;
+			}
+			element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), attributeName, reader.getAttributeValue(i));
+		}
+		return element;
+	}
+
+	private static String emptyToNull(String s) {
+		return (s == null || s.isEmpty() ? null : s);
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		// a multistatus never needs a DTD; do not resolve external entities sent by the server
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	private static DocumentBuilderFactory createDocumentFactory() {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (ParserConfigurationException e) {
+			// only used to create empty documents
+		}
+		return factory;
+	}
+}
@@ -0,0 +1,111 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Non-blocking counterpart of WebDAVClientAPI.
+ *
+ * Every method returns immediately; the returned future completes when the request, and the follow-up
+ * PROPFIND where WebDAVClientAPI does one, has been answered. A failed request completes the future 
+ * exceptionally with the DavException or IOException the blocking method would have thrown. Cancelling 
+ * a future aborts its HTTP request. Dependent stages that are not registered with an executor run on 
+ * the I/O dispatcher threads and must not block.
+ */
+public interface WebDAVAsyncClientAPI extends Closeable {
+
+	/**
+	 * @see WebDAVClientAPI#createCollection(URI)
+	 */
+	public CompletableFuture<WebDAVResourceType> createCollection(URI uri);
+
+	/**
+	 * @see WebDAVClientAPI#deleteResource(URI)
+	 */
+	public CompletableFuture<WebDAVResourceType> deleteResource(URI uri);
+
+	/**
+	 * @see WebDAVClientAPI#getChildResources(URI)
+	 */
+	public CompletableFuture<List<WebDAVResourceType>> getChildResources(URI uri);
+
+	/**
+	 * @see WebDAVClientAPI#getChildResources(URI, DavPropertyNameSet)
+	 */
+	public CompletableFuture<List<WebDAVResourceType>> getChildResources(URI uri, DavPropertyNameSet propertyNames);
+
+	/**
+	 * @see WebDAVClientAPI#getResource(URI)
+	 */
+	public CompletableFuture<WebDAVResourceType> getResource(URI uri);
+
+	/**
+	 * @see WebDAVClientAPI#getResource(URI, DavPropertyNameSet)
+	 */
+	public CompletableFuture<WebDAVResourceType> getResource(URI uri, DavPropertyNameSet propertyNames);
+
+	/**
+	 * Use HTTP:GET to write the content of a resource to a local file. The body is transferred from the 
+	 * socket to the file without passing through a stream that would block a thread; this replaces 
+	 * WebDAVClientAPI.getResourceStream in the asynchronous API.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param target	local file, an existing file is overwritten
+	 * @return number of bytes written
+	 */
+	public CompletableFuture<Long> downloadToFile(URI uri, Path target);
+
+	/**
+	 * The inputStream is read on an I/O dispatcher thread, so it should not block on a slow source.
+	 * 
+	 * @see WebDAVClientAPI#putResource(URI, InputStream, long, ContentType)
+	 */
+	public CompletableFuture<WebDAVResourceType> putResource(URI uri, InputStream inputStream, long length, ContentType contentType);
+
+	/**
+	 * @see WebDAVClientAPI#putResource(URI, File, ContentType)
+	 */
+	public CompletableFuture<WebDAVResourceType> putResource(URI uri, File file, ContentType contentType);
+
+	/**
+	 * @see WebDAVClientAPI#setProperties(URI, Map)
+	 */
+	public CompletableFuture<WebDAVResourceType> setProperties(URI uri, Map<String,Object> properties);
+
+	/**
+	 * @see WebDAVClientAPI#copyResource(URI, URI, boolean, boolean)
+	 */
+	public CompletableFuture<WebDAVResourceType> copyResource(URI sourceUri, URI targetUri, boolean overwrite, boolean shallow);
+
+	/**
+	 * @see WebDAVClientAPI#moveResource(URI, URI)
+	 */
+	public CompletableFuture<WebDAVResourceType> moveResource(URI sourceUri, URI targetUri);
+
+	/**
+	 * @see WebDAVClientAPI#lockResource(URI, String, int)
+	 */
+	public CompletableFuture<WebDAVResourceType> lockResource(URI uri, String lockToken, int timeout);
+
+	/**
+	 * @see WebDAVClientAPI#unlockResource(URI, String)
+	 */
+	public CompletableFuture<WebDAVResourceType> unlockResource(URI uri, String lockToken);
+
+	/**
+	 * Stop the I/O reactor and close all connections; pending futures complete exceptionally
+	 */
+	public void close() throws IOException;
+}
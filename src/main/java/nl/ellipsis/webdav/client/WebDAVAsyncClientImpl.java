@@ -0,0 +1,614 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.nio.util.SharedOutputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.client.methods.BaseDavRequest;
+import org.apache.jackrabbit.webdav.client.methods.HttpCopy;
+import org.apache.jackrabbit.webdav.client.methods.HttpDelete;
+import org.apache.jackrabbit.webdav.client.methods.HttpLock;
+import org.apache.jackrabbit.webdav.client.methods.HttpMkcol;
+import org.apache.jackrabbit.webdav.client.methods.HttpMove;
+import org.apache.jackrabbit.webdav.client.methods.HttpPropfind;
+import org.apache.jackrabbit.webdav.client.methods.HttpProppatch;
+import org.apache.jackrabbit.webdav.client.methods.HttpUnlock;
+import org.apache.jackrabbit.webdav.lock.ActiveLock;
+import org.apache.jackrabbit.webdav.lock.LockInfo;
+import org.apache.jackrabbit.webdav.lock.Scope;
+import org.apache.jackrabbit.webdav.lock.Type;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * WebDAVAsyncClientAPI on top of the non-blocking Apache HttpAsyncClient.
+ *
+ * Requests are multiplexed over a few I/O dispatcher threads, so hundreds of requests can be in flight 
+ * without a thread per request. Follow-up requests, like the PROPFIND after a write, are chained on the 
+ * completion of the first request; a write that is not answered with 2xx fails its future with a 
+ * DavException. Blocking work never runs on a dispatcher thread: multistatus responses are parsed on 
+ * the async executor (see WebDAVClientConfig.getAsyncExecutor) while they are received, and upload 
+ * streams are read there. Files are uploaded and downloaded with zero-copy transfers. Resources are 
+ * mapped exactly like WebDAVClientImpl maps them; this client has no metadata cache.
+ */
+public class WebDAVAsyncClientImpl implements WebDAVAsyncClientAPI {
+
+	protected static Logger logger = Logger.getLogger(WebDAVAsyncClientImpl.class);
+
+	// bytes buffered between a dispatcher thread and the thread parsing a response or reading an upload
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static AtomicInteger threadCount = new AtomicInteger();
+
+	private final WebDAVResourceMapper mapper;
+	private final CloseableHttpAsyncClient client;
+	private final RequestConfig uploadRequestConfig;
+	private final boolean contentCompression;
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param user
+	 * @param password
+	 * @param serverUri
+	 * @throws DavException 
+	 */
+	public WebDAVAsyncClientImpl(String user, String password, URI serverUri) throws DavException {
+		this(user,password,serverUri,new WebDAVClientConfig());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * Starts the I/O reactor; call {@link #close()} to stop it.
+	 * 
+	 * @param user
+	 * @param password
+	 * @param serverUri
+	 * @param config	connection pool and timeout settings
+	 * @throws DavException 
+	 */
+	public WebDAVAsyncClientImpl(String user, String password, URI serverUri, WebDAVClientConfig config) throws DavException {
+		if(serverUri==null) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"serverUri is mandatory");
+		}
+		if(config==null) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"config is mandatory");
+		}
+		this.mapper = new WebDAVResourceMapper(serverUri);
+		RequestConfig requestConfig = WebDAVClientImpl.createRequestConfig(config);
+		this.uploadRequestConfig = RequestConfig.copy(requestConfig).setExpectContinueEnabled(config.isExpectContinue()).build();
+		this.contentCompression = config.isContentCompression();
+		this.ownExecutor = (config.getAsyncExecutor() == null ? Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "webdav-async-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null);
+		this.executor = (ownExecutor != null ? ownExecutor : config.getAsyncExecutor());
+		HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+				.setDefaultRequestConfig(requestConfig)
+				.setMaxConnTotal(config.getMaxConnectionsTotal())
+				.setMaxConnPerRoute(config.getMaxConnectionsPerRoute());
+		if(user!=null) {
+			CredentialsProvider credsProvider = new BasicCredentialsProvider();
+			credsProvider.setCredentials(
+	                new AuthScope(serverUri.getHost(), serverUri.getPort()),
+	                new UsernamePasswordCredentials(user, password));
+			builder.setDefaultCredentialsProvider(credsProvider);
+		}
+		this.client = builder.build();
+		this.client.start();
+	}
+
+	public void close() throws IOException {
+		try {
+			client.close();
+		} finally {
+			if(ownExecutor != null) {
+				ownExecutor.shutdownNow();
+			}
+		}
+	}
+
+	public CompletableFuture<WebDAVResourceType> copyResource(URI sourceUri, URI targetUri, boolean overwrite, boolean shallow) {
+		if(sourceUri==null || targetUri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return write(targetUri, () -> new HttpCopy(mapper.getAbsoluteURI(sourceUri).toString(),mapper.getAbsoluteURI(targetUri).toString(),overwrite,shallow))
+				.thenCompose(response -> getResource(targetUri));
+	}
+
+	public CompletableFuture<WebDAVResourceType> moveResource(URI sourceUri, URI targetUri) {
+		if(sourceUri==null || targetUri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return write(targetUri, () -> new HttpMove(mapper.getAbsoluteURI(sourceUri).toString(),mapper.getAbsoluteURI(targetUri).toString(),true))
+				.thenCompose(response -> getResource(targetUri));
+	}
+
+	public CompletableFuture<WebDAVResourceType> createCollection(URI relativeUri) {
+		CompletableFuture<WebDAVResourceType> result = CompletableFuture.completedFuture(null);
+		if(relativeUri!=null) {
+			// walk to the ancestors one after the other, like WebDAVClientImpl
+			String ancestorUri = "";
+			for(String part : relativeUri.toString().split(PfxDocumentConstants.URI_SEPARATOR)) {
+				if(!StringUtils.isEmpty(part)) {
+					ancestorUri = ancestorUri + PfxDocumentConstants.URI_SEPARATOR + part;
+					try {
+						URI ancestor = new URI(ancestorUri);
+						result = result.thenCompose(resource -> getCollection(ancestor));
+					} catch (URISyntaxException e) {
+						return failed(new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	public CompletableFuture<WebDAVResourceType> deleteResource(URI relativeUri) {
+		if(relativeUri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		// get resource, fails if it doesn't exist
+		return getResource(relativeUri).thenCompose(resource -> 
+				write(relativeUri, () -> new HttpDelete(mapper.getAbsoluteURI(relativeUri).toString()))
+				.thenApply(response -> resource));
+	}
+
+	public CompletableFuture<List<WebDAVResourceType>> getChildResources(URI relativeUri) {
+		return getChildResources(relativeUri, null);
+	}
+
+	public CompletableFuture<List<WebDAVResourceType>> getChildResources(URI relativeUri, DavPropertyNameSet propertyNames) {
+		return getCollectionProperties(relativeUri, DavConstants.DEPTH_1, propertyNames);
+	}
+
+	public CompletableFuture<WebDAVResourceType> getResource(URI relativeUri) {
+		return getResource(relativeUri, null);
+	}
+
+	public CompletableFuture<WebDAVResourceType> getResource(URI relativeUri, DavPropertyNameSet propertyNames) {
+		return getCollectionProperties(relativeUri, DavConstants.DEPTH_0, propertyNames).thenApply(resources -> {
+			// we get either a response with one resource-item or a NOT-FOUND exception
+			if(resources.size()>1) {
+				throw new CompletionException(new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"More than one resource found where one expected"));
+			} else if(resources.isEmpty()) {
+				throw new CompletionException(new DavException(HttpStatus.SC_NOT_IMPLEMENTED,"getResource empty result"));
+			}
+			return resources.get(0);
+		});
+	}
+
+	public CompletableFuture<Long> downloadToFile(URI relativeUri, Path target) {
+		try {
+			HttpAsyncRequestProducer producer = HttpAsyncMethods.create(new HttpGet(mapper.getAbsoluteURI(relativeUri).toString()));
+			return execute(producer, new ZeroCopyConsumer<Long>(target.toFile()) {
+				@Override
+				protected Long process(HttpResponse response, File file, ContentType contentType) throws Exception {
+					int status = response.getStatusLine().getStatusCode();
+					if(status != HttpStatus.SC_OK) {
+						throw new DavException(status, "GET " + relativeUri + " failed: " + response.getStatusLine().getReasonPhrase());
+					}
+					return file.length();
+				}
+			});
+		} catch(IOException | DavException e) {
+			return failed(e);
+		}
+	}
+
+	public CompletableFuture<WebDAVResourceType> lockResource(URI uri, String lockToken, int timeout) {
+		if(uri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		HttpLock request;
+		try {
+			// a new exclusive write lock without a token, a refresh of the lock with the token otherwise
+			request = (lockToken == null 
+					? new HttpLock(mapper.getAbsoluteURI(uri).toString(),new LockInfo(Scope.EXCLUSIVE,Type.WRITE,null,timeout,false))
+					: new HttpLock(mapper.getAbsoluteURI(uri).toString(),timeout,new String[]{lockToken}));
+		} catch(IOException | DavException e) {
+			return failed(e);
+		}
+		return write(uri, () -> request).thenCompose(response -> {
+			WebDAVWriteResource written = createLockResource(uri, request, response, lockToken);
+			// get resource, fails if it doesn't exist
+			return getResource(uri).thenApply(resource -> written.readBack(resource));
+		});
+	}
+
+	/**
+	 * The lock token and granted timeout of a LOCK response, taken from the response like WebDAVClientImpl takes them
+	 */
+	private static WebDAVWriteResource createLockResource(URI relativeUri, HttpLock request, HttpResponse response, String lockToken) {
+		String token = WebDAVClientImpl.getLockToken(response, lockToken);
+		ActiveLock activeLock = WebDAVClientImpl.getActiveLock(request, response, token);
+		if(token == null && activeLock != null) {
+			token = activeLock.getToken();
+		}
+		Header location = response.getFirstHeader(HttpHeaders.LOCATION);
+		WebDAVWriteResource resource = new WebDAVWriteResource(null, relativeUri, request.getMethod(), response.getStatusLine().getStatusCode(), 
+				(location != null ? location.getValue() : null), token);
+		resource.setLockTimeout(WebDAVClientImpl.getGrantedTimeout(response, activeLock));
+		return resource;
+	}
+
+	public CompletableFuture<WebDAVResourceType> unlockResource(URI uri, String lockToken) {
+		if(uri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return write(uri, () -> new HttpUnlock(mapper.getAbsoluteURI(uri).toString(),lockToken))
+				.thenCompose(response -> getResource(uri));
+	}
+
+	public CompletableFuture<WebDAVResourceType> setProperties(URI relativeUri, Map<String,Object> propertyMap) {
+		if(relativeUri==null || propertyMap==null || propertyMap.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return write(relativeUri, () -> new HttpProppatch(mapper.getAbsoluteURI(relativeUri).toString(),WebDAVClientImpl.getWebDAVPropertyList(propertyMap)))
+				.thenCompose(response -> getResource(relativeUri));
+	}
+
+	public CompletableFuture<WebDAVResourceType> putResource(URI relativeUri, InputStream inputStream, long length, ContentType contentType) {
+		if(relativeUri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		try {
+			URI uri = mapper.getAbsoluteURI(relativeUri);
+			HttpPut httpMethod = new HttpPut(uri);
+			httpMethod.setConfig(uploadRequestConfig);
+			// describes the body only, the content is produced from the stream on the executor
+			BasicHttpEntity entity = new BasicHttpEntity();
+			entity.setContentLength(length);
+			entity.setContentType(contentType != null ? contentType.toString() : null);
+			// send Content-Length when it is known
+			entity.setChunked(length < 0);
+			httpMethod.setEntity(entity);
+			HttpAsyncRequestProducer producer = new BasicAsyncRequestProducer(URIUtils.extractHost(uri), httpMethod, new InputStreamProducer(inputStream)) {};
+			return execute(producer, HttpAsyncMethods.createConsumer())
+					.thenApply(response -> checkStatus(httpMethod.getMethod(), relativeUri, response))
+					.thenCompose(response -> getResource(relativeUri));
+		} catch(DavException e) {
+			return failed(e);
+		}
+	}
+
+	public CompletableFuture<WebDAVResourceType> putResource(URI relativeUri, File file, ContentType contentType) {
+		if(relativeUri==null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		try {
+			HttpAsyncRequestProducer producer = HttpAsyncMethods.createZeroCopyPut(mapper.getAbsoluteURI(relativeUri), file, contentType);
+			return execute(producer, HttpAsyncMethods.createConsumer())
+					.thenApply(response -> checkStatus(HttpPut.METHOD_NAME, relativeUri, response))
+					.thenCompose(response -> getResource(relativeUri));
+		} catch(IOException | DavException e) {
+			return failed(e);
+		}
+	}
+
+	private CompletableFuture<WebDAVResourceType> getCollection(URI relativeUri) {
+		// first check if collection already exists
+		return getResource(relativeUri).handle((resource, t) -> {
+			if(t == null) {
+				return CompletableFuture.completedFuture(resource);
+			}
+			Throwable cause = unwrap(t);
+			if(cause instanceof DavException && HttpStatus.SC_NOT_FOUND == ((DavException)cause).getErrorCode()) {
+				return write(relativeUri, () -> new HttpMkcol(mapper.getAbsoluteURI(relativeUri).toString()))
+						.thenCompose(response -> getResource(relativeUri))
+						.thenApply(created -> {
+							logger.info("collection "+relativeUri.toString() + " has been created");
+							return created;
+						});
+			}
+			return WebDAVAsyncClientImpl.<WebDAVResourceType>failed(cause);
+		}).thenCompose(Function.identity());
+	}
+
+	private CompletableFuture<List<WebDAVResourceType>> getCollectionProperties(URI relativeUri, int depth, DavPropertyNameSet propertyNames) {
+		HttpPropfind method;
+		try {
+			method = (propertyNames != null ? 
+					new HttpPropfind(mapper.getAbsoluteURI(relativeUri).toString(), propertyNames, depth) : 
+					new HttpPropfind(mapper.getAbsoluteURI(relativeUri).toString(), DavConstants.PROPFIND_ALL_PROP, depth));
+		} catch(IOException | DavException e) {
+			return failed(e);
+		}
+		if(contentCompression) {
+			// multistatus XML typically shrinks by a factor 10
+			method.setHeader(HttpHeaders.ACCEPT_ENCODING, WebDAVCompression.ACCEPT_ENCODING);
+		}
+		MultiStatusConsumer consumer = new MultiStatusConsumer(relativeUri, depth, method);
+		return execute(HttpAsyncMethods.create(method), consumer).thenCompose(response -> consumer.resources);
+	}
+
+	private List<WebDAVResourceType> getResources(URI relativeUri, int depth, BaseDavRequest method, HttpResponse httpResponse) throws IOException, DavException {
+		// throws e.g. 404 not found
+		method.checkSuccess(httpResponse);
+		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
+		MultiStatusReader reader = new MultiStatusReader(WebDAVCompression.decode(httpResponse.getEntity()).getContent());
+		try {
+			MultiStatusResponse response;
+			while((response = reader.nextResponse()) != null) {
+				String href = response.getHref();
+				// Ignore the current directory
+				if (mapper.assertResourcePathEquals(relativeUri,href) && depth > 0) {
+					continue;
+				}
+				resources.add(mapper.getWebDAVResource(href,response.getProperties(HttpStatus.SC_OK)));
+			}
+		} finally {
+			reader.close();
+		}
+		Collections.sort(resources, WebDAVClientImpl.DISPLAYNAME_COMPARATOR);
+		return resources;
+	}
+
+	/**
+	 * Send a write request with a buffered response
+	 * 
+	 * @return the response, or a future failed with a DavException when the status is not 2xx
+	 */
+	private CompletableFuture<HttpResponse> write(URI relativeUri, RequestFactory factory) {
+		HttpUriRequest request;
+		try {
+			request = factory.create();
+		} catch(IOException | DavException e) {
+			return failed(e);
+		}
+		return execute(HttpAsyncMethods.create(request), HttpAsyncMethods.createConsumer())
+				.thenApply(response -> checkStatus(request.getMethod(), relativeUri, response));
+	}
+
+	private static HttpResponse checkStatus(String method, URI relativeUri, HttpResponse response) {
+		int status = response.getStatusLine().getStatusCode();
+		if(status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+			throw new CompletionException(new DavException(status, method + " " + relativeUri + " failed: " + response.getStatusLine().getReasonPhrase()));
+		}
+		return response;
+	}
+
+	private <T> CompletableFuture<T> execute(HttpAsyncRequestProducer producer, HttpAsyncResponseConsumer<T> consumer) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		Future<T> future = client.execute(producer, consumer, new FutureCallback<T>() {
+			public void completed(T response) {
+				result.complete(response);
+			}
+
+			public void failed(Exception e) {
+				result.completeExceptionally(e);
+			}
+
+			public void cancelled() {
+				result.cancel(false);
+			}
+		});
+		result.whenComplete((response, t) -> {
+			if(result.isCancelled()) {
+				future.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		result.completeExceptionally(t);
+		return result;
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		return (t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+	}
+
+	/**
+	 * Creates a request; lets lambdas throw the checked exceptions of the jackrabbit request constructors
+	 */
+	private interface RequestFactory {
+		HttpUriRequest create() throws IOException, DavException;
+	}
+
+	/**
+	 * Hands a multistatus body to a parser on the executor while it is being received. The dispatcher 
+	 * suspends input when the buffer is full, so a slow parser slows down the transfer instead of 
+	 * blocking a dispatcher thread or buffering a large listing in memory.
+	 */
+	private class MultiStatusConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+		private final URI relativeUri;
+		private final int depth;
+		private final BaseDavRequest method;
+		private final SharedInputBuffer buffer = new SharedInputBuffer(BUFFER_SIZE, HeapByteBufferAllocator.INSTANCE);
+		private final CompletableFuture<List<WebDAVResourceType>> resources = new CompletableFuture<List<WebDAVResourceType>>();
+		private HttpResponse response;
+		private boolean parsing = false;
+		private boolean completed = false;
+
+		private MultiStatusConsumer(URI relativeUri, int depth, BaseDavRequest method) {
+			this.relativeUri = relativeUri;
+			this.depth = depth;
+			this.method = method;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+			BasicHttpEntity streamed = new BasicHttpEntity();
+			streamed.setContent(new ContentInputStream(buffer));
+			streamed.setContentLength(entity.getContentLength());
+			streamed.setContentType(entity.getContentType());
+			streamed.setContentEncoding(entity.getContentEncoding());
+			response.setEntity(streamed);
+			parse();
+		}
+
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			buffer.consumeContent(decoder, ioctrl);
+		}
+
+		@Override
+		protected HttpResponse buildResult(HttpContext context) {
+			completed = true;
+			// a response without a body, e.g. 404
+			parse();
+			return response;
+		}
+
+		@Override
+		protected void releaseResources() {
+			if(!completed) {
+				// the exchange failed, wake up the parser
+				buffer.shutdown();
+			}
+		}
+
+		private void parse() {
+			if(!parsing) {
+				parsing = true;
+				try {
+					executor.execute(() -> {
+						try {
+							resources.complete(getResources(relativeUri, depth, method, response));
+						} catch(Exception e) {
+							resources.completeExceptionally(e);
+						} finally {
+							// reads the remainder of a rejected or partly parsed body, so the exchange can complete
+							EntityUtils.consumeQuietly(response.getEntity());
+						}
+					});
+				} catch(RejectedExecutionException e) {
+					buffer.shutdown();
+					resources.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an upload stream on the executor into a buffer, from which a dispatcher thread writes 
+	 * the request body without blocking
+	 */
+	private class InputStreamProducer implements HttpAsyncContentProducer {
+		private final InputStream inputStream;
+		private final SharedOutputBuffer buffer = new SharedOutputBuffer(BUFFER_SIZE, HeapByteBufferAllocator.INSTANCE);
+		private volatile IOControl ioctrl;
+		private volatile IOException failure;
+		private boolean started = false;
+
+		private InputStreamProducer(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+			this.ioctrl = ioctrl;
+			if(failure != null) {
+				throw failure;
+			}
+			if(!started) {
+				started = true;
+				try {
+					executor.execute(this::copy);
+				} catch(RejectedExecutionException e) {
+					throw new IOException("upload stream cannot be read", e);
+				}
+			}
+			buffer.produceContent(encoder, ioctrl);
+		}
+
+		private void copy() {
+			try {
+				OutputStream out = new ContentOutputStream(buffer);
+				IOUtils.copy(inputStream, out);
+				// only a complete stream ends the body, an error must not look like a short upload
+				out.close();
+			} catch(IOException e) {
+				failure = e;
+				IOControl control = ioctrl;
+				if(control != null) {
+					control.requestOutput();
+				}
+			}
+		}
+
+		public boolean isRepeatable() {
+			return false;
+		}
+
+		public void close() {
+			// wakes up a copy that waits for room in the buffer
+			buffer.shutdown();
+		}
+	}
+}
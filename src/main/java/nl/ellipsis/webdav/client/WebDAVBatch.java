@@ -0,0 +1,218 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * A list of put, delete, copy, move and proppatch operations that are executed together 
+ * with bounded concurrency.
+ *
+ * All operations go through the shared connection pool of the client, so a concurrency 
+ * above WebDAVClientConfig.getMaxConnectionsPerRoute only makes operations wait for a connection.
+ * In best-effort mode every operation is attempted; in fail-fast mode operations that have not 
+ * started when the first failure occurs are skipped. An operation fails when its client method throws; 
+ * the write methods of WebDAVClientAPI throw a DavException with the status of a response that is not 2xx. 
+ * Operations run in no particular order, so a batch must not contain operations that depend on each other.
+ *
+ * <pre>
+ * List&lt;WebDAVBatchResult&gt; results = new WebDAVBatch(client)
+ *     .delete(uri1)
+ *     .move(uri2, uri3)
+ *     .setConcurrency(8)
+ *     .execute();
+ * </pre>
+ */
+public class WebDAVBatch {
+
+	protected static Logger logger = Logger.getLogger(WebDAVBatch.class);
+
+	public final static int DEFAULT_CONCURRENCY = 4;
+
+	private final WebDAVClientAPI client;
+	private final List<Operation> operations = new ArrayList<Operation>();
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private boolean failFast = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param client	client whose connection pool is used for all operations
+	 */
+	public WebDAVBatch(WebDAVClientAPI client) {
+		this.client = client;
+	}
+
+	/**
+	 * @param concurrency	maximum number of operations that run at the same time
+	 */
+	public WebDAVBatch setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * @param failFast	true to skip the remaining operations after the first failure, 
+	 * 					false (default) to attempt all operations
+	 */
+	public WebDAVBatch setFailFast(boolean failFast) {
+		this.failFast = failFast;
+		return this;
+	}
+
+	public WebDAVBatch put(final URI uri, final File file, final ContentType contentType) {
+		return add(new Operation("PUT", uri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.putResource(uri, file, contentType);
+			}
+		});
+	}
+
+	public WebDAVBatch delete(final URI uri) {
+		return add(new Operation("DELETE", uri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.deleteResource(uri);
+			}
+		});
+	}
+
+	public WebDAVBatch copy(final URI sourceUri, final URI targetUri, final boolean overwrite, final boolean shallow) {
+		return add(new Operation("COPY", sourceUri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.copyResource(sourceUri, targetUri, overwrite, shallow);
+			}
+		});
+	}
+
+	public WebDAVBatch move(final URI sourceUri, final URI targetUri) {
+		return add(new Operation("MOVE", sourceUri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.moveResource(sourceUri, targetUri);
+			}
+		});
+	}
+
+	public WebDAVBatch setProperties(final URI uri, final Map<String,Object> properties) {
+		return add(new Operation("PROPPATCH", uri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.setProperties(uri, properties);
+			}
+		});
+	}
+
+	public WebDAVBatch createCollection(final URI uri) {
+		return add(new Operation("MKCOL", uri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return client.createCollection(uri);
+			}
+		});
+	}
+
+	/**
+	 * Add an operation that is composed of several client calls
+	 * 
+	 * @param method	name of the operation in its WebDAVBatchResult
+	 * @param uri	uri of the operation in its WebDAVBatchResult
+	 * @param task	called with the client of this batch
+	 */
+	public WebDAVBatch add(String method, URI uri, final Task task) {
+		return add(new Operation(method, uri) {
+			WebDAVResourceType execute() throws IOException, DavException {
+				return task.execute(client);
+			}
+		});
+	}
+
+	public int size() {
+		return operations.size();
+	}
+
+	/**
+	 * Run all operations and wait until they are finished
+	 * 
+	 * @return one result per operation, in the order in which the operations were added
+	 * @throws InterruptedIOException when the calling thread is interrupted; running operations are interrupted as well
+	 */
+	public List<WebDAVBatchResult> execute() throws InterruptedIOException {
+		if(operations.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final AtomicBoolean failed = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, operations.size())));
+		try {
+			List<Future<WebDAVBatchResult>> futures = new ArrayList<Future<WebDAVBatchResult>>();
+			for(final Operation operation : operations) {
+				futures.add(executor.submit(() -> run(operation, failed)));
+			}
+			List<WebDAVBatchResult> results = new ArrayList<WebDAVBatchResult>(futures.size());
+			for(Future<WebDAVBatchResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// run catches everything but errors
+					throw (Error)e.getCause();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Batch interrupted");
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private WebDAVBatchResult run(Operation operation, AtomicBoolean failed) {
+		if(failFast && failed.get()) {
+			return new WebDAVBatchResult(operation.method, operation.uri, WebDAVBatchResult.Status.SKIPPED, null, null);
+		}
+		try {
+			WebDAVResourceType resource = operation.execute();
+			return new WebDAVBatchResult(operation.method, operation.uri, WebDAVBatchResult.Status.SUCCEEDED, resource, null);
+		} catch (IOException | DavException | RuntimeException e) {
+			failed.set(true);
+			logger.warn(operation.method + " " + operation.uri + " failed: " + e.getMessage());
+			return new WebDAVBatchResult(operation.method, operation.uri, WebDAVBatchResult.Status.FAILED, null, e);
+		}
+	}
+
+	private WebDAVBatch add(Operation operation) {
+		operations.add(operation);
+		return this;
+	}
+
+	/**
+	 * A custom operation of a batch
+	 */
+	public interface Task {
+		public WebDAVResourceType execute(WebDAVClientAPI client) throws IOException, DavException;
+	}
+
+	private static abstract class Operation {
+		private final String method;
+		private final URI uri;
+
+		private Operation(String method, URI uri) {
+			this.method = method;
+			this.uri = uri;
+		}
+
+		abstract WebDAVResourceType execute() throws IOException, DavException;
+	}
+}
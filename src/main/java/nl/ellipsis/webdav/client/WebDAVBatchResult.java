@@ -0,0 +1,82 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+
+import org.apache.jackrabbit.webdav.DavException;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Outcome of one operation of a WebDAVBatch
+ */
+public class WebDAVBatchResult {
+
+	public enum Status { 
+		SUCCEEDED, 
+		FAILED, 
+		/** not started because an earlier operation failed in fail-fast mode */
+		SKIPPED 
+	}
+
+	private final String method;
+	private final URI uri;
+	private final Status status;
+	private final WebDAVResourceType resource;
+	private final Exception error;
+
+	WebDAVBatchResult(String method, URI uri, Status status, WebDAVResourceType resource, Exception error) {
+		this.method = method;
+		this.uri = uri;
+		this.status = status;
+		this.resource = resource;
+		this.error = error;
+	}
+
+	/**
+	 * @return the WebDAV method of the operation, e.g. PUT or MOVE
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the uri the operation applies to; the source uri of a copy or move
+	 */
+	public URI getUri() {
+		return uri;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isSuccess() {
+		return status == Status.SUCCEEDED;
+	}
+
+	/**
+	 * @return the resource returned by the WebDAVClientAPI method, null unless the operation succeeded
+	 */
+	public WebDAVResourceType getResource() {
+		return resource;
+	}
+
+	/**
+	 * @return the IOException, DavException or RuntimeException of a failed operation
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return the HTTP status code of a failed operation, or -1 if it did not fail with a DavException
+	 */
+	public int getErrorCode() {
+		return (error instanceof DavException ? ((DavException)error).getErrorCode() : -1);
+	}
+
+	@Override
+	public String toString() {
+		return method + " " + uri + ": " + status + (error != null ? " (" + error.getMessage() + ")" : "");
+	}
+}
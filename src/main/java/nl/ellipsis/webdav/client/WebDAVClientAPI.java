@@ -1,18 +1,21 @@
 package nl.ellipsis.webdav.client;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.http.entity.ContentType;
 import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
 
 import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
 
-public interface WebDAVClientAPI {
+public interface WebDAVClientAPI extends Closeable {
 	
 	/**
 	 * createCollection uses WebDAV:MKCOL to create a new collection resource at the location specified by the Request-URI. 
@@ -37,7 +40,7 @@ public interface WebDAVClientAPI {
 	 * @return WebDAVResource that has been deleted
 	 * 
 	 * @throws IOException
-	 * @throws DavException
+	 * @throws DavException	with the status of the DELETE response when it is not 2xx
 	 */
 	public WebDAVResourceType deleteResource(URI uri) throws IOException, DavException;
 
@@ -50,6 +53,42 @@ public interface WebDAVClientAPI {
 	 * @throws DavException
 	 */
 	public List<WebDAVResourceType> getChildResources(URI uri) throws IOException, DavException;
+
+	/**
+	 * Use WebDAV:PROPFIND to find metadata for all childresources of parent uri.
+	 * Each resource is passed to the handler as soon as it has been read from the response,
+	 * in the order returned by the server; the complete listing is never held in memory.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param handler	Callback for each child resource
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public void getChildResources(URI uri, WebDAVResourceHandler handler) throws IOException, DavException;
+
+	/**
+	 * Use WebDAV:PROPFIND to find the given properties for all childresources of parent uri.
+	 * Only the named properties are requested instead of allprop, which keeps the response small 
+	 * for large collections. See WebDAVPropertyProfile.MINIMAL for a set suitable for listings.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param propertyNames	Properties to request
+	 * @return	List of WebDAVResources
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public List<WebDAVResourceType> getChildResources(URI uri, DavPropertyNameSet propertyNames) throws IOException, DavException;
+
+	/**
+	 * Streaming variant of getChildResources(URI, DavPropertyNameSet)
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param propertyNames	Properties to request
+	 * @param handler	Callback for each child resource
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public void getChildResources(URI uri, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException;
 	
 	/**
 	 * Use WebDAV:PROPFIND to find metadata for a single resource.
@@ -61,6 +100,45 @@ public interface WebDAVClientAPI {
 	 */
 	public WebDAVResourceType getResource(URI uri) throws IOException, DavException;
 
+	/**
+	 * Find all resources below root, up to depthLimit levels deep. Uses a single WebDAV:PROPFIND with Depth: infinity
+	 * when the server allows it, and otherwise Depth: 1 PROPFIND requests for all collections in parallel.
+	 * Resources are passed to the handler as soon as they are found, one at a time, in no particular order;
+	 * root itself is not passed.
+	 * 
+	 * @param root	Relative URI of a collection on WebDAV server
+	 * @param depthLimit	1 for the children of root only, DavConstants.DEPTH_INFINITY for the whole tree
+	 * @param filter	selects resources and the collections to descend into, null for all
+	 * @param handler	WebDAVResourceHandler
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public void walk(URI root, int depthLimit, WebDAVResourceFilter filter, WebDAVResourceHandler handler) throws IOException, DavException;
+
+	/**
+	 * Find all resources below root with the given properties, see {@link #walk(URI, int, WebDAVResourceFilter, WebDAVResourceHandler)}
+	 * 
+	 * @param root	Relative URI of a collection on WebDAV server
+	 * @param depthLimit	1 for the children of root only, DavConstants.DEPTH_INFINITY for the whole tree
+	 * @param filter	selects resources and the collections to descend into, null for all
+	 * @param propertyNames	properties to retrieve, e.g. WebDAVPropertyProfile.MINIMAL.getPropertyNames(); null for all properties
+	 * @param handler	WebDAVResourceHandler
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public void walk(URI root, int depthLimit, WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException;
+
+	/**
+	 * Use WebDAV:PROPFIND to find the given properties of a single resource.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param propertyNames	Properties to request
+	 * @return WebDAVResource
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public WebDAVResourceType getResource(URI uri, DavPropertyNameSet propertyNames) throws IOException, DavException;
+
 	/**
 	 * Use HTTP:GET to get the content of a resource as a stream.
 	 * Is the resource is a collection, get the zipped content as a stream
@@ -72,6 +150,37 @@ public interface WebDAVClientAPI {
 	 * @throws DavException
 	 */
 	public WebDAVResourceStream getResourceStream(URI uri) throws IOException, DavException;
+
+	/**
+	 * Use HTTP:GET with a Range header to get part of the content of a resource as a stream.
+	 * The response is not decoded and not cached, so Content-Length, Content-Range and ETag of the
+	 * WebDAVResourceStream describe the bytes as they are stored on the server.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param range	value of the Range header, e.g. bytes=0-1023, or null for the complete resource
+	 * @param ifRange	value of the If-Range header, or null
+	 * @return WebDAVResourceStream with status 206 Partial Content, or 200 OK when the server ignored the range
+	 * 
+	 * @throws IOException
+	 * @throws DavException	416 if the range cannot be satisfied
+	 */
+	public WebDAVResourceStream getResourceStream(URI uri, String range, String ifRange) throws IOException, DavException;
+
+	/**
+	 * Download the content of a resource to a local file.
+	 * Large resources are fetched in parallel byte-range segments when the server supports Range requests,
+	 * otherwise with a single HTTP:GET. An existing file is replaced once the download is complete, 
+	 * and left unchanged when it fails.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param target	local file
+	 * @param options	segment size and parallelism
+	 * @return number of bytes written
+	 * 
+	 * @throws IOException
+	 * @throws DavException	412 if the resource changed during a segmented download
+	 */
+	public long downloadToFile(URI uri, Path target, WebDAVDownloadOptions options) throws IOException, DavException;
 	
 	/**
 	 * 
@@ -86,6 +195,22 @@ public interface WebDAVClientAPI {
 	public WebDAVResourceType putResource(URI uri, InputStream inputStream, long length, ContentType contentType) throws IOException, DavException;
 	public WebDAVResourceType putResource(URI uri, File file, ContentType contentType) throws IOException, DavException;
 
+	/**
+	 * Resumable upload of a large file. The file is uploaded in parts to a temporary location on the server
+	 * and moved to uri when all parts are complete. Completed parts are recorded in a local checkpoint file;
+	 * calling this method again for the same unchanged file and uri continues where the previous call stopped.
+	 * 
+	 * @param uri	Relative URI on WebDAV server
+	 * @param file	local file, must not change until the upload is complete
+	 * @param contentType
+	 * @param options	mode, part size, parallelism and checkpoint location
+	 * 
+	 * @return
+	 * @throws IOException
+	 * @throws DavException	501 if the server does not support partial PUT in Mode.CONTENT_RANGE
+	 */
+	public WebDAVResourceType putResource(URI uri, File file, ContentType contentType, WebDAVUploadOptions options) throws IOException, DavException;
+
 	/**
 	 * Use WebDAV:PROPPATCH with processes instructions specified in the request body to set and/or remove properties 
 	 * defined on the resource identified by the Request-URI.
@@ -128,11 +253,14 @@ public interface WebDAVClientAPI {
 	public WebDAVResourceType moveResource(URI sourceUri, URI targetUri) throws IOException, DavException;
 	
 	/**
-	 * Use WebDAV:LOCK to take out a lock of any access type and to refresh an existing lock. 
+	 * Use WebDAV:LOCK to take out an exclusive write lock, or to refresh the existing lock identified by lockToken. 
 	 * 
 	 * @param uri	Relative URI on WebDAV server
+	 * @param lockToken	token of the lock to refresh, null to take out a new lock
+	 * @param timeout	requested timeout in milliseconds
 	 * 
-	 * @return WebDAVResource
+	 * @return WebDAVWriteResource with the lock token and the timeout the server granted; 
+	 * 			its properties are read back into it when WebDAVClientConfig.isReadBack
 	 * 
 	 * @throws IOException
 	 * @throws DavException
@@ -150,4 +278,11 @@ public interface WebDAVClientAPI {
 	 * @throws DavException
 	 */
 	public WebDAVResourceType unlockResource(URI uri, String lockToken) throws IOException, DavException;
+
+	/**
+	 * Release the pooled connections of this client. The client can not be used afterwards.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
 }
@@ -0,0 +1,387 @@
+package nl.ellipsis.webdav.client;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * Tunable settings for a WebDAVClientImpl.
+ *
+ * A default instance gives the same behaviour as the plain WebDAVClientImpl constructor.
+ */
+public class WebDAVClientConfig {
+
+	public final static int DEFAULT_MAX_CONNECTIONS_TOTAL = 200;
+	public final static int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+	public final static long DEFAULT_CONNECTION_TIME_TO_LIVE = 300000L;
+	public final static long DEFAULT_MAX_IDLE_TIME = 60000L;
+	public final static int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+	public final static long DEFAULT_METADATA_CACHE_TIME_TO_LIVE = 30000L;
+	public final static long DEFAULT_METADATA_CACHE_NEGATIVE_TIME_TO_LIVE = 5000L;
+	public final static int DEFAULT_WALK_PARALLELISM = 8;
+	public final static int DEFAULT_COLLECTION_CACHE_SIZE = 1000;
+	public final static long DEFAULT_CONTENT_CACHE_MAX_SIZE = 256L * 1024 * 1024;
+	public final static int DEFAULT_ZIP_PREFETCH = 4;
+	public final static long DEFAULT_RETRY_BASE_DELAY = 100L;
+	public final static long DEFAULT_RETRY_MAX_DELAY = 5000L;
+	public final static long DEFAULT_CIRCUIT_BREAKER_OPEN_TIME = 30000L;
+	public final static int DEFAULT_HEDGE_MIN_SAMPLES = 100;
+
+	private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+	private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+	private long connectionTimeToLive = DEFAULT_CONNECTION_TIME_TO_LIVE;
+	private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+	private int validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+	private int connectTimeout = -1;
+	private int socketTimeout = -1;
+	private int connectionRequestTimeout = -1;
+	private boolean expectContinue = true;
+	private int metadataCacheSize = 0;
+	private long metadataCacheTimeToLive = DEFAULT_METADATA_CACHE_TIME_TO_LIVE;
+	private long metadataCacheNegativeTimeToLive = DEFAULT_METADATA_CACHE_NEGATIVE_TIME_TO_LIVE;
+	private int walkParallelism = DEFAULT_WALK_PARALLELISM;
+	private int collectionCacheSize = DEFAULT_COLLECTION_CACHE_SIZE;
+	private boolean readBack = true;
+	private Path contentCacheDirectory = null;
+	private long contentCacheMaxSize = DEFAULT_CONTENT_CACHE_MAX_SIZE;
+	private boolean contentCompression = true;
+	private boolean uploadCompression = false;
+	private int zipPrefetch = DEFAULT_ZIP_PREFETCH;
+	private int maxRetries = 0;
+	private long retryBaseDelay = DEFAULT_RETRY_BASE_DELAY;
+	private long retryMaxDelay = DEFAULT_RETRY_MAX_DELAY;
+	private int circuitBreakerThreshold = 0;
+	private long circuitBreakerOpenTime = DEFAULT_CIRCUIT_BREAKER_OPEN_TIME;
+	private double hedgePercentile = 0;
+	private int hedgeMinSamples = DEFAULT_HEDGE_MIN_SAMPLES;
+	private WebDAVMetrics metrics = WebDAVNoopMetrics.INSTANCE;
+	private Executor asyncExecutor = null;
+
+	/**
+	 * @return maximum number of pooled connections over all routes
+	 */
+	public int getMaxConnectionsTotal() {
+		return maxConnectionsTotal;
+	}
+
+	public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+		this.maxConnectionsTotal = maxConnectionsTotal;
+	}
+
+	/**
+	 * @return maximum number of pooled connections to a single host
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @return maximum lifetime of a pooled connection in milliseconds, &lt;= 0 for no limit
+	 */
+	public long getConnectionTimeToLive() {
+		return connectionTimeToLive;
+	}
+
+	public void setConnectionTimeToLive(long connectionTimeToLive) {
+		this.connectionTimeToLive = connectionTimeToLive;
+	}
+
+	/**
+	 * @return time in milliseconds after which an idle pooled connection is evicted, &lt;= 0 to keep idle connections
+	 */
+	public long getMaxIdleTime() {
+		return maxIdleTime;
+	}
+
+	public void setMaxIdleTime(long maxIdleTime) {
+		this.maxIdleTime = maxIdleTime;
+	}
+
+	/**
+	 * @return inactivity period in milliseconds after which a pooled connection is re-validated before it is leased
+	 */
+	public int getValidateAfterInactivity() {
+		return validateAfterInactivity;
+	}
+
+	public void setValidateAfterInactivity(int validateAfterInactivity) {
+		this.validateAfterInactivity = validateAfterInactivity;
+	}
+
+	/**
+	 * @return connect timeout in milliseconds, -1 for the system default
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return socket read timeout in milliseconds, -1 for the system default
+	 */
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	/**
+	 * @return timeout in milliseconds for leasing a connection from the pool, -1 to wait indefinitely
+	 */
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+		this.connectionRequestTimeout = connectionRequestTimeout;
+	}
+
+	/**
+	 * @return true to send uploads with Expect: 100-continue, so a 401 challenge or an error 
+	 * is received before the request body is transmitted
+	 */
+	public boolean isExpectContinue() {
+		return expectContinue;
+	}
+
+	public void setExpectContinue(boolean expectContinue) {
+		this.expectContinue = expectContinue;
+	}
+
+	/**
+	 * @return maximum number of entries in the PROPFIND metadata cache, 0 disables the cache
+	 */
+	public int getMetadataCacheSize() {
+		return metadataCacheSize;
+	}
+
+	public void setMetadataCacheSize(int metadataCacheSize) {
+		this.metadataCacheSize = metadataCacheSize;
+	}
+
+	/**
+	 * @return time in milliseconds cached metadata is used before it is revalidated
+	 */
+	public long getMetadataCacheTimeToLive() {
+		return metadataCacheTimeToLive;
+	}
+
+	public void setMetadataCacheTimeToLive(long metadataCacheTimeToLive) {
+		this.metadataCacheTimeToLive = metadataCacheTimeToLive;
+	}
+
+	/**
+	 * @return time in milliseconds a 404 Not Found is cached, 0 disables negative caching
+	 */
+	public long getMetadataCacheNegativeTimeToLive() {
+		return metadataCacheNegativeTimeToLive;
+	}
+
+	public void setMetadataCacheNegativeTimeToLive(long metadataCacheNegativeTimeToLive) {
+		this.metadataCacheNegativeTimeToLive = metadataCacheNegativeTimeToLive;
+	}
+
+	/**
+	 * @return maximum number of Depth: 1 PROPFIND requests of a tree walk that run at the same time
+	 */
+	public int getWalkParallelism() {
+		return walkParallelism;
+	}
+
+	public void setWalkParallelism(int walkParallelism) {
+		this.walkParallelism = walkParallelism;
+	}
+
+	/**
+	 * @return maximum number of collections createCollection remembers as existing, 0 disables the cache
+	 */
+	public int getCollectionCacheSize() {
+		return collectionCacheSize;
+	}
+
+	public void setCollectionCacheSize(int collectionCacheSize) {
+		this.collectionCacheSize = collectionCacheSize;
+	}
+
+	/**
+	 * @return true to PROPFIND the resource after every write; false to return a WebDAVWriteResource 
+	 * built from the write response, and to delete without a PROPFIND beforehand
+	 */
+	public boolean isReadBack() {
+		return readBack;
+	}
+
+	public void setReadBack(boolean readBack) {
+		this.readBack = readBack;
+	}
+
+	/**
+	 * @return directory of the on-disk cache for getResourceStream, null disables the cache
+	 */
+	public Path getContentCacheDirectory() {
+		return contentCacheDirectory;
+	}
+
+	public void setContentCacheDirectory(Path contentCacheDirectory) {
+		this.contentCacheDirectory = contentCacheDirectory;
+	}
+
+	/**
+	 * @return maximum total size in bytes of the response bodies in the content cache
+	 */
+	public long getContentCacheMaxSize() {
+		return contentCacheMaxSize;
+	}
+
+	public void setContentCacheMaxSize(long contentCacheMaxSize) {
+		this.contentCacheMaxSize = contentCacheMaxSize;
+	}
+
+	/**
+	 * @return true to send Accept-Encoding: gzip, deflate with PROPFIND and GET requests, and decode the response transparently
+	 */
+	public boolean isContentCompression() {
+		return contentCompression;
+	}
+
+	public void setContentCompression(boolean contentCompression) {
+		this.contentCompression = contentCompression;
+	}
+
+	/**
+	 * @return true to upload files with a text, XML or JSON content type gzip compressed, with Content-Encoding: gzip.
+	 * The first compressed upload is verified; when the server rejects it or stores the compressed bytes, 
+	 * the file is uploaded again uncompressed and compression is not used any more.
+	 */
+	public boolean isUploadCompression() {
+		return uploadCompression;
+	}
+
+	public void setUploadCompression(boolean uploadCompression) {
+		this.uploadCompression = uploadCompression;
+	}
+
+	/**
+	 * @return number of member downloads started ahead while getResourceStream zips a collection
+	 */
+	public int getZipPrefetch() {
+		return zipPrefetch;
+	}
+
+	public void setZipPrefetch(int zipPrefetch) {
+		this.zipPrefetch = zipPrefetch;
+	}
+
+	/**
+	 * @return number of times a GET, HEAD or PROPFIND request is sent again after an I/O error or a 
+	 * 429, 502, 503 or 504 response, 0 disables retries
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @return delay in milliseconds before the first retry; it doubles with every retry, and a random
+	 * part of it is used so clients that failed at the same time do not retry at the same time
+	 */
+	public long getRetryBaseDelay() {
+		return retryBaseDelay;
+	}
+
+	public void setRetryBaseDelay(long retryBaseDelay) {
+		this.retryBaseDelay = retryBaseDelay;
+	}
+
+	/**
+	 * @return upper bound in milliseconds of the delay between retries, also for a Retry-After header of the server
+	 */
+	public long getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+
+	public void setRetryMaxDelay(long retryMaxDelay) {
+		this.retryMaxDelay = retryMaxDelay;
+	}
+
+	/**
+	 * @return number of consecutive I/O errors or 502, 503 and 504 responses of a host after which its 
+	 * requests are refused with 503 without being sent, 0 disables the circuit breaker
+	 */
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+		this.circuitBreakerThreshold = circuitBreakerThreshold;
+	}
+
+	/**
+	 * @return milliseconds an open circuit breaker refuses requests, before a single trial request decides
+	 * whether it closes again
+	 */
+	public long getCircuitBreakerOpenTime() {
+		return circuitBreakerOpenTime;
+	}
+
+	public void setCircuitBreakerOpenTime(long circuitBreakerOpenTime) {
+		this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+	}
+
+	/**
+	 * @return latency percentile, e.g. 95, after which a second copy of a GET, HEAD or PROPFIND request is
+	 * sent and the first answer is used, 0 disables hedged requests
+	 */
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * @return number of requests of a method that must have been timed before its requests are hedged
+	 */
+	public int getHedgeMinSamples() {
+		return hedgeMinSamples;
+	}
+
+	public void setHedgeMinSamples(int hedgeMinSamples) {
+		this.hedgeMinSamples = hedgeMinSamples;
+	}
+
+	/**
+	 * @return receiver of request timings, status codes, bytes transferred and retries; WebDAVNoopMetrics by default
+	 */
+	public WebDAVMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(WebDAVMetrics metrics) {
+		this.metrics = (metrics != null ? metrics : WebDAVNoopMetrics.INSTANCE);
+	}
+
+	/**
+	 * @return executor on which WebDAVAsyncClientImpl parses multistatus responses and reads upload streams,
+	 * so the I/O dispatcher threads never block; null lets the client start its own threads, stopped by close
+	 */
+	public Executor getAsyncExecutor() {
+		return asyncExecutor;
+	}
+
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+}
@@ -1,45 +1,54 @@
 package nl.ellipsis.webdav.client;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
-import org.apache.http.conn.HttpClientConnectionManager;
-import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.io.ChunkedInputStream;
-import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavException;
-import org.apache.jackrabbit.webdav.MultiStatus;
 import org.apache.jackrabbit.webdav.MultiStatusResponse;
-import org.apache.jackrabbit.webdav.client.methods.BaseDavRequest;
 import org.apache.jackrabbit.webdav.client.methods.HttpCopy;
 import org.apache.jackrabbit.webdav.client.methods.HttpDelete;
 import org.apache.jackrabbit.webdav.client.methods.HttpLock;
@@ -48,8 +57,13 @@ import org.apache.jackrabbit.webdav.client.methods.HttpMove;
 import org.apache.jackrabbit.webdav.client.methods.HttpPropfind;
 import org.apache.jackrabbit.webdav.client.methods.HttpProppatch;
 import org.apache.jackrabbit.webdav.client.methods.HttpUnlock;
-import org.apache.jackrabbit.webdav.property.DavProperty;
-import org.apache.jackrabbit.webdav.property.DavPropertyIterator;
+import org.apache.jackrabbit.webdav.lock.ActiveLock;
+import org.apache.jackrabbit.webdav.lock.LockInfo;
+import org.apache.jackrabbit.webdav.lock.Scope;
+import org.apache.jackrabbit.webdav.lock.Type;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameIterator;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
 import org.apache.jackrabbit.webdav.property.DavPropertySet;
 import org.apache.jackrabbit.webdav.property.DefaultDavProperty;
 import org.apache.jackrabbit.webdav.xml.Namespace;
@@ -58,18 +72,31 @@ import org.apache.log4j.Logger;
 import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
 import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
 import nl.ellipsis.webdav.rest.PfxDocumentConstants;
-import nl.ellipsis.webdav.rest.PfxDocumentConstants.DavStatusCode;
 
 public class WebDAVClientImpl implements WebDAVClientAPI {
 
 	protected static Logger logger = Logger.getLogger(WebDAVClientImpl.class); // Ellipsis
 
-	private final static int MAX_HOST_CONNECTIONS = 200;
+	final static Comparator<WebDAVResourceType> DISPLAYNAME_COMPARATOR = new Comparator<WebDAVResourceType>() {
+        public int compare(WebDAVResourceType lhs, WebDAVResourceType rhs) {
+            return lhs.getDisplayName().compareToIgnoreCase(rhs.getDisplayName());
+        }
+    };
 
-	// private HttpClient client;
-	private String user;
-	private String password;
-	private URI serverUri;
+	private final URI serverUri;
+	private final WebDAVResourceMapper mapper;
+	private final WebDAVClientConfig config;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient client;
+	private final RequestConfig uploadRequestConfig;
+	private final WebDAVMetadataCache metadataCache;
+	private final WebDAVWalker walker;
+	private final WebDAVCollectionCache collectionCache;
+	private final WebDAVContentCache contentCache;
+	private final WebDAVMetrics metrics;
+	private final WebDAVResilience resilience;
+	// null until the first compressed upload has been verified
+	private volatile Boolean uploadCompressionSupported;
 
 	/**
 	 * Constructor
@@ -79,30 +106,89 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	 * @throws Exception 
 	 */
 	public WebDAVClientImpl(String user, String password, URI serverUri) throws DavException {
+		this(user,password,serverUri,new WebDAVClientConfig());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * The client keeps one pool of keep-alive connections to the server for its whole lifetime;
+	 * call {@link #close()} to release it.
+	 * 
+	 * @param user
+	 * @param password
+	 * @param serverUri
+	 * @param config	connection pool and timeout settings
+	 * @throws DavException 
+	 */
+	public WebDAVClientImpl(String user, String password, URI serverUri, WebDAVClientConfig config) throws DavException {
 		if(serverUri==null) {
 			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"serverUri is mandatory");
 		}
-		this.user = user;
-		this.password = password;
+		if(config==null) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"config is mandatory");
+		}
 		this.serverUri = serverUri;
+		this.mapper = new WebDAVResourceMapper(serverUri);
+		this.config = config;
+		this.metrics = config.getMetrics();
+		this.connectionManager = createConnectionManager(config);
+		this.metrics.bindConnectionPool(connectionManager);
+		RequestConfig requestConfig = createRequestConfig(config);
+		this.client = createHttpClient(user,password,serverUri,config,requestConfig,connectionManager);
+		// with Expect: 100-continue an authentication challenge is answered before the body has been sent
+		this.uploadRequestConfig = RequestConfig.copy(requestConfig).setExpectContinueEnabled(config.isExpectContinue()).build();
+		this.metadataCache = (config.getMetadataCacheSize() > 0 ? new WebDAVMetadataCache(config.getMetadataCacheSize(),config.getMetadataCacheTimeToLive(),config.getMetadataCacheNegativeTimeToLive()) : null);
+		this.walker = new WebDAVWalker(this, config.getWalkParallelism());
+		this.resilience = WebDAVResilience.create(this, config);
+		this.collectionCache = (config.getCollectionCacheSize() > 0 ? new WebDAVCollectionCache(config.getCollectionCacheSize()) : null);
+		try {
+			this.contentCache = (config.getContentCacheDirectory() != null ? new WebDAVContentCache(config.getContentCacheDirectory(),config.getContentCacheMaxSize()) : null);
+		} catch (IOException e) {
+			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+		}
+	}
+
+	public void close() throws IOException {
+		if(resilience != null) {
+			resilience.shutdown();
+		}
+		// also stops the idle connection evictor
+		client.close();
+	}
+
+	/**
+	 * @return leased, available and pending connections of the shared connection pool
+	 */
+	public PoolStats getConnectionPoolStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * @return the metadata cache with its hit and miss counters, or null when caching is disabled
+	 */
+	public WebDAVMetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+
+	/**
+	 * @return the on-disk cache of getResourceStream, or null when it is disabled
+	 */
+	public WebDAVContentCache getContentCache() {
+		return contentCache;
 	}
 	
 	public WebDAVResourceType copyResource(URI sourceUri, URI targetUri, boolean overwrite, boolean shallow) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(sourceUri!=null && targetUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,sourceUri);
+			// continue with copy
+			HttpCopy httpMethod = new HttpCopy(getAbsoluteURI(sourceUri).toString(),getAbsoluteURI(targetUri).toString(),overwrite,shallow);
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidateTree(targetUri);
 			try {
-				// continue with copy
-				HttpCopy httpMethod = new HttpCopy(getAbsoluteURI(sourceUri).toString(),getAbsoluteURI(targetUri).toString(),overwrite,shallow);
-				CloseableHttpResponse response = client.execute(httpMethod);
-				try {
-					// get resource, error is thrown if it doesn't exist
-					resource = getResourceProperties(client,targetUri);
-				} finally {
-					response.close();
-				}
+				resource = getWrittenResource(targetUri,httpMethod,response,null);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
 		return resource;
@@ -111,19 +197,15 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public WebDAVResourceType moveResource(URI sourceUri, URI targetUri) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(sourceUri!=null && targetUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,sourceUri);
+			// continue with move
+			HttpMove httpMethod = new HttpMove(getAbsoluteURI(sourceUri).toString(),getAbsoluteURI(targetUri).toString(),true);
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidateTree(sourceUri);
+			invalidateTree(targetUri);
 			try {
-				// continue with move
-				HttpMove httpMethod = new HttpMove(getAbsoluteURI(sourceUri).toString(),getAbsoluteURI(targetUri).toString(),true);
-				CloseableHttpResponse response = client.execute(httpMethod);
-				try {
-					// get resource, error is thrown if it doesn't exist
-					resource = getResourceProperties(client,targetUri);
-				} finally {
-					response.close();
-				}
+				resource = getWrittenResource(targetUri,httpMethod,response,null);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
 		return resource;
@@ -133,24 +215,31 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public WebDAVResourceType createCollection(URI relativeUri) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
-			try {
-				// let's just walk to the ancestors uri's
-				String[] parts = relativeUri.toString().split(PfxDocumentConstants.URI_SEPARATOR);
-				String ancestorUri = "";
-				for(int i=0; i<parts.length; i++) {
-					String part = parts[i];
-					if(!StringUtils.isEmpty(part)) {
-						ancestorUri = ancestorUri + PfxDocumentConstants.URI_SEPARATOR + part;
-						try {
-							resource = getCollection(client,new URI(ancestorUri),true);
-						} catch (URISyntaxException e) {
-							throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
-						}
-					}
+			String path = WebDAVMetadataCache.normalize(relativeUri.toString());
+			// MKCOL the deepest collection first; its ancestors are only created when the server answers 409 Conflict
+			Deque<String> missing = new ArrayDeque<String>();
+			String current = path;
+			while(current != null && !isKnownCollection(current)) {
+				int status = mkcol(current);
+				if(status != HttpStatus.SC_CONFLICT) {
+					break;
 				}
-			} finally {
-				client.close();
+				missing.push(current);
+				current = WebDAVMetadataCache.getParentPath(current);
+			}
+			if(current == null && !missing.isEmpty()) {
+				throw new DavException(HttpStatus.SC_CONFLICT, "collection " + relativeUri + " cannot be created");
+			}
+			while(!missing.isEmpty()) {
+				current = missing.pop();
+				if(mkcol(current) == HttpStatus.SC_CONFLICT) {
+					throw new DavException(HttpStatus.SC_CONFLICT, "collection " + current + " cannot be created");
+				}
+			}
+			// error is thrown if it doesn't exist
+			resource = getResource(relativeUri);
+			if(collectionCache != null && resource.isCollection()) {
+				collectionCache.add(path);
 			}
 		}
 		return resource;
@@ -159,16 +248,21 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public WebDAVResourceType deleteResource(URI relativeUri) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
-			try {
+			if(config.isReadBack()) {
 				// get resource, error is thrown if it doesn't exist
-				resource = getResourceProperties(client,relativeUri);
-				// continue with deletion
-				HttpDelete httpMethod = new HttpDelete(getAbsoluteURI(relativeUri).toString());
-				CloseableHttpResponse response = client.execute(httpMethod);
-				response.close();
+				resource = getResourceProperties(relativeUri);
+			}
+			// continue with deletion
+			HttpDelete httpMethod = new HttpDelete(getAbsoluteURI(relativeUri).toString());
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidateTree(relativeUri);
+			try {
+				checkWriteStatus(relativeUri,httpMethod,response);
+				if(resource == null) {
+					resource = createWriteResource(relativeUri,httpMethod,response,null);
+				}
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
 		return resource;
@@ -185,31 +279,73 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public List<WebDAVResourceType> getChildResources(URI relativeUri) throws IOException, DavException  {
 		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
 		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
-			try {
-				resources = getCollectionProperties(client,relativeUri,DavConstants.DEPTH_1);
-			} finally {
-				client.close();
-			}
+			resources = (metadataCache != null ? getCachedChildResources(relativeUri,null) : getCollectionProperties(relativeUri,DavConstants.DEPTH_1,null));
+		}
+		return resources;
+	}
+
+	/**
+	 * Folder-like listing that only requests the given properties instead of allprop
+	 * 
+	 * @param propertyNames	e.g. WebDAVPropertyProfile.MINIMAL.getPropertyNames()
+	 * @throws DavException 
+	 * @throws IOException 
+	 */
+	public List<WebDAVResourceType> getChildResources(URI relativeUri, DavPropertyNameSet propertyNames) throws IOException, DavException  {
+		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
+		if(relativeUri!=null) {
+			resources = (metadataCache != null ? getCachedChildResources(relativeUri,propertyNames) : getCollectionProperties(relativeUri,DavConstants.DEPTH_1,propertyNames));
 		}
 		return resources;
 	}
 
+	/**
+	 * Streaming variant of getChildResources: resources are handed to the handler while the
+	 * PROPFIND response is being read, so memory use does not depend on the size of the collection.
+	 * Resources are passed in server order.
+	 * 
+	 * @throws DavException 
+	 * @throws IOException 
+	 */
+	public void getChildResources(URI relativeUri, WebDAVResourceHandler handler) throws IOException, DavException  {
+		getChildResources(relativeUri,null,handler);
+	}
+
+	public void getChildResources(URI relativeUri, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException  {
+		if(relativeUri!=null && handler!=null) {
+			getCollectionProperties(relativeUri,DavConstants.DEPTH_1,propertyNames,handler);
+		}
+	}
+
+	public void walk(URI root, int depthLimit, WebDAVResourceFilter filter, WebDAVResourceHandler handler) throws IOException, DavException {
+		walk(root, depthLimit, filter, null, handler);
+	}
+
+	public void walk(URI root, int depthLimit, WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException {
+		if(root!=null) {
+			walker.walk(root, depthLimit, filter, propertyNames, handler);
+		}
+	}
+
 	public WebDAVResourceType getResource(URI relativeUri) throws IOException, DavException  {
 		WebDAVResourceType resource = null;
 		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
-			try {
-				resource = getResourceProperties(client,relativeUri);
-			} finally {
-				client.close();
-			}
+			resource = (metadataCache != null ? getCachedResourceProperties(relativeUri,null) : getResourceProperties(relativeUri));
+		}
+		return resource;
+	}
+
+	public WebDAVResourceType getResource(URI relativeUri, DavPropertyNameSet propertyNames) throws IOException, DavException  {
+		WebDAVResourceType resource = null;
+		if(relativeUri!=null) {
+			resource = (metadataCache != null ? getCachedResourceProperties(relativeUri,propertyNames) : getResourceProperties(relativeUri,propertyNames));
 		}
 		return resource;
 	}
 
 	/**
-	 * A method to retrieve a WebDAV resource
+	 * A method to retrieve a WebDAV resource; a collection is returned as a ZIP archive that is
+	 * produced while it is being read, see WebDAVZipStreamer
 	 * 
 	 * @param uri
 	 * 
@@ -217,51 +353,177 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	 * @throws Exception 
 	 */
 	public WebDAVResourceStream getResourceStream(URI relativeUri) throws IOException, DavException {
+		if(relativeUri.getPath() != null && relativeUri.getPath().endsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+			return new WebDAVZipStreamer(this, mapper, relativeUri, config.getZipPrefetch()).open();
+		}
 		WebDAVResourceStream resourceStream = null;
-		CloseableHttpClient client = getHttpClient(user,password,relativeUri);
 		HttpGet httpMethod = new HttpGet(getAbsoluteURI(relativeUri).toString());
-		CloseableHttpResponse response = client.execute(httpMethod);
-		if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+		WebDAVContentCache.Entry cached = (contentCache != null ? contentCache.get(relativeUri.toString()) : null);
+		if(cached != null) {
+			if(cached.getEtag() != null) {
+				httpMethod.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+			}
+			if(cached.getLastModified() != null) {
+				httpMethod.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+			}
+		}
+		CloseableHttpResponse response = execute(httpMethod);
+		int status = response.getStatusLine().getStatusCode();
+		if (status == HttpStatus.SC_OK) {
 			HttpEntity entity = response.getEntity();
 			InputStream stream = entity.getContent();
-			resourceStream = new WebDAVResourceStream(relativeUri,client,httpMethod,stream);
+			if(contentCache != null) {
+				stream = contentCache.store(relativeUri.toString(), getHeaderValue(response,HttpHeaders.ETAG), getHeaderValue(response,HttpHeaders.LAST_MODIFIED), 
+						getHeaderValue(response,HttpHeaders.CONTENT_TYPE), entity.getContentLength(), stream);
+			}
+			resourceStream = new WebDAVResourceStream(relativeUri,response,httpMethod,stream);
+		} else {
+			// hand the connection back to the pool
+			release(response);
+			if(status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+				InputStream stream = contentCache.open(cached);
+				if(stream != null) {
+					resourceStream = new WebDAVResourceStream(relativeUri,stream);
+				} else {
+					// evicted between the lookup and the 304, download once more
+					return getResourceStream(relativeUri);
+				}
+			} else if(status == HttpStatus.SC_NOT_FOUND && contentCache != null) {
+				contentCache.remove(relativeUri.toString());
+			} else if((status == HttpStatus.SC_FORBIDDEN || status == HttpStatus.SC_METHOD_NOT_ALLOWED) 
+					&& getResource(relativeUri, WebDAVPropertyProfile.MINIMAL.getPropertyNames()).isCollection()) {
+				// servers without a listing for GET on a collection
+				resourceStream = new WebDAVZipStreamer(this, mapper, relativeUri, config.getZipPrefetch()).open();
+			}
+		}
+		return resourceStream;
+	}
+
+	public WebDAVResourceStream getResourceStream(URI relativeUri, String range, String ifRange) throws IOException, DavException {
+		if(range == null) {
+			return getResourceStream(relativeUri);
+		}
+		WebDAVResourceStream resourceStream = null;
+		HttpGet httpMethod = new HttpGet(getAbsoluteURI(relativeUri).toString());
+		httpMethod.setHeader(HttpHeaders.RANGE, range);
+		if(ifRange != null) {
+			httpMethod.setHeader(HttpHeaders.IF_RANGE, ifRange);
+		}
+		// byte ranges refer to the stored representation, so it must not be compressed on the way
+		httpMethod.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+		CloseableHttpResponse response = execute(httpMethod);
+		int status = response.getStatusLine().getStatusCode();
+		if (status == HttpStatus.SC_OK || status == HttpStatus.SC_PARTIAL_CONTENT) {
+			resourceStream = new WebDAVResourceStream(relativeUri,response,httpMethod,response.getEntity().getContent());
+		} else {
+			release(response);
+			if(status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+				throw new DavException(status, "Range " + range + " not satisfiable for " + relativeUri);
+			}
 		}
 		return resourceStream;
 	}
 
+	public long downloadToFile(URI relativeUri, Path target, WebDAVDownloadOptions options) throws IOException, DavException {
+		return new WebDAVDownloader(this).download(relativeUri, target, (options != null ? options : new WebDAVDownloadOptions()));
+	}
+
 	public WebDAVResourceType lockResource(URI uri, String lockToken, int timeout) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(uri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,uri);
+			// a new exclusive write lock without a token, a refresh of the lock with the token otherwise
+			HttpLock httpMethod = (lockToken == null 
+					? new HttpLock(getAbsoluteURI(uri).toString(),new LockInfo(Scope.EXCLUSIVE,Type.WRITE,null,timeout,false))
+					: new HttpLock(getAbsoluteURI(uri).toString(),timeout,new String[]{lockToken}));
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidate(uri);
 			try {
-				// continue with move
-				HttpLock httpMethod = new HttpLock(getAbsoluteURI(uri).toString(),timeout,new String[]{lockToken});
-				CloseableHttpResponse response = client.execute(httpMethod);
-				try {
+				checkWriteStatus(uri,httpMethod,response);
+				String token = getLockToken(response, lockToken);
+				ActiveLock activeLock = getActiveLock(httpMethod, response, token);
+				if(token == null && activeLock != null) {
+					token = activeLock.getToken();
+				}
+				WebDAVWriteResource written = createWriteResource(uri,httpMethod,response,token);
+				written.setLockTimeout(getGrantedTimeout(response, activeLock));
+				if(config.isReadBack()) {
 					// get resource, error is thrown if it doesn't exist
-					resource = getResourceProperties(client,uri);
-				} finally {
-					response.close();
+					written.readBack();
 				}
+				resource = written;
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
 		return resource;
 	}
 
+	/**
+	 * @return the token in the Lock-Token header of a LOCK response, lockToken when the response has none (a refresh)
+	 */
+	static String getLockToken(HttpResponse response, String lockToken) {
+		// Lock-Token: <opaquelocktoken:...>
+		Header header = response.getFirstHeader(DavConstants.HEADER_LOCK_TOKEN);
+		return (header != null ? StringUtils.strip(header.getValue(), "<>") : lockToken);
+	}
+
+	/**
+	 * @return the lock with token in the lockdiscovery of a LOCK response, the only lock when token is null, 
+	 * 			or null when the response has no (parsable) lockdiscovery
+	 */
+	static ActiveLock getActiveLock(HttpLock request, HttpResponse response, String token) {
+		if(response.getEntity() == null) {
+			return null;
+		}
+		try {
+			List<ActiveLock> activeLocks = request.getResponseBodyAsLockDiscovery(response).getValue();
+			for(ActiveLock activeLock : activeLocks) {
+				if(token == null ? activeLocks.size() == 1 : activeLock.isLockedByToken(token)) {
+					return activeLock;
+				}
+			}
+		} catch(DavException | RuntimeException e) {
+			logger.debug("LOCK response without lockdiscovery", e);
+		}
+		return null;
+	}
+
+	/**
+	 * The server may grant a shorter timeout than requested, it is sent in the lockdiscovery of the 
+	 * response (&lt;D:timeout&gt;Second-300&lt;/D:timeout&gt;) or in a Timeout header
+	 * 
+	 * @return timeout in milliseconds, DavConstants.INFINITE_TIMEOUT, or DavConstants.UNDEFINED_TIMEOUT when the response has none
+	 */
+	static long getGrantedTimeout(HttpResponse response, ActiveLock activeLock) {
+		long timeout = (activeLock != null ? activeLock.getTimeout() : DavConstants.UNDEFINED_TIMEOUT);
+		Header header = response.getFirstHeader(DavConstants.HEADER_TIMEOUT);
+		if(timeout == DavConstants.UNDEFINED_TIMEOUT && header != null) {
+			// Timeout: Second-300 or Infinite
+			String value = header.getValue().split(",")[0].trim();
+			if(value.equalsIgnoreCase(DavConstants.TIMEOUT_INFINITE)) {
+				timeout = DavConstants.INFINITE_TIMEOUT;
+			} else if(value.regionMatches(true, 0, "Second-", 0, 7)) {
+				try {
+					timeout = TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(7)));
+				} catch(NumberFormatException e) {
+					logger.debug("invalid Timeout header " + value);
+				}
+			}
+		}
+		return timeout;
+	}
+
 
 	public WebDAVResourceType setProperties(URI relativeUri, Map<String,Object> propertyMap) throws IOException, DavException  {
 		WebDAVResourceType resource = null;
 		if(relativeUri!=null && propertyMap!=null &&!propertyMap.isEmpty()) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
+			HttpProppatch httpMethod = new HttpProppatch(getAbsoluteURI(relativeUri).toString(),getWebDAVPropertyList(propertyMap));
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidate(relativeUri);
 			try {
-				HttpProppatch httpMethod = new HttpProppatch(getAbsoluteURI(relativeUri).toString(),getWebDAVPropertyList(propertyMap));
-				CloseableHttpResponse response = client.execute(httpMethod);
-				response.close();
-				resource = getResourceProperties(client,relativeUri);
+				resource = getWrittenResource(relativeUri,httpMethod,response,null);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
     	return resource;
@@ -273,49 +535,53 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public WebDAVResourceType putResource(URI relativeUri, InputStream inputStream, long length, ContentType contentType) throws IOException, DavException  {
 		WebDAVResourceType resource = null;
 		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
+			HttpPut httpMethod = new HttpPut(getAbsoluteURI(relativeUri).toString());
+			httpMethod.setConfig(uploadRequestConfig);
+			InputStreamEntity entity = new InputStreamEntity(inputStream, length, contentType);
+			// send Content-Length when it is known
+			entity.setChunked(length < 0);
+			httpMethod.setEntity(entity);
+			
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidate(relativeUri);
 			try {
-				HttpPut httpMethod = new HttpPut(getAbsoluteURI(relativeUri).toString());
-				InputStreamEntity entity = new InputStreamEntity(inputStream, length, contentType);
-				entity.setChunked(true);
-				httpMethod.setEntity(entity);
-				
-				CloseableHttpResponse response = client.execute(httpMethod);
-				response.close();
-				resource = getResourceProperties(client,relativeUri);
+				resource = getWrittenResource(relativeUri,httpMethod,response,null);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
     	return resource;
 	}
 
+	public WebDAVResourceType putResource(URI relativeUri, File file, ContentType contentType, WebDAVUploadOptions options) throws IOException, DavException  {
+		WebDAVResourceType resource = null;
+		if(relativeUri!=null) {
+			resource = new WebDAVUploader(this).upload(relativeUri, file, contentType, (options != null ? options : new WebDAVUploadOptions()));
+		}
+		return resource;
+	}
+
 	/**
-	 * FileEntity is repeatable
+	 * FileChannelEntity is repeatable and streams the file from disk, 
+	 * so the file is never held in memory, not even when the request is resent
 	 * 
 	 */
 	public WebDAVResourceType putResource(URI relativeUri, File file, ContentType contentType) throws IOException, DavException  {
 		WebDAVResourceType resource = null;
-		if(relativeUri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,relativeUri);
+		if(relativeUri!=null && isCompressedUpload(file, contentType)) {
+			resource = putCompressedResource(relativeUri, file, contentType);
+		}
+		if(relativeUri!=null && resource==null) {
+			HttpPut httpMethod = new HttpPut(getAbsoluteURI(relativeUri).toString());
+			httpMethod.setConfig(uploadRequestConfig);
+			httpMethod.setEntity(new FileChannelEntity(file, contentType));
+			
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidate(relativeUri);
 			try {
-				HttpPut httpMethod = new HttpPut(getAbsoluteURI(relativeUri).toString());
-				
-				// RequestEntity requestEntity = new InputStreamRequestEntity(inputStream, contentType); 
-				FileEntity requestEntity = new FileEntity(file, contentType); 
-				BufferedHttpEntity bhe = new BufferedHttpEntity(requestEntity); 
-				httpMethod.setEntity(bhe);
-				
-/*				ByteArrayInputStream buffer = new ByteArrayInputStream(FileUtils.readFileToByteArray(file));
-				InputStreamEntity i = new InputStreamEntity(buffer, buffer.available());
-				BufferedHttpEntity entity = new BufferedHttpEntity(i);
-				httpMethod.setEntity(entity);*/
-				
-				CloseableHttpResponse response = client.execute(httpMethod);
-				response.close();
-				resource = getResourceProperties(client,relativeUri);
+				resource = getWrittenResource(relativeUri,httpMethod,response,null);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
     	return resource;
@@ -324,106 +590,158 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	public WebDAVResourceType unlockResource(URI uri, String lockToken) throws IOException, DavException {
 		WebDAVResourceType resource = null;
 		if(uri!=null) {
-			CloseableHttpClient client = getHttpClient(user,password,uri);
+			// continue with move
+			HttpUnlock httpMethod = new HttpUnlock(getAbsoluteURI(uri).toString(),lockToken);
+			CloseableHttpResponse response = execute(httpMethod);
+			invalidate(uri);
 			try {
-				// continue with move
-				HttpUnlock httpMethod = new HttpUnlock(getAbsoluteURI(uri).toString(),lockToken);
-				CloseableHttpResponse response = client.execute(httpMethod);
-				try {
-					// get resource, error is thrown if it doesn't exist
-					resource = getResourceProperties(client,uri);
-				} finally {
-					response.close();
-				}
+				resource = getWrittenResource(uri,httpMethod,response,lockToken);
 			} finally {
-				client.close();
+				release(response);
 			}
 		}
 		return resource;
 	}
 
+	private boolean assertResourcePathEquals(URI relativeUri, String resourcePath) throws DavException {
+		return mapper.assertResourcePathEquals(relativeUri, resourcePath);
+	}
+
+	URI getAbsoluteURI(URI relativeUri) throws DavException {
+		return mapper.getAbsoluteURI(relativeUri);
+	}
+
 	/**
+	 * The resource after a write: read back with a PROPFIND, or built from the write response when read-back is disabled
 	 * 
-	 * @param relativeUri	path relative to mountpoint of server
-	 * @param resourcePath	relative path = absolute path minus domain 
-	 * @return				true when equals
-	 * @throws DavException
+	 * @throws DavException	when the write failed, in both modes
 	 */
-	private boolean assertResourcePathEquals(URI relativeUri, String resourcePath) throws DavException {
-		URI refResourcePath = getResourcePath(relativeUri);
-		return refResourcePath.toString().equals(resourcePath);
+	private WebDAVResourceType getWrittenResource(URI relativeUri, HttpUriRequest request, HttpResponse response, String lockToken) throws IOException, DavException {
+		checkWriteStatus(relativeUri, request, response);
+		if(config.isReadBack()) {
+			// get resource, error is thrown if it doesn't exist
+			return getResourceProperties(relativeUri);
+		}
+		return createWriteResource(relativeUri, request, response, lockToken);
 	}
 
 	/**
-	 * Return full uri for resourcePath (which is the path-part of the full uri)
+	 * A read-back after a failed write would return the unchanged (or deleted) resource, so the status
+	 * of every write is checked first
 	 * 
-	 * @param resourcePath	
-	 * @return uri
-	 * @throws DavException
+	 * @throws DavException	with the status of the write response when it is not 2xx
 	 */
-	private URI getAbsoluteURI(String resourcePath) throws DavException {
-		if(resourcePath!=null) {
-			int p = serverUri.getPath().length();
-			int eindIndex = serverUri.toString().length() - p;
-			try {
-				return new URI(serverUri.toString().substring(0, eindIndex)+resourcePath);
-			} catch (URISyntaxException e) {
-				throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
-			}
+	private static void checkWriteStatus(URI relativeUri, HttpUriRequest request, HttpResponse response) throws DavException {
+		int status = response.getStatusLine().getStatusCode();
+		if(status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+			throw new DavException(status, request.getMethod() + " " + relativeUri + " failed: " + response.getStatusLine().getReasonPhrase());
 		}
-		return null;
+	}
+
+	private WebDAVWriteResource createWriteResource(URI relativeUri, HttpUriRequest request, HttpResponse response, String lockToken) throws DavException {
+		int status = response.getStatusLine().getStatusCode();
+		Header location = response.getFirstHeader(HttpHeaders.LOCATION);
+		WebDAVWriteResource resource = new WebDAVWriteResource(this, relativeUri, request.getMethod(), status, (location != null ? location.getValue() : null), lockToken);
+		String href = mapper.getResourcePath(relativeUri).toString();
+		resource.setHref(href);
+		resource.setUri(getAbsoluteURI(relativeUri).toString());
+		resource.setDisplayName(getFilename(href));
+		Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+		if(etag != null) {
+			WebDAVPropertyType property = new WebDAVPropertyType();
+			property.setName(DavConstants.PROPERTY_GETETAG);
+			property.setValue(etag.getValue());
+			resource.getProperties().add(property);
+		}
+		return resource;
+	}
+
+	private boolean isCompressedUpload(File file, ContentType contentType) {
+		return config.isUploadCompression() && !Boolean.FALSE.equals(uploadCompressionSupported) 
+				&& file.length() >= WebDAVCompression.MIN_COMPRESSED_UPLOAD_SIZE && WebDAVCompression.isCompressible(contentType);
 	}
 
 	/**
-	 * Return full uri for relativeUri (URI relative to mountpoint of webdav server)
+	 * PUT file gzip compressed with Content-Encoding: gzip
 	 * 
-	 * @param relativeUri 	
-	 * @return uri
-	 * @throws DavException
+	 * @return the resource, or null when the server does not support compressed uploads and the file must be sent again
 	 */
-	private URI getAbsoluteURI(URI relativeUri) throws DavException {
-		if(relativeUri == null) {
-			throw new DavException(HttpStatus.SC_BAD_REQUEST, "relativeUri is mandatory");
-		} else if(relativeUri.isAbsolute()) {
-			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Only relative paths are supported");
-		}
-		String serverPath = serverUri.toString();
-		String relativePath = relativeUri.toString();
-		if(serverPath.endsWith(PfxDocumentConstants.URI_SEPARATOR) && relativePath.startsWith(PfxDocumentConstants.URI_SEPARATOR)) {
-			relativePath = relativePath.substring(1);
+	private WebDAVResourceType putCompressedResource(URI relativeUri, File file, ContentType contentType) throws IOException, DavException  {
+		HttpPut httpMethod = new HttpPut(getAbsoluteURI(relativeUri).toString());
+		httpMethod.setConfig(uploadRequestConfig);
+		httpMethod.setEntity(new GzipCompressingEntity(new FileChannelEntity(file, contentType)));
+
+		CloseableHttpResponse response = execute(httpMethod);
+		invalidate(relativeUri);
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			if(status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE || status == HttpStatus.SC_NOT_IMPLEMENTED) {
+				// RFC 7231 3.1.2.2: the content coding is not acceptable
+				uploadCompressionSupported = Boolean.FALSE;
+				logger.info("server does not accept compressed uploads: " + response.getStatusLine());
+				return null;
+			}
+			if(uploadCompressionSupported == null && status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+				// a server without a request decoding filter stores the gzip bytes as they are
+				WebDAVResourceType stored = getResourceProperties(relativeUri);
+				String contentLength = WebDAVMetadataCache.getPropertyValue(stored, DavConstants.PROPERTY_GETCONTENTLENGTH);
+				boolean decoded = (contentLength != null && Long.parseLong(contentLength.trim()) == file.length());
+				uploadCompressionSupported = Boolean.valueOf(decoded);
+				if(!decoded) {
+					logger.info("server stored the compressed upload of " + relativeUri + " without decoding it");
+					return null;
+				}
+				if(config.isReadBack()) {
+					return stored;
+				}
+			}
+			return getWrittenResource(relativeUri,httpMethod,response,null);
+		} finally {
+			release(response);
 		}
+	}
+
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return (header != null ? header.getValue() : null);
+	}
+
+	private boolean isKnownCollection(String path) {
+		return PfxDocumentConstants.URI_SEPARATOR.equals(path) || (collectionCache != null && collectionCache.contains(path));
+	}
+
+	/**
+	 * @return 201 Created, 405 Method Not Allowed when path already exists, or 409 Conflict when its parent is missing
+	 * @throws DavException	for any other status
+	 */
+	private int mkcol(String path) throws IOException, DavException {
+		URI relativeUri;
 		try {
-			return new URI(serverPath+relativePath);
+			relativeUri = new URI(path);
 		} catch (URISyntaxException e) {
 			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
 		}
-	}
-
-	private WebDAVResourceType getCollection(CloseableHttpClient client, URI relativeUri, boolean createIfNotExists) throws IOException, DavException {
-		WebDAVResourceType resource = null;
-		if(relativeUri != null) {
-			// first check if collection already exists
-			try {
-				resource = getResource(relativeUri);
-			} catch(DavException e) {
-				// Ignore 404 not found only when createIfNotExists
-				if(!(HttpStatus.SC_NOT_FOUND == e.getErrorCode() && createIfNotExists)){
-					throw e;
-				}
-			}
-			if(resource==null && createIfNotExists) {
-				BaseDavRequest method = new HttpMkcol(getAbsoluteURI(relativeUri).toString());
-				CloseableHttpResponse response = client.execute(method);
-				try {
-					// then propfind if no error has been thrown
-					resource = getResource(relativeUri);
-					logger.info("collection "+relativeUri.toString() + " has been created");
-				} finally {
-					response.close();
+		HttpMkcol method = new HttpMkcol(getAbsoluteURI(relativeUri).toString());
+		CloseableHttpResponse response = execute(method);
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			if(status == HttpStatus.SC_CREATED) {
+				// also drops a cached 404 and the listing of the parent
+				invalidate(relativeUri);
+				if(collectionCache != null) {
+					// the parent must exist as well
+					for(String p = path; p != null; p = WebDAVMetadataCache.getParentPath(p)) {
+						collectionCache.add(p);
+					}
 				}
+				logger.info("collection "+path + " has been created");
+			} else if(status != HttpStatus.SC_METHOD_NOT_ALLOWED && status != HttpStatus.SC_CONFLICT) {
+				throw new DavException(status, "MKCOL " + path + " failed: " + response.getStatusLine().getReasonPhrase());
 			}
-		}		
-		return resource;
+			return status;
+		} finally {
+			release(response);
+		}
 	}
 
 	/**
@@ -436,94 +754,284 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	 * @throws DavException 
 	 * @throws Exception 
 	 */
-	private List<WebDAVResourceType> getCollectionProperties(CloseableHttpClient client, URI relativeUri, int depth) throws IOException, DavException {
+	private List<WebDAVResourceType> getCollectionProperties(URI relativeUri, int depth, DavPropertyNameSet propertyNames) throws IOException, DavException {
 		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
-	
-		HttpPropfind method = new HttpPropfind(getAbsoluteURI(relativeUri).toString(), DavConstants.PROPFIND_ALL_PROP, depth);
-		CloseableHttpResponse httpResponse = client.execute(method);
-		try {
-			MultiStatus multiStatus = method.getResponseBodyAsMultiStatus(httpResponse);
-			MultiStatusResponse[] responses = multiStatus.getResponses();
-			MultiStatusResponse response;
-		
-			int status = HttpStatus.SC_OK; 
-			for (int i = 0; i < responses.length; i++) {
-				response = responses[i];
-				
-				// href = mountpoint from documentService + relativePath
-				String href = response.getHref();
-		
-				// Ignore the current directory
-				if (assertResourcePathEquals(relativeUri,href) && depth > 0) {
-					continue;
-				}
-		
-				// prepare json container
-				WebDAVResourceType resource = getWebDAVResource(href,response.getProperties(status));
-				resources.add(resource);
-				Collections.sort(resources, new Comparator<WebDAVResourceType>() {
-		            public int compare(WebDAVResourceType lhs, WebDAVResourceType rhs) {
-		                return lhs.getDisplayName().compareToIgnoreCase(rhs.getDisplayName());
-		            }
-		        });
-			}			
-		} finally {
-			httpResponse.close();
+		getCollectionProperties(relativeUri, depth, propertyNames, new WebDAVResourceCollector(resources));
+		Collections.sort(resources, DISPLAYNAME_COMPARATOR);
+		return resources;
+	}
+
+	private List<WebDAVResourceType> getCachedChildResources(URI relativeUri, DavPropertyNameSet propertyNames) throws IOException, DavException {
+		String path = relativeUri.toString();
+		String variant = getCacheVariant(propertyNames);
+		WebDAVMetadataCache.Entry entry = metadataCache.get(WebDAVMetadataCache.Kind.CHILDREN, path, variant);
+		if(entry != null && (entry.isFresh() || isUnchanged(relativeUri, entry, DavConstants.DEPTH_1))) {
+			return new ArrayList<WebDAVResourceType>(entry.getChildren());
+		}
+		long generation = metadataCache.getGeneration();
+		List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
+		WebDAVResourceType collection = getCollectionProperties(relativeUri, DavConstants.DEPTH_1, propertyNames, new WebDAVResourceCollector(resources));
+		Collections.sort(resources, DISPLAYNAME_COMPARATOR);
+		metadataCache.putChildren(path, variant, resources, generation);
+		if(collection != null) {
+			metadataCache.putResource(path, variant, collection, generation);
 		}
 		return resources;
 	}
 
-	private CloseableHttpClient getHttpClient(String user, String password, URI relativeUri) throws DavException {
-		URI serverUri = getAbsoluteURI(relativeUri);
-		CloseableHttpClient client = null;
-		
-		if(user!=null) {
-			CredentialsProvider credsProvider = new BasicCredentialsProvider();
-			credsProvider.setCredentials(
-	                new AuthScope(serverUri.getHost(), serverUri.getPort()),
-	                new UsernamePasswordCredentials(user, password));
-			client = HttpClients.custom()
-					.setMaxConnTotal(MAX_HOST_CONNECTIONS)
-	                .setDefaultCredentialsProvider(credsProvider)
-	                .build();
-		} else {
-			client = HttpClients.custom()
-					.setMaxConnTotal(MAX_HOST_CONNECTIONS)
-					.build();
+	private WebDAVResourceType getCachedResourceProperties(URI relativeUri, DavPropertyNameSet propertyNames) throws IOException, DavException {
+		String path = relativeUri.toString();
+		String variant = getCacheVariant(propertyNames);
+		WebDAVMetadataCache.Entry entry = metadataCache.get(WebDAVMetadataCache.Kind.RESOURCE, path, variant);
+		if(entry != null && entry.isFresh() && entry.isNotFound()) {
+			throw new DavException(HttpStatus.SC_NOT_FOUND, path + " not found");
+		} else if(entry != null && !entry.isNotFound() && (entry.isFresh() || isUnchanged(relativeUri, entry, DavConstants.DEPTH_0))) {
+			return entry.getResource();
+		}
+		long generation = metadataCache.getGeneration();
+		try {
+			WebDAVResourceType resource = getResourceProperties(relativeUri, propertyNames);
+			metadataCache.putResource(path, variant, resource, generation);
+			return resource;
+		} catch(DavException e) {
+			if(HttpStatus.SC_NOT_FOUND == e.getErrorCode()) {
+				metadataCache.putNotFound(path, variant, generation);
+			}
+			throw e;
 		}
-		return client;
 	}
-	
+
 	/**
-	 * Get the path-URI for relativeUri (which is relative to mountpoint of webdav server)
-	 * 
-	 * @param relativeUri
-	 * @return path
+	 * Revalidate a stale cache entry with a PROPFIND for getetag and getlastmodified only
 	 * 
-	 * @throws DavException
+	 * @return true when the entry has been renewed
+	 */
+	private boolean isUnchanged(URI relativeUri, WebDAVMetadataCache.Entry entry, int depth) throws IOException, DavException {
+		if(entry.isRevalidatable()) {
+			try {
+				DavPropertyNameSet propertyNames = new DavPropertyNameSet();
+				propertyNames.add(DavPropertyName.GETETAG);
+				propertyNames.add(DavPropertyName.GETLASTMODIFIED);
+				List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
+				getCollectionProperties(relativeUri, depth, propertyNames, new WebDAVResourceCollector(resources));
+				// a listing is compared member by member, depth 1 does not return the collection itself
+				boolean unchanged = (depth == DavConstants.DEPTH_0 ? resources.size() == 1 && entry.isValidatedBy(resources.get(0)) : entry.isValidatedBy(resources));
+				if(unchanged) {
+					metadataCache.renew(entry);
+					return true;
+				}
+			} catch(DavException e) {
+				if(HttpStatus.SC_NOT_FOUND != e.getErrorCode()) {
+					throw e;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Cache discriminator for the requested properties: null for allprop, otherwise the sorted property names
 	 */
-	private URI getResourcePath(URI relativeUri) throws DavException {
-		if(relativeUri == null) {
-			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Relative URI is mandatory");
+	private static String getCacheVariant(DavPropertyNameSet propertyNames) {
+		if(propertyNames == null) {
+			return null;
+		}
+		List<String> names = new ArrayList<String>();
+		DavPropertyNameIterator it = propertyNames.iterator();
+		while(it.hasNext()) {
+			DavPropertyName name = it.next();
+			names.add("{" + name.getNamespace().getURI() + "}" + name.getName());
+		}
+		Collections.sort(names);
+		return StringUtils.join(names, ' ');
+	}
+
+	void invalidate(URI relativeUri) {
+		if(metadataCache != null) {
+			metadataCache.invalidate(relativeUri.toString());
 		}
-		if(relativeUri.isAbsolute()) {
-			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Only relative paths are supported");
+		if(contentCache != null) {
+			contentCache.remove(relativeUri.toString());
 		}
+	}
+
+	void invalidateTree(URI relativeUri) {
+		if(metadataCache != null) {
+			metadataCache.invalidateTree(relativeUri.toString());
+		}
+		if(collectionCache != null) {
+			collectionCache.removeTree(relativeUri.toString());
+		}
+		if(contentCache != null) {
+			contentCache.removeTree(relativeUri.toString());
+		}
+	}
+
+	/**
+	 * PROPFIND relativeUri and hand every resource to the handler as soon as its response element is parsed
+	 * 
+	 * @param propertyNames	properties to request, null for allprop
+	 * @return the resource of relativeUri itself when it has been left out of a depth &gt; 0 listing
+	 * @throws IOException 
+	 * @throws DavException 
+	 */
+	WebDAVResourceType getCollectionProperties(URI relativeUri, int depth, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException {
+		WebDAVResourceType self = null;
+		HttpPropfind method = (propertyNames != null ? 
+				new HttpPropfind(getAbsoluteURI(relativeUri).toString(), propertyNames, depth) : 
+				new HttpPropfind(getAbsoluteURI(relativeUri).toString(), DavConstants.PROPFIND_ALL_PROP, depth));
+		CloseableHttpResponse httpResponse = execute(method);
+		boolean completed = false;
 		try {
-			String serverPath = serverUri.getPath();
-			String relativePath = relativeUri.toString();
-			if(serverPath.endsWith(PfxDocumentConstants.URI_SEPARATOR) && relativePath.startsWith(PfxDocumentConstants.URI_SEPARATOR)) {
-				relativePath = relativePath.substring(1);
+			// throws e.g. 404 not found
+			method.checkSuccess(httpResponse);
+			MultiStatusReader reader = new MultiStatusReader(httpResponse.getEntity().getContent());
+			try {
+				int status = HttpStatus.SC_OK; 
+				MultiStatusResponse response;
+				while((response = reader.nextResponse()) != null) {
+					// href = mountpoint from documentService + relativePath
+					String href = response.getHref();
+			
+					// Ignore the current directory
+					if (assertResourcePathEquals(relativeUri,href) && depth > 0) {
+						self = getWebDAVResource(href,response.getProperties(status));
+						continue;
+					}
+			
+					// prepare json container
+					handler.handleResource(getWebDAVResource(href,response.getProperties(status)));
+				}
+			} finally {
+				reader.close();
 			}
-			return new URI(serverPath+relativePath);
-		} catch (URISyntaxException e) {
-			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+			completed = true;
+		} finally {
+			if(!completed) {
+				// do not read the remainder of a large listing just to reuse the connection
+				method.abort();
+				httpResponse.close();
+			} else {
+				release(httpResponse);
+			}
+		}
+		return self;
+	}
+
+	/**
+	 * All requests go through the shared pooled client; the caller must close the response
+	 * (or fully consume its entity) to return the connection to the pool.
+	 */
+	CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+		return (resilience != null ? resilience.execute(request) : send(request));
+	}
+
+	/**
+	 * Send a request once, without the retries, circuit breaker and hedging of WebDAVResilience
+	 */
+	CloseableHttpResponse send(HttpUriRequest request) throws IOException {
+		if(metrics == WebDAVNoopMetrics.INSTANCE) {
+			return client.execute(request);
 		}
+		if(request instanceof HttpEntityEnclosingRequest) {
+			HttpEntityEnclosingRequest enclosingRequest = (HttpEntityEnclosingRequest)request;
+			// a retried request has been wrapped before
+			if(enclosingRequest.getEntity() != null && !(enclosingRequest.getEntity() instanceof WebDAVMeteredEntity)) {
+				enclosingRequest.setEntity(new WebDAVMeteredEntity(enclosingRequest.getEntity(), metrics));
+			}
+		}
+		long start = System.nanoTime();
+		CloseableHttpResponse response;
+		try {
+			response = client.execute(request);
+		} catch(IOException e) {
+			metrics.recordRequest(request.getMethod(), WebDAVMetrics.STATUS_IO_ERROR, System.nanoTime() - start);
+			throw e;
+		}
+		metrics.recordRequest(request.getMethod(), response.getStatusLine().getStatusCode(), System.nanoTime() - start);
+		if(response.getEntity() != null) {
+			response.setEntity(new WebDAVMeteredEntity(response.getEntity(), metrics));
+		}
+		return response;
+	}
+
+	WebDAVResourceMapper getResourceMapper() {
+		return mapper;
+	}
+
+	RequestConfig getUploadRequestConfig() {
+		return uploadRequestConfig;
 	}
 
-	private WebDAVResourceType getResourceProperties(CloseableHttpClient client, URI relativeUri) throws IOException,DavException {
+	/**
+	 * Consume the remaining response body so the keep-alive connection can be reused, then close the response
+	 */
+	static void release(CloseableHttpResponse response) throws IOException {
+		try {
+			EntityUtils.consume(response.getEntity());
+		} finally {
+			response.close();
+		}
+	}
+
+	private static PoolingHttpClientConnectionManager createConnectionManager(WebDAVClientConfig config) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(config.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(config.getMaxConnectionsTotal());
+		connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+		connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivity());
+		return connectionManager;
+	}
+
+	static RequestConfig createRequestConfig(WebDAVClientConfig config) {
+		return RequestConfig.custom()
+				.setConnectTimeout(config.getConnectTimeout())
+				.setSocketTimeout(config.getSocketTimeout())
+				.setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+				.build();
+	}
+
+	private static CloseableHttpClient createHttpClient(String user, String password, URI serverUri, WebDAVClientConfig config, RequestConfig requestConfig, PoolingHttpClientConnectionManager connectionManager) {
+		HttpClientBuilder builder = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections();
+		final WebDAVMetrics metrics = config.getMetrics();
+		if(metrics != WebDAVNoopMetrics.INSTANCE) {
+			builder.setRetryHandler(new HttpRequestRetryHandler() {
+				public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+					boolean retry = DefaultHttpRequestRetryHandler.INSTANCE.retryRequest(exception, executionCount, context);
+					if(retry) {
+						HttpRequest request = HttpClientContext.adapt(context).getRequest();
+						metrics.recordRetry(request != null ? request.getRequestLine().getMethod() : null);
+					}
+					return retry;
+				}
+			});
+		}
+		if(!config.isContentCompression()) {
+			// by default HttpClient sends Accept-Encoding: gzip,deflate and decodes PROPFIND and GET responses
+			builder.disableContentCompression();
+		}
+		if(config.getMaxIdleTime() > 0) {
+			builder.evictIdleConnections(config.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+		}
+		if(user!=null) {
+			CredentialsProvider credsProvider = new BasicCredentialsProvider();
+			credsProvider.setCredentials(
+	                new AuthScope(serverUri.getHost(), serverUri.getPort()),
+	                new UsernamePasswordCredentials(user, password));
+			builder.setDefaultCredentialsProvider(credsProvider);
+		}
+		return builder.build();
+	}
+	
+	private WebDAVResourceType getResourceProperties(URI relativeUri) throws IOException,DavException {
 		// let's do a generic propfind with depth 0
-		List<WebDAVResourceType> resources = getCollectionProperties(client,relativeUri,DavConstants.DEPTH_0);
+		return getResourceProperties(relativeUri,null);
+	}
+
+	private WebDAVResourceType getResourceProperties(URI relativeUri, DavPropertyNameSet propertyNames) throws IOException,DavException {
+		List<WebDAVResourceType> resources = getCollectionProperties(relativeUri,DavConstants.DEPTH_0,propertyNames);
 		// we get either a response with one resource-item or a NOT-FOUND exception
 		if(resources.size()>1) {
 			throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR,"More than one resource found where one expected");
@@ -536,7 +1044,7 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	}
 
 	@SuppressWarnings("rawtypes")
-	private List<DefaultDavProperty> getWebDAVPropertyList(Map<String, Object> propertyMap) {
+	static List<DefaultDavProperty> getWebDAVPropertyList(Map<String, Object> propertyMap) {
 		List<DefaultDavProperty> retval = new ArrayList<DefaultDavProperty>();
 		if(propertyMap!=null &&!propertyMap.isEmpty()) {
 			for(Entry<String, Object> e : propertyMap.entrySet()) {
@@ -549,45 +1057,7 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 	}
 
 	private WebDAVResourceType getWebDAVResource(String href, DavPropertySet davProperties) throws DavException {
-		WebDAVResourceType webdavResource = new WebDAVResourceType();
-
-		webdavResource.setUri(getAbsoluteURI(href).toString());
-		webdavResource.setHref(href);
-
-		List<String> mappedProperties = new ArrayList<String>();
-		
-		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_RESOURCETYPE);
-		DavProperty<?> davResourceType = davProperties.get(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_RESOURCETYPE);
-		String resourceType = ((davResourceType != null) && (davResourceType.getValue() != null) ? davResourceType.getValue().toString() : null);
-		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.XML_COLLECTION);
-		boolean isDirectory = ((resourceType != null) && (resourceType.indexOf(org.apache.jackrabbit.webdav.DavConstants.XML_COLLECTION) != -1) ? true : false);
-		webdavResource.setCollection(isDirectory);
-		// webdavResource.setResourceType(resourceType);
-
-		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_DISPLAYNAME);
-		DavProperty<?> davDisplayName = davProperties.get(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_DISPLAYNAME);
-		String displayName = ((davDisplayName != null) && (davDisplayName.getValue() != null) ? davDisplayName.getValue().toString() : getFilename(href));
-		webdavResource.setDisplayName(displayName);
-
-		List<WebDAVPropertyType> properties = webdavResource.getProperties();
-		
-		DavPropertyIterator it = davProperties.iterator();
-		while(it.hasNext()) {
-			DavProperty<?> property = it.next();
-			if(property.getValue()!=null) {
-				String name = property.getName().getName();
-				if(!mappedProperties.contains(name)) {
-					String value = property.getValue().toString();
-					WebDAVPropertyType p = new WebDAVPropertyType();
-					p.setName(name);
-					p.setValue(value);
-					properties.add(p);
-				}
-				
-//				joContainer.addProperty(property.getName().getName(), property.getValue().toString());
-			}
-		}
-		return webdavResource;
+		return mapper.getWebDAVResource(href, davProperties);
 	}
 	
 	private WebDAVResourceType getWebDAVResource(List<WebDAVResourceType> folderResources, URI relativeUri) throws DavException  {
@@ -612,12 +1082,12 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 		return serverUri.getPath().equals(relativeUri.toString());
 	}
 
-	private static String getFilename(String relativePath) {
+	static String getFilename(String relativePath) {
 		String filename = (relativePath.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? relativePath.substring(0, relativePath.length() - 1) : relativePath);
 		return (filename.lastIndexOf(PfxDocumentConstants.URI_SEPARATOR) >= 0 ? filename.substring(filename.lastIndexOf(PfxDocumentConstants.URI_SEPARATOR)+1) : filename);
 	}
 
-	private static URI getParentURI(URI relativeUri) throws DavException {
+	static URI getParentURI(URI relativeUri) throws DavException {
 		URI parentUri = null;
 		if(relativeUri != null) {
 			String resourcePath = relativeUri.toString();
@@ -631,4 +1101,18 @@ public class WebDAVClientImpl implements WebDAVClientAPI {
 		return parentUri;
 	}
 
+	/**
+	 * Collects streamed resources into a list
+	 */
+	private static class WebDAVResourceCollector implements WebDAVResourceHandler {
+		private final List<WebDAVResourceType> resources;
+
+		private WebDAVResourceCollector(List<WebDAVResourceType> resources) {
+			this.resources = resources;
+		}
+
+		public void handleResource(WebDAVResourceType resource) {
+			resources.add(resource);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package nl.ellipsis.webdav.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Bounded LRU set of collection paths that are known to exist on the server.
+ *
+ * createCollection skips the MKCOL of a known collection, and only probes ancestors that are not in this set.
+ * Paths are removed when the client deletes or moves them or one of their ancestors; changes made by other 
+ * clients are noticed through the 409 Conflict of a later MKCOL.
+ */
+class WebDAVCollectionCache {
+
+	private final LinkedHashMap<String, Boolean> paths;
+
+	WebDAVCollectionCache(final int maxEntries) {
+		this.paths = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	boolean contains(String path) {
+		synchronized(paths) {
+			return paths.get(WebDAVMetadataCache.normalize(path)) != null;
+		}
+	}
+
+	void add(String path) {
+		synchronized(paths) {
+			paths.put(WebDAVMetadataCache.normalize(path), Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Remove path and all known collections below it
+	 */
+	void removeTree(String path) {
+		String normalized = WebDAVMetadataCache.normalize(path);
+		String prefix = (normalized.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? normalized : normalized + PfxDocumentConstants.URI_SEPARATOR);
+		synchronized(paths) {
+			Iterator<String> it = paths.keySet().iterator();
+			while(it.hasNext()) {
+				String p = it.next();
+				if(p.equals(normalized) || p.startsWith(prefix)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	int size() {
+		synchronized(paths) {
+			return paths.size();
+		}
+	}
+}
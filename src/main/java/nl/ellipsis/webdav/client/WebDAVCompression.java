@@ -0,0 +1,91 @@
+package nl.ellipsis.webdav.client;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Content-Encoding helpers shared by the blocking and the asynchronous client.
+ *
+ * The blocking client relies on the request and response interceptors of HttpClient for Accept-Encoding;
+ * HttpAsyncClient has no such interceptors, so the asynchronous client sets the header and decodes the 
+ * buffered PROPFIND body itself.
+ */
+class WebDAVCompression {
+
+	final static String ACCEPT_ENCODING = "gzip, deflate";
+	final static String ENCODING_GZIP = "gzip";
+	final static String ENCODING_DEFLATE = "deflate";
+
+	/** smaller bodies do not gain enough to pay for the compression */
+	final static long MIN_COMPRESSED_UPLOAD_SIZE = 1024;
+
+	private final static Set<String> COMPRESSIBLE_TYPES = new HashSet<String>(Arrays.asList(
+			"application/xml", "application/json", "application/javascript", "application/x-javascript",
+			"application/xhtml+xml", "application/rtf", "application/x-sh", "application/postscript", "image/svg+xml"));
+
+	private final static Set<String> COMPRESSED_TYPES = new HashSet<String>(Arrays.asList(
+			"application/pdf", "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+			"application/x-rar-compressed", "application/x-bzip2", "application/x-xz", "application/java-archive"));
+
+	private final static Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+			"pdf", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "jar", "jpg", "jpeg", "png", "gif", "webp", "mkv", "mp4", "m4v", 
+			"mov", "avi", "webm", "mp3", "m4a", "ogg", "flac", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub"));
+
+	private WebDAVCompression() {
+	}
+
+	/**
+	 * @return true for text, XML and JSON content; images, archives, PDF and office documents are usually compressed already
+	 */
+	static boolean isCompressible(ContentType contentType) {
+		if(contentType == null || contentType.getMimeType() == null) {
+			return false;
+		}
+		String mimeType = contentType.getMimeType().toLowerCase(Locale.ROOT);
+		return mimeType.startsWith("text/") || mimeType.endsWith("+xml") || mimeType.endsWith("+json") || COMPRESSIBLE_TYPES.contains(mimeType);
+	}
+
+	/**
+	 * @param mimeType	content type of a resource, may be null
+	 * @param filename	name of the resource, used when the content type says nothing
+	 * @return true for PDF, archives, most images, audio, video and office documents, which do not get smaller when deflated
+	 */
+	static boolean isCompressed(String mimeType, String filename) {
+		if(mimeType != null) {
+			String type = mimeType.toLowerCase(Locale.ROOT);
+			int parameters = type.indexOf(';');
+			type = (parameters > -1 ? type.substring(0, parameters).trim() : type);
+			if(COMPRESSED_TYPES.contains(type) || type.startsWith("video/") || type.startsWith("audio/") 
+					|| (type.startsWith("image/") && !type.equals("image/svg+xml") && !type.equals("image/bmp"))
+					|| type.startsWith("application/vnd.openxmlformats-")) {
+				return true;
+			}
+		}
+		int dot = (filename != null ? filename.lastIndexOf('.') : -1);
+		return dot > -1 && COMPRESSED_EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return entity that decodes a gzip or deflate Content-Encoding, or entity itself
+	 */
+	static HttpEntity decode(HttpEntity entity) {
+		Header encoding = (entity != null ? entity.getContentEncoding() : null);
+		if(encoding != null) {
+			String value = encoding.getValue().trim().toLowerCase(Locale.ROOT);
+			if(ENCODING_GZIP.equals(value) || "x-gzip".equals(value)) {
+				return new GzipDecompressingEntity(entity);
+			} else if(ENCODING_DEFLATE.equals(value)) {
+				return new DeflateDecompressingEntity(entity);
+			}
+		}
+		return entity;
+	}
+}
@@ -0,0 +1,520 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Size-bounded LRU cache of GET response bodies on local disk, used by WebDAVClientImpl.getResourceStream.
+ *
+ * Every entry consists of a body file and a properties file with the relative URI, ETag, Last-Modified and 
+ * Content-Type of the response. A GET for a cached URI is sent with If-None-Match and If-Modified-Since; 
+ * on 304 Not Modified the body is read from disk. A 200 response is copied to a temporary file while the 
+ * caller reads it, and becomes an entry only when the body has been read to the end. Bodies are never 
+ * overwritten in place, so a reader of a replaced or evicted entry keeps a consistent file.
+ * The entries in the directory survive a restart of the client.
+ */
+public class WebDAVContentCache {
+
+	protected static Logger logger = Logger.getLogger(WebDAVContentCache.class);
+
+	private final static String META_SUFFIX = ".properties";
+	private final static String BODY_SUFFIX = ".body";
+	private final static String TEMP_SUFFIX = ".tmp";
+	private final static String PROP_URI = "uri";
+	private final static String PROP_ETAG = "etag";
+	private final static String PROP_LAST_MODIFIED = "lastModified";
+	private final static String PROP_CONTENT_TYPE = "contentType";
+	private final static String PROP_BODY = "body";
+	private final static String PROP_LENGTH = "length";
+
+	private final Path directory;
+	private final long maxSize;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long size;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Constructor; entries that are left in directory by an earlier client are reused
+	 *
+	 * @param directory	directory for body and properties files, created when it does not exist
+	 * @param maxSize	maximum total size in bytes of all bodies, least recently used entries are evicted first
+	 * @throws IOException
+	 */
+	public WebDAVContentCache(Path directory, long maxSize) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxSize = maxSize;
+		load();
+	}
+
+	/**
+	 * @return the entry for relativeUri, or null when nothing is cached
+	 */
+	public Entry get(String relativeUri) {
+		synchronized(entries) {
+			return entries.get(relativeUri);
+		}
+	}
+
+	/**
+	 * Open the body of an entry after the server answered 304 Not Modified
+	 *
+	 * @return the cached body, or null when the entry has been evicted in the meantime
+	 */
+	public InputStream open(Entry entry) {
+		try {
+			InputStream is = Files.newInputStream(entry.body);
+			hitCount.incrementAndGet();
+			synchronized(entries) {
+				entries.get(entry.uri);
+			}
+			touch(entry);
+			return is;
+		} catch(IOException e) {
+			remove(entry.uri);
+			return null;
+		}
+	}
+
+	/**
+	 * Copy a 200 response body to the cache while it is read
+	 *
+	 * @param body	response body
+	 * @param contentLength	Content-Length of the response, -1 when unknown
+	 * @return a stream that reads body; the entry is stored when the stream is closed after reading it to the end
+	 */
+	public InputStream store(String relativeUri, String etag, String lastModified, String contentType, long contentLength, InputStream body) throws IOException {
+		missCount.incrementAndGet();
+		if((etag == null && lastModified == null) || contentLength > maxSize) {
+			// cannot be revalidated, or would evict everything else
+			return body;
+		}
+		Entry entry = new Entry(relativeUri, etag, lastModified, contentType, directory.resolve(getKey(relativeUri) + "-" + UUID.randomUUID() + BODY_SUFFIX), -1);
+		return new CachingInputStream(body, entry, Files.createTempFile(directory, getKey(relativeUri), TEMP_SUFFIX));
+	}
+
+	/**
+	 * Remove the entry of relativeUri
+	 */
+	public void remove(String relativeUri) {
+		Entry entry;
+		synchronized(entries) {
+			entry = entries.remove(relativeUri);
+			if(entry != null) {
+				size -= entry.length;
+			}
+		}
+		delete(entry);
+	}
+
+	/**
+	 * Remove the entries of relativeUri and all URIs below it
+	 */
+	public void removeTree(String relativeUri) {
+		String prefix = (relativeUri.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? relativeUri : relativeUri + PfxDocumentConstants.URI_SEPARATOR);
+		List<Entry> removed = new ArrayList<Entry>();
+		synchronized(entries) {
+			Iterator<Entry> it = entries.values().iterator();
+			while(it.hasNext()) {
+				Entry entry = it.next();
+				if(entry.uri.equals(relativeUri) || entry.uri.startsWith(prefix)) {
+					it.remove();
+					size -= entry.length;
+					removed.add(entry);
+				}
+			}
+		}
+		for(Entry entry : removed) {
+			delete(entry);
+		}
+	}
+
+	public void clear() {
+		List<Entry> removed;
+		synchronized(entries) {
+			removed = new ArrayList<Entry>(entries.values());
+			entries.clear();
+			size = 0;
+		}
+		for(Entry entry : removed) {
+			delete(entry);
+		}
+	}
+
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return total size in bytes of the cached bodies
+	 */
+	public long getSize() {
+		synchronized(entries) {
+			return size;
+		}
+	}
+
+	/**
+	 * @return number of responses served from disk after 304 Not Modified
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of responses that were downloaded
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	private void put(Entry entry) {
+		List<Entry> removed = new ArrayList<Entry>();
+		synchronized(entries) {
+			Entry previous = entries.put(entry.uri, entry);
+			if(previous != null) {
+				size -= previous.length;
+				removed.add(previous);
+			}
+			size += entry.length;
+			Iterator<Entry> it = entries.values().iterator();
+			while(size > maxSize && it.hasNext()) {
+				Entry eldest = it.next();
+				it.remove();
+				size -= eldest.length;
+				removed.add(eldest);
+				evictionCount.incrementAndGet();
+			}
+		}
+		for(Entry e : removed) {
+			delete(e);
+		}
+	}
+
+	private void load() throws IOException {
+		List<Entry> loaded = new ArrayList<Entry>();
+		Set<Path> bodies = new HashSet<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for(Path path : stream) {
+				String name = path.getFileName().toString();
+				if(name.endsWith(TEMP_SUFFIX)) {
+					// left behind by an interrupted download
+					Files.deleteIfExists(path);
+				} else if(name.endsWith(META_SUFFIX)) {
+					Entry entry = readEntry(path);
+					if(entry != null) {
+						loaded.add(entry);
+						bodies.add(entry.body);
+					} else {
+						Files.deleteIfExists(path);
+					}
+				}
+			}
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + BODY_SUFFIX)) {
+			for(Path path : stream) {
+				if(!bodies.contains(path)) {
+					Files.deleteIfExists(path);
+				}
+			}
+		}
+		// least recently used first
+		Collections.sort(loaded, new Comparator<Entry>() {
+			public int compare(Entry lhs, Entry rhs) {
+				return Long.compare(lhs.lastAccess, rhs.lastAccess);
+			}
+		});
+		for(Entry entry : loaded) {
+			put(entry);
+		}
+		logger.debug("content cache " + directory + ": " + entries.size() + " entries, " + size + " bytes");
+	}
+
+	private Entry readEntry(Path meta) {
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(meta)) {
+			properties.load(is);
+			Path body = directory.resolve(properties.getProperty(PROP_BODY));
+			long length = Long.parseLong(properties.getProperty(PROP_LENGTH));
+			if(!Files.isRegularFile(body) || Files.size(body) != length) {
+				return null;
+			}
+			Entry entry = new Entry(properties.getProperty(PROP_URI), properties.getProperty(PROP_ETAG), properties.getProperty(PROP_LAST_MODIFIED), 
+					properties.getProperty(PROP_CONTENT_TYPE), body, length);
+			entry.lastAccess = Files.getLastModifiedTime(meta).toMillis();
+			return entry;
+		} catch(IOException | RuntimeException e) {
+			logger.warn("ignoring content cache entry " + meta + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeEntry(Entry entry) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(PROP_URI, entry.uri);
+		if(entry.etag != null) {
+			properties.setProperty(PROP_ETAG, entry.etag);
+		}
+		if(entry.lastModified != null) {
+			properties.setProperty(PROP_LAST_MODIFIED, entry.lastModified);
+		}
+		if(entry.contentType != null) {
+			properties.setProperty(PROP_CONTENT_TYPE, entry.contentType);
+		}
+		properties.setProperty(PROP_BODY, entry.body.getFileName().toString());
+		properties.setProperty(PROP_LENGTH, Long.toString(entry.length));
+		Path meta = getMetaFile(entry.uri);
+		Path temp = Files.createTempFile(directory, getKey(entry.uri), TEMP_SUFFIX);
+		try (OutputStream os = Files.newOutputStream(temp)) {
+			properties.store(os, null);
+		}
+		move(temp, meta);
+	}
+
+	private void touch(Entry entry) {
+		try {
+			Files.setLastModifiedTime(getMetaFile(entry.uri), FileTime.fromMillis(System.currentTimeMillis()));
+		} catch(IOException e) {
+			// only affects the eviction order after a restart
+		}
+	}
+
+	private void delete(Entry entry) {
+		if(entry != null) {
+			try {
+				Files.deleteIfExists(entry.body);
+				// the properties file may already describe a newer entry for the same uri
+				synchronized(entries) {
+					if(!entries.containsKey(entry.uri)) {
+						Files.deleteIfExists(getMetaFile(entry.uri));
+					}
+				}
+			} catch(IOException e) {
+				logger.warn("cannot delete content cache entry for " + entry.uri + ": " + e.getMessage());
+			}
+		}
+	}
+
+	private Path getMetaFile(String relativeUri) {
+		return directory.resolve(getKey(relativeUri) + META_SUFFIX);
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return file name for relativeUri: hex SHA-1 of the uri
+	 */
+	static String getKey(String relativeUri) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for(byte b : MessageDigest.getInstance("SHA-1").digest(relativeUri.getBytes(StandardCharsets.UTF_8))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A cached response
+	 */
+	public static class Entry {
+		private final String uri;
+		private final String etag;
+		private final String lastModified;
+		private final String contentType;
+		private final Path body;
+		private long length;
+		private long lastAccess;
+
+		private Entry(String uri, String etag, String lastModified, String contentType, Path body, long length) {
+			this.uri = uri;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.body = body;
+			this.length = length;
+		}
+
+		/**
+		 * @return ETag of the cached response, for If-None-Match
+		 */
+		public String getEtag() {
+			return etag;
+		}
+
+		/**
+		 * @return Last-Modified of the cached response, for If-Modified-Since
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public long getLength() {
+			return length;
+		}
+	}
+
+	/**
+	 * Copies everything that is read to a temporary file, which is committed as a cache entry on close after end of stream
+	 */
+	private class CachingInputStream extends FilterInputStream {
+		private final Entry entry;
+		private final Path temp;
+		private OutputStream out;
+		private long length;
+		private boolean complete;
+
+		private CachingInputStream(InputStream in, Entry entry, Path temp) throws IOException {
+			super(in);
+			this.entry = entry;
+			this.temp = temp;
+			this.out = Files.newOutputStream(temp);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b == -1) {
+				complete = true;
+			} else {
+				write(new byte[] { (byte)b }, 0, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n == -1) {
+				complete = true;
+			} else {
+				write(b, off, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// skipped bytes are not written, so the copy is incomplete
+			abandon();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				commit();
+			}
+		}
+
+		private void write(byte[] b, int off, int len) {
+			if(out != null) {
+				try {
+					out.write(b, off, len);
+					length += len;
+					if(length > maxSize) {
+						abandon();
+					}
+				} catch(IOException e) {
+					logger.warn("cannot cache " + entry.uri + ": " + e.getMessage());
+					abandon();
+				}
+			}
+		}
+
+		private void abandon() {
+			if(out != null) {
+				try {
+					out.close();
+					Files.deleteIfExists(temp);
+				} catch(IOException e) {
+					// a temporary file that is left behind is removed when the cache is loaded again
+				}
+				out = null;
+			}
+		}
+
+		private void commit() {
+			if(out == null) {
+				return;
+			}
+			if(!complete) {
+				abandon();
+				return;
+			}
+			try {
+				out.close();
+				out = null;
+				move(temp, entry.body);
+				entry.length = length;
+				synchronized(entries) {
+					// the properties file and the index must describe the same body
+					writeEntry(entry);
+					put(entry);
+				}
+			} catch(IOException e) {
+				logger.warn("cannot cache " + entry.uri + ": " + e.getMessage());
+				try {
+					Files.deleteIfExists(temp);
+					Files.deleteIfExists(entry.body);
+				} catch(IOException e2) {
+					// removed when the cache is loaded again
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package nl.ellipsis.webdav.client;
+
+/**
+ * Settings for WebDAVClientAPI.downloadToFile
+ */
+public class WebDAVDownloadOptions {
+
+	public final static long DEFAULT_SEGMENT_SIZE = 8L * 1024 * 1024;
+	public final static long DEFAULT_MIN_SEGMENTED_SIZE = 16L * 1024 * 1024;
+	public final static int DEFAULT_PARALLELISM = 4;
+
+	private long segmentSize = DEFAULT_SEGMENT_SIZE;
+	private long minSegmentedSize = DEFAULT_MIN_SEGMENTED_SIZE;
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	/**
+	 * @return size in bytes of each Range request
+	 */
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(long segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * @return resources smaller than this number of bytes are downloaded with a single GET
+	 */
+	public long getMinSegmentedSize() {
+		return minSegmentedSize;
+	}
+
+	public void setMinSegmentedSize(long minSegmentedSize) {
+		this.minSegmentedSize = minSegmentedSize;
+	}
+
+	/**
+	 * @return maximum number of segments that are fetched at the same time; 
+	 * should not exceed WebDAVClientConfig.getMaxConnectionsPerRoute
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+}
@@ -0,0 +1,262 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.log4j.Logger;
+
+/**
+ * Downloads a resource to a local file, in parallel byte-range segments when the server supports it.
+ *
+ * A HEAD request probes Content-Length, Accept-Ranges and the validators. Large resources are split in 
+ * segments that are fetched over several pooled connections at once and written at their position in 
+ * the file. If-Range makes sure all segments belong to the same version of the resource. When the 
+ * server does not support ranges the resource is fetched with a single GET.
+ *
+ * The body is written to a temporary file next to the target, which replaces the target only when the
+ * download is complete, so a failed download leaves an existing file as it was.
+ */
+class WebDAVDownloader {
+
+	protected static Logger logger = Logger.getLogger(WebDAVDownloader.class);
+
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static String RANGE_UNIT_BYTES = "bytes";
+	// ranges refer to the unencoded representation, never let the server compress it
+	private final static String ENCODING_IDENTITY = "identity";
+	private final static String WEAK_ETAG_PREFIX = "W/";
+	private final static String TEMPORARY_SUFFIX = ".download";
+
+	private final WebDAVClientImpl client;
+
+	WebDAVDownloader(WebDAVClientImpl client) {
+		this.client = client;
+	}
+
+	/**
+	 * @return number of bytes written to target
+	 */
+	long download(URI relativeUri, Path target, WebDAVDownloadOptions options) throws IOException, DavException {
+		String uri = client.getAbsoluteURI(relativeUri).toString();
+		
+		long length = -1;
+		boolean acceptRanges = false;
+		String validator = null;
+		HttpHead head = new HttpHead(uri);
+		head.setHeader(HttpHeaders.ACCEPT_ENCODING, ENCODING_IDENTITY);
+		CloseableHttpResponse response = client.execute(head);
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			if(status == HttpStatus.SC_OK) {
+				Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+				length = (contentLength != null ? Long.parseLong(contentLength.getValue().trim()) : -1);
+				Header ranges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+				acceptRanges = (ranges != null && ranges.getValue().contains(RANGE_UNIT_BYTES));
+				validator = getRangeValidator(response);
+			} else if(status != HttpStatus.SC_METHOD_NOT_ALLOWED && status != HttpStatus.SC_NOT_IMPLEMENTED) {
+				throw new DavException(status, "HEAD " + relativeUri + " failed: " + response.getStatusLine().getReasonPhrase());
+			}
+		} finally {
+			WebDAVClientImpl.release(response);
+		}
+
+		// hidden sibling on the same file store, so it can be renamed over the target
+		Path temporary = target.resolveSibling("." + target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMPORARY_SUFFIX);
+		boolean completed = false;
+		try {
+			long count;
+			FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			try {
+				if(acceptRanges && options.getParallelism() > 1 && length >= options.getMinSegmentedSize() && length > options.getSegmentSize()) {
+					count = downloadSegments(uri, validator, length, channel, options);
+				} else {
+					count = downloadSingle(uri, channel);
+				}
+			} finally {
+				channel.close();
+			}
+			move(temporary, target);
+			completed = true;
+			return count;
+		} finally {
+			if(!completed) {
+				Files.deleteIfExists(temporary);
+			}
+		}
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private long downloadSingle(String uri, FileChannel channel) throws IOException, DavException {
+		HttpGet httpMethod = new HttpGet(uri);
+		CloseableHttpResponse response = client.execute(httpMethod);
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			if(status != HttpStatus.SC_OK) {
+				throw new DavException(status, "GET " + uri + " failed: " + response.getStatusLine().getReasonPhrase());
+			}
+			return copy(response.getEntity().getContent(), channel, 0, Long.MAX_VALUE);
+		} finally {
+			WebDAVClientImpl.release(response);
+		}
+	}
+
+	private long downloadSegments(final String uri, final String validator, long length, final FileChannel channel, WebDAVDownloadOptions options) throws IOException, DavException {
+		final List<HttpGet> requests = Collections.synchronizedList(new ArrayList<HttpGet>());
+		int segments = (int)((length + options.getSegmentSize() - 1) / options.getSegmentSize());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.getParallelism(), segments));
+		try {
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for(long start = 0; start < length; start += options.getSegmentSize()) {
+				final long first = start;
+				final long last = Math.min(start + options.getSegmentSize(), length) - 1;
+				futures.add(executor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						return downloadSegment(uri, validator, first, last, channel, requests);
+					}
+				}));
+			}
+			long total = 0;
+			for(Future<Long> future : futures) {
+				try {
+					total += future.get();
+				} catch(ExecutionException e) {
+					abort(futures, requests);
+					throw unwrap(e);
+				} catch(InterruptedException e) {
+					abort(futures, requests);
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Download of " + uri + " interrupted");
+				}
+			}
+			logger.debug("downloaded " + uri + " in " + segments + " segments");
+			return total;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long downloadSegment(String uri, String validator, long first, long last, FileChannel channel, List<HttpGet> requests) throws IOException, DavException {
+		HttpGet httpMethod = new HttpGet(uri);
+		httpMethod.setHeader(HttpHeaders.RANGE, RANGE_UNIT_BYTES + "=" + first + "-" + last);
+		httpMethod.setHeader(HttpHeaders.ACCEPT_ENCODING, ENCODING_IDENTITY);
+		if(validator != null) {
+			httpMethod.setHeader(HttpHeaders.IF_RANGE, validator);
+		}
+		requests.add(httpMethod);
+		try {
+			CloseableHttpResponse response = client.execute(httpMethod);
+			boolean completed = false;
+			try {
+				int status = response.getStatusLine().getStatusCode();
+				if(status == HttpStatus.SC_OK) {
+					// the server ignored the range, or the resource has changed since the HEAD request
+					throw new DavException(HttpStatus.SC_PRECONDITION_FAILED, uri + " changed during download");
+				} else if(status != HttpStatus.SC_PARTIAL_CONTENT) {
+					throw new DavException(status, "GET " + uri + " range " + first + "-" + last + " failed: " + response.getStatusLine().getReasonPhrase());
+				}
+				long count = copy(response.getEntity().getContent(), channel, first, last - first + 1);
+				if(count != last - first + 1) {
+					throw new IOException("Incomplete range " + first + "-" + last + " of " + uri + ": " + count + " bytes");
+				}
+				completed = true;
+				return count;
+			} finally {
+				if(completed) {
+					WebDAVClientImpl.release(response);
+				} else {
+					httpMethod.abort();
+					response.close();
+				}
+			}
+		} finally {
+			requests.remove(httpMethod);
+		}
+	}
+
+	/**
+	 * Write at most maxLength bytes of inputStream to channel, starting at position
+	 */
+	private static long copy(InputStream inputStream, FileChannel channel, long position, long maxLength) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		long count = 0;
+		int n;
+		while(count < maxLength && (n = inputStream.read(buffer, 0, (int)Math.min(buffer.length, maxLength - count))) != -1) {
+			byteBuffer.clear();
+			byteBuffer.limit(n);
+			while(byteBuffer.hasRemaining()) {
+				count += channel.write(byteBuffer, position + count);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * A strong ETag, or else Last-Modified, to send in If-Range
+	 */
+	private static String getRangeValidator(CloseableHttpResponse response) {
+		Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+		if(etag != null && !etag.getValue().startsWith(WEAK_ETAG_PREFIX)) {
+			return etag.getValue();
+		}
+		Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+		return (lastModified != null ? lastModified.getValue() : null);
+	}
+
+	private static void abort(List<Future<Long>> futures, List<HttpGet> requests) {
+		for(Future<Long> future : futures) {
+			future.cancel(true);
+		}
+		synchronized(requests) {
+			for(HttpGet request : requests) {
+				request.abort();
+			}
+		}
+	}
+
+	private static IOException unwrap(ExecutionException e) throws DavException {
+		Throwable cause = e.getCause();
+		if(cause instanceof Error) {
+			throw (Error)cause;
+		} else if(cause instanceof RuntimeException) {
+			throw (RuntimeException)cause;
+		} else if(cause instanceof DavException) {
+			throw (DavException)cause;
+		} else if(cause instanceof IOException) {
+			return (IOException)cause;
+		}
+		return new IOException(cause);
+	}
+}
@@ -0,0 +1,272 @@
+package nl.ellipsis.webdav.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * WebDAVMetrics that keeps a latency histogram per WebDAV method and counters in memory, and exports them 
+ * as an MXBean.
+ *
+ * Histograms have fixed logarithmic buckets, eight per power of two microseconds, so recording a request 
+ * is a few atomic increments without locking or allocation.
+ *
+ * <pre>
+ * WebDAVInMemoryMetrics metrics = new WebDAVInMemoryMetrics();
+ * metrics.registerMBean("nl.ellipsis.webdav:type=WebDAVClient,name=documents");
+ * config.setMetrics(metrics);
+ * </pre>
+ */
+public class WebDAVInMemoryMetrics implements WebDAVMetrics, WebDAVInMemoryMetricsMXBean {
+
+	private final ConcurrentMap<String, Histogram> operations = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, LongAdder> statusCounts = new ConcurrentHashMap<String, LongAdder>();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+	private final LongAdder circuitBreakerOpenings = new LongAdder();
+	private final LongAdder hedgedRequests = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private volatile ConnPoolControl<HttpRoute> pool;
+	private ObjectName objectName;
+
+	public void recordRequest(String method, int status, long durationNanos) {
+		Histogram histogram = operations.get(method);
+		if(histogram == null) {
+			histogram = operations.computeIfAbsent(method, m -> new Histogram());
+		}
+		histogram.record(durationNanos, status == STATUS_IO_ERROR || status >= HttpStatus.SC_BAD_REQUEST);
+		String key = method + " " + status;
+		LongAdder counter = statusCounts.get(key);
+		if(counter == null) {
+			counter = statusCounts.computeIfAbsent(key, k -> new LongAdder());
+		}
+		counter.increment();
+	}
+
+	public void recordBytesRead(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	public void recordBytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	public void recordRetry(String method) {
+		retries.increment();
+	}
+
+	public void recordRejected(String method) {
+		rejectedRequests.increment();
+	}
+
+	public void recordCircuitOpened(String host) {
+		circuitBreakerOpenings.increment();
+	}
+
+	public void recordHedge(String method, boolean won) {
+		hedgedRequests.increment();
+		if(won) {
+			hedgeWins.increment();
+		}
+	}
+
+	public void bindConnectionPool(ConnPoolControl<HttpRoute> pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Register this instance with the platform MBean server
+	 * 
+	 * @param name	object name, e.g. nl.ellipsis.webdav:type=WebDAVClient,name=documents
+	 * @throws JMException
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	public synchronized void unregisterMBean() throws JMException {
+		if(objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * @return statistics of one method, or null when no request has been recorded for it
+	 */
+	public WebDAVOperationStats getOperation(String method) {
+		Histogram histogram = operations.get(method);
+		return (histogram != null ? histogram.snapshot(method) : null);
+	}
+
+	public Map<String, WebDAVOperationStats> getOperations() {
+		Map<String, WebDAVOperationStats> result = new TreeMap<String, WebDAVOperationStats>();
+		for(Map.Entry<String, Histogram> e : operations.entrySet()) {
+			result.put(e.getKey(), e.getValue().snapshot(e.getKey()));
+		}
+		return result;
+	}
+
+	public Map<String, Long> getStatusCounts() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(Map.Entry<String, LongAdder> e : statusCounts.entrySet()) {
+			result.put(e.getKey(), e.getValue().sum());
+		}
+		return result;
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	public long getRejectedRequests() {
+		return rejectedRequests.sum();
+	}
+
+	public long getCircuitBreakerOpenings() {
+		return circuitBreakerOpenings.sum();
+	}
+
+	public long getHedgedRequests() {
+		return hedgedRequests.sum();
+	}
+
+	public long getHedgeWins() {
+		return hedgeWins.sum();
+	}
+
+	public int getLeasedConnections() {
+		PoolStats stats = getPoolStats();
+		return (stats != null ? stats.getLeased() : 0);
+	}
+
+	public int getAvailableConnections() {
+		PoolStats stats = getPoolStats();
+		return (stats != null ? stats.getAvailable() : 0);
+	}
+
+	public int getPendingConnections() {
+		PoolStats stats = getPoolStats();
+		return (stats != null ? stats.getPending() : 0);
+	}
+
+	public void reset() {
+		operations.clear();
+		statusCounts.clear();
+		bytesRead.reset();
+		bytesWritten.reset();
+		retries.reset();
+		rejectedRequests.reset();
+		circuitBreakerOpenings.reset();
+		hedgedRequests.reset();
+		hedgeWins.reset();
+	}
+
+	private PoolStats getPoolStats() {
+		ConnPoolControl<HttpRoute> pool = this.pool;
+		return (pool != null ? pool.getTotalStats() : null);
+	}
+
+	/**
+	 * Lock-free histogram of durations in microseconds; every power of two is split in SUB_BUCKETS linear buckets
+	 */
+	static class Histogram {
+		private final static int SUB_BUCKETS = 8;
+		// up to 2^40 microseconds, about 12 days
+		private final static int BUCKETS = 40 * SUB_BUCKETS;
+		private final static double[] UPPER_BOUNDS = new double[BUCKETS];
+		static {
+			for(int i=0; i<BUCKETS; i++) {
+				UPPER_BOUNDS[i] = (1L << (i / SUB_BUCKETS)) * (1 + (i % SUB_BUCKETS + 1) / (double)SUB_BUCKETS);
+			}
+		}
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errorCount = new LongAdder();
+		private final LongAdder sumMicros = new LongAdder();
+		private final AtomicLong maxMicros = new AtomicLong();
+
+		void record(long durationNanos, boolean error) {
+			long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+			buckets.incrementAndGet(getBucket(micros));
+			count.increment();
+			sumMicros.add(micros);
+			if(error) {
+				errorCount.increment();
+			}
+			long max = maxMicros.get();
+			while(micros > max && !maxMicros.compareAndSet(max, micros)) {
+				max = maxMicros.get();
+			}
+		}
+
+		static int getBucket(long micros) {
+			if(micros <= 1) {
+				return 0;
+			}
+			// floor of log2(micros), then the linear position between 2^exponent and 2^(exponent+1)
+			int exponent = 63 - Long.numberOfLeadingZeros(micros);
+			int fraction = (int)(((micros - (1L << exponent)) * SUB_BUCKETS) >> exponent);
+			return Math.min(BUCKETS - 1, exponent * SUB_BUCKETS + fraction);
+		}
+
+		/**
+		 * @return upper bound in microseconds of the bucket that contains the given percentile
+		 */
+		double getPercentile(long[] counts, long total, double percentile) {
+			long rank = (long)Math.ceil(total * percentile / 100.0);
+			long seen = 0;
+			for(int i=0; i<counts.length; i++) {
+				seen += counts[i];
+				if(seen >= rank && seen > 0) {
+					return Math.min(UPPER_BOUNDS[i], maxMicros.get());
+				}
+			}
+			return maxMicros.get();
+		}
+
+		WebDAVOperationStats snapshot(String method) {
+			long[] counts = new long[BUCKETS];
+			long total = 0;
+			for(int i=0; i<BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			double mean = (total > 0 ? sumMicros.sum() / (double)total : 0);
+			return new WebDAVOperationStats(method, count.sum(), errorCount.sum(), mean / 1000.0,
+					getPercentile(counts, total, 50) / 1000.0, getPercentile(counts, total, 90) / 1000.0, 
+					getPercentile(counts, total, 99) / 1000.0, maxMicros.get() / 1000.0);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package nl.ellipsis.webdav.client;
+
+import java.util.Map;
+
+/**
+ * JMX view of WebDAVInMemoryMetrics
+ */
+public interface WebDAVInMemoryMetricsMXBean {
+
+	/**
+	 * @return latency statistics by WebDAV method
+	 */
+	public Map<String, WebDAVOperationStats> getOperations();
+
+	/**
+	 * @return number of responses by method and status, e.g. "PUT 201"; status 0 counts I/O errors
+	 */
+	public Map<String, Long> getStatusCounts();
+
+	public long getBytesRead();
+
+	public long getBytesWritten();
+
+	public long getRetries();
+
+	/**
+	 * @return number of requests refused because a circuit breaker was open
+	 */
+	public long getRejectedRequests();
+
+	/**
+	 * @return number of times a circuit breaker opened
+	 */
+	public long getCircuitBreakerOpenings();
+
+	/**
+	 * @return number of hedged read requests sent
+	 */
+	public long getHedgedRequests();
+
+	/**
+	 * @return number of hedged read requests that answered before the original request
+	 */
+	public long getHedgeWins();
+
+	public int getLeasedConnections();
+
+	public int getAvailableConnections();
+
+	public int getPendingConnections();
+
+	/**
+	 * Clear all counters and histograms
+	 */
+	public void reset();
+}
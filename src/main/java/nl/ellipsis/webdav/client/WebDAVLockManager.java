@@ -0,0 +1,496 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Keeps WebDAV locks alive by refreshing them in the background before their timeout expires.
+ *
+ * Every lock is refreshed once about two thirds of its timeout have passed, minus a random part of the
+ * timeout, so locks that were taken together do not all come up for refresh at the same moment. The
+ * timeout is the one the server granted in its LOCK response, which may be shorter than the requested one.
+ * Refreshes run on one scheduler for all locks, and at most concurrency of them are sent at the same
+ * time; a refresh that finds all slots taken is postponed by a random delay. A refresh that fails with
+ * an I/O error or a 5xx status is tried again until the lock has expired; a lock the server no longer
+ * knows is dropped and counted as lost. close() stops refreshing and unlocks all held locks.
+ * The number of held and lost locks and the refresh latency are exported as an MXBean.
+ *
+ * <pre>
+ * WebDAVLockManager locks = new WebDAVLockManager(client).setTimeout(300000);
+ * locks.registerMBean("nl.ellipsis.webdav:type=WebDAVLockManager,name=documents");
+ * locks.lock(uri);
+ * ...
+ * locks.unlock(uri);
+ * </pre>
+ */
+public class WebDAVLockManager implements Closeable, WebDAVLockManagerMXBean {
+
+	protected static Logger logger = Logger.getLogger(WebDAVLockManager.class);
+
+	public final static int DEFAULT_TIMEOUT = 300000;
+	public final static int DEFAULT_CONCURRENCY = 4;
+	public final static double DEFAULT_JITTER = 0.1;
+
+	// delay before a failed refresh is tried again, or a refresh waiting for a free slot
+	private final static long RETRY_DELAY = 5000L;
+	private final static long BUSY_DELAY = 1000L;
+	// shortest delay before a failed refresh is tried again, also when the lock expires sooner
+	private final static long MIN_RETRY_DELAY = 100L;
+	private final static AtomicInteger threadCount = new AtomicInteger();
+
+	private final WebDAVClientAPI client;
+	private final LongSupplier nanoTime;
+	private final ConcurrentMap<URI, Lease> leases = new ConcurrentHashMap<URI, Lease>();
+	private final WebDAVInMemoryMetrics.Histogram refreshLatency = new WebDAVInMemoryMetrics.Histogram();
+	private final LongAdder refreshCount = new LongAdder();
+	private final LongAdder refreshFailures = new LongAdder();
+	private final LongAdder lostLocks = new LongAdder();
+	private ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+	private int timeout = DEFAULT_TIMEOUT;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private double jitter = DEFAULT_JITTER;
+	private Semaphore slots;
+	private volatile boolean closed = false;
+	private ObjectName objectName;
+
+	/**
+	 * Constructor; the manager starts its own scheduler threads with the first lock
+	 *
+	 * @param client	client used to refresh and release the locks
+	 */
+	public WebDAVLockManager(WebDAVClientAPI client) {
+		this(client, null, System::nanoTime);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param client	client used to refresh and release the locks
+	 * @param scheduler	scheduler shared with other components; it is not shut down by close()
+	 */
+	public WebDAVLockManager(WebDAVClientAPI client, ScheduledExecutorService scheduler) {
+		this(client, scheduler, System::nanoTime);
+	}
+
+	/**
+	 * Constructor with the clock the lock timeouts are measured with, which should be the clock of the scheduler
+	 *
+	 * @param scheduler	shared scheduler, or null to start own scheduler threads
+	 * @param nanoTime	e.g. System::nanoTime
+	 */
+	WebDAVLockManager(WebDAVClientAPI client, ScheduledExecutorService scheduler, LongSupplier nanoTime) {
+		this.client = client;
+		this.scheduler = scheduler;
+		this.ownScheduler = (scheduler == null);
+		this.nanoTime = nanoTime;
+	}
+
+	/**
+	 * @param timeout	lock timeout in milliseconds that is requested with every LOCK; locks are refreshed
+	 * 			by the timeout the server granted, which may be shorter
+	 */
+	public WebDAVLockManager setTimeout(int timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * @param concurrency	maximum number of refresh requests that run at the same time
+	 */
+	public WebDAVLockManager setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * @param jitter	fraction of the timeout of which a random part is taken off every refresh delay
+	 */
+	public WebDAVLockManager setJitter(double jitter) {
+		this.jitter = jitter;
+		return this;
+	}
+
+	/**
+	 * Take out a new exclusive write lock with lockResource and keep it alive until unlock or close
+	 *
+	 * @param uri	Relative URI on WebDAV server
+	 * @return WebDAVResource returned by lockResource, the token is available from getLockToken(uri)
+	 * @throws IOException
+	 * @throws DavException	423 when the resource is already locked
+	 */
+	public WebDAVResourceType lock(URI uri) throws IOException, DavException {
+		return lock(uri, null);
+	}
+
+	/**
+	 * Refresh an existing lock with lockResource and keep it alive until unlock or close, or take out a 
+	 * new exclusive write lock when lockToken is null
+	 *
+	 * @param uri	Relative URI on WebDAV server
+	 * @param lockToken	token of the lock, or null
+	 * @return WebDAVResource returned by lockResource
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public WebDAVResourceType lock(URI uri, String lockToken) throws IOException, DavException {
+		if(closed) {
+			throw new DavException(HttpStatus.SC_SERVICE_UNAVAILABLE, "lock manager is closed");
+		}
+		long start = nanoTime.getAsLong();
+		WebDAVResourceType resource = client.lockResource(uri, lockToken, timeout);
+		refreshLatency.record(nanoTime.getAsLong() - start, false);
+		String token = lockToken;
+		if(resource instanceof WebDAVWriteResource && ((WebDAVWriteResource)resource).getLockToken() != null) {
+			token = ((WebDAVWriteResource)resource).getLockToken();
+		}
+		if(token == null) {
+			throw new DavException(HttpStatus.SC_BAD_GATEWAY, "no lock token for " + uri);
+		}
+		Lease lease = track(uri, token, start, getGrantedTimeout(resource));
+		if(closed) {
+			// closed while the LOCK was sent: close() may have taken its list of locks before the lease was added, 
+			// in which case a new lock is released here, otherwise close() releases it
+			if(leases.remove(uri, lease)) {
+				lease.cancel();
+				if(lockToken == null) {
+					client.unlockResource(uri, token);
+				}
+			}
+			throw new DavException(HttpStatus.SC_SERVICE_UNAVAILABLE, "lock manager is closed");
+		}
+		return resource;
+	}
+
+	/**
+	 * Keep a lock alive that has just been taken out or refreshed by the caller with the timeout of setTimeout
+	 *
+	 * @param uri	Relative URI on WebDAV server
+	 * @param lockToken	token of the lock
+	 * @throws DavException	when the manager is closed
+	 */
+	public void track(URI uri, String lockToken) throws DavException {
+		if(closed) {
+			throw new DavException(HttpStatus.SC_SERVICE_UNAVAILABLE, "lock manager is closed");
+		}
+		Lease lease = track(uri, lockToken, nanoTime.getAsLong(), timeout);
+		if(closed) {
+			// the caller took out the lock and keeps it
+			if(leases.remove(uri, lease)) {
+				lease.cancel();
+			}
+			throw new DavException(HttpStatus.SC_SERVICE_UNAVAILABLE, "lock manager is closed");
+		}
+	}
+
+	/**
+	 * Stop refreshing a lock and release it with unlockResource
+	 *
+	 * @param uri	Relative URI on WebDAV server
+	 * @return WebDAVResource returned by unlockResource, or null when no lock on uri is held
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public WebDAVResourceType unlock(URI uri) throws IOException, DavException {
+		Lease lease = leases.remove(uri);
+		if(lease == null) {
+			return null;
+		}
+		lease.cancel();
+		return client.unlockResource(uri, lease.lockToken);
+	}
+
+	/**
+	 * Stop refreshing a lock without releasing it, e.g. after the resource has been deleted
+	 *
+	 * @return true when a lock on uri was held
+	 */
+	public boolean forget(URI uri) {
+		Lease lease = leases.remove(uri);
+		if(lease != null) {
+			lease.cancel();
+		}
+		return lease != null;
+	}
+
+	/**
+	 * @return token of the lock held on uri, or null
+	 */
+	public String getLockToken(URI uri) {
+		Lease lease = leases.get(uri);
+		return (lease != null ? lease.lockToken : null);
+	}
+
+	/**
+	 * @return number of locks that are held and refreshed
+	 */
+	public int getLockCount() {
+		return leases.size();
+	}
+
+	/**
+	 * @return number of refresh requests sent, including failed ones
+	 */
+	public long getRefreshCount() {
+		return refreshCount.sum();
+	}
+
+	public long getRefreshFailures() {
+		return refreshFailures.sum();
+	}
+
+	/**
+	 * @return number of locks dropped because the server rejected a refresh or the lock expired
+	 */
+	public long getLostLocks() {
+		return lostLocks.sum();
+	}
+
+	/**
+	 * @return latency statistics of the LOCK requests of lock and the background refreshes
+	 */
+	public WebDAVOperationStats getRefreshLatency() {
+		return refreshLatency.snapshot("LOCK");
+	}
+
+	/**
+	 * Register this instance with the platform MBean server; close() unregisters it
+	 * 
+	 * @param name	object name, e.g. nl.ellipsis.webdav:type=WebDAVLockManager,name=documents
+	 * @throws JMException
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	public synchronized void unregisterMBean() throws JMException {
+		if(objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Stop refreshing and unlock all held locks, at most concurrency at the same time
+	 */
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			unregisterMBean();
+		} catch (JMException e) {
+			logger.warn("cannot unregister " + objectName, e);
+		}
+		List<Callable<Void>> unlocks = new ArrayList<Callable<Void>>();
+		for(final URI uri : new ArrayList<URI>(leases.keySet())) {
+			unlocks.add(new Callable<Void>() {
+				public Void call() {
+					try {
+						unlock(uri);
+					} catch (IOException | DavException e) {
+						logger.warn("UNLOCK " + uri + " failed", e);
+					}
+					return null;
+				}
+			});
+		}
+		if(!unlocks.isEmpty()) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, unlocks.size())), createThreadFactory("webdav-unlock-"));
+			try {
+				executor.invokeAll(unlocks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		synchronized(this) {
+			if(ownScheduler && scheduler != null) {
+				scheduler.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Add the lease before the callers check closed again: close() sets closed before it takes the list of 
+	 * locks to release, so either close() sees the lease or the caller sees closed
+	 */
+	private Lease track(URI uri, String lockToken, long refreshedAt, long grantedTimeout) {
+		Lease lease = new Lease(uri, lockToken, refreshedAt, grantedTimeout);
+		Lease previous = leases.put(uri, lease);
+		if(previous != null) {
+			previous.cancel();
+		}
+		schedule(lease, getRefreshDelay(grantedTimeout));
+		return lease;
+	}
+
+	/**
+	 * @return timeout in milliseconds granted by the server, or the requested timeout when the LOCK response did not contain it
+	 */
+	private long getGrantedTimeout(WebDAVResourceType resource) {
+		if(resource instanceof WebDAVWriteResource && ((WebDAVWriteResource)resource).getLockTimeout() > 0) {
+			return ((WebDAVWriteResource)resource).getLockTimeout();
+		}
+		return timeout;
+	}
+
+	/**
+	 * @param grantedTimeout	timeout of the lock in milliseconds
+	 * @return nanoseconds from a successful LOCK to its refresh
+	 */
+	private long getRefreshDelay(long grantedTimeout) {
+		long delay = TimeUnit.MILLISECONDS.toNanos(grantedTimeout) * 2 / 3;
+		long spread = (long)(TimeUnit.MILLISECONDS.toNanos(grantedTimeout) * Math.max(0, Math.min(jitter, 0.5)));
+		return delay - (spread > 0 ? ThreadLocalRandom.current().nextLong(spread) : 0);
+	}
+
+	private void schedule(final Lease lease, long delayNanos) {
+		if(closed || leases.get(lease.uri) != lease) {
+			return;
+		}
+		try {
+			lease.future = getScheduler().schedule(new Runnable() {
+				public void run() {
+					refresh(lease);
+				}
+			}, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// the scheduler is shut down, the lock expires on the server
+			logger.warn("cannot schedule refresh of lock on " + lease.uri, e);
+		}
+	}
+
+	private void refresh(Lease lease) {
+		if(closed || leases.get(lease.uri) != lease) {
+			return;
+		}
+		Semaphore slots = getSlots();
+		if(!slots.tryAcquire()) {
+			schedule(lease, TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(1, BUSY_DELAY + 1)));
+			return;
+		}
+		long start = nanoTime.getAsLong();
+		try {
+			WebDAVResourceType resource = client.lockResource(lease.uri, lease.lockToken, timeout);
+			long now = nanoTime.getAsLong();
+			refreshLatency.record(now - start, false);
+			refreshCount.increment();
+			long grantedTimeout = getGrantedTimeout(resource);
+			lease.expiresAt = start + TimeUnit.MILLISECONDS.toNanos(grantedTimeout);
+			schedule(lease, getRefreshDelay(grantedTimeout) - (now - start));
+		} catch (IOException | DavException e) {
+			long now = nanoTime.getAsLong();
+			refreshLatency.record(now - start, true);
+			refreshCount.increment();
+			refreshFailures.increment();
+			long remaining = lease.expiresAt - now;
+			if(isLost(e) || remaining <= 0) {
+				if(leases.remove(lease.uri, lease)) {
+					lostLocks.increment();
+					logger.warn("lock on " + lease.uri + " lost", e);
+				}
+			} else {
+				logger.info("refresh of lock on " + lease.uri + " failed, trying again", e);
+				long delay = Math.min(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY), remaining / 2);
+				schedule(lease, Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_RETRY_DELAY), delay));
+			}
+		} finally {
+			slots.release();
+		}
+	}
+
+	/**
+	 * @return true when the server does not know the lock (any more), so refreshing is pointless
+	 */
+	private static boolean isLost(Exception e) {
+		if(e instanceof DavException) {
+			int status = ((DavException)e).getErrorCode();
+			return status < HttpStatus.SC_INTERNAL_SERVER_ERROR && status != 429;
+		}
+		return false;
+	}
+
+	private synchronized ScheduledExecutorService getScheduler() {
+		if(scheduler == null) {
+			scheduler = Executors.newScheduledThreadPool(Math.max(1, concurrency), createThreadFactory("webdav-lock-"));
+		}
+		return scheduler;
+	}
+
+	private synchronized Semaphore getSlots() {
+		if(slots == null) {
+			slots = new Semaphore(Math.max(1, concurrency));
+		}
+		return slots;
+	}
+
+	private static ThreadFactory createThreadFactory(final String prefix) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * A held lock with its pending refresh
+	 */
+	private static class Lease {
+		private final URI uri;
+		private final String lockToken;
+		private volatile long expiresAt;
+		private volatile ScheduledFuture<?> future;
+
+		private Lease(URI uri, String lockToken, long refreshedAt, long grantedTimeout) {
+			this.uri = uri;
+			this.lockToken = lockToken;
+			this.expiresAt = refreshedAt + TimeUnit.MILLISECONDS.toNanos(grantedTimeout);
+		}
+
+		private void cancel() {
+			ScheduledFuture<?> future = this.future;
+			if(future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+}
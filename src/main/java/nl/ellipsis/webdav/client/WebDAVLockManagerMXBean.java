@@ -0,0 +1,29 @@
+package nl.ellipsis.webdav.client;
+
+/**
+ * JMX view of WebDAVLockManager
+ */
+public interface WebDAVLockManagerMXBean {
+
+	/**
+	 * @return number of locks that are held and refreshed
+	 */
+	public int getLockCount();
+
+	/**
+	 * @return number of refresh requests sent, including failed ones
+	 */
+	public long getRefreshCount();
+
+	public long getRefreshFailures();
+
+	/**
+	 * @return number of locks dropped because the server rejected a refresh or the lock expired
+	 */
+	public long getLostLocks();
+
+	/**
+	 * @return latency statistics of the LOCK requests of lock and the background refreshes
+	 */
+	public WebDAVOperationStats getRefreshLatency();
+}
@@ -0,0 +1,414 @@
+package nl.ellipsis.webdav.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.webdav.DavConstants;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Bounded LRU cache for PROPFIND results of a WebDAVClientImpl.
+ *
+ * Entries hold either the properties of a single resource, the child listing of a collection,
+ * or the fact that a resource does not exist (404). A variant distinguishes results of PROPFIND
+ * requests for different property sets; null stands for allprop. Fresh entries are served without a request;
+ * stale entries that carry a getetag or getlastmodified validator can be renewed after a cheap
+ * revalidation PROPFIND. A listing is only renewed when every member still has the same validator,
+ * because a collection's own getetag or getlastmodified does not change when a member is modified. 
+ * Cached WebDAVResourceType instances are shared between callers and must not be modified.
+ */
+public class WebDAVMetadataCache {
+
+	public enum Kind { RESOURCE, CHILDREN }
+
+	private final int maxEntries;
+	private final long timeToLive;
+	private final long negativeTimeToLive;
+	private final LinkedHashMap<Key, Entry> entries;
+	// the keys of every cached path, so invalidating a path does not scan the whole cache
+	private final Map<String, Set<Key>> keysByPath = new HashMap<String, Set<Key>>();
+
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong revalidationCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxEntries	maximum number of cached entries, least recently used entries are evicted first
+	 * @param timeToLive	time in milliseconds an entry is served without revalidation
+	 * @param negativeTimeToLive	time in milliseconds a not-found entry is served
+	 */
+	public WebDAVMetadataCache(int maxEntries, long timeToLive, long negativeTimeToLive) {
+		this.maxEntries = maxEntries;
+		this.timeToLive = timeToLive;
+		this.negativeTimeToLive = negativeTimeToLive;
+		this.entries = new LinkedHashMap<Key, WebDAVMetadataCache.Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, WebDAVMetadataCache.Entry> eldest) {
+				boolean evict = size() > WebDAVMetadataCache.this.maxEntries;
+				if(evict) {
+					unindex(eldest.getKey());
+					evictionCount.incrementAndGet();
+				}
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * Look up an entry; counts as a hit when a fresh entry is found and as a miss otherwise.
+	 *
+	 * @return the entry, fresh or stale, or null when nothing is cached
+	 */
+	public Entry get(Kind kind, String path, String variant) {
+		Entry entry;
+		synchronized(entries) {
+			entry = entries.get(new Key(kind, normalize(path), variant));
+		}
+		if(entry != null && entry.isFresh()) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+		}
+		return entry;
+	}
+
+	/**
+	 * Current generation; pass it to a put method so results of requests that overlapped
+	 * with an invalidation are not cached.
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	public void putResource(String path, String variant, WebDAVResourceType resource, long generation) {
+		put(new Key(Kind.RESOURCE, normalize(path), variant), new Entry(resource, null, getValidator(resource), null, timeToLive), generation);
+	}
+
+	/**
+	 * The listing can only be revalidated when every member carries a getetag or getlastmodified property
+	 */
+	public void putChildren(String path, String variant, List<WebDAVResourceType> children, long generation) {
+		List<WebDAVResourceType> copy = Collections.unmodifiableList(new ArrayList<WebDAVResourceType>(children));
+		put(new Key(Kind.CHILDREN, normalize(path), variant), new Entry(null, copy, null, getMemberValidators(copy), timeToLive), generation);
+	}
+
+	public void putNotFound(String path, String variant, long generation) {
+		if(negativeTimeToLive > 0) {
+			put(new Key(Kind.RESOURCE, normalize(path), variant), new Entry(null, null, null, null, negativeTimeToLive), generation);
+		}
+	}
+
+	/**
+	 * Mark a stale entry fresh again after its validator has been confirmed by the server
+	 */
+	public void renew(Entry entry) {
+		entry.renew();
+		revalidationCount.incrementAndGet();
+	}
+
+	/**
+	 * Remove the cached resource and listing of path, and the listing of its parent
+	 */
+	public void invalidate(String path) {
+		String normalized = normalize(path);
+		String parent = getParentPath(normalized);
+		synchronized(entries) {
+			generation.incrementAndGet();
+			remove(normalized, null);
+			if(parent != null) {
+				remove(parent, Kind.CHILDREN);
+			}
+		}
+		invalidationCount.incrementAndGet();
+	}
+
+	/**
+	 * Remove path and all cached descendants of path, and the listing of its parent
+	 */
+	public void invalidateTree(String path) {
+		String normalized = normalize(path);
+		String prefix = (normalized.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? normalized : normalized + PfxDocumentConstants.URI_SEPARATOR);
+		synchronized(entries) {
+			invalidate(normalized);
+			Iterator<Map.Entry<String, Set<Key>>> it = keysByPath.entrySet().iterator();
+			while(it.hasNext()) {
+				Map.Entry<String, Set<Key>> indexed = it.next();
+				if(indexed.getKey().startsWith(prefix)) {
+					entries.keySet().removeAll(indexed.getValue());
+					it.remove();
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized(entries) {
+			generation.incrementAndGet();
+			entries.clear();
+			keysByPath.clear();
+		}
+	}
+
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return number of stale entries that were renewed after revalidation
+	 */
+	public long getRevalidationCount() {
+		return revalidationCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	private void put(Key key, Entry entry, long generation) {
+		synchronized(entries) {
+			if(this.generation.get() == generation) {
+				// indexed first, an eviction by this put unindexes its own key
+				Set<Key> keys = keysByPath.get(key.path);
+				if(keys == null) {
+					keys = new HashSet<Key>();
+					keysByPath.put(key.path, keys);
+				}
+				keys.add(key);
+				entries.put(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Remove the entries of path, of any kind when kind is null; the caller holds the lock on entries
+	 */
+	private void remove(String path, Kind kind) {
+		Set<Key> keys = keysByPath.get(path);
+		if(keys != null) {
+			Iterator<Key> it = keys.iterator();
+			while(it.hasNext()) {
+				Key key = it.next();
+				if(kind == null || key.kind == kind) {
+					entries.remove(key);
+					it.remove();
+				}
+			}
+			if(keys.isEmpty()) {
+				keysByPath.remove(path);
+			}
+		}
+	}
+
+	private void unindex(Key key) {
+		Set<Key> keys = keysByPath.get(key.path);
+		if(keys != null && keys.remove(key) && keys.isEmpty()) {
+			keysByPath.remove(key.path);
+		}
+	}
+
+	static String normalize(String path) {
+		if(path == null || path.isEmpty()) {
+			return PfxDocumentConstants.URI_SEPARATOR;
+		}
+		if(path.length() > 1 && path.endsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+			return path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+
+	static String getParentPath(String normalizedPath) {
+		int index = normalizedPath.lastIndexOf(PfxDocumentConstants.URI_SEPARATOR);
+		if(normalizedPath.length() <= 1 || index < 0) {
+			return null;
+		}
+		return (index == 0 ? PfxDocumentConstants.URI_SEPARATOR : normalizedPath.substring(0, index));
+	}
+
+	private static Validator getValidator(WebDAVResourceType resource) {
+		Validator validator = null;
+		if(resource != null) {
+			String etag = getPropertyValue(resource, DavConstants.PROPERTY_GETETAG);
+			String lastModified = getPropertyValue(resource, DavConstants.PROPERTY_GETLASTMODIFIED);
+			if(etag != null || lastModified != null) {
+				validator = new Validator(etag, lastModified);
+			}
+		}
+		return validator;
+	}
+
+	/**
+	 * @return validators of the members by href, or null when a member has none
+	 */
+	private static Map<String, Validator> getMemberValidators(List<WebDAVResourceType> members) {
+		Map<String, Validator> validators = new HashMap<String, Validator>();
+		for(WebDAVResourceType member : members) {
+			Validator validator = getValidator(member);
+			if(validator == null || member.getHref() == null) {
+				return null;
+			}
+			validators.put(member.getHref(), validator);
+		}
+		return validators;
+	}
+
+	static String getPropertyValue(WebDAVResourceType resource, String name) {
+		for(WebDAVPropertyType property : resource.getProperties()) {
+			if(name.equals(property.getName())) {
+				return property.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A cached PROPFIND result
+	 */
+	public static class Entry {
+		private final WebDAVResourceType resource;
+		private final List<WebDAVResourceType> children;
+		private final Validator validator;
+		private final Map<String, Validator> memberValidators;
+		private final long timeToLive;
+		private volatile long expires;
+
+		private Entry(WebDAVResourceType resource, List<WebDAVResourceType> children, Validator validator, Map<String, Validator> memberValidators, long timeToLive) {
+			this.resource = resource;
+			this.children = children;
+			this.validator = validator;
+			this.memberValidators = memberValidators;
+			this.timeToLive = timeToLive;
+			renew();
+		}
+
+		public boolean isFresh() {
+			return System.currentTimeMillis() < expires;
+		}
+
+		public boolean isNotFound() {
+			return resource == null && children == null;
+		}
+
+		public WebDAVResourceType getResource() {
+			return resource;
+		}
+
+		public List<WebDAVResourceType> getChildren() {
+			return children;
+		}
+
+		/**
+		 * @return true when the entry can be revalidated with getetag and getlastmodified of the given resource
+		 */
+		public boolean isValidatedBy(WebDAVResourceType current) {
+			return validator != null && validator.equals(getValidator(current));
+		}
+
+		/**
+		 * @param members	current members of the collection, with getetag and getlastmodified
+		 * @return true when the listing has the same members, each with the same getetag and getlastmodified
+		 */
+		public boolean isValidatedBy(List<WebDAVResourceType> members) {
+			if(memberValidators == null || memberValidators.size() != members.size()) {
+				return false;
+			}
+			for(WebDAVResourceType member : members) {
+				Validator cached = memberValidators.get(member.getHref());
+				if(cached == null || !cached.equals(getValidator(member))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public boolean isRevalidatable() {
+			return validator != null || memberValidators != null;
+		}
+
+		private void renew() {
+			this.expires = System.currentTimeMillis() + timeToLive;
+		}
+	}
+
+	private static class Validator {
+		private final String etag;
+		private final String lastModified;
+
+		private Validator(String etag, String lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Validator)) {
+				return false;
+			}
+			Validator v = (Validator)o;
+			return (etag == null ? v.etag == null : etag.equals(v.etag))
+					&& (lastModified == null ? v.lastModified == null : lastModified.equals(v.lastModified));
+		}
+
+		@Override
+		public int hashCode() {
+			return (etag == null ? 0 : etag.hashCode()) * 31 + (lastModified == null ? 0 : lastModified.hashCode());
+		}
+	}
+
+	private static class Key {
+		private final Kind kind;
+		private final String path;
+		private final String variant;
+
+		private Key(Kind kind, String path, String variant) {
+			this.kind = kind;
+			this.path = path;
+			this.variant = variant;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return kind == k.kind && path.equals(k.path) && (variant == null ? k.variant == null : variant.equals(k.variant));
+		}
+
+		@Override
+		public int hashCode() {
+			return (kind.hashCode() * 31 + path.hashCode()) * 31 + (variant == null ? 0 : variant.hashCode());
+		}
+	}
+}
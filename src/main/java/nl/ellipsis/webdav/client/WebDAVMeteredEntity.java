@@ -0,0 +1,63 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Entity wrapper that reports the body bytes that pass through it to WebDAVMetrics
+ */
+class WebDAVMeteredEntity extends HttpEntityWrapper {
+
+	private final WebDAVMetrics metrics;
+
+	WebDAVMeteredEntity(HttpEntity entity, WebDAVMetrics metrics) {
+		super(entity);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		return new FilterInputStream(super.getContent()) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if(b != -1) {
+					metrics.recordBytesRead(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if(n > 0) {
+					metrics.recordBytesRead(n);
+				}
+				return n;
+			}
+		};
+	}
+
+	@Override
+	public void writeTo(OutputStream outStream) throws IOException {
+		super.writeTo(new FilterOutputStream(outStream) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				metrics.recordBytesWritten(1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				metrics.recordBytesWritten(len);
+			}
+		});
+	}
+}
@@ -0,0 +1,66 @@
+package nl.ellipsis.webdav.client;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * Service provider interface for request metrics of a WebDAVClientImpl, set with WebDAVClientConfig.setMetrics.
+ *
+ * Methods are called on the request threads and must be thread-safe and cheap; they must not throw.
+ * WebDAVNoopMetrics discards everything, WebDAVInMemoryMetrics keeps histograms and exports them over JMX.
+ */
+public interface WebDAVMetrics {
+
+	/** status passed to recordRequest when no response has been received */
+	public final static int STATUS_IO_ERROR = 0;
+
+	/**
+	 * Called once for every request, when the response headers have been received or the request failed
+	 * 
+	 * @param method	WebDAV method, e.g. PROPFIND or PUT
+	 * @param status	HTTP status code, or STATUS_IO_ERROR
+	 * @param durationNanos	time from sending the request up to the response headers
+	 */
+	public void recordRequest(String method, int status, long durationNanos);
+
+	/**
+	 * @param bytes	number of response body bytes read by the client, after content decoding
+	 */
+	public void recordBytesRead(long bytes);
+
+	/**
+	 * @param bytes	number of request body bytes written, before transfer encoding
+	 */
+	public void recordBytesWritten(long bytes);
+
+	/**
+	 * Called when a request is sent again after an I/O error, or after a 429, 502, 503 or 504 response
+	 * of an idempotent request
+	 */
+	public void recordRetry(String method);
+
+	/**
+	 * Called when a request is not sent because the circuit breaker of the host is open
+	 */
+	public void recordRejected(String method);
+
+	/**
+	 * Called when the circuit breaker of a host opens after consecutive failures
+	 * 
+	 * @param host	host name and port, e.g. dav.example.com:443
+	 */
+	public void recordCircuitOpened(String host);
+
+	/**
+	 * Called when a second copy of a slow read request has been sent
+	 * 
+	 * @param method	WebDAV method, e.g. GET or PROPFIND
+	 * @param won	true when the copy answered before the original request
+	 */
+	public void recordHedge(String method, boolean won);
+
+	/**
+	 * Called by the client constructor with its connection pool, so leased, available and pending connections can be reported
+	 */
+	public void bindConnectionPool(ConnPoolControl<HttpRoute> pool);
+}
@@ -0,0 +1,41 @@
+package nl.ellipsis.webdav.client;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * WebDAVMetrics that records nothing; the default of WebDAVClientConfig.
+ *
+ * The client does not count body bytes when this implementation is configured.
+ */
+public final class WebDAVNoopMetrics implements WebDAVMetrics {
+
+	public final static WebDAVNoopMetrics INSTANCE = new WebDAVNoopMetrics();
+
+	private WebDAVNoopMetrics() {
+	}
+
+	public void recordRequest(String method, int status, long durationNanos) {
+	}
+
+	public void recordBytesRead(long bytes) {
+	}
+
+	public void recordBytesWritten(long bytes) {
+	}
+
+	public void recordRetry(String method) {
+	}
+
+	public void recordRejected(String method) {
+	}
+
+	public void recordCircuitOpened(String host) {
+	}
+
+	public void recordHedge(String method, boolean won) {
+	}
+
+	public void bindConnectionPool(ConnPoolControl<HttpRoute> pool) {
+	}
+}
@@ -0,0 +1,74 @@
+package nl.ellipsis.webdav.client;
+
+/**
+ * Snapshot of the latency histogram of one WebDAV method, as returned by WebDAVInMemoryMetrics.
+ *
+ * Percentiles are the upper bound of a histogram bucket and overestimate by at most 12.5%; 
+ * durations run up to the response headers.
+ */
+public class WebDAVOperationStats {
+
+	private final String method;
+	private final long count;
+	private final long errorCount;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p90Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+	WebDAVOperationStats(String method, long count, long errorCount, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+		this.method = method;
+		this.count = count;
+		this.errorCount = errorCount;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p90Millis = p90Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return number of requests, including failed ones
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return number of requests with an I/O error or a status of 400 or higher
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+	public double getP90Millis() {
+		return p90Millis;
+	}
+
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s count=%d errors=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", 
+				method, count, errorCount, meanMillis, p50Millis, p90Millis, p99Millis, maxMillis);
+	}
+}
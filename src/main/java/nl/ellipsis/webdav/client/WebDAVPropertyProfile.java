@@ -0,0 +1,32 @@
+package nl.ellipsis.webdav.client;
+
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+
+/**
+ * Predefined property sets for a selective (prop-based) PROPFIND.
+ */
+public enum WebDAVPropertyProfile {
+
+	/**
+	 * Properties needed for a folder listing: resourcetype, displayname, getcontentlength, getlastmodified and getetag
+	 */
+	MINIMAL(DavPropertyName.RESOURCETYPE, DavPropertyName.DISPLAYNAME, DavPropertyName.GETCONTENTLENGTH, DavPropertyName.GETLASTMODIFIED, DavPropertyName.GETETAG);
+
+	private final DavPropertyName[] propertyNames;
+
+	private WebDAVPropertyProfile(DavPropertyName... propertyNames) {
+		this.propertyNames = propertyNames;
+	}
+
+	/**
+	 * @return a new, modifiable set with the property names of this profile
+	 */
+	public DavPropertyNameSet getPropertyNames() {
+		DavPropertyNameSet set = new DavPropertyNameSet();
+		for(DavPropertyName propertyName : propertyNames) {
+			set.add(propertyName);
+		}
+		return set;
+	}
+}
@@ -0,0 +1,413 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.jackrabbit.webdav.DavMethods;
+import org.apache.log4j.Logger;
+
+/**
+ * Retries, circuit breakers and hedged requests around WebDAVClientImpl.execute.
+ *
+ * GET, HEAD and PROPFIND requests are sent again after an I/O error or a 429, 502, 503 or 504 response,
+ * with an exponential backoff of which a random part is used (full jitter), so many clients that failed
+ * together do not come back together. Every host has a circuit breaker that opens after a number of
+ * consecutive failures; while it is open requests are answered with a 503 response without being sent,
+ * after which a single trial request decides whether it closes again. A read request that has not
+ * been answered after a latency percentile of its method is sent a second time, and the first answer
+ * is used while the other request is aborted.
+ *
+ * Writes are not retried or hedged, but they do pass the circuit breaker.
+ */
+class WebDAVResilience {
+
+	protected static Logger logger = Logger.getLogger(WebDAVResilience.class);
+
+	private final static int SC_TOO_MANY_REQUESTS = 429;
+	private final static AtomicInteger threadCount = new AtomicInteger();
+
+	private final WebDAVClientImpl client;
+	private final WebDAVMetrics metrics;
+	private final int maxRetries;
+	private final long retryBaseDelay;
+	private final long retryMaxDelay;
+	private final int circuitBreakerThreshold;
+	private final long circuitBreakerOpenTime;
+	private final double hedgePercentile;
+	private final int hedgeMinSamples;
+	private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+	private final ConcurrentMap<String, LatencyTracker> latencies = new ConcurrentHashMap<String, LatencyTracker>();
+	private final ExecutorService hedgeExecutor;
+
+	WebDAVResilience(WebDAVClientImpl client, WebDAVClientConfig config) {
+		this.client = client;
+		this.metrics = config.getMetrics();
+		this.maxRetries = Math.max(0, config.getMaxRetries());
+		this.retryBaseDelay = Math.max(1, config.getRetryBaseDelay());
+		this.retryMaxDelay = Math.max(retryBaseDelay, config.getRetryMaxDelay());
+		this.circuitBreakerThreshold = Math.max(0, config.getCircuitBreakerThreshold());
+		this.circuitBreakerOpenTime = config.getCircuitBreakerOpenTime();
+		this.hedgePercentile = config.getHedgePercentile();
+		this.hedgeMinSamples = Math.max(1, config.getHedgeMinSamples());
+		this.hedgeExecutor = (hedgePercentile > 0 ? Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "webdav-hedge-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null);
+	}
+
+	/**
+	 * @return null when retries, circuit breakers and hedging are all disabled
+	 */
+	static WebDAVResilience create(WebDAVClientImpl client, WebDAVClientConfig config) {
+		if(config.getMaxRetries() > 0 || config.getCircuitBreakerThreshold() > 0 || config.getHedgePercentile() > 0) {
+			return new WebDAVResilience(client, config);
+		}
+		return null;
+	}
+
+	CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+		boolean idempotent = isIdempotent(request);
+		CircuitBreaker circuitBreaker = getCircuitBreaker(request);
+		int attempt = 0;
+		while(true) {
+			if(circuitBreaker != null && !circuitBreaker.allowRequest()) {
+				metrics.recordRejected(request.getMethod());
+				return new RejectedResponse(circuitBreaker.getRemainingOpenTime());
+			}
+			CloseableHttpResponse response = null;
+			IOException failure = null;
+			try {
+				response = (idempotent ? send(request) : client.send(request));
+			} catch (SocketTimeoutException | ConnectTimeoutException e) {
+				// both are InterruptedIOExceptions, but a server that does not answer in time is failing
+				failure = e;
+			} catch (InterruptedIOException e) {
+				// aborted by the caller, which says nothing about the server
+				if(circuitBreaker != null) {
+					circuitBreaker.release();
+				}
+				throw e;
+			} catch (IOException e) {
+				failure = e;
+			}
+			boolean failed = (failure != null || isFailure(response.getStatusLine().getStatusCode()));
+			if(circuitBreaker != null) {
+				circuitBreaker.record(!failed);
+			}
+			if(!idempotent || attempt >= maxRetries || !(failed || response.getStatusLine().getStatusCode() == SC_TOO_MANY_REQUESTS) || !isRepeatable(request)) {
+				if(failure != null) {
+					throw failure;
+				}
+				return response;
+			}
+			long delay = getBackoff(attempt++, response);
+			if(response != null) {
+				WebDAVClientImpl.release(response);
+			}
+			logger.debug("retry " + attempt + " of " + request.getMethod() + " " + request.getURI() + " in " + delay + "ms"
+					+ (failure != null ? " after " + failure : " after status " + response.getStatusLine().getStatusCode()));
+			metrics.recordRetry(request.getMethod());
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted before retry of " + request.getURI());
+			}
+			if(request instanceof HttpRequestBase) {
+				// allow the request object to be executed once more
+				((HttpRequestBase)request).reset();
+			}
+		}
+	}
+
+	void shutdown() {
+		if(hedgeExecutor != null) {
+			hedgeExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Send a read request, hedged when it takes longer than the percentile of its method
+	 */
+	private CloseableHttpResponse send(HttpUriRequest request) throws IOException {
+		LatencyTracker tracker = null;
+		if(hedgeExecutor != null) {
+			tracker = latencies.get(request.getMethod());
+			if(tracker == null) {
+				tracker = latencies.computeIfAbsent(request.getMethod(), new Function<String, LatencyTracker>() {
+					public LatencyTracker apply(String method) {
+						return new LatencyTracker(hedgePercentile);
+					}
+				});
+			}
+			long threshold = tracker.getThreshold(hedgeMinSamples);
+			if(threshold > 0 && request instanceof HttpRequestBase) {
+				return sendHedged((HttpRequestBase)request, threshold, tracker);
+			}
+		}
+		long start = System.nanoTime();
+		CloseableHttpResponse response = client.send(request);
+		if(tracker != null) {
+			tracker.record(System.nanoTime() - start);
+		}
+		return response;
+	}
+
+	private CloseableHttpResponse sendHedged(HttpRequestBase request, long thresholdNanos, final LatencyTracker tracker) throws IOException {
+		final HttpRequestBase primary = copy(request);
+		final HttpRequestBase hedge = copy(request);
+		// the caller aborts the original request, e.g. from WebDAVResourceStream.abort
+		request.setCancellable(new Cancellable() {
+			public boolean cancel() {
+				primary.abort();
+				hedge.abort();
+				return true;
+			}
+		});
+		CompletionService<CloseableHttpResponse> completionService = new ExecutorCompletionService<CloseableHttpResponse>(hedgeExecutor);
+		final long start = System.nanoTime();
+		completionService.submit(new Callable<CloseableHttpResponse>() {
+			public CloseableHttpResponse call() throws IOException {
+				CloseableHttpResponse response = client.send(primary);
+				tracker.record(System.nanoTime() - start);
+				return response;
+			}
+		});
+		Future<CloseableHttpResponse> hedgeFuture = null;
+		try {
+			Future<CloseableHttpResponse> done = completionService.poll(thresholdNanos, TimeUnit.NANOSECONDS);
+			if(done == null) {
+				hedgeFuture = completionService.submit(new Callable<CloseableHttpResponse>() {
+					public CloseableHttpResponse call() throws IOException {
+						return client.send(hedge);
+					}
+				});
+				done = completionService.take();
+			}
+			CloseableHttpResponse response;
+			try {
+				response = done.get();
+			} catch (ExecutionException e) {
+				if(hedgeFuture == null) {
+					throw e;
+				}
+				// the other request may still succeed
+				done = completionService.take();
+				response = done.get();
+			}
+			if(hedgeFuture != null) {
+				boolean won = (done == hedgeFuture);
+				metrics.recordHedge(request.getMethod(), won);
+				// discards the connection of the slower request
+				(won ? primary : hedge).abort();
+			}
+			return response;
+		} catch (InterruptedException e) {
+			primary.abort();
+			hedge.abort();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted during " + request.getMethod() + " " + request.getURI());
+		} catch (ExecutionException e) {
+			primary.abort();
+			hedge.abort();
+			if(e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static HttpRequestBase copy(HttpRequestBase request) throws IOException {
+		try {
+			return (HttpRequestBase)request.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private long getBackoff(int attempt, CloseableHttpResponse response) {
+		long backoff = Math.min(retryMaxDelay, retryBaseDelay << Math.min(attempt, 30));
+		long delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+		Header retryAfter = (response != null ? response.getFirstHeader(HttpHeaders.RETRY_AFTER) : null);
+		if(retryAfter != null) {
+			try {
+				delay = Math.max(delay, Math.min(retryMaxDelay, Long.parseLong(retryAfter.getValue().trim()) * 1000L));
+			} catch (NumberFormatException e) {
+				// an HTTP date, the backoff is used instead
+			}
+		}
+		return delay;
+	}
+
+	private CircuitBreaker getCircuitBreaker(HttpUriRequest request) {
+		if(circuitBreakerThreshold == 0) {
+			return null;
+		}
+		HttpHost host = URIUtils.extractHost(request.getURI());
+		String key = (host != null ? host.toHostString() : "");
+		CircuitBreaker circuitBreaker = circuitBreakers.get(key);
+		if(circuitBreaker == null) {
+			circuitBreaker = circuitBreakers.computeIfAbsent(key, new Function<String, CircuitBreaker>() {
+				public CircuitBreaker apply(String host) {
+					return new CircuitBreaker(host);
+				}
+			});
+		}
+		return circuitBreaker;
+	}
+
+	private static boolean isIdempotent(HttpUriRequest request) {
+		String method = request.getMethod();
+		return HttpGet.METHOD_NAME.equals(method) || HttpHead.METHOD_NAME.equals(method) || DavMethods.METHOD_PROPFIND.equals(method);
+	}
+
+	private static boolean isRepeatable(HttpUriRequest request) {
+		if(request instanceof HttpEntityEnclosingRequest) {
+			HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+			return (entity == null || entity.isRepeatable());
+		}
+		return true;
+	}
+
+	private static boolean isFailure(int status) {
+		return status == HttpStatus.SC_BAD_GATEWAY || status == HttpStatus.SC_SERVICE_UNAVAILABLE || status == HttpStatus.SC_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * Closed, open until openUntil, or half-open with a single trial request
+	 */
+	private class CircuitBreaker {
+		private final String host;
+		private int failures = 0;
+		private boolean open = false;
+		private long openUntil = 0;
+		private boolean trial = false;
+
+		private CircuitBreaker(String host) {
+			this.host = host;
+		}
+
+		synchronized boolean allowRequest() {
+			if(!open) {
+				return true;
+			}
+			if(trial || System.currentTimeMillis() < openUntil) {
+				return false;
+			}
+			trial = true;
+			return true;
+		}
+
+		synchronized void record(boolean success) {
+			trial = false;
+			if(success) {
+				failures = 0;
+				open = false;
+			} else if(++failures >= circuitBreakerThreshold) {
+				// a failed trial request keeps it open for another period
+				openUntil = System.currentTimeMillis() + circuitBreakerOpenTime;
+				if(!open) {
+					open = true;
+					logger.warn("circuit breaker of " + host + " opened after " + failures + " failures");
+					metrics.recordCircuitOpened(host);
+				}
+			}
+		}
+
+		/**
+		 * Give up a trial request without a result
+		 */
+		synchronized void release() {
+			trial = false;
+		}
+
+		synchronized long getRemainingOpenTime() {
+			return Math.max(0, openUntil - System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Durations of the last SAMPLES requests of a method, with the percentile recomputed every RECOMPUTE_INTERVAL requests
+	 */
+	private static class LatencyTracker {
+		private final static int SAMPLES = 256;
+		private final static int RECOMPUTE_INTERVAL = 32;
+
+		private final double percentile;
+		private final long[] samples = new long[SAMPLES];
+		private long count = 0;
+		private volatile long threshold = 0;
+		private volatile long thresholdCount = 0;
+
+		private LatencyTracker(double percentile) {
+			this.percentile = Math.min(percentile, 100);
+		}
+
+		synchronized void record(long durationNanos) {
+			samples[(int)(count++ % SAMPLES)] = durationNanos;
+			if(count % RECOMPUTE_INTERVAL == 0) {
+				int size = (int)Math.min(count, SAMPLES);
+				long[] sorted = Arrays.copyOf(samples, size);
+				Arrays.sort(sorted);
+				int index = (int)Math.ceil(size * percentile / 100) - 1;
+				threshold = sorted[Math.max(0, Math.min(size - 1, index))];
+				thresholdCount = count;
+			}
+		}
+
+		/**
+		 * @return latency in nanoseconds after which a request is hedged, 0 when too few requests have been timed
+		 */
+		long getThreshold(int minSamples) {
+			return (thresholdCount >= minSamples ? threshold : 0);
+		}
+	}
+
+	/**
+	 * 503 response for a request that is not sent because the circuit breaker is open
+	 */
+	private static class RejectedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+		private RejectedResponse(long remainingOpenTime) {
+			super(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Circuit breaker open");
+			setHeader(HttpHeaders.RETRY_AFTER, Long.toString((remainingOpenTime + 999) / 1000));
+		}
+
+		public void close() {
+		}
+	}
+}
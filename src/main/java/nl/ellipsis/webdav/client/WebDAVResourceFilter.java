@@ -0,0 +1,18 @@
+package nl.ellipsis.webdav.client;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Selects the resources of a tree walk.
+ */
+public interface WebDAVResourceFilter {
+
+	/**
+	 * Called for every resource found during a walk, possibly from several threads at once.
+	 * A rejected resource is not passed to the handler, and a rejected collection is not descended into.
+	 * 
+	 * @param resource	WebDAVResource
+	 * @return true to accept the resource
+	 */
+	public boolean accept(WebDAVResourceType resource);
+}
@@ -0,0 +1,23 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+
+import org.apache.jackrabbit.webdav.DavException;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Callback for WebDAV resources that are streamed while a multistatus response is being read.
+ */
+public interface WebDAVResourceHandler {
+
+	/**
+	 * Called once for every resource, in the order in which the server returns them.
+	 * The HTTP connection stays leased while this method runs; an exception aborts the request.
+	 *
+	 * @param resource	WebDAVResource
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public void handleResource(WebDAVResourceType resource) throws IOException, DavException;
+}
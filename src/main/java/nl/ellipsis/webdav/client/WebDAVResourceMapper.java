@@ -0,0 +1,184 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavProperty;
+import org.apache.jackrabbit.webdav.property.DavPropertyIterator;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants.DavStatusCode;
+
+/**
+ * Maps between URIs relative to the mountpoint of a WebDAV server and the absolute URIs and hrefs 
+ * used on the wire, and converts PROPFIND results to WebDAVResourceType.
+ *
+ * Shared by the blocking and the asynchronous client, so both return identical resources.
+ */
+class WebDAVResourceMapper {
+
+	private final URI serverUri;
+
+	WebDAVResourceMapper(URI serverUri) {
+		this.serverUri = serverUri;
+	}
+
+	URI getServerUri() {
+		return serverUri;
+	}
+
+	/**
+	 * Return full uri for resourcePath (which is the path-part of the full uri)
+	 * 
+	 * @param resourcePath	
+	 * @return uri
+	 * @throws DavException
+	 */
+	URI getAbsoluteURI(String resourcePath) throws DavException {
+		if(resourcePath!=null) {
+			int p = serverUri.getPath().length();
+			int eindIndex = serverUri.toString().length() - p;
+			try {
+				return new URI(serverUri.toString().substring(0, eindIndex)+resourcePath);
+			} catch (URISyntaxException e) {
+				throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return full uri for relativeUri (URI relative to mountpoint of webdav server)
+	 * 
+	 * @param relativeUri 	
+	 * @return uri
+	 * @throws DavException
+	 */
+	URI getAbsoluteURI(URI relativeUri) throws DavException {
+		if(relativeUri == null) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, "relativeUri is mandatory");
+		} else if(relativeUri.isAbsolute()) {
+			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Only relative paths are supported");
+		}
+		String serverPath = serverUri.toString();
+		String relativePath = relativeUri.toString();
+		if(serverPath.endsWith(PfxDocumentConstants.URI_SEPARATOR) && relativePath.startsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+			relativePath = relativePath.substring(1);
+		}
+		try {
+			return new URI(serverPath+relativePath);
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+		}
+	}
+
+	/**
+	 * Get the path-URI for relativeUri (which is relative to mountpoint of webdav server)
+	 * 
+	 * @param relativeUri
+	 * @return path
+	 * 
+	 * @throws DavException
+	 */
+	URI getResourcePath(URI relativeUri) throws DavException {
+		if(relativeUri == null) {
+			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Relative URI is mandatory");
+		}
+		if(relativeUri.isAbsolute()) {
+			throw new DavException(DavStatusCode.UNPROCESSABLE_ENTITY, "Only relative paths are supported");
+		}
+		try {
+			String serverPath = serverUri.getPath();
+			String relativePath = relativeUri.toString();
+			if(serverPath.endsWith(PfxDocumentConstants.URI_SEPARATOR) && relativePath.startsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+				relativePath = relativePath.substring(1);
+			}
+			return new URI(serverPath+relativePath);
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+		}
+	}
+
+	/**
+	 * Inverse of getResourcePath: the URI relative to the mountpoint of the webdav server for an href
+	 * 
+	 * @param href	path-part of the full uri, as returned in a multistatus response
+	 * @return relative uri
+	 * @throws DavException
+	 */
+	URI getRelativeURI(String href) throws DavException {
+		String serverPath = serverUri.getPath();
+		if(serverPath.endsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+			serverPath = serverPath.substring(0, serverPath.length() - 1);
+		}
+		if(!href.startsWith(serverPath)) {
+			throw new DavException(HttpStatus.SC_BAD_GATEWAY, href + " is outside of " + serverUri);
+		}
+		try {
+			return new URI(href.substring(serverPath.length()));
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_GATEWAY, e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param relativeUri	path relative to mountpoint of server
+	 * @param resourcePath	relative path = absolute path minus domain 
+	 * @return				true when equals
+	 * @throws DavException
+	 */
+	boolean assertResourcePathEquals(URI relativeUri, String resourcePath) throws DavException {
+		URI refResourcePath = getResourcePath(relativeUri);
+		return refResourcePath.toString().equals(resourcePath);
+	}
+
+	WebDAVResourceType getWebDAVResource(String href, DavPropertySet davProperties) throws DavException {
+		WebDAVResourceType webdavResource = new WebDAVResourceType();
+
+		webdavResource.setUri(getAbsoluteURI(href).toString());
+		webdavResource.setHref(href);
+
+		List<String> mappedProperties = new ArrayList<String>();
+		
+		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_RESOURCETYPE);
+		DavProperty<?> davResourceType = davProperties.get(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_RESOURCETYPE);
+		String resourceType = ((davResourceType != null) && (davResourceType.getValue() != null) ? davResourceType.getValue().toString() : null);
+		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.XML_COLLECTION);
+		boolean isDirectory = ((resourceType != null) && (resourceType.indexOf(org.apache.jackrabbit.webdav.DavConstants.XML_COLLECTION) != -1) ? true : false);
+		webdavResource.setCollection(isDirectory);
+		// webdavResource.setResourceType(resourceType);
+
+		mappedProperties.add(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_DISPLAYNAME);
+		DavProperty<?> davDisplayName = davProperties.get(org.apache.jackrabbit.webdav.DavConstants.PROPERTY_DISPLAYNAME);
+		String displayName = ((davDisplayName != null) && (davDisplayName.getValue() != null) ? davDisplayName.getValue().toString() : WebDAVClientImpl.getFilename(href));
+		webdavResource.setDisplayName(displayName);
+
+		List<WebDAVPropertyType> properties = webdavResource.getProperties();
+		
+		DavPropertyIterator it = davProperties.iterator();
+		while(it.hasNext()) {
+			DavProperty<?> property = it.next();
+			if(property.getValue()!=null) {
+				String name = property.getName().getName();
+				if(!mappedProperties.contains(name)) {
+					String value = property.getValue().toString();
+					WebDAVPropertyType p = new WebDAVPropertyType();
+					p.setName(name);
+					p.setValue(value);
+					properties.add(p);
+				}
+				
+//				joContainer.addProperty(property.getName().getName(), property.getValue().toString());
+			}
+		}
+		return webdavResource;
+	}
+}
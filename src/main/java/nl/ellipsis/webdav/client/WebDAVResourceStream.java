@@ -4,37 +4,128 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 
 public class WebDAVResourceStream {
 
 	private final URI uri;
-	private final CloseableHttpClient client;
+	private final CloseableHttpResponse response;
 	private final HttpGet httpRequest;
 	private final InputStream inputStream;
+	private final boolean cacheHit;
 
 	/**
 	 * Constructor
 	 * 
 	 * @param relativeUri
-	 * @param client 
+	 * @param response 
 	 * @param method 
 	 * @param inputStream
 	 */
-	public WebDAVResourceStream(final URI relativeUri, CloseableHttpClient client, final HttpGet request, final InputStream inputStream) {
+	public WebDAVResourceStream(final URI relativeUri, CloseableHttpResponse response, final HttpGet request, final InputStream inputStream) {
 		this.uri = relativeUri;
-		this.client = client;
+		this.response = response;
 		this.httpRequest = request;
 		this.inputStream = inputStream;
+		this.cacheHit = false;
 	}
 
+	/**
+	 * Constructor for a body that is read from the WebDAVContentCache after 304 Not Modified
+	 * 
+	 * @param relativeUri
+	 * @param inputStream
+	 */
+	WebDAVResourceStream(final URI relativeUri, final InputStream inputStream) {
+		this.uri = relativeUri;
+		this.response = null;
+		this.httpRequest = null;
+		this.inputStream = inputStream;
+		this.cacheHit = true;
+	}
+
+	/**
+	 * Constructor for a body that is produced by the client itself, e.g. a collection zipped on the fly
+	 * 
+	 * @param relativeUri
+	 * @param inputStream
+	 * @param cacheHit
+	 */
+	WebDAVResourceStream(final URI relativeUri, final InputStream inputStream, boolean cacheHit) {
+		this.uri = relativeUri;
+		this.response = null;
+		this.httpRequest = null;
+		this.inputStream = inputStream;
+		this.cacheHit = cacheHit;
+	}
+
+	/**
+	 * Close the stream and hand the connection back to the pool of the WebDAVClient
+	 * 
+	 * @throws IOException
+	 */
 	public void close() throws IOException {
-		if(inputStream!=null) {
-			inputStream.close();
+		try {
+			if(inputStream!=null) {
+				inputStream.close();
+			}
+		} finally {
+			if(response!=null) {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Abort the transfer; the connection is discarded instead of being returned to the pool.
+	 * Use this instead of close() to stop reading halfway through a large resource.
+	 */
+	public void abort() {
+		if(httpRequest!=null) {
+			httpRequest.abort();
+		} else {
+			try {
+				inputStream.close();
+			} catch (IOException e) {
+				// nothing to discard
+			}
+		}
+	}
+
+	/**
+	 * @return true when the body is read from the local content cache, because the server answered 304 Not Modified
+	 */
+	public boolean isCacheHit() {
+		return cacheHit;
+	}
+
+	/**
+	 * @return HTTP status of the GET response; 200 OK for a body from the content cache
+	 */
+	public int getStatus() {
+		return (response != null ? response.getStatusLine().getStatusCode() : HttpStatus.SC_OK);
+	}
+
+	/**
+	 * @param name	header name, e.g. ETag or Content-Range
+	 * @return value of the first response header with the given name, or null; always null for a body from the content cache
+	 */
+	public String getHeader(String name) {
+		Header header = (response != null ? response.getFirstHeader(name) : null);
+		return (header != null ? header.getValue() : null);
+	}
+
+	/**
+	 * @return number of bytes in the body, -1 when unknown, e.g. because the response was decoded
+	 */
+	public long getContentLength() {
+		if(response != null && response.getEntity() != null) {
+			return response.getEntity().getContentLength();
 		}
-		httpRequest.releaseConnection();
-		client.close();
+		return -1;
 	}
 
 	/**
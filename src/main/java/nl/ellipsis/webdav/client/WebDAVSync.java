@@ -0,0 +1,505 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.jackrabbit.webdav.xml.Namespace;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * One-way synchronization of a local directory tree into a remote collection.
+ *
+ * plan compares the local tree with the remote collection and lists the deletions, collections and 
+ * uploads that are needed; execute carries them out in parallel through a WebDAVBatch. A file is 
+ * uploaded when it is new, when its size differs, when its checksum differs (if checksums are enabled), 
+ * or when it is newer than the remote copy. After execute the outcome is written to a local state file; 
+ * the next plan compares against that file instead of crawling the remote collection, and files whose 
+ * size and modification time are unchanged since their upload are skipped without reading them. 
+ * Changes made on the server by others are only noticed with setFullCrawl(true).
+ *
+ * <pre>
+ * WebDAVSync sync = new WebDAVSync(client);
+ * WebDAVSyncPlan plan = sync.plan(exportDir, remoteUri);
+ * System.out.println(plan);	// dry run
+ * List&lt;WebDAVBatchResult&gt; results = sync.execute(plan);
+ * </pre>
+ */
+public class WebDAVSync {
+
+	protected static Logger logger = Logger.getLogger(WebDAVSync.class);
+
+	/** Dead property in which the SHA-256 of an uploaded file is stored when checksums are enabled */
+	public final static String CHECKSUM_PROPERTY = "checksum-sha256";
+	public final static String STATE_FILE_SUFFIX = ".webdav-sync";
+	public final static int DEFAULT_CONCURRENCY = 4;
+
+	private final static String CHECKSUM_ALGORITHM = "SHA-256";
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	private final WebDAVClientAPI client;
+	private Path stateFile;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private boolean deleteRemote = true;
+	private boolean checksums = false;
+	private boolean fullCrawl = false;
+	private boolean failFast = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param client	client whose connection pool is used for all requests
+	 */
+	public WebDAVSync(WebDAVClientAPI client) {
+		this.client = client;
+	}
+
+	/**
+	 * @param stateFile	local state file; default is the local root with suffix .webdav-sync, next to the local root
+	 */
+	public WebDAVSync setStateFile(Path stateFile) {
+		this.stateFile = stateFile;
+		return this;
+	}
+
+	/**
+	 * @param concurrency	maximum number of requests that run at the same time
+	 */
+	public WebDAVSync setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * @param deleteRemote	true (default) to delete remote resources that do not exist locally
+	 */
+	public WebDAVSync setDeleteRemote(boolean deleteRemote) {
+		this.deleteRemote = deleteRemote;
+		return this;
+	}
+
+	/**
+	 * @param checksums	true to store the SHA-256 of uploads in a dead property, and to compare it 
+	 * 					with local files of the same size that are not in the state file
+	 */
+	public WebDAVSync setChecksums(boolean checksums) {
+		this.checksums = checksums;
+		return this;
+	}
+
+	/**
+	 * @param fullCrawl	true to crawl the remote collection even if there is a state file
+	 */
+	public WebDAVSync setFullCrawl(boolean fullCrawl) {
+		this.fullCrawl = fullCrawl;
+		return this;
+	}
+
+	/**
+	 * @param failFast	true to stop after the first failed request
+	 */
+	public WebDAVSync setFailFast(boolean failFast) {
+		this.failFast = failFast;
+		return this;
+	}
+
+	/**
+	 * Plan and execute
+	 */
+	public List<WebDAVBatchResult> sync(Path localRoot, URI remoteRoot) throws IOException, DavException {
+		return execute(plan(localRoot, remoteRoot));
+	}
+
+	/**
+	 * Compare localRoot with remoteRoot without changing anything
+	 * 
+	 * @param localRoot	local directory
+	 * @param remoteRoot	Relative URI of a collection on WebDAV server, need not exist
+	 * @return WebDAVSyncPlan
+	 * @throws IOException
+	 * @throws DavException
+	 */
+	public WebDAVSyncPlan plan(Path localRoot, URI remoteRoot) throws IOException, DavException {
+		Map<String, Local> local = scanLocal(localRoot);
+		WebDAVSyncState state = WebDAVSyncState.load(getStateFile(localRoot));
+		if(state != null && !remoteRoot.toString().equals(state.getRemoteRoot())) {
+			state = null;
+		}
+		Map<String, WebDAVSyncState.Entry> previous = (state != null ? state.getEntries() : Collections.<String, WebDAVSyncState.Entry>emptyMap());
+		boolean crawl = (fullCrawl || state == null);
+		Map<String, Remote> remote = (crawl ? crawlRemote(remoteRoot) : getRemote(state));
+
+		List<WebDAVSyncAction> deletes = new ArrayList<WebDAVSyncAction>();
+		List<WebDAVSyncAction> collections = new ArrayList<WebDAVSyncAction>();
+		List<WebDAVSyncAction> uploads = new ArrayList<WebDAVSyncAction>();
+		Map<String, WebDAVSyncState.Entry> unchanged = new HashMap<String, WebDAVSyncState.Entry>();
+		if(remote == null) {
+			// the remote root does not exist yet
+			remote = Collections.emptyMap();
+			collections.add(new WebDAVSyncAction(WebDAVSyncAction.Type.MKCOL, "", localRoot, remoteRoot, "new", null));
+		}
+		for(Map.Entry<String, Local> e : local.entrySet()) {
+			String path = e.getKey();
+			Local l = e.getValue();
+			Remote r = remote.get(path);
+			URI uri = getRemoteUri(remoteRoot, path);
+			if(l.directory) {
+				if(r == null) {
+					collections.add(new WebDAVSyncAction(WebDAVSyncAction.Type.MKCOL, path, l.path, uri, "new", null));
+				} else if(!r.collection) {
+					deletes.add(new WebDAVSyncAction(WebDAVSyncAction.Type.DELETE, path, null, uri, "replaced by directory", null));
+					collections.add(new WebDAVSyncAction(WebDAVSyncAction.Type.MKCOL, path, l.path, uri, "replaces file", null));
+				} else {
+					unchanged.put(path, WebDAVSyncState.Entry.collection());
+				}
+			} else {
+				String reason;
+				if(r == null) {
+					reason = "new";
+				} else if(r.collection) {
+					deletes.add(new WebDAVSyncAction(WebDAVSyncAction.Type.DELETE, path, null, uri, "replaced by file", null));
+					reason = "replaces collection";
+				} else {
+					reason = getChangeReason(l, r, previous.get(path));
+				}
+				if(reason != null) {
+					uploads.add(new WebDAVSyncAction(WebDAVSyncAction.Type.PUT, path, l.path, uri, reason, new WebDAVSyncState.Entry(false, l.size, l.lastModified, null, null)));
+				} else {
+					WebDAVSyncState.Entry p = previous.get(path);
+					String checksum = (r.checksum != null ? r.checksum : (p != null ? p.checksum : null));
+					unchanged.put(path, new WebDAVSyncState.Entry(false, l.size, l.lastModified, r.etag, checksum));
+				}
+			}
+		}
+		if(deleteRemote) {
+			Set<String> deleted = new HashSet<String>();
+			for(Map.Entry<String, Remote> e : new TreeMap<String, Remote>(remote).entrySet()) {
+				String path = e.getKey();
+				if(!local.containsKey(path) && !isBelow(deleted, path)) {
+					deleted.add(path);
+					Remote r = e.getValue();
+					deletes.add(new WebDAVSyncAction(WebDAVSyncAction.Type.DELETE, path, null, getRemoteUri(remoteRoot, path), "deleted locally", 
+							(r.collection ? WebDAVSyncState.Entry.collection() : new WebDAVSyncState.Entry(false, r.size, -1, r.etag, r.checksum))));
+				}
+			}
+		}
+		List<WebDAVSyncAction> actions = new ArrayList<WebDAVSyncAction>();
+		actions.addAll(deletes);
+		actions.addAll(collections);
+		actions.addAll(uploads);
+		return new WebDAVSyncPlan(localRoot, remoteRoot, actions, unchanged, crawl);
+	}
+
+	/**
+	 * Carry out a plan and write the state file
+	 * 
+	 * @return one result per action of the plan, in the same order
+	 * @throws IOException	when the state file cannot be written or the calling thread is interrupted
+	 */
+	public List<WebDAVBatchResult> execute(WebDAVSyncPlan plan) throws IOException {
+		List<WebDAVBatchResult> results = new ArrayList<WebDAVBatchResult>();
+		boolean failed = false;
+		// deletions first, so files can replace collections and vice versa; collections before their content
+		for(WebDAVSyncAction.Type type : WebDAVSyncAction.Type.values()) {
+			WebDAVBatch batch = new WebDAVBatch(client).setConcurrency(concurrency).setFailFast(failFast);
+			for(final WebDAVSyncAction action : plan.getActions()) {
+				if(action.getType() != type) {
+					continue;
+				}
+				if(failFast && failed) {
+					results.add(new WebDAVBatchResult(type.name(), action.getRemoteUri(), WebDAVBatchResult.Status.SKIPPED, null, null));
+				} else if(type == WebDAVSyncAction.Type.DELETE) {
+					batch.delete(action.getRemoteUri());
+				} else if(type == WebDAVSyncAction.Type.MKCOL) {
+					batch.createCollection(action.getRemoteUri());
+				} else {
+					batch.add(type.name(), action.getRemoteUri(), new WebDAVBatch.Task() {
+						public WebDAVResourceType execute(WebDAVClientAPI client) throws IOException, DavException {
+							return upload(client, action);
+						}
+					});
+				}
+			}
+			for(WebDAVBatchResult result : batch.execute()) {
+				failed |= (result.getStatus() == WebDAVBatchResult.Status.FAILED);
+				results.add(result);
+			}
+		}
+
+		WebDAVSyncState state = new WebDAVSyncState(plan.getRemoteRoot().toString());
+		Map<String, WebDAVSyncState.Entry> entries = state.getEntries();
+		entries.putAll(plan.unchanged);
+		for(int i=0; i<results.size(); i++) {
+			WebDAVSyncAction action = plan.getActions().get(i);
+			WebDAVBatchResult result = results.get(i);
+			if(action.getType() == WebDAVSyncAction.Type.DELETE) {
+				if(!result.isSuccess() && action.entry != null) {
+					entries.put(action.getPath(), action.entry);
+				}
+			} else if(result.isSuccess() && !action.getPath().isEmpty()) {
+				if(action.getType() == WebDAVSyncAction.Type.MKCOL) {
+					entries.put(action.getPath(), WebDAVSyncState.Entry.collection());
+				} else {
+					WebDAVResourceType resource = result.getResource();
+					entries.put(action.getPath(), new WebDAVSyncState.Entry(false, action.entry.size, action.entry.lastModified, 
+							getPropertyValue(resource, DavConstants.PROPERTY_GETETAG), getPropertyValue(resource, CHECKSUM_PROPERTY)));
+				}
+			}
+		}
+		state.store(getStateFile(plan.getLocalRoot()));
+		logger.info("synchronized " + plan.getLocalRoot() + " to " + plan.getRemoteRoot() + ": " + results.size() + " actions");
+		return results;
+	}
+
+	private WebDAVResourceType upload(WebDAVClientAPI client, WebDAVSyncAction action) throws IOException, DavException {
+		String probed = Files.probeContentType(action.getLocalPath());
+		ContentType contentType = (probed != null ? ContentType.create(probed) : ContentType.APPLICATION_OCTET_STREAM);
+		WebDAVResourceType resource = client.putResource(action.getRemoteUri(), action.getLocalPath().toFile(), contentType);
+		if(checksums) {
+			Map<String, Object> properties = new HashMap<String, Object>();
+			properties.put(CHECKSUM_PROPERTY, checksum(action.getLocalPath()));
+			resource = client.setProperties(action.getRemoteUri(), properties);
+		}
+		return resource;
+	}
+
+	/**
+	 * @return why the remote copy of a file must be replaced, or null when it is in sync
+	 */
+	private String getChangeReason(Local l, Remote r, WebDAVSyncState.Entry previous) throws IOException {
+		if(previous != null && !previous.collection && previous.size == l.size && previous.lastModified == l.lastModified) {
+			// the local file has not changed since it was uploaded
+			if(r.etag != null && previous.etag != null && !r.etag.equals(previous.etag)) {
+				return "modified on server";
+			}
+			return null;
+		}
+		if(r.size != l.size) {
+			return "size changed";
+		}
+		if(checksums && r.checksum != null) {
+			return (r.checksum.equals(checksum(l.path)) ? null : "checksum changed");
+		}
+		// a remote copy of the same size that was written after the local modification is the same file
+		return (r.lastModified >= l.lastModified ? null : "modified");
+	}
+
+	private Map<String, Local> scanLocal(final Path localRoot) throws IOException {
+		final Map<String, Local> local = new TreeMap<String, Local>();
+		final Path state = getStateFile(localRoot).toAbsolutePath();
+		Files.walkFileTree(localRoot, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				if(!dir.equals(localRoot)) {
+					local.put(getPath(localRoot, dir), new Local(dir, true, -1, -1));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				Path absolute = file.toAbsolutePath();
+				if(attrs.isRegularFile() && !absolute.equals(state) && !absolute.equals(state.resolveSibling(state.getFileName() + ".tmp"))) {
+					local.put(getPath(localRoot, file), new Local(file, false, attrs.size(), attrs.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return local;
+	}
+
+	/**
+	 * @return the remote tree by relative path, or null when remoteRoot does not exist
+	 */
+	private Map<String, Remote> crawlRemote(URI remoteRoot) throws IOException, DavException {
+		final String rootPath;
+		try {
+			rootPath = withSeparator(getHrefPath(client.getResource(remoteRoot).getHref()));
+		} catch(DavException e) {
+			if(e.getErrorCode() == HttpStatus.SC_NOT_FOUND) {
+				return null;
+			}
+			throw e;
+		}
+		DavPropertyNameSet propertyNames = WebDAVPropertyProfile.MINIMAL.getPropertyNames();
+		if(checksums) {
+			propertyNames.add(DavPropertyName.create(CHECKSUM_PROPERTY, Namespace.EMPTY_NAMESPACE));
+		}
+		final Map<String, Remote> remote = new HashMap<String, Remote>();
+		client.walk(remoteRoot, DavConstants.DEPTH_INFINITY, null, propertyNames, new WebDAVResourceHandler() {
+			public void handleResource(WebDAVResourceType resource) throws DavException {
+				String path = getHrefPath(resource.getHref());
+				if(path.startsWith(rootPath)) {
+					path = path.substring(rootPath.length());
+					if(path.endsWith(PfxDocumentConstants.URI_SEPARATOR)) {
+						path = path.substring(0, path.length() - 1);
+					}
+					remote.put(path, new Remote(resource));
+				}
+			}
+		});
+		logger.debug("crawled " + remote.size() + " resources below " + remoteRoot);
+		return remote;
+	}
+
+	private static Map<String, Remote> getRemote(WebDAVSyncState state) {
+		Map<String, Remote> remote = new HashMap<String, Remote>();
+		for(Map.Entry<String, WebDAVSyncState.Entry> e : state.getEntries().entrySet()) {
+			WebDAVSyncState.Entry entry = e.getValue();
+			remote.put(e.getKey(), new Remote(entry.collection, entry.size, -1, entry.etag, entry.checksum));
+		}
+		return remote;
+	}
+
+	private Path getStateFile(Path localRoot) {
+		return (stateFile != null ? stateFile : localRoot.toAbsolutePath().resolveSibling(localRoot.toAbsolutePath().getFileName() + STATE_FILE_SUFFIX));
+	}
+
+	private static String getPath(Path localRoot, Path path) {
+		StringBuilder sb = new StringBuilder();
+		for(Path name : localRoot.relativize(path)) {
+			if(sb.length() > 0) {
+				sb.append(PfxDocumentConstants.URI_SEPARATOR);
+			}
+			sb.append(name.toString());
+		}
+		return sb.toString();
+	}
+
+	private static URI getRemoteUri(URI remoteRoot, String path) throws DavException {
+		String root = remoteRoot.getPath();
+		try {
+			return new URI(null, null, (path.isEmpty() ? root : withSeparator(root) + path), null, null);
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+		}
+	}
+
+	/**
+	 * @return the decoded path of an href
+	 */
+	private static String getHrefPath(String href) throws DavException {
+		try {
+			return new URI(href).getPath();
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_GATEWAY, e);
+		}
+	}
+
+	private static boolean isBelow(Set<String> collections, String path) {
+		int index = path.lastIndexOf(PfxDocumentConstants.URI_SEPARATOR);
+		while(index > 0) {
+			path = path.substring(0, index);
+			if(collections.contains(path)) {
+				return true;
+			}
+			index = path.lastIndexOf(PfxDocumentConstants.URI_SEPARATOR);
+		}
+		return false;
+	}
+
+	private static String withSeparator(String path) {
+		return (path.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? path : path + PfxDocumentConstants.URI_SEPARATOR);
+	}
+
+	private static String getPropertyValue(WebDAVResourceType resource, String name) {
+		if(resource != null) {
+			for(WebDAVPropertyType property : resource.getProperties()) {
+				if(name.equals(property.getName())) {
+					return property.getValue();
+				}
+			}
+		}
+		return null;
+	}
+
+	static String checksum(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = Files.newInputStream(file)) {
+			int n;
+			while((n = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for(byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	private static class Local {
+		private final Path path;
+		private final boolean directory;
+		private final long size;
+		private final long lastModified;
+
+		private Local(Path path, boolean directory, long size, long lastModified) {
+			this.path = path;
+			this.directory = directory;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static class Remote {
+		private final boolean collection;
+		private final long size;
+		private final long lastModified;
+		private final String etag;
+		private final String checksum;
+
+		private Remote(boolean collection, long size, long lastModified, String etag, String checksum) {
+			this.collection = collection;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.etag = etag;
+			this.checksum = checksum;
+		}
+
+		private Remote(WebDAVResourceType resource) {
+			this.collection = resource.isCollection();
+			String contentLength = getPropertyValue(resource, DavConstants.PROPERTY_GETCONTENTLENGTH);
+			this.size = (contentLength != null ? Long.parseLong(contentLength.trim()) : -1);
+			String lastModified = getPropertyValue(resource, DavConstants.PROPERTY_GETLASTMODIFIED);
+			Date date = (lastModified != null ? DateUtils.parseDate(lastModified) : null);
+			this.lastModified = (date != null ? date.getTime() : -1);
+			this.etag = getPropertyValue(resource, DavConstants.PROPERTY_GETETAG);
+			this.checksum = getPropertyValue(resource, CHECKSUM_PROPERTY);
+		}
+	}
+}
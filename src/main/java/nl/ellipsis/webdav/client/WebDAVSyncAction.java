@@ -0,0 +1,66 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * One change that WebDAVSync makes on the server
+ */
+public class WebDAVSyncAction {
+
+	public enum Type { DELETE, MKCOL, PUT }
+
+	private final Type type;
+	private final String path;
+	private final Path localPath;
+	private final URI remoteUri;
+	private final String reason;
+	// PUT: local size and modification time to record when the upload succeeds; DELETE: the remote state to keep when it fails
+	final WebDAVSyncState.Entry entry;
+
+	WebDAVSyncAction(Type type, String path, Path localPath, URI remoteUri, String reason, WebDAVSyncState.Entry entry) {
+		this.type = type;
+		this.path = path;
+		this.localPath = localPath;
+		this.remoteUri = remoteUri;
+		this.reason = reason;
+		this.entry = entry;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return path relative to the synchronized roots, with / as separator
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the local file or directory, null for a DELETE
+	 */
+	public Path getLocalPath() {
+		return localPath;
+	}
+
+	/**
+	 * @return relative URI on WebDAV server
+	 */
+	public URI getRemoteUri() {
+		return remoteUri;
+	}
+
+	/**
+	 * @return why the action is needed, e.g. "new" or "size changed"
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + remoteUri + " (" + reason + ")";
+	}
+}
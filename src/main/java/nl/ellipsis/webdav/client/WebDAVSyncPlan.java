@@ -0,0 +1,74 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes WebDAVSync.plan found between a local directory and a remote collection.
+ *
+ * Actions are ordered as they are executed: deletions, then collections, then uploads. A plan 
+ * that is not executed is a dry run.
+ */
+public class WebDAVSyncPlan {
+
+	private final Path localRoot;
+	private final URI remoteRoot;
+	private final List<WebDAVSyncAction> actions;
+	private final int unchangedCount;
+	private final boolean remoteCrawled;
+	// in sync paths that need no action, carried over into the state after execution
+	final Map<String, WebDAVSyncState.Entry> unchanged;
+
+	WebDAVSyncPlan(Path localRoot, URI remoteRoot, List<WebDAVSyncAction> actions, Map<String, WebDAVSyncState.Entry> unchanged, boolean remoteCrawled) {
+		this.localRoot = localRoot;
+		this.remoteRoot = remoteRoot;
+		this.actions = Collections.unmodifiableList(actions);
+		this.unchanged = unchanged;
+		this.unchangedCount = unchanged.size();
+		this.remoteCrawled = remoteCrawled;
+	}
+
+	public Path getLocalRoot() {
+		return localRoot;
+	}
+
+	public URI getRemoteRoot() {
+		return remoteRoot;
+	}
+
+	public List<WebDAVSyncAction> getActions() {
+		return actions;
+	}
+
+	public boolean isEmpty() {
+		return actions.isEmpty();
+	}
+
+	/**
+	 * @return number of local files and directories that are already in sync
+	 */
+	public int getUnchangedCount() {
+		return unchangedCount;
+	}
+
+	/**
+	 * @return true when the remote collection was crawled, false when the local state file was used
+	 */
+	public boolean isRemoteCrawled() {
+		return remoteCrawled;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(localRoot).append(" -> ").append(remoteRoot).append(": ")
+			.append(actions.size()).append(" actions, ").append(unchangedCount).append(" unchanged");
+		for(WebDAVSyncAction action : actions) {
+			sb.append(System.lineSeparator()).append(action);
+		}
+		return sb.toString();
+	}
+}
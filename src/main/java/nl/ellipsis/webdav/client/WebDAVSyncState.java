@@ -0,0 +1,139 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * What a WebDAVSync run left on the server, kept in a local properties file.
+ *
+ * For every path relative to the synchronized roots the file records whether it is a collection and,
+ * for files, the local size and modification time that were uploaded together with the resulting 
+ * getetag and checksum. A later run compares the local tree against this state instead of crawling 
+ * the remote collection.
+ */
+class WebDAVSyncState {
+
+	protected static Logger logger = Logger.getLogger(WebDAVSyncState.class);
+
+	private final static String PROP_REMOTE_ROOT = "#remote.root";
+	private final static String FIELD_SEPARATOR = "\t";
+	private final static String TYPE_COLLECTION = "d";
+	private final static String TYPE_FILE = "f";
+
+	private final String remoteRoot;
+	private final Map<String, Entry> entries;
+
+	WebDAVSyncState(String remoteRoot) {
+		this(remoteRoot, new HashMap<String, Entry>());
+	}
+
+	private WebDAVSyncState(String remoteRoot, Map<String, Entry> entries) {
+		this.remoteRoot = remoteRoot;
+		this.entries = entries;
+	}
+
+	/**
+	 * @return the state, or null if there is none or it cannot be read
+	 */
+	static WebDAVSyncState load(Path path) {
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(path)) {
+			properties.load(is);
+			Map<String, Entry> entries = new HashMap<String, Entry>();
+			for(String key : properties.stringPropertyNames()) {
+				if(!key.equals(PROP_REMOTE_ROOT)) {
+					entries.put(key, Entry.parse(properties.getProperty(key)));
+				}
+			}
+			return new WebDAVSyncState(properties.getProperty(PROP_REMOTE_ROOT), entries);
+		} catch(NoSuchFileException e) {
+			return null;
+		} catch(IOException | RuntimeException e) {
+			// without state the remote collection is crawled
+			logger.warn("ignoring sync state " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Write to a temporary file first, so a crash never leaves a truncated state
+	 */
+	void store(Path path) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(PROP_REMOTE_ROOT, remoteRoot);
+		for(Map.Entry<String, Entry> e : entries.entrySet()) {
+			properties.setProperty(e.getKey(), e.getValue().format());
+		}
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			properties.store(os, "WebDAV sync state");
+		}
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	String getRemoteRoot() {
+		return remoteRoot;
+	}
+
+	Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * State of one synchronized path
+	 */
+	static class Entry {
+		final boolean collection;
+		final long size;
+		final long lastModified;
+		final String etag;
+		final String checksum;
+
+		Entry(boolean collection, long size, long lastModified, String etag, String checksum) {
+			this.collection = collection;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.etag = etag;
+			this.checksum = checksum;
+		}
+
+		static Entry collection() {
+			return new Entry(true, -1, -1, null, null);
+		}
+
+		private String format() {
+			if(collection) {
+				return TYPE_COLLECTION;
+			}
+			return TYPE_FILE + FIELD_SEPARATOR + size + FIELD_SEPARATOR + lastModified 
+					+ FIELD_SEPARATOR + (etag != null ? etag : "") + FIELD_SEPARATOR + (checksum != null ? checksum : "");
+		}
+
+		private static Entry parse(String value) {
+			if(TYPE_COLLECTION.equals(value)) {
+				return collection();
+			}
+			String[] fields = value.split(FIELD_SEPARATOR, -1);
+			if(fields.length != 5 || !TYPE_FILE.equals(fields[0])) {
+				throw new IllegalArgumentException("invalid entry " + value);
+			}
+			return new Entry(false, Long.parseLong(fields[1]), Long.parseLong(fields[2]), 
+					(fields[3].isEmpty() ? null : fields[3]), (fields[4].isEmpty() ? null : fields[4]));
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Progress of a resumable upload, kept in a small properties file.
+ *
+ * The checkpoint identifies the target, the local file (length and modification time), the part size and 
+ * the temporary location on the server. It is rewritten after every completed part, so an upload can 
+ * continue after a network failure or a restart of the JVM.
+ */
+class WebDAVUploadCheckpoint {
+
+	protected static Logger logger = Logger.getLogger(WebDAVUploadCheckpoint.class);
+
+	private final static String PROP_TARGET = "target";
+	private final static String PROP_UPLOAD = "upload";
+	private final static String PROP_MODE = "mode";
+	private final static String PROP_SOURCE_LENGTH = "source.length";
+	private final static String PROP_SOURCE_LAST_MODIFIED = "source.lastModified";
+	private final static String PROP_PART_SIZE = "part.size";
+	private final static String PROP_PARTS_DONE = "parts.done";
+	private final static String PARTS_SEPARATOR = ",";
+
+	private final Path path;
+	private final URI target;
+	private final URI upload;
+	private final WebDAVUploadOptions.Mode mode;
+	private final long sourceLength;
+	private final long sourceLastModified;
+	private final long partSize;
+	private final BitSet done = new BitSet();
+
+	WebDAVUploadCheckpoint(Path path, URI target, URI upload, WebDAVUploadOptions.Mode mode, File source, long partSize) {
+		this(path, target, upload, mode, source.length(), source.lastModified(), partSize);
+	}
+
+	private WebDAVUploadCheckpoint(Path path, URI target, URI upload, WebDAVUploadOptions.Mode mode, long sourceLength, long sourceLastModified, long partSize) {
+		this.path = path;
+		this.target = target;
+		this.upload = upload;
+		this.mode = mode;
+		this.sourceLength = sourceLength;
+		this.sourceLastModified = sourceLastModified;
+		this.partSize = partSize;
+	}
+
+	/**
+	 * @return the checkpoint, or null if there is none or it cannot be read
+	 */
+	static WebDAVUploadCheckpoint load(Path path) {
+		Properties properties = new Properties();
+		try (InputStream is = Files.newInputStream(path)) {
+			properties.load(is);
+			WebDAVUploadCheckpoint checkpoint = new WebDAVUploadCheckpoint(path,
+					new URI(properties.getProperty(PROP_TARGET)),
+					new URI(properties.getProperty(PROP_UPLOAD)),
+					WebDAVUploadOptions.Mode.valueOf(properties.getProperty(PROP_MODE)),
+					Long.parseLong(properties.getProperty(PROP_SOURCE_LENGTH)),
+					Long.parseLong(properties.getProperty(PROP_SOURCE_LAST_MODIFIED)),
+					Long.parseLong(properties.getProperty(PROP_PART_SIZE)));
+			for(String part : properties.getProperty(PROP_PARTS_DONE, "").split(PARTS_SEPARATOR)) {
+				if(!part.isEmpty()) {
+					checkpoint.done.set(Integer.parseInt(part));
+				}
+			}
+			return checkpoint;
+		} catch(NoSuchFileException e) {
+			return null;
+		} catch(IOException | URISyntaxException | RuntimeException e) {
+			// a corrupt checkpoint only costs a fresh upload
+			logger.warn("ignoring upload checkpoint " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return true when this checkpoint belongs to an upload of the unchanged source to target with the same settings
+	 */
+	boolean matches(URI target, File source, WebDAVUploadOptions.Mode mode, long partSize) {
+		return this.target.equals(target) && this.mode == mode && this.partSize == partSize 
+				&& this.sourceLength == source.length() && this.sourceLastModified == source.lastModified();
+	}
+
+	URI getUpload() {
+		return upload;
+	}
+
+	synchronized boolean isDone(int part) {
+		return done.get(part);
+	}
+
+	synchronized int getDoneCount() {
+		return done.cardinality();
+	}
+
+	/**
+	 * Record a completed part and write the checkpoint
+	 */
+	synchronized void markDone(int part) throws IOException {
+		done.set(part);
+		store();
+	}
+
+	/**
+	 * Write the checkpoint to a temporary file first, so a crash never leaves a truncated checkpoint
+	 */
+	synchronized void store() throws IOException {
+		StringBuilder parts = new StringBuilder();
+		for(int part = done.nextSetBit(0); part >= 0; part = done.nextSetBit(part + 1)) {
+			if(parts.length() > 0) {
+				parts.append(PARTS_SEPARATOR);
+			}
+			parts.append(part);
+		}
+		Properties properties = new Properties();
+		properties.setProperty(PROP_TARGET, target.toString());
+		properties.setProperty(PROP_UPLOAD, upload.toString());
+		properties.setProperty(PROP_MODE, mode.name());
+		properties.setProperty(PROP_SOURCE_LENGTH, Long.toString(sourceLength));
+		properties.setProperty(PROP_SOURCE_LAST_MODIFIED, Long.toString(sourceLastModified));
+		properties.setProperty(PROP_PART_SIZE, Long.toString(partSize));
+		properties.setProperty(PROP_PARTS_DONE, parts.toString());
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			properties.store(os, "WebDAV upload checkpoint");
+		}
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
@@ -0,0 +1,88 @@
+package nl.ellipsis.webdav.client;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Settings for a resumable WebDAVClientAPI.putResource
+ */
+public class WebDAVUploadOptions {
+
+	/**
+	 * How the parts of a resumable upload are sent to the server
+	 */
+	public enum Mode {
+		/** 
+		 * PUT each part with Content-Range to a temporary resource next to the target, then MOVE it to the target.
+		 * Requires a server that supports partial PUT, like Apache mod_dav. 
+		 */
+		CONTENT_RANGE,
+		/** 
+		 * PUT each part as a separate resource in a temporary collection below the partsCollection, then MOVE 
+		 * the virtual member .file of that collection to the target, so the server assembles the parts (chunked upload as 
+		 * supported by Nextcloud and ownCloud).
+		 */
+		TEMP_PARTS
+	}
+
+	public final static long DEFAULT_PART_SIZE = 8L * 1024 * 1024;
+	public final static int DEFAULT_PARALLELISM = 4;
+
+	private Mode mode = Mode.CONTENT_RANGE;
+	private long partSize = DEFAULT_PART_SIZE;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private Path checkpointFile;
+	private URI partsCollection;
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * @return size in bytes of each part; files up to this size are uploaded with a single PUT
+	 */
+	public long getPartSize() {
+		return partSize;
+	}
+
+	public void setPartSize(long partSize) {
+		this.partSize = partSize;
+	}
+
+	/**
+	 * @return maximum number of parts that are uploaded at the same time
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return local file in which the progress is recorded, null for the uploaded file name with suffix .webdav-upload
+	 */
+	public Path getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public void setCheckpointFile(Path checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * @return relative URI of the collection in which the server accepts the temporary collections of Mode.TEMP_PARTS
+	 */
+	public URI getPartsCollection() {
+		return partsCollection;
+	}
+
+	public void setPartsCollection(URI partsCollection) {
+		this.partsCollection = partsCollection;
+	}
+}
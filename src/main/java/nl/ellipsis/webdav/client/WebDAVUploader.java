@@ -0,0 +1,253 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.client.methods.HttpDelete;
+import org.apache.jackrabbit.webdav.client.methods.HttpMkcol;
+import org.apache.jackrabbit.webdav.client.methods.HttpMove;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Uploads a local file in parts, recording every completed part in a checkpoint file.
+ *
+ * The parts are written to a temporary location on the server (see WebDAVUploadOptions.Mode) and only
+ * moved to the target when all parts are complete, so a broken upload never replaces the target. When 
+ * an upload of the same unchanged file to the same target is started again, the parts listed in the 
+ * checkpoint are skipped.
+ */
+class WebDAVUploader {
+
+	protected static Logger logger = Logger.getLogger(WebDAVUploader.class);
+
+	private final static String CHECKPOINT_SUFFIX = ".webdav-upload";
+	private final static String TEMP_RESOURCE_SUFFIX = ".part";
+	private final static String ASSEMBLY_MEMBER = ".file";
+	// total length of the assembled file, lets the server verify the parts before assembly
+	private final static String HEADER_TOTAL_LENGTH = "OC-Total-Length";
+	private final static String CONTENT_RANGE_UNIT = "bytes ";
+
+	private final WebDAVClientImpl client;
+
+	WebDAVUploader(WebDAVClientImpl client) {
+		this.client = client;
+	}
+
+	WebDAVResourceType upload(URI relativeUri, File file, ContentType contentType, WebDAVUploadOptions options) throws IOException, DavException {
+		long length = file.length();
+		if(length <= options.getPartSize()) {
+			return client.putResource(relativeUri, file, contentType);
+		}
+		int parts = (int)((length + options.getPartSize() - 1) / options.getPartSize());
+		Path checkpointPath = (options.getCheckpointFile() != null ? options.getCheckpointFile() : Paths.get(file.getPath() + CHECKPOINT_SUFFIX));
+
+		WebDAVUploadCheckpoint checkpoint = WebDAVUploadCheckpoint.load(checkpointPath);
+		if(checkpoint != null && (!checkpoint.matches(relativeUri, file, options.getMode(), options.getPartSize()) || !exists(checkpoint.getUpload()))) {
+			logger.info("discarding checkpoint " + checkpointPath + " of a previous upload");
+			checkpoint.delete();
+			checkpoint = null;
+		}
+		if(checkpoint == null) {
+			checkpoint = new WebDAVUploadCheckpoint(checkpointPath, relativeUri, createUploadUri(relativeUri, options), options.getMode(), file, options.getPartSize());
+			if(options.getMode() == WebDAVUploadOptions.Mode.TEMP_PARTS) {
+				expectSuccess(new HttpMkcol(client.getAbsoluteURI(checkpoint.getUpload()).toString()));
+			}
+			checkpoint.store();
+		} else {
+			logger.info("resuming upload of " + relativeUri + ", " + checkpoint.getDoneCount() + " of " + parts + " parts done");
+		}
+
+		if(options.getMode() == WebDAVUploadOptions.Mode.CONTENT_RANGE && !checkpoint.isDone(0)) {
+			// the first part creates the temporary resource, before other parts are written into it
+			uploadPart(checkpoint, 0, file, length, contentType, options);
+		}
+		uploadParts(checkpoint, parts, file, length, contentType, options);
+
+		URI source;
+		if(options.getMode() == WebDAVUploadOptions.Mode.CONTENT_RANGE) {
+			source = checkpoint.getUpload();
+			long uploaded = getContentLength(client.getResource(source));
+			if(uploaded != length) {
+				// the server ignored Content-Range and stored only the last part, so the parts in the checkpoint 
+				// are worthless: the next upload starts over instead of resuming
+				checkpoint.delete();
+				deleteQuietly(source);
+				throw new DavException(HttpStatus.SC_NOT_IMPLEMENTED, "Server does not support partial PUT: " + uploaded + " of " + length 
+						+ " bytes stored, upload with " + WebDAVUploadOptions.Mode.TEMP_PARTS);
+			}
+		} else {
+			source = getChildURI(checkpoint.getUpload(), ASSEMBLY_MEMBER);
+		}
+		HttpMove httpMethod = new HttpMove(client.getAbsoluteURI(source).toString(), client.getAbsoluteURI(relativeUri).toString(), true);
+		httpMethod.setHeader(HEADER_TOTAL_LENGTH, Long.toString(length));
+		expectSuccess(httpMethod);
+		client.invalidateTree(checkpoint.getUpload());
+		client.invalidate(relativeUri);
+		checkpoint.delete();
+		return client.getResource(relativeUri);
+	}
+
+	private void uploadParts(final WebDAVUploadCheckpoint checkpoint, int parts, final File file, final long length, final ContentType contentType, final WebDAVUploadOptions options) throws IOException, DavException {
+		List<Integer> pending = new ArrayList<Integer>();
+		for(int part = 0; part < parts; part++) {
+			if(!checkpoint.isDone(part)) {
+				pending.add(part);
+			}
+		}
+		if(pending.isEmpty()) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(options.getParallelism(), pending.size())));
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for(final Integer part : pending) {
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						uploadPart(checkpoint, part, file, length, contentType, options);
+						return null;
+					}
+				}));
+			}
+			for(Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch(ExecutionException e) {
+					// parts that are already running complete and are recorded; the rest is left for a resume
+					executor.shutdownNow();
+					throw unwrap(e);
+				} catch(InterruptedException e) {
+					executor.shutdownNow();
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Upload of " + checkpoint.getUpload() + " interrupted");
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void uploadPart(WebDAVUploadCheckpoint checkpoint, int part, File file, long length, ContentType contentType, WebDAVUploadOptions options) throws IOException, DavException {
+		long first = part * options.getPartSize();
+		long count = Math.min(options.getPartSize(), length - first);
+		URI uri;
+		HttpPut httpMethod;
+		if(options.getMode() == WebDAVUploadOptions.Mode.CONTENT_RANGE) {
+			uri = checkpoint.getUpload();
+			httpMethod = new HttpPut(client.getAbsoluteURI(uri).toString());
+			httpMethod.setHeader(HttpHeaders.CONTENT_RANGE, CONTENT_RANGE_UNIT + first + "-" + (first + count - 1) + "/" + length);
+		} else {
+			uri = getChildURI(checkpoint.getUpload(), String.format("%05d", part + 1));
+			httpMethod = new HttpPut(client.getAbsoluteURI(uri).toString());
+		}
+		httpMethod.setConfig(client.getUploadRequestConfig());
+		httpMethod.setEntity(new FileChannelEntity(file, first, count, contentType));
+		expectSuccess(httpMethod);
+		// a resumed upload cached the temporary resource when it checked that it still exists
+		client.invalidate(uri);
+		checkpoint.markDone(part);
+		logger.debug("uploaded part " + part + " of " + checkpoint.getUpload());
+	}
+
+	private URI createUploadUri(URI relativeUri, WebDAVUploadOptions options) throws DavException {
+		String id = UUID.randomUUID().toString();
+		if(options.getMode() == WebDAVUploadOptions.Mode.TEMP_PARTS) {
+			if(options.getPartsCollection() == null) {
+				throw new DavException(HttpStatus.SC_BAD_REQUEST, "partsCollection is mandatory for " + options.getMode());
+			}
+			return getChildURI(options.getPartsCollection(), id);
+		}
+		// hidden sibling, so MOVE stays within the same collection
+		String name = "." + WebDAVClientImpl.getFilename(relativeUri.toString()) + "." + id + TEMP_RESOURCE_SUFFIX;
+		return getChildURI(WebDAVClientImpl.getParentURI(relativeUri), name);
+	}
+
+	private boolean exists(URI relativeUri) throws IOException, DavException {
+		try {
+			client.getResource(relativeUri);
+			return true;
+		} catch(DavException e) {
+			if(e.getErrorCode() == HttpStatus.SC_NOT_FOUND) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	private void deleteQuietly(URI relativeUri) {
+		try {
+			expectSuccess(new HttpDelete(client.getAbsoluteURI(relativeUri).toString()));
+		} catch(IOException | DavException e) {
+			logger.warn("cannot delete temporary resource " + relativeUri, e);
+		}
+		client.invalidate(relativeUri);
+	}
+
+	private void expectSuccess(HttpUriRequest httpMethod) throws IOException, DavException {
+		CloseableHttpResponse response = client.execute(httpMethod);
+		try {
+			int status = response.getStatusLine().getStatusCode();
+			if(status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+				throw new DavException(status, httpMethod.getMethod() + " " + httpMethod.getURI() + " failed: " + response.getStatusLine().getReasonPhrase());
+			}
+		} finally {
+			WebDAVClientImpl.release(response);
+		}
+	}
+
+	private static URI getChildURI(URI parentUri, String name) throws DavException {
+		String parent = parentUri.toString();
+		try {
+			return new URI(parent.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? parent + name : parent + PfxDocumentConstants.URI_SEPARATOR + name);
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+		}
+	}
+
+	private static long getContentLength(WebDAVResourceType resource) {
+		for(WebDAVPropertyType property : resource.getProperties()) {
+			if(DavConstants.PROPERTY_GETCONTENTLENGTH.equals(property.getName()) && property.getValue() != null) {
+				return Long.parseLong(property.getValue().trim());
+			}
+		}
+		return -1;
+	}
+
+	private static IOException unwrap(ExecutionException e) throws DavException {
+		Throwable cause = e.getCause();
+		if(cause instanceof Error) {
+			throw (Error)cause;
+		} else if(cause instanceof RuntimeException) {
+			throw (RuntimeException)cause;
+		} else if(cause instanceof DavException) {
+			throw (DavException)cause;
+		} else if(cause instanceof IOException) {
+			return (IOException)cause;
+		}
+		return new IOException(cause);
+	}
+}
@@ -0,0 +1,224 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.jackrabbit.webdav.xml.DomUtil;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Enumerates all resources below a collection.
+ *
+ * A single streamed Depth: infinity PROPFIND is tried first. Many servers refuse infinite depth
+ * (403 with DAV:propfind-finite-depth); then the tree is crawled with Depth: 1 PROPFIND requests, 
+ * one per collection, that run in parallel in a fork-join pool. Only the status of the PROPFIND
+ * response counts as a refusal, never an exception once the listing is being handled. A refusal is
+ * remembered for the lifetime of the client, except a 403 without DAV:propfind-finite-depth, which
+ * may just as well deny access to the root. Calls to the handler are serialized, so it need not be
+ * thread-safe.
+ */
+class WebDAVWalker {
+
+	protected static Logger logger = Logger.getLogger(WebDAVWalker.class);
+
+	private final WebDAVClientImpl client;
+	private final int parallelism;
+	private volatile boolean depthInfinitySupported = true;
+
+	WebDAVWalker(WebDAVClientImpl client, int parallelism) {
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	void walk(URI root, int depthLimit, WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException {
+		WebDAVResourceHandler serialized = new SerializedHandler(handler);
+		if(depthLimit > 1 && depthInfinitySupported) {
+			AtomicBoolean listed = new AtomicBoolean();
+			try {
+				walkDepthInfinity(root, depthLimit, filter, propertyNames, serialized, listed);
+				return;
+			} catch(DavException e) {
+				// once the listing is handled, resources may have been passed on and crawling would pass them again
+				if(listed.get() || !isDepthInfinityRefused(e)) {
+					throw e;
+				}
+				logger.info("Depth: infinity refused with " + e.getErrorCode() + ", crawling " + root + " collection by collection");
+				if(e.getErrorCode() != HttpStatus.SC_FORBIDDEN || isFiniteDepthRequired(e)) {
+					depthInfinitySupported = false;
+				}
+			}
+		}
+		crawl(root, depthLimit, filter, propertyNames, serialized);
+	}
+
+	/**
+	 * @param listed	set as soon as the server has accepted the PROPFIND and the first resource is handled
+	 */
+	private void walkDepthInfinity(URI root, final int depthLimit, final WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, final WebDAVResourceHandler handler, final AtomicBoolean listed) throws IOException, DavException {
+		final String rootPath = withSeparator(client.getResourceMapper().getResourcePath(root).toString());
+		// the server decides the order of the responses, so rejected collections are pruned by prefix
+		final Set<String> rejected = new HashSet<String>();
+		client.getCollectionProperties(root, DavConstants.DEPTH_INFINITY, propertyNames, new WebDAVResourceHandler() {
+			public void handleResource(WebDAVResourceType resource) throws IOException, DavException {
+				listed.set(true);
+				String href = resource.getHref();
+				if(!href.startsWith(rootPath) || getDepth(rootPath, href) > depthLimit || isBelow(rejected, href)) {
+					return;
+				}
+				if(filter == null || filter.accept(resource)) {
+					handler.handleResource(resource);
+				} else if(resource.isCollection()) {
+					rejected.add(withSeparator(href));
+				}
+			}
+		});
+	}
+
+	private void crawl(URI root, int depthLimit, WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) throws IOException, DavException {
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(new CrawlTask(root, 1, depthLimit, filter, propertyNames, handler));
+		} catch(WalkException e) {
+			throw e.unwrap();
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Lists one collection and forks a task for every accepted child collection
+	 */
+	private class CrawlTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final URI collection;
+		private final int depth;
+		private final int depthLimit;
+		private final WebDAVResourceFilter filter;
+		private final DavPropertyNameSet propertyNames;
+		private final WebDAVResourceHandler handler;
+
+		private CrawlTask(URI collection, int depth, int depthLimit, WebDAVResourceFilter filter, DavPropertyNameSet propertyNames, WebDAVResourceHandler handler) {
+			this.collection = collection;
+			this.depth = depth;
+			this.depthLimit = depthLimit;
+			this.filter = filter;
+			this.propertyNames = propertyNames;
+			this.handler = handler;
+		}
+
+		@Override
+		protected void compute() {
+			final List<CrawlTask> subtasks = new ArrayList<CrawlTask>();
+			try {
+				client.getCollectionProperties(collection, DavConstants.DEPTH_1, propertyNames, new WebDAVResourceHandler() {
+					public void handleResource(WebDAVResourceType resource) throws IOException, DavException {
+						if(filter == null || filter.accept(resource)) {
+							handler.handleResource(resource);
+							if(resource.isCollection() && depth < depthLimit) {
+								subtasks.add(new CrawlTask(client.getResourceMapper().getRelativeURI(resource.getHref()), depth + 1, depthLimit, filter, propertyNames, handler));
+							}
+						}
+					}
+				});
+			} catch(IOException e) {
+				throw new WalkException(e);
+			} catch(DavException e) {
+				throw new WalkException(e);
+			}
+			invokeAll(subtasks);
+		}
+	}
+
+	private static boolean isDepthInfinityRefused(DavException e) {
+		return e.getErrorCode() == HttpStatus.SC_FORBIDDEN 
+				|| e.getErrorCode() == HttpStatus.SC_BAD_REQUEST 
+				|| e.getErrorCode() == HttpStatus.SC_NOT_IMPLEMENTED;
+	}
+
+	/**
+	 * @return true when the error of the response has the DAV:propfind-finite-depth precondition
+	 */
+	private static boolean isFiniteDepthRequired(DavException e) {
+		if(!e.hasErrorCondition()) {
+			return false;
+		}
+		try {
+			return DomUtil.hasChildElement(e.toXml(DomUtil.createDocument()), "propfind-finite-depth", DavConstants.NAMESPACE);
+		} catch(ParserConfigurationException pce) {
+			return false;
+		}
+	}
+
+	private static int getDepth(String rootPath, String href) {
+		int depth = 0;
+		for(String segment : href.substring(rootPath.length()).split(PfxDocumentConstants.URI_SEPARATOR)) {
+			if(!segment.isEmpty()) {
+				depth++;
+			}
+		}
+		return depth;
+	}
+
+	private static boolean isBelow(Set<String> collections, String href) {
+		for(String collection : collections) {
+			if(href.startsWith(collection)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String withSeparator(String path) {
+		return (path.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? path : path + PfxDocumentConstants.URI_SEPARATOR);
+	}
+
+	/**
+	 * Carries the checked exception of a crawl task through the fork-join pool
+	 */
+	private static class WalkException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private WalkException(Exception cause) {
+			super(cause);
+		}
+
+		private IOException unwrap() throws DavException {
+			if(getCause() instanceof DavException) {
+				throw (DavException)getCause();
+			}
+			return (IOException)getCause();
+		}
+	}
+
+	/**
+	 * Passes resources to the caller's handler one at a time
+	 */
+	private static class SerializedHandler implements WebDAVResourceHandler {
+		private final WebDAVResourceHandler handler;
+
+		private SerializedHandler(WebDAVResourceHandler handler) {
+			this.handler = handler;
+		}
+
+		public synchronized void handleResource(WebDAVResourceType resource) throws IOException, DavException {
+			handler.handleResource(resource);
+		}
+	}
+}
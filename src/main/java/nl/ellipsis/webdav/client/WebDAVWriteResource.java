@@ -0,0 +1,138 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+/**
+ * Resource returned by a write operation of a client that does not read back the result (see WebDAVClientConfig.isReadBack).
+ *
+ * Only href, uri, displayName and, when the server sent an ETag header, the getetag property are filled in, 
+ * from the request and the write response. The complete set of properties is loaded with a PROPFIND 
+ * the first time {@link #load()} is called. A LOCK in read-back mode copies them into the resource with {@link #readBack()}, 
+ * so it carries both the properties and the lock token. The write metadata is transient, so serializing the resource
+ * field by field (e.g. with Gson) only writes the WebDAV properties, not the client.
+ */
+public class WebDAVWriteResource extends WebDAVResourceType {
+
+	private final transient WebDAVClientAPI client;
+	private final transient URI relativeUri;
+	private final transient String method;
+	private final transient int status;
+	private final transient String location;
+	private final transient String lockToken;
+	private transient long lockTimeout = DavConstants.UNDEFINED_TIMEOUT;
+	private transient WebDAVResourceType loaded;
+
+	WebDAVWriteResource(WebDAVClientAPI client, URI relativeUri, String method, int status, String location, String lockToken) {
+		this.client = client;
+		this.relativeUri = relativeUri;
+		this.method = method;
+		this.status = status;
+		this.location = location;
+		this.lockToken = lockToken;
+	}
+
+	/**
+	 * @return the WebDAV method of the write, e.g. PUT or MOVE
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return HTTP status of the write response, e.g. 201 Created or 204 No Content
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return value of the Location header, null when the server did not send one
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return lock token of a LOCK response, or the token that was released by UNLOCK
+	 */
+	public String getLockToken() {
+		return lockToken;
+	}
+
+	/**
+	 * @return timeout in milliseconds the server granted to a LOCK, which may be shorter than the requested one; 
+	 * 			DavConstants.INFINITE_TIMEOUT, or DavConstants.UNDEFINED_TIMEOUT when the server did not send it
+	 */
+	public long getLockTimeout() {
+		return lockTimeout;
+	}
+
+	void setLockTimeout(long lockTimeout) {
+		this.lockTimeout = lockTimeout;
+	}
+
+	/**
+	 * @return true when the properties have been loaded
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded != null;
+	}
+
+	/**
+	 * PROPFIND the written resource; the result is kept, so only the first call sends a request
+	 * 
+	 * @return the resource with all its properties
+	 * @throws IOException
+	 * @throws DavException	404 when the resource has been deleted
+	 */
+	public synchronized WebDAVResourceType load() throws IOException, DavException {
+		if(loaded == null) {
+			loaded = client.getResource(relativeUri);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Load the properties and copy them into this resource, keeping the write metadata
+	 * 
+	 * @return this resource
+	 * @throws IOException
+	 * @throws DavException	404 when the resource has been deleted
+	 */
+	synchronized WebDAVWriteResource readBack() throws IOException, DavException {
+		return readBack(load());
+	}
+
+	/**
+	 * Keep resource as the loaded resource and copy its properties into this resource; used by clients 
+	 * that read back themselves, e.g. WebDAVAsyncClientImpl, which creates the resource without a client
+	 * 
+	 * @return this resource
+	 */
+	synchronized WebDAVWriteResource readBack(WebDAVResourceType resource) {
+		loaded = resource;
+		setCreationDate(resource.getCreationDate());
+		setDisplayName(resource.getDisplayName());
+		setContentLanguage(resource.getContentLanguage());
+		setContentLength(resource.getContentLength());
+		setContentType(resource.getContentType());
+		setEtag(resource.getEtag());
+		setLastModified(resource.getLastModified());
+		setLockDiscovery(resource.getLockDiscovery());
+		setResourceType(resource.getResourceType());
+		setSource(resource.getSource());
+		setSupportedLock(resource.getSupportedLock());
+		setHref(resource.getHref());
+		setUri(resource.getUri());
+		setCollection(resource.isCollection());
+		getProperties().clear();
+		getProperties().addAll(resource.getProperties());
+		return this;
+	}
+}
@@ -0,0 +1,356 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.log4j.Logger;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.rest.PfxDocumentConstants;
+
+/**
+ * Streams a collection as a ZIP archive.
+ *
+ * A producer thread walks the collection and writes every member into a ZipOutputStream as soon as its
+ * body arrives. The GET requests of the next members are started ahead on a small pool, so their responses
+ * are already under way over pooled connections when the previous entry is done. The archive flows through
+ * a bounded pipe to the reader and is never staged on disk or in memory. Members that are compressed
+ * already, such as PDF or MKV, are written with deflate level 0: STORED entries need their size and CRC
+ * before the data, which is not known without buffering the body.
+ */
+class WebDAVZipStreamer {
+
+	protected static Logger logger = Logger.getLogger(WebDAVZipStreamer.class);
+
+	private final static int CHUNK_SIZE = 64 * 1024;
+	private final static int PIPE_CHUNKS = 4;
+	private final static AtomicInteger threadCount = new AtomicInteger();
+
+	private final WebDAVClientAPI client;
+	private final WebDAVResourceMapper mapper;
+	private final URI root;
+	private final int prefetch;
+
+	WebDAVZipStreamer(WebDAVClientAPI client, WebDAVResourceMapper mapper, URI root, int prefetch) {
+		this.client = client;
+		this.mapper = mapper;
+		this.root = root;
+		this.prefetch = Math.max(1, prefetch);
+	}
+
+	/**
+	 * Start the producer thread
+	 *
+	 * @return stream of the archive; closing it before the end stops the producer and aborts the member requests
+	 */
+	WebDAVResourceStream open() {
+		final Pipe pipe = new Pipe();
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					write(pipe.output);
+					pipe.output.close();
+				} catch (Throwable e) {
+					if(!pipe.isReaderClosed()) {
+						logger.error("ZIP of " + root + " failed", e);
+					}
+					pipe.fail(e);
+				}
+			}
+		}, "webdav-zip-" + threadCount.incrementAndGet());
+		producer.setDaemon(true);
+		producer.start();
+		return new WebDAVResourceStream(root, pipe.input, false);
+	}
+
+	private void write(OutputStream output) throws IOException, DavException {
+		final String rootPath = withSeparator(root.getPath());
+		final Deque<Member> pending = new ArrayDeque<Member>();
+		final ExecutorService executor = Executors.newFixedThreadPool(prefetch, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "webdav-zip-prefetch-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ZipOutputStream zip = new ZipOutputStream(output);
+		// the content type decides between deflate and level 0
+		DavPropertyNameSet propertyNames = WebDAVPropertyProfile.MINIMAL.getPropertyNames();
+		propertyNames.add(DavPropertyName.GETCONTENTTYPE);
+		try {
+			client.walk(root, DavConstants.DEPTH_INFINITY, null, propertyNames, new WebDAVResourceHandler() {
+				public void handleResource(WebDAVResourceType resource) throws IOException, DavException {
+					URI uri = mapper.getRelativeURI(resource.getHref());
+					String path = (resource.isCollection() ? withSeparator(uri.getPath()) : uri.getPath());
+					if(path.length() <= rootPath.length() || !path.startsWith(rootPath)) {
+						// the collection itself
+						return;
+					}
+					pending.add(new Member(resource, uri, path.substring(rootPath.length()), executor));
+					while(pending.size() > prefetch) {
+						writeEntry(zip, pending.poll());
+					}
+				}
+			});
+			while(!pending.isEmpty()) {
+				writeEntry(zip, pending.poll());
+			}
+			zip.finish();
+		} finally {
+			for(Member member : pending) {
+				member.discard();
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	private void writeEntry(ZipOutputStream zip, Member member) throws IOException, DavException {
+		ZipEntry entry = new ZipEntry(member.name);
+		if(member.resource.getLastModified() != null) {
+			entry.setTime(member.resource.getLastModified().toGregorianCalendar().getTimeInMillis());
+		}
+		if(member.body == null) {
+			zip.putNextEntry(entry);
+			zip.closeEntry();
+			return;
+		}
+		WebDAVResourceStream stream = member.getStream();
+		if(stream == null) {
+			// deleted between the listing and the GET
+			logger.warn(member.uri + " disappeared while zipping " + root);
+			return;
+		}
+		boolean complete = false;
+		try {
+			zip.setLevel(WebDAVCompression.isCompressed(member.resource.getContentType(), member.name) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+			zip.putNextEntry(entry);
+			IOUtils.copyLarge(stream.getInputStream(), zip, new byte[CHUNK_SIZE]);
+			zip.closeEntry();
+			complete = true;
+		} finally {
+			if(complete) {
+				stream.close();
+			} else {
+				stream.abort();
+			}
+		}
+	}
+
+	private static String withSeparator(String path) {
+		return (path.endsWith(PfxDocumentConstants.URI_SEPARATOR) ? path : path + PfxDocumentConstants.URI_SEPARATOR);
+	}
+
+	/**
+	 * A member of the archive, with the GET of its body started ahead
+	 */
+	private class Member {
+		private final WebDAVResourceType resource;
+		private final URI uri;
+		private final String name;
+		private final Future<WebDAVResourceStream> body;
+		private volatile boolean discarded = false;
+
+		private Member(WebDAVResourceType resource, final URI uri, String name, ExecutorService executor) {
+			this.resource = resource;
+			this.uri = uri;
+			this.name = name;
+			this.body = (resource.isCollection() ? null : executor.submit(new Callable<WebDAVResourceStream>() {
+				public WebDAVResourceStream call() throws Exception {
+					WebDAVResourceStream stream = client.getResourceStream(uri);
+					if(discarded && stream != null) {
+						stream.abort();
+						stream = null;
+					}
+					return stream;
+				}
+			}));
+		}
+
+		private WebDAVResourceStream getStream() throws IOException, DavException {
+			try {
+				return body.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof IOException) {
+					throw (IOException)cause;
+				} else if(cause instanceof DavException) {
+					throw (DavException)cause;
+				}
+				throw new DavException(HttpStatus.SC_INTERNAL_SERVER_ERROR, cause);
+			}
+		}
+
+		/**
+		 * Release the connection of a body that will not be written
+		 */
+		private void discard() {
+			discarded = true;
+			if(body != null && !body.cancel(true) && body.isDone()) {
+				try {
+					WebDAVResourceStream stream = body.get();
+					if(stream != null) {
+						stream.abort();
+					}
+				} catch (Exception e) {
+					// nothing to release
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bounded pipe between the producer thread and the reader; an error of the producer is thrown to the
+	 * reader instead of ending the archive early
+	 */
+	private static class Pipe {
+		private final static byte[] END = new byte[0];
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(PIPE_CHUNKS);
+		private volatile Throwable failure;
+		private volatile boolean readerClosed = false;
+
+		private final OutputStream output = new OutputStream() {
+			private byte[] buffer = new byte[CHUNK_SIZE];
+			private int count = 0;
+
+			@Override
+			public void write(int b) throws IOException {
+				if(count == buffer.length) {
+					flush();
+				}
+				buffer[count++] = (byte)b;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				while(len > 0) {
+					if(count == buffer.length) {
+						flush();
+					}
+					int n = Math.min(len, buffer.length - count);
+					System.arraycopy(b, off, buffer, count, n);
+					count += n;
+					off += n;
+					len -= n;
+				}
+			}
+
+			@Override
+			public void flush() throws IOException {
+				if(count > 0) {
+					byte[] chunk = (count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+					put(chunk);
+					buffer = new byte[CHUNK_SIZE];
+					count = 0;
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+				put(END);
+			}
+		};
+
+		private final InputStream input = new InputStream() {
+			private byte[] chunk;
+			private int position;
+
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return (read(b, 0, 1) == -1 ? -1 : b[0] & 0xff);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(len == 0) {
+					return 0;
+				}
+				if(chunk == null || position == chunk.length) {
+					if(chunk == END) {
+						return -1;
+					}
+					chunk = take();
+					position = 0;
+					if(chunk == END) {
+						return -1;
+					}
+				}
+				int n = Math.min(len, chunk.length - position);
+				System.arraycopy(chunk, position, b, off, n);
+				position += n;
+				return n;
+			}
+
+			@Override
+			public void close() {
+				readerClosed = true;
+				chunks.clear();
+			}
+		};
+
+		private void put(byte[] chunk) throws IOException {
+			try {
+				while(!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+					if(readerClosed) {
+						throw new IOException("ZIP stream closed by the reader");
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		private byte[] take() throws IOException {
+			try {
+				byte[] next;
+				while((next = chunks.poll(100, TimeUnit.MILLISECONDS)) == null) {
+					if(failure != null) {
+						throw new IOException("ZIP stream failed", failure);
+					}
+				}
+				return next;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		private void fail(Throwable e) {
+			failure = e;
+		}
+
+		private boolean isReaderClosed() {
+			return readerClosed;
+		}
+	}
+}
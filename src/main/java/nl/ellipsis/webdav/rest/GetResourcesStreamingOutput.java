@@ -0,0 +1,55 @@
+package nl.ellipsis.webdav.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+
+import nl.ellipsis.webdav.client.WebDAVClientAPI;
+
+/**
+ * GetResourcesResponse for GET /PfxWebDAVREST/resources that lists the child resources of a collection
+ * straight into the response body with a WebDAVResourceJsonWriter
+ */
+public class GetResourcesStreamingOutput implements StreamingOutput {
+
+	private final WebDAVClientAPI client;
+	private final URI uri;
+	private final DavPropertyNameSet propertyNames;
+
+	/**
+	 * Constructor
+	 *
+	 * @param client	WebDAVClientAPI
+	 * @param uri	Relative URI of the collection on the WebDAV server
+	 * @param propertyNames	Properties to request, null for allprop
+	 */
+	public GetResourcesStreamingOutput(WebDAVClientAPI client, URI uri, DavPropertyNameSet propertyNames) {
+		this.client = client;
+		this.uri = uri;
+		this.propertyNames = propertyNames;
+	}
+
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		WebDAVResourceJsonWriter writer = new WebDAVResourceJsonWriter(output);
+		try {
+			if(propertyNames != null) {
+				client.getChildResources(uri, propertyNames, writer);
+			} else {
+				client.getChildResources(uri, writer);
+			}
+		} catch (DavException e) {
+			if(writer.getCount() == 0) {
+				// nothing has been sent yet, so the status of the WebDAV server can be passed on
+				throw new WebApplicationException(e, e.getErrorCode());
+			}
+			throw new IOException("listing of " + uri + " failed after " + writer.getCount() + " resources", e);
+		}
+		writer.close();
+	}
+}
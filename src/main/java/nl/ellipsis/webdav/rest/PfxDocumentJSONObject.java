@@ -113,20 +113,10 @@ public class PfxDocumentJSONObject {
 
 	private String getUrl(Map<String, String> urlMap, String urlKey, Map<String, String> fileparts) {
 		String retval = null;
-		if(urlMap!=null && urlMap.containsKey(urlKey)) {
+		if(urlMap!=null) {
 			String url = urlMap.get(urlKey);
-			retval = url;
-			String[] sl = url.split(PfxDocumentConstants.URI_SEPARATOR);
-			if(sl!=null) {
-				for(int i=0; i<sl.length; i++) {
-					String s = sl[i];
-					if(s.indexOf("{")>-1 && fileparts!=null) {
-						String placeholder = s.substring(s.indexOf("{")+1,s.indexOf("}"));
-						if(fileparts.containsKey(placeholder)) {
-							retval = retval.replace("{"+placeholder+"}", fileparts.get(placeholder));
-						}
-					}
-				}
+			if(url!=null) {
+				retval = PfxUrlTemplate.compile(url).render(fileparts);
 			}
 		}
 		return retval;
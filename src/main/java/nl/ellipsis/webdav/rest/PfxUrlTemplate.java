@@ -0,0 +1,108 @@
+package nl.ellipsis.webdav.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * URL template with {placeholder} parts, e.g. /PFX/{domain}/{assessmentIdentifier}/{filename},
+ * parsed once into literal and placeholder segments.
+ *
+ * Placeholders without a value are left in the url as they are, like the String.replace based
+ * substitution this class replaces. Templates are immutable and can be shared between threads.
+ */
+public class PfxUrlTemplate {
+
+	// url templates come from configuration, so the cache stays small; the bound protects against arbitrary input
+	private final static int MAX_CACHED_TEMPLATES = 1000;
+	private final static ConcurrentMap<String,PfxUrlTemplate> templates = new ConcurrentHashMap<String,PfxUrlTemplate>();
+
+	private final String template;
+	// literals at even, placeholder names at odd indexes
+	private final String[] segments;
+	private final int literalLength;
+
+	private PfxUrlTemplate(String template) {
+		this.template = template;
+		List<String> segments = new ArrayList<String>();
+		int literalLength = 0;
+		int start = 0;
+		int open = template.indexOf('{');
+		while(open > -1) {
+			int close = template.indexOf('}', open + 1);
+			if(close < 0) {
+				break;
+			}
+			segments.add(template.substring(start, open));
+			segments.add(template.substring(open + 1, close));
+			literalLength += open - start;
+			start = close + 1;
+			open = template.indexOf('{', start);
+		}
+		segments.add(template.substring(start));
+		literalLength += template.length() - start;
+		this.segments = segments.toArray(new String[segments.size()]);
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * @return the parsed template, from the cache when it has been parsed before
+	 */
+	public static PfxUrlTemplate compile(String template) {
+		PfxUrlTemplate result = templates.get(template);
+		if(result == null) {
+			result = new PfxUrlTemplate(template);
+			if(templates.size() < MAX_CACHED_TEMPLATES) {
+				templates.putIfAbsent(template, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param values	placeholder values by name, may be null
+	 * @return url with the placeholders that have a value replaced
+	 */
+	public String render(Map<String,String> values) {
+		if(values == null || segments.length == 1) {
+			return template;
+		}
+		StringBuilder sb = new StringBuilder(literalLength + 16 * (segments.length / 2));
+		for(int i=0; i<segments.length; i++) {
+			String segment = segments[i];
+			if(i % 2 == 0) {
+				sb.append(segment);
+			} else {
+				String value = values.get(segment);
+				if(value != null) {
+					sb.append(value);
+				} else {
+					sb.append('{').append(segment).append('}');
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return names of the placeholders in the order in which they appear
+	 */
+	public List<String> getPlaceholders() {
+		List<String> placeholders = new ArrayList<String>(segments.length / 2);
+		for(int i=1; i<segments.length; i+=2) {
+			placeholders.add(segments[i]);
+		}
+		return placeholders;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	@Override
+	public String toString() {
+		return template;
+	}
+}
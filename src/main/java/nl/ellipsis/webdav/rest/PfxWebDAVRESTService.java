@@ -0,0 +1,212 @@
+package nl.ellipsis.webdav.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.log4j.Logger;
+
+import com.google.gson.stream.JsonWriter;
+
+import nl.ellipsis.pfxwebdav.rest.v1.PfxWebDAVRESTAPI;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.client.WebDAVClientAPI;
+import nl.ellipsis.webdav.client.WebDAVPropertyProfile;
+import nl.ellipsis.webdav.client.WebDAVResourceStream;
+
+/**
+ * JAX-RS implementation of PfxWebDAVREST.wadl on top of a WebDAVClientAPI.
+ *
+ * Bodies are passed through without being buffered: a PUT request body is streamed into the WebDAV PUT,
+ * and the body of a WebDAV GET is copied to the response by a StreamingOutput. Content-Length, ETag,
+ * Last-Modified, Range and If-Range are passed on in both directions. When the client disconnects
+ * halfway through a download, the WebDAV request is aborted so the pooled connection is not blocked
+ * by the rest of the body.
+ */
+public class PfxWebDAVRESTService implements PfxWebDAVRESTAPI {
+
+	protected static Logger logger = Logger.getLogger(PfxWebDAVRESTService.class);
+
+	private final static String POM_PROPERTIES = "/META-INF/maven/nl.ellipsis.webdav/webdav-rest/pom.properties";
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static String[] PASSTHROUGH_HEADERS = {
+			HttpHeaders.CONTENT_RANGE, HttpHeaders.ACCEPT_RANGES, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED };
+
+	private final WebDAVClientAPI client;
+
+	public PfxWebDAVRESTService(WebDAVClientAPI client) {
+		this.client = client;
+	}
+
+	public Response getResources(String uri, String range, String ifRange) {
+		Response response;
+		WebDAVResourceType resource = null;
+		try {
+			URI relativeUri = getRelativeUri(uri);
+			resource = client.getResource(relativeUri, WebDAVPropertyProfile.MINIMAL.getPropertyNames());
+			if(resource.isCollection()) {
+				response = Response.ok(new GetResourcesStreamingOutput(client, relativeUri, null), MediaType.APPLICATION_JSON).build();
+			} else {
+				WebDAVResourceStream stream = client.getResourceStream(relativeUri, range, ifRange);
+				response = (stream != null ? getStreamResponse(stream) : Response.status(HttpStatus.SC_NOT_FOUND).build());
+			}
+		} catch (DavException e) {
+			ResponseBuilder builder = Response.status(e.getErrorCode());
+			String contentLength = (resource != null ? getPropertyValue(resource, resource.getContentLength(), DavConstants.PROPERTY_GETCONTENTLENGTH) : null);
+			if(e.getErrorCode() == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && contentLength != null) {
+				// RFC 7233 4.4: tell the client the current length, so it can send a range that fits
+				builder.header(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+			}
+			response = builder.build();
+		} catch (IOException e) {
+			logger.error("GET "+uri+" failed", e);
+			response = Response.status(HttpStatus.SC_BAD_GATEWAY).build();
+		}
+		return response;
+	}
+
+	public Response putResource(String uri, Long contentLength, String contentType, InputStream inputStream) {
+		Response response;
+		try {
+			URI relativeUri = getRelativeUri(uri);
+			ContentType type = (contentType != null ? ContentType.parse(contentType) : ContentType.APPLICATION_OCTET_STREAM);
+			// throws a DavException with the status of a rejected WebDAV PUT, before the resource is read back
+			WebDAVResourceType resource = client.putResource(relativeUri, inputStream, (contentLength != null ? contentLength : -1), type);
+			ResponseBuilder builder = Response.ok(new ResourceOutput(resource), MediaType.APPLICATION_JSON);
+			String etag = getPropertyValue(resource, resource.getEtag(), DavConstants.PROPERTY_GETETAG);
+			if(etag != null) {
+				builder.header(HttpHeaders.ETAG, etag);
+			}
+			response = builder.build();
+		} catch (DavException e) {
+			response = Response.status(e.getErrorCode()).build();
+		} catch (IOException e) {
+			// the client may have gone away while sending, in which case the WebDAV PUT has been aborted
+			logger.error("PUT "+uri+" failed", e);
+			response = Response.status(HttpStatus.SC_BAD_GATEWAY).build();
+		} catch (RuntimeException e) {
+			// ParseException or UnsupportedCharsetException of the Content-Type
+			response = Response.status(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE).build();
+		}
+		return response;
+	}
+
+	public String getVersion() {
+		String version = null;
+		try (InputStream is = PfxWebDAVRESTService.class.getResourceAsStream(POM_PROPERTIES)) {
+			if(is != null) {
+				Properties properties = new Properties();
+				properties.load(is);
+				version = properties.getProperty("version");
+			}
+		} catch (IOException e) {
+			logger.warn("cannot read "+POM_PROPERTIES, e);
+		}
+		return (version != null ? version : "unknown");
+	}
+
+	private static Response getStreamResponse(WebDAVResourceStream stream) {
+		ResponseBuilder builder = Response.status(stream.getStatus()).entity(new ResourceStreamOutput(stream));
+		String contentType = stream.getHeader(HttpHeaders.CONTENT_TYPE);
+		builder.type(contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM);
+		if(stream.getContentLength() >= 0) {
+			builder.header(HttpHeaders.CONTENT_LENGTH, stream.getContentLength());
+		}
+		for(String name : PASSTHROUGH_HEADERS) {
+			String value = stream.getHeader(name);
+			if(value != null) {
+				builder.header(name, value);
+			}
+		}
+		return builder.build();
+	}
+
+	private static URI getRelativeUri(String uri) throws DavException {
+		if(uri == null || uri.isEmpty()) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, "uri is required");
+		}
+		try {
+			return new URI(null, null, uri, null);
+		} catch (URISyntaxException e) {
+			throw new DavException(HttpStatus.SC_BAD_REQUEST, e);
+		}
+	}
+
+	/**
+	 * @param value	value of the field of resource, used when it is set
+	 * @param name	name of the WebDAV property otherwise
+	 */
+	private static String getPropertyValue(WebDAVResourceType resource, String value, String name) {
+		if(value != null) {
+			return value;
+		}
+		for(WebDAVPropertyType property : resource.getProperties()) {
+			if(name.equals(property.getName())) {
+				return property.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the body of a WebDAV GET to the response; the connection goes back to the pool after
+	 * a complete copy and is discarded otherwise
+	 */
+	static class ResourceStreamOutput implements StreamingOutput {
+		private final WebDAVResourceStream stream;
+
+		ResourceStreamOutput(WebDAVResourceStream stream) {
+			this.stream = stream;
+		}
+
+		public void write(OutputStream output) throws IOException, WebApplicationException {
+			boolean complete = false;
+			try {
+				IOUtils.copyLarge(stream.getInputStream(), output, new byte[BUFFER_SIZE]);
+				output.flush();
+				complete = true;
+			} finally {
+				if(complete) {
+					stream.close();
+				} else {
+					stream.abort();
+				}
+			}
+		}
+	}
+
+	/**
+	 * PutResourceResponse written with the field names of the GetResourcesResponse entries
+	 */
+	private static class ResourceOutput implements StreamingOutput {
+		private final WebDAVResourceType resource;
+
+		private ResourceOutput(WebDAVResourceType resource) {
+			this.resource = resource;
+		}
+
+		public void write(OutputStream output) throws IOException, WebApplicationException {
+			JsonWriter writer = new JsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			WebDAVResourceJsonWriter.writeResource(writer, resource);
+			writer.flush();
+		}
+	}
+}
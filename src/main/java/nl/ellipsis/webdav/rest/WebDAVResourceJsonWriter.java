@@ -0,0 +1,132 @@
+package nl.ellipsis.webdav.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.apache.jackrabbit.webdav.DavException;
+
+import com.google.gson.stream.JsonWriter;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.client.WebDAVResourceHandler;
+
+/**
+ * Writes a GetResourcesResponse as JSON while the resources are being read, so a listing never has to be
+ * held in memory or serialized into a String first.
+ *
+ * The output has the same field names as Gson gives a WebDAVResourcesType; null fields are left out and
+ * dates are written in xsd:dateTime format. Nothing is written before the first resource or close, so an
+ * error of the PROPFIND request can still be turned into an error status.
+ *
+ * <pre>
+ * try (WebDAVResourceJsonWriter writer = new WebDAVResourceJsonWriter(outputStream)) {
+ *     client.getChildResources(uri, WebDAVPropertyProfile.MINIMAL.getPropertyNames(), writer);
+ * }
+ * </pre>
+ */
+public class WebDAVResourceJsonWriter implements WebDAVResourceHandler, Closeable {
+
+	public final static String KEY_RESOURCES = "resources";
+
+	// resources written between flushes, so the client receives the listing while it is being read
+	private final static int FLUSH_INTERVAL = 64;
+
+	private final JsonWriter writer;
+	private boolean started = false;
+	private boolean closed = false;
+	private int count = 0;
+
+	public WebDAVResourceJsonWriter(OutputStream outputStream) {
+		this.writer = new JsonWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+	}
+
+	public void handleResource(WebDAVResourceType resource) throws IOException, DavException {
+		start();
+		writeResource(writer, resource);
+		if(++count % FLUSH_INTERVAL == 0) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * @return number of resources written
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Complete the JSON document and close the output stream
+	 */
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			start();
+			writer.endArray();
+			writer.endObject();
+			writer.close();
+		}
+	}
+
+	private void start() throws IOException {
+		if(!started) {
+			started = true;
+			writer.beginObject();
+			writer.name(KEY_RESOURCES);
+			writer.beginArray();
+		}
+	}
+
+	/**
+	 * Write a single resource as a JSON object, e.g. for a PutResourceResponse
+	 */
+	public static void writeResource(JsonWriter writer, WebDAVResourceType resource) throws IOException {
+		writer.beginObject();
+		writeDate(writer, "creationDate", resource.getCreationDate());
+		writeString(writer, "displayName", resource.getDisplayName());
+		writeString(writer, "contentLanguage", resource.getContentLanguage());
+		writeString(writer, "contentLength", resource.getContentLength());
+		writeString(writer, "contentType", resource.getContentType());
+		writeString(writer, "etag", resource.getEtag());
+		writeDate(writer, "lastModified", resource.getLastModified());
+		writeString(writer, "lockDiscovery", resource.getLockDiscovery());
+		writeString(writer, "resourceType", resource.getResourceType());
+		writeString(writer, "source", resource.getSource());
+		writeString(writer, "supportedLock", resource.getSupportedLock());
+		writeString(writer, "href", resource.getHref());
+		writeString(writer, "uri", resource.getUri());
+		if(!resource.getProperties().isEmpty()) {
+			writer.name("properties");
+			writer.beginArray();
+			for(WebDAVPropertyType property : resource.getProperties()) {
+				writer.beginObject();
+				writeString(writer, "name", property.getName());
+				writeString(writer, "value", property.getValue());
+				writer.endObject();
+			}
+			writer.endArray();
+		}
+		if(resource.isCollection()) {
+			writer.name("collection").value(true);
+		}
+		writer.endObject();
+	}
+
+	private static void writeString(JsonWriter writer, String name, String value) throws IOException {
+		if(value != null) {
+			writer.name(name).value(value);
+		}
+	}
+
+	private static void writeDate(JsonWriter writer, String name, XMLGregorianCalendar value) throws IOException {
+		if(value != null) {
+			writer.name(name).value(value.toXMLFormat());
+		}
+	}
+}
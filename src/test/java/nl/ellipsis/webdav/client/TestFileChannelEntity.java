@@ -0,0 +1,134 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.entity.ContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFileChannelEntity {
+
+	private final static URI RESOURCE = URI.create("/test.bin");
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+	private File file;
+	private byte[] content;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		file = File.createTempFile("webdav-entity", ".bin");
+		content = createFile(100000);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(client != null) {
+			client.close();
+		}
+		server.close();
+		file.delete();
+	}
+
+	@Test
+	public void testWriteToIsRepeatable() throws Exception {
+		FileChannelEntity entity = new FileChannelEntity(file, ContentType.APPLICATION_OCTET_STREAM);
+		assertTrue(entity.isRepeatable());
+		assertFalse(entity.isStreaming());
+		assertEquals(content.length, entity.getContentLength());
+		assertArrayEquals(content, writeTo(entity));
+		assertArrayEquals(content, writeTo(entity));
+		assertArrayEquals(content, IOUtils.toByteArray(entity.getContent()));
+
+		// a region of the file
+		FileChannelEntity region = new FileChannelEntity(file, 1000, 5000, ContentType.APPLICATION_OCTET_STREAM);
+		assertEquals(5000, region.getContentLength());
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), writeTo(region));
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), writeTo(region));
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), IOUtils.toByteArray(region.getContent()));
+		assertEquals(content.length - 1000, new FileChannelEntity(file, 1000, -1, null).getContentLength());
+	}
+
+	@Test
+	public void testExpectContinue() throws Exception {
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+		assertNotNull(client.putResource(RESOURCE, file, ContentType.APPLICATION_OCTET_STREAM));
+		assertEquals(1, server.getExpectContinueCount("PUT"));
+		assertArrayEquals(content, Files.readAllBytes(getTarget()));
+		client.close();
+
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setExpectContinue(false);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		server.resetRequestCounts();
+		assertNotNull(client.putResource(RESOURCE, file, ContentType.APPLICATION_OCTET_STREAM));
+		assertEquals(1, server.getRequestCount("PUT"));
+		assertEquals(0, server.getExpectContinueCount("PUT"));
+	}
+
+	@Test
+	public void testBodyIsResentAfterBasicChallenge() throws Exception {
+		testBodyIsResentAfterChallenge(WebDAVTestServer.Authentication.BASIC);
+	}
+
+	@Test
+	public void testBodyIsResentAfterDigestChallenge() throws Exception {
+		testBodyIsResentAfterChallenge(WebDAVTestServer.Authentication.DIGEST);
+	}
+
+	@Test
+	public void testBodyIsResentAfterDroppedConnection() throws Exception {
+		// large enough not to fit in the socket buffers, so the server drops the connection while the body is sent
+		content = createFile(16 * 1024 * 1024);
+		WebDAVInMemoryMetrics metrics = new WebDAVInMemoryMetrics();
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setMetrics(metrics);
+		config.setReadBack(false);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		server.failNext("PUT", 1, WebDAVTestServer.DROP_CONNECTION);
+		assertNotNull(client.putResource(RESOURCE, file, ContentType.APPLICATION_OCTET_STREAM));
+		assertEquals(2, server.getRequestCount("PUT"));
+		assertEquals(1, metrics.getRetries());
+		assertArrayEquals(content, Files.readAllBytes(getTarget()));
+	}
+
+	private void testBodyIsResentAfterChallenge(WebDAVTestServer.Authentication authentication) throws Exception {
+		server.setAuthentication(authentication, "user", "secret");
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		// the body is sent with the request that is challenged
+		config.setExpectContinue(false);
+		config.setReadBack(false);
+		client = new WebDAVClientImpl("user", "secret", server.getServerUri(), config);
+		assertNotNull(client.putResource(RESOURCE, file, ContentType.APPLICATION_OCTET_STREAM));
+		assertEquals(2, server.getRequestCount("PUT"));
+		assertArrayEquals(content, Files.readAllBytes(getTarget()));
+	}
+
+	private byte[] createFile(int length) throws Exception {
+		byte[] bytes = new byte[length];
+		new Random(0).nextBytes(bytes);
+		Files.write(file.toPath(), bytes);
+		return bytes;
+	}
+
+	private Path getTarget() {
+		return server.getRoot().resolve("test.bin");
+	}
+
+	private static byte[] writeTo(FileChannelEntity entity) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		return out.toByteArray();
+	}
+}
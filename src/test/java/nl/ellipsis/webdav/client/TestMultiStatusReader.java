@@ -0,0 +1,53 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+import org.junit.Test;
+
+public class TestMultiStatusReader {
+
+	private final static String MULTISTATUS = 
+			"<?xml version=\"1.0\" encoding=\"utf-8\"?>" +
+			"<D:multistatus xmlns:D=\"DAV:\">" +
+			"<D:response><D:href>/PFX/</D:href><D:propstat><D:prop>" +
+			"<D:displayname>PFX</D:displayname><D:resourcetype><D:collection/></D:resourcetype>" +
+			"</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>" +
+			"<!-- comments are ignored -->" +
+			"<D:response><D:href>/PFX/sample.pdf</D:href><D:propstat><D:prop>" +
+			"<D:displayname>sample.pdf</D:displayname><D:getcontentlength>1024</D:getcontentlength><D:resourcetype/>" +
+			"<a-key xmlns=\"\">a-value</a-key>" +
+			"</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>" +
+			"</D:multistatus>";
+
+	@Test
+	public void testReadResponses() throws Exception {
+		InputStream is = new ByteArrayInputStream(MULTISTATUS.getBytes(StandardCharsets.UTF_8));
+		MultiStatusReader reader = new MultiStatusReader(is);
+		try {
+			MultiStatusResponse response = reader.nextResponse();
+			assertNotNull(response);
+			assertEquals("/PFX/",response.getHref());
+			DavPropertySet properties = response.getProperties(HttpStatus.SC_OK);
+			assertEquals("PFX",properties.get(DavConstants.PROPERTY_DISPLAYNAME).getValue());
+			assertTrue(properties.get(DavConstants.PROPERTY_RESOURCETYPE).getValue().toString().contains(DavConstants.XML_COLLECTION));
+			
+			response = reader.nextResponse();
+			assertNotNull(response);
+			assertEquals("/PFX/sample.pdf",response.getHref());
+			properties = response.getProperties(HttpStatus.SC_OK);
+			assertEquals("1024",properties.get(DavConstants.PROPERTY_GETCONTENTLENGTH).getValue());
+			
+			assertNull(reader.nextResponse());
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+public class TestWebDAVAsyncClient {
+
+	private WebDAVTestServer server;
+	private ExecutorService executor;
+	private AtomicInteger tasks;
+	private WebDAVAsyncClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		executor = Executors.newFixedThreadPool(2);
+		tasks = new AtomicInteger();
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setAsyncExecutor(task -> {
+			tasks.incrementAndGet();
+			executor.execute(task);
+		});
+		client = new WebDAVAsyncClientImpl(null, null, server.getServerUri(), config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		executor.shutdownNow();
+		server.close();
+	}
+
+	@Test
+	public void testListingIsParsedOnExecutor() throws Exception {
+		Path dir = Files.createDirectory(server.getRoot().resolve("PFX"));
+		for(int i=0; i<500; i++) {
+			Files.write(dir.resolve(String.format("file-%03d.txt", i)), Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+		}
+		List<WebDAVResourceType> resources = client.getChildResources(URI.create("/PFX/")).get(10, TimeUnit.SECONDS);
+		assertEquals(500, resources.size());
+		assertEquals("file-000.txt", resources.get(0).getDisplayName());
+		assertEquals(1, tasks.get());
+
+		assertDavException(HttpStatus.SC_NOT_FOUND, () -> client.getResource(URI.create("/missing.txt")).get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testPutStream() throws Exception {
+		byte[] body = "0123456789".getBytes(StandardCharsets.UTF_8);
+		WebDAVResourceType resource = client.putResource(URI.create("/known.txt"), new ByteArrayInputStream(body), body.length, ContentType.TEXT_PLAIN).get(10, TimeUnit.SECONDS);
+		assertEquals("known.txt", resource.getDisplayName());
+		assertArrayEquals(body, Files.readAllBytes(server.getRoot().resolve("known.txt")));
+
+		client.putResource(URI.create("/unknown.txt"), new ByteArrayInputStream(body), -1, ContentType.TEXT_PLAIN).get(10, TimeUnit.SECONDS);
+		assertArrayEquals(body, Files.readAllBytes(server.getRoot().resolve("unknown.txt")));
+	}
+
+	@Test
+	public void testFailedPut() throws Exception {
+		server.failNext("PUT", 1, HttpStatus.SC_LOCKED);
+		assertDavException(HttpStatus.SC_LOCKED, () -> put("/locked.txt", new ByteArrayInputStream(new byte[10])));
+		assertEquals(0, server.getRequestCount("PROPFIND"));
+		assertFalse(Files.exists(server.getRoot().resolve("locked.txt")));
+
+		// a stream that fails halfway must not be stored as a short file
+		InputStream broken = new SequenceInputStream(new ByteArrayInputStream(new byte[10]), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("disk error");
+			}
+		});
+		try {
+			client.putResource(URI.create("/broken.txt"), broken, -1, ContentType.TEXT_PLAIN).get(10, TimeUnit.SECONDS);
+			fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertFalse(Files.exists(server.getRoot().resolve("broken.txt")));
+	}
+
+	@Test
+	public void testLockAndUnlock() throws Exception {
+		Files.write(server.getRoot().resolve("known.txt"), "0123456789".getBytes(StandardCharsets.UTF_8));
+		URI uri = URI.create("/known.txt");
+		WebDAVResourceType resource = client.lockResource(uri, null, 60000).get(10, TimeUnit.SECONDS);
+		assertTrue(resource instanceof WebDAVWriteResource);
+		WebDAVWriteResource lock = (WebDAVWriteResource)resource;
+		assertTrue(lock.getLockToken(), lock.getLockToken().startsWith("opaquelocktoken:"));
+		assertEquals(60000, lock.getLockTimeout());
+		// the properties are read back
+		assertTrue(lock.isLoaded());
+		assertEquals("known.txt", lock.getDisplayName());
+		assertEquals("10", WebDAVMetadataCache.getPropertyValue(lock, DavConstants.PROPERTY_GETCONTENTLENGTH));
+		assertDavException(HttpStatus.SC_LOCKED, () -> client.lockResource(uri, null, 60000).get(10, TimeUnit.SECONDS));
+
+		// a refresh keeps the token
+		lock = (WebDAVWriteResource)client.lockResource(uri, lock.getLockToken(), 60000).get(10, TimeUnit.SECONDS);
+		assertEquals(((WebDAVWriteResource)resource).getLockToken(), lock.getLockToken());
+
+		assertNotNull(client.unlockResource(uri, lock.getLockToken()).get(10, TimeUnit.SECONDS));
+		assertNotNull(client.lockResource(uri, null, 60000).get(10, TimeUnit.SECONDS));
+	}
+
+	private WebDAVResourceType put(String uri, InputStream inputStream) throws Exception {
+		return client.putResource(URI.create(uri), inputStream, 10, ContentType.TEXT_PLAIN).get(10, TimeUnit.SECONDS);
+	}
+
+	private static void assertDavException(int status, Request request) throws Exception {
+		try {
+			request.run();
+			fail("DavException expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), e.getCause() instanceof DavException);
+			assertEquals(status, ((DavException)e.getCause()).getErrorCode());
+		}
+	}
+
+	private interface Request {
+		void run() throws Exception;
+	}
+}
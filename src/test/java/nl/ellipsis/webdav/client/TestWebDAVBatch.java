@@ -0,0 +1,123 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+public class TestWebDAVBatch {
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Path dir = Files.createDirectory(server.getRoot().resolve("PFX"));
+		for(String name : new String[] { "a.pdf", "b.pdf", "0.pdf", "1.pdf", "2.pdf", "3.pdf", "4.pdf" }) {
+			Files.write(dir.resolve(name), name.getBytes(StandardCharsets.UTF_8));
+		}
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testBestEffort() throws Exception {
+		WebDAVBatch batch = new WebDAVBatch(client)
+				.delete(new URI("/PFX/a.pdf"))
+				.delete(new URI("/PFX/missing.pdf"))
+				.move(new URI("/PFX/b.pdf"), new URI("/PFX/c.pdf"));
+		List<WebDAVBatchResult> results = batch.execute();
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertTrue(results.get(0).getResource().getHref(), results.get(0).getResource().getHref().endsWith("/PFX/a.pdf"));
+		assertFalse(Files.exists(getFile("a.pdf")));
+		assertEquals(WebDAVBatchResult.Status.FAILED, results.get(1).getStatus());
+		assertEquals(HttpStatus.SC_NOT_FOUND, results.get(1).getErrorCode());
+		assertTrue(results.get(2).isSuccess());
+		assertEquals("MOVE", results.get(2).getMethod());
+		assertTrue(Files.exists(getFile("c.pdf")));
+	}
+
+	@Test
+	public void testRejectedWriteFails() throws Exception {
+		server.failNext("DELETE", 1, HttpStatus.SC_LOCKED);
+		List<WebDAVBatchResult> results = new WebDAVBatch(client).setConcurrency(1)
+				.delete(new URI("/PFX/a.pdf"))
+				.delete(new URI("/PFX/b.pdf"))
+				.execute();
+		assertEquals(WebDAVBatchResult.Status.FAILED, results.get(0).getStatus());
+		assertEquals(HttpStatus.SC_LOCKED, results.get(0).getErrorCode());
+		assertNull(results.get(0).getResource());
+		assertTrue(Files.exists(getFile("a.pdf")));
+		assertTrue(results.get(1).isSuccess());
+		assertFalse(Files.exists(getFile("b.pdf")));
+	}
+
+	@Test
+	public void testFailFastSkipsRemainingOperations() throws Exception {
+		WebDAVBatch batch = new WebDAVBatch(client).setConcurrency(1).setFailFast(true);
+		batch.delete(new URI("/PFX/missing.pdf"));
+		for(int i=0; i<5; i++) {
+			batch.delete(new URI("/PFX/" + i + ".pdf"));
+		}
+		List<WebDAVBatchResult> results = batch.execute();
+		assertEquals(WebDAVBatchResult.Status.FAILED, results.get(0).getStatus());
+		for(int i=1; i<results.size(); i++) {
+			assertEquals(WebDAVBatchResult.Status.SKIPPED, results.get(i).getStatus());
+			assertTrue(Files.exists(getFile((i - 1) + ".pdf")));
+		}
+	}
+
+	@Test
+	public void testConcurrency() throws Exception {
+		// every operation waits until all four are running at the same time
+		final CountDownLatch latch = new CountDownLatch(4);
+		try (WebDAVClientImpl waitingClient = new WebDAVClientImpl(null, null, server.getServerUri()) {
+			@Override
+			public WebDAVResourceType deleteResource(URI uri) throws IOException, DavException {
+				latch.countDown();
+				try {
+					if(!latch.await(5, TimeUnit.SECONDS)) {
+						throw new DavException(HttpStatus.SC_REQUEST_TIMEOUT, "operations did not run concurrently");
+					}
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return super.deleteResource(uri);
+			}
+		}) {
+			WebDAVBatch batch = new WebDAVBatch(waitingClient).setConcurrency(4);
+			for(int i=0; i<4; i++) {
+				batch.delete(new URI("/PFX/" + i + ".pdf"));
+			}
+			for(WebDAVBatchResult result : batch.execute()) {
+				assertTrue(result.toString(), result.isSuccess());
+			}
+		}
+		assertEquals(4, server.getRequestCount("DELETE"));
+	}
+
+	private Path getFile(String name) {
+		return server.getRoot().resolve("PFX").resolve(name);
+	}
+}
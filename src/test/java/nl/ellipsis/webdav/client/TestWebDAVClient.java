@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
@@ -12,9 +13,11 @@ import java.util.Properties;
 import org.apache.http.entity.ContentType;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.log4j.BasicConfigurator;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
 import nl.ellipsis.webdav.client.WebDAVClientImpl;
 
 public class TestWebDAVClient extends WebDAVClientBaseTests {
@@ -48,6 +51,13 @@ public class TestWebDAVClient extends WebDAVClientBaseTests {
 		}
 	}
 
+	@After
+	public void tearDown() throws IOException {
+		if(client!=null) {
+			client.close();
+		}
+	}
+
 	@Test
 	public void testGetChildResourcesForFile() {
 		String path = properties.getProperty(PROP_FILE_PATH);
@@ -60,6 +70,24 @@ public class TestWebDAVClient extends WebDAVClientBaseTests {
 		testGetChildResources(client,path);
 	}
 
+	@Test
+	public void testGetChildResourcesMinimalForFolder() {
+		String path = properties.getProperty(PROP_FOLDER_PATH);
+		testGetChildResourcesMinimal(client,path);
+	}
+
+	@Test
+	public void testGetChildResourcesStreamingForFolder() {
+		String path = properties.getProperty(PROP_FOLDER_PATH);
+		testGetChildResourcesStreaming(client,path);
+	}
+
+	@Test
+	public void testWalkFolder() {
+		String path = properties.getProperty(PROP_FOLDER_PATH);
+		testWalk(client,path);
+	}
+
 	@Test
 	public void testGetResourceForFile() {
 		String path = properties.getProperty(PROP_FILE_PATH);
@@ -91,6 +119,12 @@ public class TestWebDAVClient extends WebDAVClientBaseTests {
 		testGetResourceStream(client,path,absoluteBasePath+OUT_PATH);
 	}
 
+	@Test
+	public void testDownloadLargeResourceToFile() {
+		String path = properties.getProperty(PROP_FILE_LARGE_PATH);
+		testDownloadToFile(client,path,absoluteBasePath+OUT_PATH);
+	}
+
 	@Test
 	public void testMakeAndDeleteCollection() {
 		String path = PROP_FOLDER_PATH + "/a/b/c/d";
@@ -117,6 +151,30 @@ public class TestWebDAVClient extends WebDAVClientBaseTests {
 		testDeleteResource(client,path,true);
 	}
 
+	@Test
+	public void testUploadAndDeleteResourceWithoutReadBack() throws Exception {
+		File f = new File(absoluteBasePath+"/test/data/sample.pdf");
+		assertTrue(f.getAbsolutePath(),f.exists());
+
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setReadBack(false);
+		WebDAVClientImpl writer = new WebDAVClientImpl(properties.getProperty(PROP_SERVER_USER), properties.getProperty(PROP_SERVER_PWD), new URI(properties.getProperty(PROP_SERVER_DOMAIN)), config);
+		try {
+			URI uri = new URI(properties.getProperty(PROP_FOLDER_PATH) + "/sample.pdf");
+			WebDAVResourceType resource = writer.putResource(uri,f,ContentType.create("application/pdf"));
+			assertTrue(resource instanceof WebDAVWriteResource);
+			WebDAVWriteResource written = (WebDAVWriteResource)resource;
+			assertFalse(written.isLoaded());
+			assertEquals("sample.pdf", written.getDisplayName());
+			assertEquals(written.getHref(), written.load().getHref());
+
+			resource = writer.deleteResource(uri);
+			assertEquals("DELETE", ((WebDAVWriteResource)resource).getMethod());
+		} finally {
+			writer.close();
+		}
+	}
+
 	@Test
 	public void testUploadAndDeleteLargeResource() {
 		File f = new File(absoluteBasePath+"/test/data/BladeRunnerCD1.mkv");
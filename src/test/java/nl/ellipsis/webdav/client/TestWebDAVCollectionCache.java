@@ -0,0 +1,33 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestWebDAVCollectionCache {
+
+	@Test
+	public void testRemoveTree() {
+		WebDAVCollectionCache cache = new WebDAVCollectionCache(10);
+		cache.add("/PFX/a/");
+		cache.add("/PFX/a/b");
+		cache.add("/PFX/ab");
+		assertTrue(cache.contains("/PFX/a"));
+		cache.removeTree("/PFX/a");
+		assertFalse(cache.contains("/PFX/a"));
+		assertFalse(cache.contains("/PFX/a/b"));
+		assertTrue(cache.contains("/PFX/ab"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		WebDAVCollectionCache cache = new WebDAVCollectionCache(2);
+		cache.add("/a");
+		cache.add("/b");
+		cache.contains("/a");
+		cache.add("/c");
+		assertTrue(cache.contains("/a"));
+		assertFalse(cache.contains("/b"));
+		assertEquals(2, cache.size());
+	}
+}
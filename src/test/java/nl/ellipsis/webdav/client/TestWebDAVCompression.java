@@ -0,0 +1,51 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class TestWebDAVCompression {
+
+	@Test
+	public void testIsCompressible() {
+		assertTrue(WebDAVCompression.isCompressible(ContentType.TEXT_PLAIN));
+		assertTrue(WebDAVCompression.isCompressible(ContentType.APPLICATION_JSON));
+		assertTrue(WebDAVCompression.isCompressible(ContentType.create("application/atom+xml")));
+		assertFalse(WebDAVCompression.isCompressible(ContentType.create("application/pdf")));
+		assertFalse(WebDAVCompression.isCompressible(ContentType.APPLICATION_OCTET_STREAM));
+		assertFalse(WebDAVCompression.isCompressible(null));
+	}
+
+	@Test
+	public void testIsCompressed() {
+		assertTrue(WebDAVCompression.isCompressed("application/pdf", "report.pdf"));
+		assertTrue(WebDAVCompression.isCompressed(null, "movie.MKV"));
+		assertTrue(WebDAVCompression.isCompressed("image/jpeg", null));
+		assertFalse(WebDAVCompression.isCompressed("text/plain", "notes.txt"));
+		assertFalse(WebDAVCompression.isCompressed("image/svg+xml", "logo.svg"));
+		assertFalse(WebDAVCompression.isCompressed(null, null));
+	}
+
+	@Test
+	public void testDecodeGzip() throws Exception {
+		String multistatus = "<D:multistatus xmlns:D=\"DAV:\"/>";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(multistatus.getBytes(StandardCharsets.UTF_8));
+		gzip.close();
+		ByteArrayEntity entity = new ByteArrayEntity(out.toByteArray(), ContentType.APPLICATION_XML);
+		entity.setContentEncoding(WebDAVCompression.ENCODING_GZIP);
+		assertEquals(multistatus, EntityUtils.toString(WebDAVCompression.decode(entity), StandardCharsets.UTF_8));
+
+		HttpEntity identity = new ByteArrayEntity(multistatus.getBytes(StandardCharsets.UTF_8));
+		assertSame(identity, WebDAVCompression.decode(identity));
+	}
+}
@@ -0,0 +1,95 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVContentCache {
+
+	private Path directory;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("webdav-content-cache");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for(Path path : stream) {
+				Files.delete(path);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testStoreAndOpen() throws IOException {
+		WebDAVContentCache cache = new WebDAVContentCache(directory, 1024);
+		assertEquals("body", read(cache.store("/PFX/a.pdf", "\"1\"", null, "application/pdf", 4, body("body"))));
+		WebDAVContentCache.Entry entry = cache.get("/PFX/a.pdf");
+		assertNotNull(entry);
+		assertEquals("\"1\"", entry.getEtag());
+		assertEquals(4, entry.getLength());
+		assertEquals("body", read(cache.open(entry)));
+		assertEquals(1, cache.getHitCount());
+
+		// entries survive a new cache instance on the same directory
+		WebDAVContentCache reloaded = new WebDAVContentCache(directory, 1024);
+		assertEquals("body", read(reloaded.open(reloaded.get("/PFX/a.pdf"))));
+	}
+
+	@Test
+	public void testIncompleteBodyIsNotStored() throws IOException {
+		WebDAVContentCache cache = new WebDAVContentCache(directory, 1024);
+		InputStream is = cache.store("/PFX/a.pdf", "\"1\"", null, null, 4, body("body"));
+		is.read();
+		is.close();
+		assertNull(cache.get("/PFX/a.pdf"));
+		// without a validator the response cannot be revalidated
+		read(cache.store("/PFX/b.pdf", null, null, null, 4, body("body")));
+		assertNull(cache.get("/PFX/b.pdf"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		WebDAVContentCache cache = new WebDAVContentCache(directory, 10);
+		read(cache.store("/a", "\"a\"", null, null, 4, body("aaaa")));
+		read(cache.store("/b", "\"b\"", null, null, 4, body("bbbb")));
+		cache.get("/a");
+		read(cache.store("/c", "\"c\"", null, null, 4, body("cccc")));
+		assertNotNull(cache.get("/a"));
+		assertNull(cache.get("/b"));
+		assertEquals(8, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	private static InputStream body(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[3];
+			int n;
+			while((n = is.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,95 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVDownloader {
+
+	private final static URI RESOURCE = URI.create("/test.bin");
+	private final static byte[] OLD = "old".getBytes(StandardCharsets.UTF_8);
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+	private Path directory;
+	private Path target;
+	private byte[] content;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		content = new byte[100000];
+		new Random(0).nextBytes(content);
+		Files.write(server.getRoot().resolve("test.bin"), content);
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+		directory = Files.createTempDirectory("webdav-download");
+		target = directory.resolve("test.bin");
+		Files.write(target, OLD);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+		for(File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testDownloadReplacesTarget() throws Exception {
+		assertEquals(content.length, client.downloadToFile(RESOURCE, target, null));
+		assertArrayEquals(content, Files.readAllBytes(target));
+		assertEquals(1, directory.toFile().list().length);
+
+		assertEquals(content.length, client.downloadToFile(RESOURCE, target, createSegmentedOptions()));
+		assertArrayEquals(content, Files.readAllBytes(target));
+		assertEquals(1, directory.toFile().list().length);
+	}
+
+	@Test
+	public void testFailedDownloadKeepsTarget() throws Exception {
+		server.failNext("GET", 1, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+		assertDownloadFails(HttpStatus.SC_INTERNAL_SERVER_ERROR, null);
+
+		// one failing segment
+		server.failNext("GET", 1, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+		assertDownloadFails(HttpStatus.SC_INTERNAL_SERVER_ERROR, createSegmentedOptions());
+
+		// the resource is gone before the first byte
+		Files.delete(server.getRoot().resolve("test.bin"));
+		assertDownloadFails(HttpStatus.SC_NOT_FOUND, null);
+	}
+
+	private void assertDownloadFails(int status, WebDAVDownloadOptions options) throws Exception {
+		try {
+			client.downloadToFile(RESOURCE, target, options);
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(status, e.getErrorCode());
+		}
+		assertArrayEquals(OLD, Files.readAllBytes(target));
+		// no temporary file is left behind
+		assertEquals(1, directory.toFile().list().length);
+	}
+
+	private static WebDAVDownloadOptions createSegmentedOptions() {
+		WebDAVDownloadOptions options = new WebDAVDownloadOptions();
+		options.setSegmentSize(16 * 1024);
+		options.setMinSegmentedSize(32 * 1024);
+		options.setParallelism(4);
+		return options;
+	}
+}
@@ -0,0 +1,59 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestWebDAVInMemoryMetrics {
+
+	@Test
+	public void testPercentiles() {
+		WebDAVInMemoryMetrics metrics = new WebDAVInMemoryMetrics();
+		for(int i=1; i<=100; i++) {
+			metrics.recordRequest("PROPFIND", 207, TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		metrics.recordRequest("PUT", 507, TimeUnit.MILLISECONDS.toNanos(5));
+		metrics.recordRequest("PUT", WebDAVMetrics.STATUS_IO_ERROR, TimeUnit.MILLISECONDS.toNanos(5));
+
+		WebDAVOperationStats propfind = metrics.getOperation("PROPFIND");
+		assertEquals(100, propfind.getCount());
+		assertEquals(0, propfind.getErrorCount());
+		assertEquals(50.5, propfind.getMeanMillis(), 0.1);
+		// bucket upper bounds overestimate by at most 12.5%
+		assertEquals(50, propfind.getP50Millis(), 50 * 0.125);
+		assertEquals(99, propfind.getP99Millis(), 99 * 0.125);
+		assertEquals(100, propfind.getMaxMillis(), 0.001);
+		assertTrue(propfind.getP99Millis() <= propfind.getMaxMillis());
+
+		assertEquals(2, metrics.getOperation("PUT").getErrorCount());
+		assertEquals(Long.valueOf(100), metrics.getStatusCounts().get("PROPFIND 207"));
+		assertEquals(Long.valueOf(1), metrics.getStatusCounts().get("PUT 0"));
+	}
+
+	@Test
+	public void testBucketBounds() {
+		for(long micros : new long[] { 0, 1, 2, 3, 7, 100, 1000, 123456789L }) {
+			int bucket = WebDAVInMemoryMetrics.Histogram.getBucket(micros);
+			assertTrue(bucket >= 0);
+			assertTrue(micros + " in " + bucket, bucket == 0 || bucket > WebDAVInMemoryMetrics.Histogram.getBucket(micros / 2));
+		}
+	}
+
+	@Test
+	public void testReset() {
+		WebDAVInMemoryMetrics metrics = new WebDAVInMemoryMetrics();
+		metrics.recordBytesRead(10);
+		metrics.recordBytesWritten(20);
+		metrics.recordRetry("GET");
+		assertEquals(10, metrics.getBytesRead());
+		assertEquals(20, metrics.getBytesWritten());
+		assertEquals(1, metrics.getRetries());
+		metrics.reset();
+		assertEquals(0, metrics.getBytesRead());
+		assertTrue(metrics.getOperations().isEmpty());
+		// not bound to a client
+		assertEquals(0, metrics.getLeasedConnections());
+	}
+}
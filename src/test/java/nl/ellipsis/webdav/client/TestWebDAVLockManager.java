@@ -0,0 +1,353 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+public class TestWebDAVLockManager {
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+	private ManualScheduler scheduler;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+		client.createCollection(URI.create("/PFX/"));
+		scheduler = new ManualScheduler();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdownNow();
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testLocksAreRefreshedAndReleased() throws Exception {
+		WebDAVLockManager manager = createManager(client).setTimeout(300000).setJitter(0);
+		for(int i=0; i<3; i++) {
+			WebDAVResourceType resource = manager.lock(getUri(i));
+			assertEquals(300000, ((WebDAVWriteResource)resource).getLockTimeout());
+		}
+		assertEquals(3, manager.getLockCount());
+		String token = manager.getLockToken(getUri(1));
+		assertTrue(token, token.startsWith("opaquelocktoken:"));
+		try {
+			manager.lock(getUri(1));
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(HttpStatus.SC_LOCKED, e.getErrorCode());
+		}
+
+		// every lock is refreshed after two thirds of its timeout, until it is released
+		server.resetRequestCounts();
+		scheduler.advance(199999);
+		assertEquals(0, manager.getRefreshCount());
+		scheduler.advance(1);
+		assertEquals(3, manager.getRefreshCount());
+		scheduler.advance(200000);
+		assertEquals(6, manager.getRefreshCount());
+		assertEquals(6, server.getRequestCount("LOCK"));
+		assertEquals(0, manager.getRefreshFailures());
+		assertEquals(token, manager.getLockToken(getUri(1)));
+
+		assertNotNull(manager.unlock(getUri(0)));
+		assertNull(manager.unlock(getUri(0)));
+		manager.close();
+		assertEquals(0, manager.getLockCount());
+		assertEquals(3, server.getRequestCount("UNLOCK"));
+		scheduler.advance(600000);
+		assertEquals(6, manager.getRefreshCount());
+		// the server knows no lock any more
+		assertNotNull(client.lockResource(getUri(1), null, 1000));
+		try {
+			manager.lock(getUri(3));
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getErrorCode());
+		}
+	}
+
+	@Test
+	public void testRefreshUsesGrantedTimeout() throws Exception {
+		server.setMaxLockTimeout(60);
+		WebDAVLockManager manager = createManager(client).setTimeout(300000).setJitter(0);
+		WebDAVResourceType resource = manager.lock(getUri(0));
+		assertEquals(60000, ((WebDAVWriteResource)resource).getLockTimeout());
+		scheduler.advance(39999);
+		assertEquals(0, manager.getRefreshCount());
+		scheduler.advance(1);
+		assertEquals(1, manager.getRefreshCount());
+		scheduler.advance(40000);
+		assertEquals(2, manager.getRefreshCount());
+		manager.close();
+	}
+
+	@Test
+	public void testRejectedRefreshDropsLock() throws Exception {
+		WebDAVLockManager manager = createManager(client).setTimeout(300000);
+		manager.lock(getUri(0));
+		manager.lock(getUri(1));
+		// the lock is removed behind the back of the manager, so its refresh fails with 412
+		client.unlockResource(getUri(0), manager.getLockToken(getUri(0)));
+		scheduler.advance(300000);
+		assertEquals(1, manager.getLockCount());
+		assertEquals(1, manager.getLostLocks());
+		assertNull(manager.getLockToken(getUri(0)));
+		assertNotNull(manager.getLockToken(getUri(1)));
+		manager.close();
+	}
+
+	@Test
+	public void testFailedRefreshIsRetriedUntilExpiry() throws Exception {
+		WebDAVLockManager manager = createManager(client).setTimeout(60000).setJitter(0);
+		manager.lock(getUri(0));
+		server.failNext("LOCK", 1000, HttpStatus.SC_SERVICE_UNAVAILABLE);
+		scheduler.advance(59999);
+		assertEquals(1, manager.getLockCount());
+		assertTrue(manager.getRefreshFailures() > 1);
+		scheduler.advance(60000);
+		assertEquals(0, manager.getLockCount());
+		assertEquals(1, manager.getLostLocks());
+		// retries are spaced, also close to the expiry
+		assertTrue(Long.toString(manager.getRefreshFailures()), manager.getRefreshFailures() < 20);
+		manager.close();
+	}
+
+	@Test
+	public void testRefreshConcurrencyIsBounded() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		WebDAVClientImpl blockingClient = new WebDAVClientImpl(null, null, server.getServerUri()) {
+			@Override
+			public WebDAVResourceType lockResource(URI uri, String lockToken, int timeout) throws IOException, DavException {
+				maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+				try {
+					if(lockToken != null) {
+						// refreshes wait until the test releases them
+						entered.countDown();
+						release.await();
+					}
+					return super.lockResource(uri, lockToken, timeout);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+		WebDAVLockManager manager = createManager(blockingClient).setTimeout(300000).setConcurrency(2).setJitter(0);
+		for(int i=0; i<8; i++) {
+			manager.lock(getUri(i));
+		}
+		assertTrue(scheduler.awaitScheduled(8));
+
+		// all refreshes come due at the same moment and run in parallel
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(Runnable task : scheduler.takeDue(200000)) {
+				futures.add(executor.submit(task));
+			}
+			assertEquals(8, futures.size());
+			assertTrue(entered.await(10, TimeUnit.SECONDS));
+			// the six refreshes without a free slot are postponed
+			assertTrue(scheduler.awaitScheduled(6));
+			assertEquals(2, active.get());
+			release.countDown();
+			for(Future<?> future : futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(2, manager.getRefreshCount());
+			scheduler.advance(1000);
+			assertEquals(8, manager.getRefreshCount());
+			assertEquals(2, maxActive.get());
+		} finally {
+			executor.shutdownNow();
+			manager.close();
+			blockingClient.close();
+		}
+	}
+
+	@Test
+	public void testLockIsReleasedWhenClosedMeanwhile() throws Exception {
+		final AtomicReference<WebDAVLockManager> closing = new AtomicReference<WebDAVLockManager>();
+		WebDAVClientImpl closingClient = new WebDAVClientImpl(null, null, server.getServerUri()) {
+			@Override
+			public WebDAVResourceType lockResource(URI uri, String lockToken, int timeout) throws IOException, DavException {
+				WebDAVResourceType resource = super.lockResource(uri, lockToken, timeout);
+				// the manager is closed while the LOCK is on its way back
+				closing.get().close();
+				return resource;
+			}
+		};
+		try {
+			WebDAVLockManager manager = createManager(closingClient);
+			closing.set(manager);
+			try {
+				manager.lock(getUri(0));
+				fail("DavException expected");
+			} catch (DavException e) {
+				assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getErrorCode());
+			}
+			assertEquals(0, manager.getLockCount());
+			assertEquals(1, server.getRequestCount("UNLOCK"));
+			assertNotNull(client.lockResource(getUri(0), null, 1000));
+		} finally {
+			closingClient.close();
+		}
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		ObjectName name = new ObjectName("nl.ellipsis.webdav:type=WebDAVLockManager,name=test");
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		WebDAVLockManager manager = createManager(client).setTimeout(300000).setJitter(0);
+		manager.registerMBean(name.toString());
+		manager.lock(getUri(0));
+		scheduler.advance(200000);
+		assertEquals(1, mbeanServer.getAttribute(name, "LockCount"));
+		assertEquals(1L, mbeanServer.getAttribute(name, "RefreshCount"));
+		assertEquals(0L, mbeanServer.getAttribute(name, "LostLocks"));
+		CompositeData latency = (CompositeData)mbeanServer.getAttribute(name, "RefreshLatency");
+		assertEquals(2L, latency.get("count"));
+		manager.close();
+		assertFalse(mbeanServer.isRegistered(name));
+	}
+
+	private WebDAVLockManager createManager(WebDAVClientAPI client) {
+		return new WebDAVLockManager(client, scheduler, scheduler::nanoTime);
+	}
+
+	private static URI getUri(int i) {
+		return URI.create("/PFX/" + i + ".txt");
+	}
+
+	/**
+	 * Scheduler with a clock that only moves on advance or takeDue, which run or return the tasks that come due
+	 */
+	private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+		private final List<Task> tasks = new ArrayList<Task>();
+		private final Semaphore scheduled = new Semaphore(0);
+		private long now = 0;
+
+		private ManualScheduler() {
+			super(1);
+		}
+
+		private synchronized long nanoTime() {
+			return now;
+		}
+
+		@Override
+		public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			Task task = new Task(command, now + unit.toNanos(delay));
+			tasks.add(task);
+			scheduled.release();
+			return task;
+		}
+
+		/**
+		 * Move the clock forward, running the tasks that come due in order of time on the calling thread
+		 */
+		private void advance(long millis) {
+			long until = nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+			Task next;
+			while((next = poll(until)) != null) {
+				next.run();
+			}
+			synchronized(this) {
+				now = until;
+			}
+		}
+
+		/**
+		 * Move the clock forward and remove the tasks that came due without running them
+		 */
+		private synchronized List<Runnable> takeDue(long millis) {
+			now += TimeUnit.MILLISECONDS.toNanos(millis);
+			List<Runnable> due = new ArrayList<Runnable>();
+			for(Task task : new ArrayList<Task>(tasks)) {
+				if(task.time <= now) {
+					tasks.remove(task);
+					if(!task.isCancelled()) {
+						due.add(task);
+					}
+				}
+			}
+			return due;
+		}
+
+		/**
+		 * @return true when count tasks have been scheduled since the previous call
+		 */
+		private boolean awaitScheduled(int count) throws InterruptedException {
+			return scheduled.tryAcquire(count, 10, TimeUnit.SECONDS);
+		}
+
+		private synchronized Task poll(long until) {
+			Task next = null;
+			for(Task task : tasks) {
+				if(!task.isCancelled() && task.time <= until && (next == null || task.time < next.time)) {
+					next = task;
+				}
+			}
+			if(next != null) {
+				tasks.remove(next);
+				now = Math.max(now, next.time);
+			}
+			return next;
+		}
+
+		private class Task extends FutureTask<Void> implements ScheduledFuture<Void> {
+			private final long time;
+
+			private Task(Runnable command, long time) {
+				super(command, null);
+				this.time = time;
+			}
+
+			public long getDelay(TimeUnit unit) {
+				return unit.convert(time - nanoTime(), TimeUnit.NANOSECONDS);
+			}
+
+			public int compareTo(Delayed other) {
+				return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+			}
+		}
+	}
+}
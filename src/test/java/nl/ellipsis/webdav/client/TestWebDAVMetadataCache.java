@@ -0,0 +1,145 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.junit.Test;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+import nl.ellipsis.webdav.client.WebDAVMetadataCache.Kind;
+
+public class TestWebDAVMetadataCache {
+
+	@Test
+	public void testHitAndMiss() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(10, 60000, 60000);
+		assertNull(cache.get(Kind.RESOURCE, "/PFX/sample.pdf", null));
+		cache.putResource("/PFX/sample.pdf", null, createResource("/PFX/sample.pdf","\"1\""), cache.getGeneration());
+		WebDAVMetadataCache.Entry entry = cache.get(Kind.RESOURCE, "/PFX/sample.pdf", null);
+		assertNotNull(entry);
+		assertTrue(entry.isFresh());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(2, 60000, 60000);
+		cache.putResource("/a", null, createResource("/a","\"a\""), cache.getGeneration());
+		cache.putResource("/b", null, createResource("/b","\"b\""), cache.getGeneration());
+		cache.get(Kind.RESOURCE, "/a", null);
+		cache.putResource("/c", null, createResource("/c","\"c\""), cache.getGeneration());
+		assertNotNull(cache.get(Kind.RESOURCE, "/a", null));
+		assertNull(cache.get(Kind.RESOURCE, "/b", null));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidateParentAndTree() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(10, 60000, 60000);
+		List<WebDAVResourceType> children = new ArrayList<WebDAVResourceType>();
+		children.add(createResource("/PFX/a","\"a\""));
+		cache.putChildren("/PFX", null, children, cache.getGeneration());
+		cache.putResource("/PFX/a/b", null, createResource("/PFX/a/b","\"b\""), cache.getGeneration());
+		cache.invalidateTree("/PFX/a/");
+		assertNull(cache.get(Kind.CHILDREN, "/PFX", null));
+		assertNull(cache.get(Kind.RESOURCE, "/PFX/a/b", null));
+	}
+
+	@Test
+	public void testStalePutAfterInvalidation() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(10, 60000, 60000);
+		long generation = cache.getGeneration();
+		cache.invalidate("/PFX/sample.pdf");
+		cache.putNotFound("/PFX/sample.pdf", null, generation);
+		assertNull(cache.get(Kind.RESOURCE, "/PFX/sample.pdf", null));
+	}
+
+	@Test
+	public void testRevalidation() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(10, 0, 0);
+		cache.putResource("/PFX/sample.pdf", null, createResource("/PFX/sample.pdf","\"1\""), cache.getGeneration());
+		WebDAVMetadataCache.Entry entry = cache.get(Kind.RESOURCE, "/PFX/sample.pdf", null);
+		assertFalse(entry.isFresh());
+		assertTrue(entry.isValidatedBy(createResource("/PFX/sample.pdf","\"1\"")));
+		assertFalse(entry.isValidatedBy(createResource("/PFX/sample.pdf","\"2\"")));
+	}
+
+	@Test
+	public void testListingRevalidationComparesMembers() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(10, 0, 0);
+		cache.putChildren("/PFX", null, Arrays.asList(createResource("/PFX/a","\"a\""), createResource("/PFX/b","\"b\"")), cache.getGeneration());
+		WebDAVMetadataCache.Entry entry = cache.get(Kind.CHILDREN, "/PFX", null);
+		assertTrue(entry.isRevalidatable());
+		assertTrue(entry.isValidatedBy(Arrays.asList(createResource("/PFX/b","\"b\""), createResource("/PFX/a","\"a\""))));
+		assertFalse(entry.isValidatedBy(Arrays.asList(createResource("/PFX/a","\"a\""), createResource("/PFX/b","\"b2\""))));
+		assertFalse(entry.isValidatedBy(Arrays.asList(createResource("/PFX/a","\"a\""))));
+		assertFalse(entry.isValidatedBy(Arrays.asList(createResource("/PFX/a","\"a\""), createResource("/PFX/b","\"b\""), createResource("/PFX/c","\"c\""))));
+
+		// a member without validator can only expire
+		WebDAVResourceType plain = new WebDAVResourceType();
+		plain.setHref("/PFX/c");
+		cache.putChildren("/PFX", null, Arrays.asList(createResource("/PFX/a","\"a\""), plain), cache.getGeneration());
+		assertFalse(cache.get(Kind.CHILDREN, "/PFX", null).isRevalidatable());
+	}
+
+	@Test
+	public void testInvalidateAfterEviction() {
+		WebDAVMetadataCache cache = new WebDAVMetadataCache(2, 60000, 60000);
+		cache.putResource("/a", null, createResource("/a","\"a\""), cache.getGeneration());
+		cache.putResource("/a", "minimal", createResource("/a","\"a\""), cache.getGeneration());
+		cache.putResource("/b", null, createResource("/b","\"b\""), cache.getGeneration());
+		assertEquals(2, cache.size());
+		cache.invalidate("/a");
+		assertEquals(1, cache.size());
+		cache.putResource("/c", null, createResource("/c","\"c\""), cache.getGeneration());
+		cache.invalidate("/b");
+		cache.invalidate("/c");
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testModifiedMemberIsListed() throws Exception {
+		try (WebDAVTestServer server = new WebDAVTestServer().start()) {
+			Path dir = Files.createDirectory(server.getRoot().resolve("PFX"));
+			Files.write(dir.resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+			WebDAVClientConfig config = new WebDAVClientConfig();
+			config.setMetadataCacheSize(100);
+			config.setMetadataCacheTimeToLive(0);
+			try (WebDAVClientImpl client = new WebDAVClientImpl(null, null, server.getServerUri(), config)) {
+				URI uri = URI.create("/PFX/");
+				assertEquals("1", WebDAVMetadataCache.getPropertyValue(client.getChildResources(uri).get(0), DavConstants.PROPERTY_GETCONTENTLENGTH));
+				// an unchanged listing is revalidated
+				client.getChildResources(uri);
+				assertEquals(1, client.getMetadataCache().getRevalidationCount());
+
+				// the collection itself does not change when a member is overwritten
+				Files.write(dir.resolve("a.txt"), "abc".getBytes(StandardCharsets.UTF_8));
+				Files.setLastModifiedTime(dir.resolve("a.txt"), FileTime.fromMillis(System.currentTimeMillis() + 60000));
+				assertEquals("3", WebDAVMetadataCache.getPropertyValue(client.getChildResources(uri).get(0), DavConstants.PROPERTY_GETCONTENTLENGTH));
+				assertEquals(1, client.getMetadataCache().getRevalidationCount());
+			}
+		}
+	}
+
+	private static WebDAVResourceType createResource(String href, String etag) {
+		WebDAVResourceType resource = new WebDAVResourceType();
+		resource.setHref(href);
+		resource.setDisplayName(href.substring(href.lastIndexOf('/')+1));
+		WebDAVPropertyType property = new WebDAVPropertyType();
+		property.setName(DavConstants.PROPERTY_GETETAG);
+		property.setValue(etag);
+		resource.getProperties().add(property);
+		return resource;
+	}
+}
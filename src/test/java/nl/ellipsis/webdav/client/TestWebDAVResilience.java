@@ -0,0 +1,134 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVResilience {
+
+	private final static URI RESOURCE = URI.create("/test.txt");
+
+	private WebDAVTestServer server;
+	private WebDAVInMemoryMetrics metrics;
+	private WebDAVClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Files.write(server.getRoot().resolve("test.txt"), "0123456789".getBytes(StandardCharsets.UTF_8));
+		metrics = new WebDAVInMemoryMetrics();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(client != null) {
+			client.close();
+		}
+		server.close();
+	}
+
+	@Test
+	public void testRetryAfterServiceUnavailable() throws Exception {
+		WebDAVClientConfig config = createConfig();
+		config.setMaxRetries(3);
+		config.setRetryBaseDelay(1);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		server.failNext(2, HttpStatus.SC_SERVICE_UNAVAILABLE);
+		assertEquals("0123456789", read(client.getResourceStream(RESOURCE)));
+		assertEquals(3, server.getRequestCount("GET"));
+		assertEquals(2, metrics.getRetries());
+
+		// retries are bounded, the last response is passed on
+		server.resetRequestCounts();
+		server.failNext(5, HttpStatus.SC_SERVICE_UNAVAILABLE);
+		assertNull(client.getResourceStream(RESOURCE));
+		assertEquals(4, server.getRequestCount("GET"));
+	}
+
+	@Test
+	public void testSocketTimeoutIsRetriedAndCounted() throws Exception {
+		WebDAVClientConfig config = createConfig();
+		config.setSocketTimeout(100);
+		config.setMaxRetries(2);
+		config.setRetryBaseDelay(1);
+		config.setCircuitBreakerThreshold(3);
+		config.setCircuitBreakerOpenTime(60000);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		server.setLatency(300);
+		try {
+			client.getResourceStream(RESOURCE);
+			fail("SocketTimeoutException expected");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+		assertEquals(3, server.getRequestCount("GET"));
+		assertEquals(2, metrics.getRetries());
+		// the timeouts opened the circuit breaker
+		assertEquals(1, metrics.getCircuitBreakerOpenings());
+		server.setLatency(0);
+		assertNull(client.getResourceStream(RESOURCE));
+		assertEquals(1, metrics.getRejectedRequests());
+	}
+
+	@Test
+	public void testCircuitBreakerRejectsRequests() throws Exception {
+		WebDAVClientConfig config = createConfig();
+		config.setCircuitBreakerThreshold(2);
+		config.setCircuitBreakerOpenTime(100);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		server.failNext(2, HttpStatus.SC_BAD_GATEWAY);
+		assertNull(client.getResourceStream(RESOURCE));
+		assertNull(client.getResourceStream(RESOURCE));
+		assertNull(client.getResourceStream(RESOURCE));
+		assertEquals(2, server.getRequestCount("GET"));
+		assertEquals(1, metrics.getCircuitBreakerOpenings());
+		assertEquals(1, metrics.getRejectedRequests());
+
+		// after the open time a successful trial request closes it again
+		Thread.sleep(150);
+		assertEquals("0123456789", read(client.getResourceStream(RESOURCE)));
+		assertEquals("0123456789", read(client.getResourceStream(RESOURCE)));
+		assertEquals(4, server.getRequestCount("GET"));
+	}
+
+	@Test
+	public void testSlowReadIsHedged() throws Exception {
+		WebDAVClientConfig config = createConfig();
+		config.setHedgePercentile(90);
+		config.setHedgeMinSamples(32);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+		for(int i=0; i<32; i++) {
+			assertEquals("0123456789", read(client.getResourceStream(RESOURCE)));
+		}
+		assertEquals(0, metrics.getHedgedRequests());
+		server.resetRequestCounts();
+		server.setLatency(300);
+		assertEquals("0123456789", read(client.getResourceStream(RESOURCE)));
+		assertEquals(1, metrics.getHedgedRequests());
+		assertEquals(2, server.getRequestCount("GET"));
+	}
+
+	private WebDAVClientConfig createConfig() {
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setMetrics(metrics);
+		return config;
+	}
+
+	private static String read(WebDAVResourceStream stream) throws Exception {
+		assertNotNull(stream);
+		try {
+			return IOUtils.toString(stream.getInputStream(), StandardCharsets.UTF_8);
+		} finally {
+			stream.close();
+		}
+	}
+}
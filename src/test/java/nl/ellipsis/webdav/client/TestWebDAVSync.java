@@ -0,0 +1,66 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class TestWebDAVSync {
+
+	@Test
+	public void testIncrementalSync() throws Exception {
+		Path localRoot = Files.createTempDirectory("webdav-sync");
+		Path stateFile = localRoot.resolveSibling(localRoot.getFileName() + WebDAVSync.STATE_FILE_SUFFIX);
+		try (WebDAVTestServer server = new WebDAVTestServer().start(); 
+				WebDAVClientImpl client = new WebDAVClientImpl(null, null, server.getServerUri())) {
+			Files.createDirectory(server.getRoot().resolve("PFX"));
+			Files.createDirectory(localRoot.resolve("sub"));
+			Files.write(localRoot.resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+			Files.write(localRoot.resolve("sub").resolve("b.txt"), "b".getBytes(StandardCharsets.UTF_8));
+			WebDAVSync sync = new WebDAVSync(client);
+			URI remoteRoot = new URI("/PFX/sync");
+
+			// the remote root does not exist: everything is created
+			WebDAVSyncPlan plan = sync.plan(localRoot, remoteRoot);
+			assertTrue(plan.isRemoteCrawled());
+			assertEquals(4, plan.getActions().size());
+			assertEquals(WebDAVSyncAction.Type.MKCOL, plan.getActions().get(0).getType());
+			assertEquals(WebDAVSyncAction.Type.PUT, plan.getActions().get(3).getType());
+			for(WebDAVBatchResult result : sync.execute(plan)) {
+				assertTrue(result.toString(), result.isSuccess());
+			}
+			assertTrue(Files.exists(stateFile));
+			Path remote = server.getRoot().resolve("PFX").resolve("sync");
+			assertEquals("a", new String(Files.readAllBytes(remote.resolve("a.txt")), StandardCharsets.UTF_8));
+			assertEquals("b", new String(Files.readAllBytes(remote.resolve("sub").resolve("b.txt")), StandardCharsets.UTF_8));
+
+			// the state file replaces the remote crawl
+			server.resetRequestCounts();
+			plan = sync.plan(localRoot, remoteRoot);
+			assertFalse(plan.isRemoteCrawled());
+			assertTrue(plan.toString(), plan.isEmpty());
+			assertEquals(3, plan.getUnchangedCount());
+			assertEquals(0, server.getRequestCount("PROPFIND"));
+
+			Files.write(localRoot.resolve("a.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+			Files.delete(localRoot.resolve("sub").resolve("b.txt"));
+			Files.delete(localRoot.resolve("sub"));
+			plan = sync.plan(localRoot, remoteRoot);
+			assertEquals(plan.toString(), 2, plan.getActions().size());
+			assertEquals(WebDAVSyncAction.Type.DELETE, plan.getActions().get(0).getType());
+			assertEquals("sub", plan.getActions().get(0).getPath());
+			assertEquals(WebDAVSyncAction.Type.PUT, plan.getActions().get(1).getType());
+			assertEquals("/PFX/sync/a.txt", plan.getActions().get(1).getRemoteUri().getPath());
+		} finally {
+			Files.deleteIfExists(stateFile);
+			Files.deleteIfExists(localRoot.resolve("sub").resolve("b.txt"));
+			Files.deleteIfExists(localRoot.resolve("sub"));
+			Files.deleteIfExists(localRoot.resolve("a.txt"));
+			Files.deleteIfExists(localRoot);
+		}
+	}
+}
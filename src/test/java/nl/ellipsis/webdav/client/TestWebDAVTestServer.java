@@ -0,0 +1,205 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVTestServer {
+
+	private WebDAVTestServer server;
+	private CloseableHttpClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		client = HttpClients.custom().disableAutomaticRetries().build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testPutGetAndRange() throws Exception {
+		assertEquals(HttpStatus.SC_CREATED, put("/test.txt", "0123456789"));
+		assertEquals(HttpStatus.SC_NO_CONTENT, put("/test.txt", "abcdefghij"));
+
+		HttpGet get = new HttpGet(uri("/test.txt"));
+		get.setHeader("Range", "bytes=2-4");
+		try (CloseableHttpResponse response = client.execute(get)) {
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatusLine().getStatusCode());
+			assertEquals("bytes 2-4/10", response.getFirstHeader("Content-Range").getValue());
+			assertEquals("cde", EntityUtils.toString(response.getEntity()));
+		}
+		String etag;
+		try (CloseableHttpResponse response = client.execute(new HttpHead(uri("/test.txt")))) {
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+			assertEquals("10", response.getFirstHeader("Content-Length").getValue());
+			etag = response.getFirstHeader("ETag").getValue();
+		}
+		get = new HttpGet(uri("/test.txt"));
+		get.setHeader("If-None-Match", etag);
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, execute(get));
+
+		server.setRangeSupported(false);
+		get = new HttpGet(uri("/test.txt"));
+		get.setHeader("Range", "bytes=2-4");
+		try (CloseableHttpResponse response = client.execute(get)) {
+			assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+			assertEquals("abcdefghij", EntityUtils.toString(response.getEntity()));
+		}
+	}
+
+	@Test
+	public void testPartialPut() throws Exception {
+		HttpPut put = new HttpPut(uri("/part.txt"));
+		put.setHeader("Content-Range", "bytes 0-2/6");
+		put.setEntity(new StringEntity("abc"));
+		assertEquals(HttpStatus.SC_CREATED, execute(put));
+		put = new HttpPut(uri("/part.txt"));
+		put.setHeader("Content-Range", "bytes 3-5/6");
+		put.setEntity(new StringEntity("def"));
+		assertEquals(HttpStatus.SC_NO_CONTENT, execute(put));
+		assertEquals("abcdef", new String(Files.readAllBytes(server.getRoot().resolve("part.txt")), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testCollectionsCopyAndMove() throws Exception {
+		assertEquals(HttpStatus.SC_CONFLICT, execute(new Method("MKCOL", uri("/a/b"))));
+		assertEquals(HttpStatus.SC_CREATED, execute(new Method("MKCOL", uri("/a"))));
+		assertEquals(HttpStatus.SC_METHOD_NOT_ALLOWED, execute(new Method("MKCOL", uri("/a"))));
+		assertEquals(HttpStatus.SC_CREATED, put("/a/file.txt", "content"));
+
+		Method copy = new Method("COPY", uri("/a"));
+		copy.setHeader("Destination", uri("/b").toString());
+		assertEquals(HttpStatus.SC_CREATED, execute(copy));
+		copy = new Method("COPY", uri("/a"));
+		copy.setHeader("Destination", uri("/b").toString());
+		copy.setHeader("Overwrite", "F");
+		assertEquals(HttpStatus.SC_PRECONDITION_FAILED, execute(copy));
+
+		Method move = new Method("MOVE", uri("/b/file.txt"));
+		move.setHeader("Destination", uri("/moved.txt").toString());
+		assertEquals(HttpStatus.SC_CREATED, execute(move));
+
+		Method propfind = new Method("PROPFIND", uri("/"));
+		propfind.setHeader("Depth", "1");
+		try (CloseableHttpResponse response = client.execute(propfind)) {
+			assertEquals(HttpStatus.SC_MULTI_STATUS, response.getStatusLine().getStatusCode());
+			String body = EntityUtils.toString(response.getEntity());
+			assertTrue(body.contains("<D:href>/PfxWebDAV/a/</D:href>"));
+			assertTrue(body.contains("<D:href>/PfxWebDAV/moved.txt</D:href>"));
+			assertTrue(body.contains("<D:getcontentlength>7</D:getcontentlength>"));
+			assertFalse(body.contains("file.txt"));
+		}
+
+		assertEquals(HttpStatus.SC_NO_CONTENT, execute(new Method("DELETE", uri("/a"))));
+		assertEquals(HttpStatus.SC_NOT_FOUND, execute(new HttpGet(uri("/a/file.txt"))));
+		assertEquals(3, server.getRequestCount("MKCOL"));
+	}
+
+	@Test
+	public void testBasicAuthentication() throws Exception {
+		server.setAuthentication(WebDAVTestServer.Authentication.BASIC, "user", "secret");
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, execute(new HttpGet(uri("/"))));
+		assertEquals(HttpStatus.SC_CREATED, executeAuthenticated(new Method("MKCOL", uri("/basic"))));
+	}
+
+	@Test
+	public void testDigestAuthentication() throws Exception {
+		server.setAuthentication(WebDAVTestServer.Authentication.DIGEST, "user", "secret");
+		assertEquals(HttpStatus.SC_UNAUTHORIZED, execute(new HttpGet(uri("/"))));
+		assertEquals(HttpStatus.SC_CREATED, executeAuthenticated(new Method("MKCOL", uri("/digest"))));
+	}
+
+	@Test
+	public void testErrorInjection() throws Exception {
+		server.failNext(2, HttpStatus.SC_SERVICE_UNAVAILABLE);
+		assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, execute(new Method("MKCOL", uri("/x"))));
+		assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, execute(new Method("MKCOL", uri("/x"))));
+		assertEquals(HttpStatus.SC_CREATED, execute(new Method("MKCOL", uri("/x"))));
+
+		server.setErrorRate(1.0, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+		assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, execute(new HttpGet(uri("/x"))));
+	}
+
+	@Test
+	public void testLatencyAndBandwidth() throws Exception {
+		server.setLatency(100);
+		long start = System.nanoTime();
+		execute(new Method("OPTIONS", uri("/")));
+		assertTrue(System.nanoTime() - start >= 100000000L);
+
+		server.setLatency(0);
+		put("/large.bin", new String(new char[20000]).replace('\0', 'x'));
+		server.setBandwidth(40000);
+		start = System.nanoTime();
+		try (CloseableHttpResponse response = client.execute(new HttpGet(uri("/large.bin")))) {
+			assertEquals(20000, EntityUtils.toByteArray(response.getEntity()).length);
+		}
+		assertTrue(System.nanoTime() - start >= 400000000L);
+	}
+
+	private URI uri(String path) {
+		return URI.create(server.getServerUri() + path);
+	}
+
+	private int put(String path, String content) throws Exception {
+		HttpPut put = new HttpPut(uri(path));
+		put.setEntity(new StringEntity(content));
+		return execute(put);
+	}
+
+	private int execute(HttpRequestBase request) throws Exception {
+		try (CloseableHttpResponse response = client.execute(request)) {
+			EntityUtils.consume(response.getEntity());
+			return response.getStatusLine().getStatusCode();
+		}
+	}
+
+	private int executeAuthenticated(HttpRequestBase request) throws Exception {
+		CredentialsProvider credentials = new BasicCredentialsProvider();
+		credentials.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("user", "secret"));
+		try (CloseableHttpClient authenticated = HttpClients.custom().setDefaultCredentialsProvider(credentials).build();
+				CloseableHttpResponse response = authenticated.execute(request)) {
+			EntityUtils.consume(response.getEntity());
+			return response.getStatusLine().getStatusCode();
+		}
+	}
+
+	private static class Method extends HttpRequestBase {
+		private final String method;
+
+		private Method(String method, URI uri) {
+			this.method = method;
+			setURI(uri);
+		}
+
+		@Override
+		public String getMethod() {
+			return method;
+		}
+	}
+}
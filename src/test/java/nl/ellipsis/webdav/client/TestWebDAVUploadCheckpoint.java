@@ -0,0 +1,149 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVUploadCheckpoint {
+
+	private Path dir;
+	private File source;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("webdav-upload");
+		source = dir.resolve("large.bin").toFile();
+		byte[] data = new byte[1000];
+		for(int i=0; i<data.length; i++) {
+			data[i] = (byte)i;
+		}
+		Files.write(source.toPath(), data);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for(File file : dir.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testStoreAndLoad() throws Exception {
+		Path path = dir.resolve("large.bin.webdav-upload");
+		assertNull(WebDAVUploadCheckpoint.load(path));
+
+		URI target = new URI("/PFX/large.bin");
+		WebDAVUploadCheckpoint checkpoint = new WebDAVUploadCheckpoint(path, target, new URI("/PFX/.large.bin.1.part"), WebDAVUploadOptions.Mode.CONTENT_RANGE, source, 100);
+		checkpoint.store();
+		checkpoint.markDone(0);
+		checkpoint.markDone(3);
+
+		WebDAVUploadCheckpoint loaded = WebDAVUploadCheckpoint.load(path);
+		assertNotNull(loaded);
+		assertEquals(new URI("/PFX/.large.bin.1.part"), loaded.getUpload());
+		assertTrue(loaded.isDone(0));
+		assertFalse(loaded.isDone(1));
+		assertTrue(loaded.isDone(3));
+		assertEquals(2, loaded.getDoneCount());
+		assertTrue(loaded.matches(target, source, WebDAVUploadOptions.Mode.CONTENT_RANGE, 100));
+		assertFalse(loaded.matches(target, source, WebDAVUploadOptions.Mode.CONTENT_RANGE, 200));
+		assertFalse(loaded.matches(target, source, WebDAVUploadOptions.Mode.TEMP_PARTS, 100));
+		assertFalse(loaded.matches(new URI("/PFX/other.bin"), source, WebDAVUploadOptions.Mode.CONTENT_RANGE, 100));
+
+		loaded.delete();
+		assertFalse(Files.exists(path));
+	}
+
+	@Test
+	public void testCorruptCheckpointIsIgnored() throws Exception {
+		Path path = dir.resolve("corrupt.webdav-upload");
+		Files.write(path, "target=/PFX/large.bin\npart.size=abc\n".getBytes("ISO-8859-1"));
+		assertNull(WebDAVUploadCheckpoint.load(path));
+	}
+
+	@Test
+	public void testResumeWithMetadataCache() throws Exception {
+		try (WebDAVTestServer server = new WebDAVTestServer().start()) {
+			WebDAVClientConfig config = new WebDAVClientConfig();
+			config.setMetadataCacheSize(100);
+			try (WebDAVClientImpl client = new WebDAVClientImpl(null, null, server.getServerUri(), config)) {
+				// a previous upload stored the first part before it was interrupted
+				Path path = dir.resolve("large.bin.webdav-upload");
+				URI upload = new URI("/.large.bin.1.part");
+				WebDAVUploadCheckpoint checkpoint = new WebDAVUploadCheckpoint(path, new URI("/large.bin"), upload, WebDAVUploadOptions.Mode.CONTENT_RANGE, source, 100);
+				checkpoint.store();
+				checkpoint.markDone(0);
+				byte[] data = Files.readAllBytes(source.toPath());
+				Files.write(server.getRoot().resolve(".large.bin.1.part"), Arrays.copyOf(data, 100));
+
+				WebDAVUploadOptions options = new WebDAVUploadOptions();
+				options.setMode(WebDAVUploadOptions.Mode.CONTENT_RANGE);
+				options.setPartSize(100);
+				options.setParallelism(2);
+				options.setCheckpointFile(path);
+				assertNotNull(client.putResource(new URI("/large.bin"), source, ContentType.APPLICATION_OCTET_STREAM, options));
+				assertArrayEquals(data, Files.readAllBytes(server.getRoot().resolve("large.bin")));
+				assertEquals(9, server.getRequestCount("PUT"));
+				assertFalse(Files.exists(path));
+			}
+		}
+	}
+
+	@Test
+	public void testIgnoredContentRangeDiscardsCheckpoint() throws Exception {
+		try (WebDAVTestServer server = new WebDAVTestServer().start()) {
+			server.setRangeSupported(false);
+			try (WebDAVClientImpl client = new WebDAVClientImpl(null, null, server.getServerUri())) {
+				Path path = dir.resolve("large.bin.webdav-upload");
+				WebDAVUploadOptions options = new WebDAVUploadOptions();
+				options.setMode(WebDAVUploadOptions.Mode.CONTENT_RANGE);
+				options.setPartSize(100);
+				options.setCheckpointFile(path);
+				try {
+					client.putResource(new URI("/large.bin"), source, ContentType.APPLICATION_OCTET_STREAM, options);
+					fail("DavException expected");
+				} catch (DavException e) {
+					assertEquals(HttpStatus.SC_NOT_IMPLEMENTED, e.getErrorCode());
+				}
+				// neither the parts nor the temporary resource are kept for a resume
+				assertFalse(Files.exists(path));
+				assertEquals(0, server.getRoot().toFile().list().length);
+
+				// the next upload starts over
+				server.resetRequestCounts();
+				server.setRangeSupported(true);
+				assertNotNull(client.putResource(new URI("/large.bin"), source, ContentType.APPLICATION_OCTET_STREAM, options));
+				assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(server.getRoot().resolve("large.bin")));
+				assertEquals(10, server.getRequestCount("PUT"));
+			}
+		}
+	}
+
+	@Test
+	public void testFileChannelEntityRegion() throws Exception {
+		FileChannelEntity entity = new FileChannelEntity(source, 900, 100, ContentType.APPLICATION_OCTET_STREAM);
+		assertEquals(100, entity.getContentLength());
+		byte[] content = IOUtils.toByteArray(entity.getContent());
+		assertEquals(100, content.length);
+		assertEquals((byte)900, content[0]);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertArrayEquals(content, out.toByteArray());
+	}
+}
@@ -0,0 +1,95 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpStatus;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVWalker {
+
+	private final static URI ROOT = URI.create("/PFX/");
+	private final static List<String> TREE = sorted("a.txt", "sub", "b.txt", "deep", "c.txt");
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Path deep = Files.createDirectories(server.getRoot().resolve("PFX/sub/deep"));
+		Files.write(deep.resolve("c.txt"), "c".getBytes(StandardCharsets.UTF_8));
+		Files.write(deep.getParent().resolve("b.txt"), "b".getBytes(StandardCharsets.UTF_8));
+		Files.write(deep.getParent().getParent().resolve("a.txt"), "a".getBytes(StandardCharsets.UTF_8));
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testRefusedDepthInfinityIsCrawled() throws Exception {
+		server.setDepthInfinitySupported(false);
+		assertEquals(TREE, walk());
+		// the refusal is remembered: one Depth: 1 PROPFIND per collection
+		server.resetRequestCounts();
+		assertEquals(TREE, walk());
+		assertEquals(3, server.getRequestCount("PROPFIND"));
+	}
+
+	@Test
+	public void testForbiddenRootIsNotRemembered() throws Exception {
+		server.failNext("PROPFIND", 1, HttpStatus.SC_FORBIDDEN);
+		assertEquals(TREE, walk());
+		server.resetRequestCounts();
+		assertEquals(TREE, walk());
+		assertEquals(1, server.getRequestCount("PROPFIND"));
+	}
+
+	@Test
+	public void testHandlerExceptionIsPassedOn() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		try {
+			client.walk(ROOT, Integer.MAX_VALUE, null, resource -> {
+				names.add(resource.getDisplayName());
+				throw new DavException(HttpStatus.SC_FORBIDDEN, "rejected by handler");
+			});
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(HttpStatus.SC_FORBIDDEN, e.getErrorCode());
+		}
+		// no crawl that hands the same resource over again
+		assertEquals(1, names.size());
+		assertEquals(1, server.getRequestCount("PROPFIND"));
+		server.resetRequestCounts();
+		assertEquals(TREE, walk());
+		assertEquals(1, server.getRequestCount("PROPFIND"));
+	}
+
+	private List<String> walk() throws Exception {
+		final List<String> names = new ArrayList<String>();
+		client.walk(ROOT, Integer.MAX_VALUE, null, resource -> names.add(resource.getDisplayName()));
+		Collections.sort(names);
+		return names;
+	}
+
+	private static List<String> sorted(String... names) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, names);
+		Collections.sort(list);
+		return list;
+	}
+}
@@ -0,0 +1,124 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+public class TestWebDAVWriteResource {
+
+	private final static URI RESOURCE = URI.create("/test.txt");
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Files.write(getFile(), "old".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if(client != null) {
+			client.close();
+		}
+		server.close();
+	}
+
+	@Test
+	public void testFailedWriteIsReportedWithReadBack() throws Exception {
+		testFailedWrite(true);
+	}
+
+	@Test
+	public void testFailedWriteIsReportedWithoutReadBack() throws Exception {
+		testFailedWrite(false);
+	}
+
+	@Test
+	public void testWriteMetadataIsNotSerialized() throws Exception {
+		client = createClient(false);
+		WebDAVResourceType resource = put("new");
+		assertTrue(resource instanceof WebDAVWriteResource);
+		assertEquals("PUT", ((WebDAVWriteResource)resource).getMethod());
+		String json = new Gson().toJson(resource);
+		assertTrue(json, json.contains("test.txt"));
+		assertFalse(json, json.contains("\"client\""));
+		assertFalse(json, json.contains("\"method\""));
+	}
+
+	@Test
+	public void testLockIsReadBack() throws Exception {
+		client = createClient(true);
+		server.setMaxLockTimeout(60);
+		WebDAVResourceType resource = client.lockResource(RESOURCE, null, 300000);
+		assertTrue(resource instanceof WebDAVWriteResource);
+		WebDAVWriteResource lock = (WebDAVWriteResource)resource;
+		assertTrue(lock.isLoaded());
+		// the properties of the resource and the token and timeout of the lock
+		assertEquals("test.txt", lock.getDisplayName());
+		assertEquals("3", WebDAVMetadataCache.getPropertyValue(lock, DavConstants.PROPERTY_GETCONTENTLENGTH));
+		assertNotNull(WebDAVMetadataCache.getPropertyValue(lock, DavConstants.PROPERTY_GETLASTMODIFIED));
+		assertFalse(lock.isCollection());
+		assertTrue(lock.getLockToken(), lock.getLockToken().startsWith("opaquelocktoken:"));
+		assertEquals(60000, lock.getLockTimeout());
+		assertEquals("LOCK", lock.getMethod());
+		assertNotNull(client.unlockResource(RESOURCE, lock.getLockToken()));
+	}
+
+	private void testFailedWrite(boolean readBack) throws Exception {
+		client = createClient(readBack);
+		server.failNext("PUT", 1, HttpStatus.SC_LOCKED);
+		try {
+			put("new");
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(HttpStatus.SC_LOCKED, e.getErrorCode());
+		}
+		server.failNext("DELETE", 1, HttpStatus.SC_FORBIDDEN);
+		try {
+			client.deleteResource(RESOURCE);
+			fail("DavException expected");
+		} catch (DavException e) {
+			assertEquals(HttpStatus.SC_FORBIDDEN, e.getErrorCode());
+		}
+		assertEquals("old", new String(Files.readAllBytes(getFile()), StandardCharsets.UTF_8));
+
+		// the server answers with the status of a successful write again
+		assertNotNull(put("new"));
+		assertEquals("new", new String(Files.readAllBytes(getFile()), StandardCharsets.UTF_8));
+		assertNotNull(client.deleteResource(RESOURCE));
+		assertFalse(Files.exists(getFile()));
+	}
+
+	private WebDAVResourceType put(String body) throws Exception {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		return client.putResource(RESOURCE, new ByteArrayInputStream(bytes), bytes.length, ContentType.TEXT_PLAIN);
+	}
+
+	private WebDAVClientImpl createClient(boolean readBack) throws Exception {
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setReadBack(readBack);
+		return new WebDAVClientImpl(null, null, server.getServerUri(), config);
+	}
+
+	private Path getFile() {
+		return server.getRoot().resolve("test.txt");
+	}
+}
@@ -0,0 +1,90 @@
+package nl.ellipsis.webdav.client;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestWebDAVZipStreamer {
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Path dir = Files.createDirectories(server.getRoot().resolve("PFX/sub"));
+		write(dir.getParent().resolve("a.txt"), "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		write(dir.resolve("b.pdf"), "%PDF-1.4");
+		write(dir.resolve("c d.txt"), "c d");
+		WebDAVClientConfig config = new WebDAVClientConfig();
+		config.setZipPrefetch(2);
+		client = new WebDAVClientImpl(null, null, server.getServerUri(), config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testCollectionIsZipped() throws Exception {
+		WebDAVResourceStream stream = client.getResourceStream(URI.create("/PFX/"));
+		Map<String,String> entries = new LinkedHashMap<String,String>();
+		try (ZipInputStream zip = new ZipInputStream(stream.getInputStream())) {
+			ZipEntry entry;
+			while((entry = zip.getNextEntry()) != null) {
+				entries.put(entry.getName(), (entry.isDirectory() ? null : read(zip)));
+			}
+		}
+		assertEquals(4, entries.size());
+		assertEquals("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", entries.get("a.txt"));
+		assertTrue(entries.containsKey("sub/"));
+		assertEquals("%PDF-1.4", entries.get("sub/b.pdf"));
+		assertEquals("c d", entries.get("sub/c d.txt"));
+		assertEquals(3, server.getRequestCount("GET"));
+		assertFalse(stream.isCacheHit());
+	}
+
+	@Test
+	public void testMemberFailureIsReported() throws Exception {
+		server.failNext("GET", 100, WebDAVTestServer.DROP_CONNECTION);
+		WebDAVResourceStream stream = client.getResourceStream(URI.create("/PFX/"));
+		try (ZipInputStream zip = new ZipInputStream(stream.getInputStream())) {
+			while(zip.getNextEntry() != null) {
+				read(zip);
+			}
+			fail("IOException expected, a truncated archive must not look complete");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static void write(Path file, String content) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while((n = is.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -13,6 +13,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -20,6 +21,7 @@ import java.util.Properties;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.entity.ContentType;
+import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavException;
 
 import com.google.gson.Gson;
@@ -77,6 +79,80 @@ public class WebDAVClientBaseTests {
 		}
 	}
 
+	public static void testGetChildResourcesMinimal(WebDAVClientImpl client, String path) {
+		Gson gson = new Gson();
+		try {
+			URI pfxUri = new URI(path);
+			assertNotNull(pfxUri);
+			List<WebDAVResourceType> resources = client.getChildResources(pfxUri, WebDAVPropertyProfile.MINIMAL.getPropertyNames());
+			assertNotNull(resources);
+			for(WebDAVResourceType resource : resources) {
+				assertNotNull(resource.getDisplayName());
+				for(WebDAVPropertyType property : resource.getProperties()) {
+					assertTrue(property.getName(), 
+							DavConstants.PROPERTY_GETCONTENTLENGTH.equals(property.getName()) ||
+							DavConstants.PROPERTY_GETLASTMODIFIED.equals(property.getName()) ||
+							DavConstants.PROPERTY_GETETAG.equals(property.getName()));
+				}
+			}
+			System.out.println(path+": "+gson.toJson(resources));
+		} catch(DavException e) {
+			assertTrue(e.getMessage()+" ["+e.getErrorCode()+"]",false);
+		} catch(Exception e) {
+			assertTrue(e.getMessage(),false);
+		}
+	}
+
+	public static void testGetChildResourcesStreaming(WebDAVClientImpl client, String path) {
+		final Gson gson = new Gson();
+		try {
+			URI pfxUri = new URI(path);
+			assertNotNull(pfxUri);
+			final List<WebDAVResourceType> resources = new ArrayList<WebDAVResourceType>();
+			client.getChildResources(pfxUri, new WebDAVResourceHandler() {
+				public void handleResource(WebDAVResourceType resource) {
+					assertNotNull(resource);
+					resources.add(resource);
+				}
+			});
+			assertEquals(client.getChildResources(pfxUri).size(), resources.size());
+			System.out.println(path+": "+gson.toJson(resources));
+		} catch(DavException e) {
+			assertTrue(e.getMessage()+" ["+e.getErrorCode()+"]",false);
+		} catch(Exception e) {
+			assertTrue(e.getMessage(),false);
+		}
+	}
+
+	public static void testWalk(WebDAVClientImpl client, String path) {
+		try {
+			URI pfxUri = new URI(path);
+			assertNotNull(pfxUri);
+			final List<WebDAVResourceType> children = new ArrayList<WebDAVResourceType>();
+			client.walk(pfxUri, 1, null, new WebDAVResourceCollectorForTest(children));
+			assertEquals(client.getChildResources(pfxUri).size(), children.size());
+
+			final List<WebDAVResourceType> tree = new ArrayList<WebDAVResourceType>();
+			client.walk(pfxUri, DavConstants.DEPTH_INFINITY, null, WebDAVPropertyProfile.MINIMAL.getPropertyNames(), new WebDAVResourceCollectorForTest(tree));
+			assertTrue(tree.size() >= children.size());
+
+			final List<WebDAVResourceType> files = new ArrayList<WebDAVResourceType>();
+			client.walk(pfxUri, 1, new WebDAVResourceFilter() {
+				public boolean accept(WebDAVResourceType resource) {
+					return !resource.isCollection();
+				}
+			}, new WebDAVResourceCollectorForTest(files));
+			for(WebDAVResourceType file : files) {
+				assertFalse(file.isCollection());
+			}
+			System.out.println(path+": "+children.size()+" children, "+tree.size()+" descendants");
+		} catch(DavException e) {
+			assertTrue(e.getMessage()+" ["+e.getErrorCode()+"]",false);
+		} catch(Exception e) {
+			assertTrue(e.getMessage(),false);
+		}
+	}
+
 	public static void testGetResource(WebDAVClientImpl client, String path) {
 		Gson gson = new Gson();
 		try {
@@ -130,6 +206,31 @@ public class WebDAVClientBaseTests {
 		}
 	}
 	
+	public static void testDownloadToFile(WebDAVClientImpl client, String path, String targetDir) {
+		try {
+			URI pfxUri = new URI(path);
+			assertNotNull(pfxUri);
+			WebDAVResourceType resource = client.getResource(pfxUri);
+			assertNotNull(resource);
+
+			File out = new File(targetDir+new File(pfxUri.getPath()).getName());
+			assertFalse(out.exists());
+
+			// small segments, so even a moderate file is fetched in parallel ranges
+			WebDAVDownloadOptions options = new WebDAVDownloadOptions();
+			options.setSegmentSize(256 * 1024);
+			options.setMinSegmentedSize(512 * 1024);
+			long length = client.downloadToFile(pfxUri, out.toPath(), options);
+			assertTrue(out.exists());
+			assertEquals(out.length(), length);
+			assertTrue(out.delete());
+		} catch(DavException e) {
+			assertTrue(e.getMessage()+" ["+e.getErrorCode()+"]",false);
+		} catch(Exception e) {
+			assertTrue(e.getMessage(),false);
+		}
+	}
+
 	public static void testMakeCollection(WebDAVClientImpl client, String path) {
 		Gson gson = new Gson();	
 		try {
@@ -227,4 +328,17 @@ public class WebDAVClientBaseTests {
 		}
 	}
 
+
+	private static class WebDAVResourceCollectorForTest implements WebDAVResourceHandler {
+		private final List<WebDAVResourceType> resources;
+
+		private WebDAVResourceCollectorForTest(List<WebDAVResourceType> resources) {
+			this.resources = resources;
+		}
+
+		public void handleResource(WebDAVResourceType resource) {
+			assertNotNull(resource);
+			resources.add(resource);
+		}
+	}
 }
@@ -0,0 +1,1214 @@
+package nl.ellipsis.webdav.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.http.HttpStatus;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process WebDAV server for tests and benchmarks, backed by a local directory.
+ *
+ * Supports OPTIONS, PROPFIND (Depth 0, 1 and infinity), PROPPATCH (dead properties, kept in memory), MKCOL,
+ * PUT (including partial PUT with Content-Range), GET and HEAD (single byte ranges, If-Range,
+ * If-None-Match and If-Modified-Since), DELETE, COPY, MOVE, LOCK and UNLOCK. Locks are reported
+ * but not enforced. Basic or digest authentication, a fixed latency per request, a bandwidth limit
+ * and a rate of failing requests can be configured, so client behaviour over a slow or unreliable
+ * connection can be tested on one machine.
+ *
+ * <pre>
+ * try (WebDAVTestServer server = new WebDAVTestServer().setLatency(20).start()) {
+ *     WebDAVClientImpl client = new WebDAVClientImpl(null, null, server.getServerUri());
+ *     ...
+ * }
+ * </pre>
+ */
+public class WebDAVTestServer implements Closeable {
+
+	public enum Authentication { NONE, BASIC, DIGEST }
+
+	public final static String DEFAULT_CONTEXT_PATH = "/PfxWebDAV";
+
+	/** error status that closes the connection without a response */
+	public final static int DROP_CONNECTION = 0;
+
+	private final static String DAV_NAMESPACE = "DAV:";
+	private final static String REALM = "WebDAVTestServer";
+	private final static Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+	private final static Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+	private final static Pattern DIGEST_PARAMETER = Pattern.compile("(\\w+)=(?:\"([^\"]*)\"|([^,\\s]*))");
+	private final static int BUFFER_SIZE = 16 * 1024;
+
+	private final Path root;
+	private final boolean temporaryRoot;
+	private final String contextPath;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private volatile Authentication authentication = Authentication.NONE;
+	private volatile String user;
+	private volatile String password;
+	private volatile long latency;
+	private volatile long bandwidth;
+	private volatile double errorRate;
+	private volatile int errorStatus = HttpStatus.SC_SERVICE_UNAVAILABLE;
+	private volatile boolean rangeSupported = true;
+	private volatile long maxLockTimeout;
+	private volatile boolean depthInfinitySupported = true;
+	private final AtomicInteger failNextCount = new AtomicInteger();
+	private volatile int failNextStatus;
+	private volatile String failNextMethod;
+	private final Random random = new Random(0);
+
+	private final Map<String, Map<String, String>> deadProperties = new ConcurrentHashMap<String, Map<String, String>>();
+	private final Map<String, Lock> locks = new ConcurrentHashMap<String, Lock>();
+	private final Set<String> nonces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Map<String, AtomicInteger> expectContinueCounts = new ConcurrentHashMap<String, AtomicInteger>();
+
+	/**
+	 * Constructor for a server on an empty temporary directory, which is deleted by close
+	 */
+	public WebDAVTestServer() throws IOException {
+		this(Files.createTempDirectory("webdav-test-server"), DEFAULT_CONTEXT_PATH, true);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param root	directory that is served
+	 * @param contextPath	path of the root collection, e.g. /PfxWebDAV
+	 */
+	public WebDAVTestServer(Path root, String contextPath) {
+		this(root, contextPath, false);
+	}
+
+	private WebDAVTestServer(Path root, String contextPath, boolean temporaryRoot) {
+		this.root = root;
+		this.contextPath = (contextPath.endsWith("/") ? contextPath.substring(0, contextPath.length() - 1) : contextPath);
+		this.temporaryRoot = temporaryRoot;
+	}
+
+	/**
+	 * Listen on a free port of the loopback interface
+	 */
+	public WebDAVTestServer start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext(contextPath.isEmpty() ? "/" : contextPath, new Handler());
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		return this;
+	}
+
+	public void close() throws IOException {
+		if(server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+		if(temporaryRoot && Files.exists(root)) {
+			deleteTree(root);
+		}
+	}
+
+	/**
+	 * @return URI of the root collection, to be passed to the WebDAVClientImpl constructor
+	 */
+	public URI getServerUri() {
+		return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + contextPath);
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	public WebDAVTestServer setAuthentication(Authentication authentication, String user, String password) {
+		this.authentication = authentication;
+		this.user = user;
+		this.password = password;
+		return this;
+	}
+
+	/**
+	 * @param latency	milliseconds every request is delayed before it is handled
+	 */
+	public WebDAVTestServer setLatency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * @param bandwidth	maximum number of body bytes per second read or written per request, 0 for no limit
+	 */
+	public WebDAVTestServer setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+		return this;
+	}
+
+	/**
+	 * @param errorRate	fraction of requests, between 0 and 1, that fail with status
+	 * @param status	HTTP status of failed requests, or DROP_CONNECTION
+	 */
+	public WebDAVTestServer setErrorRate(double errorRate, int status) {
+		this.errorRate = errorRate;
+		this.errorStatus = status;
+		return this;
+	}
+
+	/**
+	 * Let the next count requests fail with status, or DROP_CONNECTION
+	 */
+	public WebDAVTestServer failNext(int count, int status) {
+		return failNext(null, count, status);
+	}
+
+	/**
+	 * Let the next count requests with the given method fail with status, or DROP_CONNECTION; 
+	 * requests with other methods are handled as usual
+	 */
+	public WebDAVTestServer failNext(String method, int count, int status) {
+		this.failNextMethod = method;
+		this.failNextStatus = status;
+		this.failNextCount.set(count);
+		return this;
+	}
+
+	/**
+	 * @param rangeSupported	false to ignore Range headers and always answer GET with the complete body, 
+	 * 			and to ignore Content-Range headers and store the body of a partial PUT as the complete resource
+	 */
+	public WebDAVTestServer setRangeSupported(boolean rangeSupported) {
+		this.rangeSupported = rangeSupported;
+		return this;
+	}
+
+	/**
+	 * @param depthInfinitySupported	false to refuse PROPFIND with Depth: infinity with 403 and DAV:propfind-finite-depth
+	 */
+	public WebDAVTestServer setDepthInfinitySupported(boolean depthInfinitySupported) {
+		this.depthInfinitySupported = depthInfinitySupported;
+		return this;
+	}
+
+	/**
+	 * @param maxLockTimeout	longest lock timeout in seconds that is granted, 0 to grant the requested timeout
+	 */
+	public WebDAVTestServer setMaxLockTimeout(long maxLockTimeout) {
+		this.maxLockTimeout = maxLockTimeout;
+		return this;
+	}
+
+	/**
+	 * @return number of requests with the given method since the start or the last reset, including failed ones
+	 */
+	public int getRequestCount(String method) {
+		AtomicInteger count = requestCounts.get(method);
+		return (count != null ? count.get() : 0);
+	}
+
+	/**
+	 * @return number of requests with the given method and an Expect: 100-continue header since the start or the last reset
+	 */
+	public int getExpectContinueCount(String method) {
+		AtomicInteger count = expectContinueCounts.get(method);
+		return (count != null ? count.get() : 0);
+	}
+
+	public void resetRequestCounts() {
+		requestCounts.clear();
+		expectContinueCounts.clear();
+	}
+
+	private class Handler implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				increment(requestCounts, method);
+				if("100-continue".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Expect"))) {
+					// HttpServer has already answered with 100 Continue
+					increment(expectContinueCounts, method);
+				}
+				if(latency > 0) {
+					Thread.sleep(latency);
+				}
+				if(!isAuthorized(exchange)) {
+					sendChallenge(exchange);
+					return;
+				}
+				int injected = getInjectedError(method);
+				if(injected >= 0) {
+					if(injected == DROP_CONNECTION) {
+						// the server closes the connection when a handler fails
+						throw new IOException("dropped connection");
+					}
+					drain(exchange);
+					sendEmpty(exchange, injected);
+					return;
+				}
+				dispatch(exchange, method);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private void dispatch(HttpExchange exchange, String method) throws IOException {
+			String path = getPath(exchange.getRequestURI());
+			if(path == null) {
+				sendEmpty(exchange, HttpStatus.SC_NOT_FOUND);
+				return;
+			}
+			switch(method) {
+			case "OPTIONS":
+				drain(exchange);
+				exchange.getResponseHeaders().set("DAV", "1, 2");
+				exchange.getResponseHeaders().set("Allow", "OPTIONS, GET, HEAD, PUT, DELETE, PROPFIND, PROPPATCH, MKCOL, COPY, MOVE, LOCK, UNLOCK");
+				sendEmpty(exchange, HttpStatus.SC_OK);
+				break;
+			case "PROPFIND":
+				propfind(exchange, path);
+				break;
+			case "PROPPATCH":
+				proppatch(exchange, path);
+				break;
+			case "MKCOL":
+				mkcol(exchange, path);
+				break;
+			case "PUT":
+				put(exchange, path);
+				break;
+			case "GET":
+			case "HEAD":
+				get(exchange, path, "HEAD".equals(method));
+				break;
+			case "DELETE":
+				delete(exchange, path);
+				break;
+			case "COPY":
+			case "MOVE":
+				copyOrMove(exchange, path, "MOVE".equals(method));
+				break;
+			case "LOCK":
+				lock(exchange, path);
+				break;
+			case "UNLOCK":
+				unlock(exchange, path);
+				break;
+			default:
+				drain(exchange);
+				sendEmpty(exchange, HttpStatus.SC_METHOD_NOT_ALLOWED);
+			}
+		}
+	}
+
+	private static void increment(Map<String, AtomicInteger> counts, String method) {
+		AtomicInteger count = counts.get(method);
+		if(count == null) {
+			counts.putIfAbsent(method, new AtomicInteger());
+			count = counts.get(method);
+		}
+		count.incrementAndGet();
+	}
+
+	private int getInjectedError(String method) {
+		String failing = failNextMethod;
+		if((failing == null || failing.equals(method)) && failNextCount.get() > 0 && failNextCount.getAndDecrement() > 0) {
+			return failNextStatus;
+		}
+		if(errorRate > 0) {
+			synchronized(random) {
+				if(random.nextDouble() < errorRate) {
+					return errorStatus;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void propfind(HttpExchange exchange, String path) throws IOException {
+		Path file = resolve(path);
+		if(!Files.exists(file)) {
+			drain(exchange);
+			sendEmpty(exchange, HttpStatus.SC_NOT_FOUND);
+			return;
+		}
+		String depthHeader = exchange.getRequestHeaders().getFirst("Depth");
+		int depth = ("0".equals(depthHeader) ? 0 : "1".equals(depthHeader) ? 1 : Integer.MAX_VALUE);
+		Document request = parse(exchange);
+		if(depth == Integer.MAX_VALUE && !depthInfinitySupported) {
+			StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+			sb.append("<D:error xmlns:D=\"DAV:\"><D:propfind-finite-depth/></D:error>");
+			sendXml(exchange, HttpStatus.SC_FORBIDDEN, sb);
+			return;
+		}
+		List<String[]> names = null;
+		if(request != null) {
+			Element prop = getChild(request.getDocumentElement(), "prop");
+			if(prop != null) {
+				names = new ArrayList<String[]>();
+				for(Element e : getChildren(prop)) {
+					names.add(new String[] { e.getNamespaceURI(), e.getLocalName() });
+				}
+			}
+		}
+		StringBuilder sb = startMultiStatus();
+		appendResponses(sb, path, file, depth, names);
+		sendMultiStatus(exchange, sb);
+	}
+
+	private void appendResponses(StringBuilder sb, String path, Path file, int depth, List<String[]> names) throws IOException {
+		appendResponse(sb, path, file, names);
+		if(depth > 0 && Files.isDirectory(file)) {
+			List<Path> children = new ArrayList<Path>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(file)) {
+				for(Path child : stream) {
+					children.add(child);
+				}
+			}
+			Collections.sort(children);
+			for(Path child : children) {
+				String childPath = (path.endsWith("/") ? path : path + "/") + child.getFileName().toString();
+				appendResponses(sb, childPath, child, depth - 1, names);
+			}
+		}
+	}
+
+	private void appendResponse(StringBuilder sb, String path, Path file, List<String[]> names) throws IOException {
+		Map<String, String> found = new LinkedHashMap<String, String>();
+		List<String[]> missing = new ArrayList<String[]>();
+		Map<String, String> live = getLiveProperties(path, file);
+		Map<String, String> dead = deadProperties.get(path);
+		if(names == null) {
+			found.putAll(live);
+			if(dead != null) {
+				found.putAll(dead);
+			}
+		} else {
+			for(String[] name : names) {
+				String key = getKey(name[0], name[1]);
+				if(DAV_NAMESPACE.equals(name[0]) && live.containsKey(key)) {
+					found.put(key, live.get(key));
+				} else if(dead != null && dead.containsKey(key)) {
+					found.put(key, dead.get(key));
+				} else {
+					missing.add(name);
+				}
+			}
+		}
+		sb.append("<D:response><D:href>").append(escape(getHref(path, Files.isDirectory(file)))).append("</D:href>");
+		sb.append("<D:propstat><D:prop>");
+		for(Map.Entry<String, String> e : found.entrySet()) {
+			appendProperty(sb, e.getKey(), e.getValue());
+		}
+		sb.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat>");
+		if(!missing.isEmpty()) {
+			sb.append("<D:propstat><D:prop>");
+			for(String[] name : missing) {
+				appendProperty(sb, getKey(name[0], name[1]), null);
+			}
+			sb.append("</D:prop><D:status>HTTP/1.1 404 Not Found</D:status></D:propstat>");
+		}
+		sb.append("</D:response>\n");
+	}
+
+	/**
+	 * @return live properties by key; values are XML fragments
+	 */
+	private Map<String, String> getLiveProperties(String path, Path file) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		Map<String, String> properties = new LinkedHashMap<String, String>();
+		String name = (path.equals("/") ? "" : path.substring(path.lastIndexOf('/') + 1));
+		properties.put(getKey(DAV_NAMESPACE, "displayname"), escape(name));
+		properties.put(getKey(DAV_NAMESPACE, "creationdate"), formatIsoDate(attributes.creationTime().toMillis()));
+		properties.put(getKey(DAV_NAMESPACE, "getlastmodified"), formatHttpDate(attributes.lastModifiedTime().toMillis()));
+		if(attributes.isDirectory()) {
+			properties.put(getKey(DAV_NAMESPACE, "resourcetype"), "<D:collection/>");
+		} else {
+			properties.put(getKey(DAV_NAMESPACE, "resourcetype"), "");
+			properties.put(getKey(DAV_NAMESPACE, "getcontentlength"), Long.toString(attributes.size()));
+			properties.put(getKey(DAV_NAMESPACE, "getcontenttype"), escape(getContentType(file)));
+			properties.put(getKey(DAV_NAMESPACE, "getetag"), escape(getEtag(attributes)));
+		}
+		properties.put(getKey(DAV_NAMESPACE, "supportedlock"),
+				"<D:lockentry><D:lockscope><D:exclusive/></D:lockscope><D:locktype><D:write/></D:locktype></D:lockentry>");
+		Lock lock = getLock(path);
+		properties.put(getKey(DAV_NAMESPACE, "lockdiscovery"), (lock != null ? lock.toXml() : ""));
+		return properties;
+	}
+
+	private void proppatch(HttpExchange exchange, String path) throws IOException {
+		Path file = resolve(path);
+		Document request = parse(exchange);
+		if(!Files.exists(file)) {
+			sendEmpty(exchange, HttpStatus.SC_NOT_FOUND);
+			return;
+		}
+		if(request == null) {
+			sendEmpty(exchange, HttpStatus.SC_BAD_REQUEST);
+			return;
+		}
+		Map<String, String> properties = deadProperties.get(path);
+		if(properties == null) {
+			deadProperties.putIfAbsent(path, new ConcurrentHashMap<String, String>());
+			properties = deadProperties.get(path);
+		}
+		List<String> keys = new ArrayList<String>();
+		for(Element update : getChildren(request.getDocumentElement())) {
+			Element prop = getChild(update, "prop");
+			if(prop == null) {
+				continue;
+			}
+			for(Element e : getChildren(prop)) {
+				String key = getKey(e.getNamespaceURI(), e.getLocalName());
+				if("set".equals(update.getLocalName())) {
+					properties.put(key, escape(e.getTextContent()));
+				} else {
+					properties.remove(key);
+				}
+				keys.add(key);
+			}
+		}
+		StringBuilder sb = startMultiStatus();
+		sb.append("<D:response><D:href>").append(escape(getHref(path, Files.isDirectory(file)))).append("</D:href><D:propstat><D:prop>");
+		for(String key : keys) {
+			appendProperty(sb, key, null);
+		}
+		sb.append("</D:prop><D:status>HTTP/1.1 200 OK</D:status></D:propstat></D:response>\n");
+		sendMultiStatus(exchange, sb);
+	}
+
+	private void mkcol(HttpExchange exchange, String path) throws IOException {
+		drain(exchange);
+		Path file = resolve(path);
+		synchronized(this) {
+			if(Files.exists(file)) {
+				sendEmpty(exchange, HttpStatus.SC_METHOD_NOT_ALLOWED);
+			} else if(!Files.isDirectory(file.getParent())) {
+				sendEmpty(exchange, HttpStatus.SC_CONFLICT);
+			} else {
+				Files.createDirectory(file);
+				sendEmpty(exchange, HttpStatus.SC_CREATED);
+			}
+		}
+	}
+
+	private void put(HttpExchange exchange, String path) throws IOException {
+		Path file = resolve(path);
+		if(!Files.isDirectory(file.getParent())) {
+			drain(exchange);
+			sendEmpty(exchange, HttpStatus.SC_CONFLICT);
+			return;
+		}
+		if(Files.isDirectory(file)) {
+			drain(exchange);
+			sendEmpty(exchange, HttpStatus.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		if(encoding != null && !"identity".equalsIgnoreCase(encoding)) {
+			drain(exchange);
+			sendEmpty(exchange, HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE);
+			return;
+		}
+		String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+		boolean existed = Files.exists(file);
+		if(contentRange != null && rangeSupported) {
+			Matcher m = CONTENT_RANGE.matcher(contentRange);
+			if(!m.matches()) {
+				drain(exchange);
+				sendEmpty(exchange, HttpStatus.SC_BAD_REQUEST);
+				return;
+			}
+			long first = Long.parseLong(m.group(1));
+			// partial PUT: write the range into the existing resource
+			synchronized(this) {
+				try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"); InputStream is = getRequestBody(exchange)) {
+					raf.seek(first);
+					byte[] buffer = new byte[BUFFER_SIZE];
+					int n;
+					while((n = is.read(buffer)) != -1) {
+						raf.write(buffer, 0, n);
+					}
+				}
+			}
+		} else {
+			Path temp = Files.createTempFile(file.getParent(), ".put", ".tmp");
+			try (InputStream is = getRequestBody(exchange)) {
+				Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+				synchronized(this) {
+					Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+		exchange.getResponseHeaders().set("ETag", getEtag(Files.readAttributes(file, BasicFileAttributes.class)));
+		sendEmpty(exchange, existed ? HttpStatus.SC_NO_CONTENT : HttpStatus.SC_CREATED);
+	}
+
+	private void get(HttpExchange exchange, String path, boolean head) throws IOException {
+		drain(exchange);
+		Path file = resolve(path);
+		if(!Files.exists(file)) {
+			sendEmpty(exchange, HttpStatus.SC_NOT_FOUND);
+			return;
+		}
+		if(Files.isDirectory(file)) {
+			sendEmpty(exchange, HttpStatus.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		String etag = getEtag(attributes);
+		String lastModified = formatHttpDate(attributes.lastModifiedTime().toMillis());
+		Headers requestHeaders = exchange.getRequestHeaders();
+		Headers responseHeaders = exchange.getResponseHeaders();
+		responseHeaders.set("ETag", etag);
+		responseHeaders.set("Last-Modified", lastModified);
+		responseHeaders.set("Content-Type", getContentType(file));
+		String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+		String ifModifiedSince = requestHeaders.getFirst("If-Modified-Since");
+		if((ifNoneMatch != null && ifNoneMatch.equals(etag)) || (ifNoneMatch == null && lastModified.equals(ifModifiedSince))) {
+			exchange.sendResponseHeaders(HttpStatus.SC_NOT_MODIFIED, -1);
+			return;
+		}
+		long length = attributes.size();
+		long first = 0;
+		long last = length - 1;
+		int status = HttpStatus.SC_OK;
+		String range = requestHeaders.getFirst("Range");
+		String ifRange = requestHeaders.getFirst("If-Range");
+		if(rangeSupported) {
+			responseHeaders.set("Accept-Ranges", "bytes");
+		}
+		if(rangeSupported && range != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified))) {
+			Matcher m = RANGE.matcher(range.trim());
+			if(m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty())) {
+				if(m.group(1).isEmpty()) {
+					first = Math.max(0, length - Long.parseLong(m.group(2)));
+				} else {
+					first = Long.parseLong(m.group(1));
+					if(!m.group(2).isEmpty()) {
+						last = Math.min(last, Long.parseLong(m.group(2)));
+					}
+				}
+				if(first >= length || first > last) {
+					responseHeaders.set("Content-Range", "bytes */" + length);
+					sendEmpty(exchange, HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				status = HttpStatus.SC_PARTIAL_CONTENT;
+				responseHeaders.set("Content-Range", "bytes " + first + "-" + last + "/" + length);
+			}
+		}
+		long count = last - first + 1;
+		if(head) {
+			// HttpServer only sends the Content-Length of a HEAD response when it is set explicitly
+			responseHeaders.set("Content-Length", Long.toString(count));
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+		try (InputStream is = Files.newInputStream(file); OutputStream os = getResponseBody(exchange)) {
+			skipFully(is, first);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long remaining = count;
+			while(remaining > 0) {
+				int n = is.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+				if(n == -1) {
+					break;
+				}
+				os.write(buffer, 0, n);
+				remaining -= n;
+			}
+		}
+	}
+
+	private void delete(HttpExchange exchange, String path) throws IOException {
+		drain(exchange);
+		Path file = resolve(path);
+		synchronized(this) {
+			if(!Files.exists(file)) {
+				sendEmpty(exchange, HttpStatus.SC_NOT_FOUND);
+				return;
+			}
+			deleteTree(file);
+			removeMetadata(path);
+		}
+		sendEmpty(exchange, HttpStatus.SC_NO_CONTENT);
+	}
+
+	private void copyOrMove(HttpExchange exchange, String path, boolean move) throws IOException {
+		drain(exchange);
+		String destination = exchange.getRequestHeaders().getFirst("Destination");
+		String targetPath = null;
+		if(destination != null) {
+			try {
+				targetPath = getPath(new URI(destination));
+			} catch (URISyntaxException e) {
+				targetPath = null;
+			}
+		}
+		if(targetPath == null) {
+			sendEmpty(exchange, HttpStatus.SC_BAD_GATEWAY);
+			return;
+		}
+		boolean overwrite = !"F".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Overwrite"));
+		boolean shallow = "0".equals(exchange.getRequestHeaders().getFirst("Depth"));
+		Path source = resolve(path);
+		Path target = resolve(targetPath);
+		int status;
+		synchronized(this) {
+			boolean existed = Files.exists(target);
+			if(!Files.exists(source)) {
+				status = HttpStatus.SC_NOT_FOUND;
+			} else if(source.equals(target)) {
+				status = HttpStatus.SC_FORBIDDEN;
+			} else if(!Files.isDirectory(target.getParent())) {
+				status = HttpStatus.SC_CONFLICT;
+			} else if(existed && !overwrite) {
+				status = HttpStatus.SC_PRECONDITION_FAILED;
+			} else {
+				if(existed) {
+					deleteTree(target);
+					removeMetadata(targetPath);
+				}
+				copyMetadata(path, targetPath);
+				if(move) {
+					Files.move(source, target);
+					removeMetadata(path);
+				} else {
+					copyTree(source, target, shallow);
+				}
+				status = (existed ? HttpStatus.SC_NO_CONTENT : HttpStatus.SC_CREATED);
+			}
+		}
+		sendEmpty(exchange, status);
+	}
+
+	private void lock(HttpExchange exchange, String path) throws IOException {
+		Document request = parse(exchange);
+		Path file = resolve(path);
+		long timeout = getTimeout(exchange.getRequestHeaders().getFirst("Timeout"));
+		if(maxLockTimeout > 0) {
+			timeout = Math.min(timeout, maxLockTimeout);
+		}
+		Lock lock;
+		int status = HttpStatus.SC_OK;
+		synchronized(this) {
+			lock = getLock(path);
+			if(request == null) {
+				// refresh, the lock token is sent in the If header
+				if(lock == null) {
+					sendEmpty(exchange, HttpStatus.SC_PRECONDITION_FAILED);
+					return;
+				}
+				lock.timeout = timeout;
+				lock.expires = System.currentTimeMillis() + timeout * 1000;
+			} else {
+				if(lock != null) {
+					sendEmpty(exchange, HttpStatus.SC_LOCKED);
+					return;
+				}
+				if(!Files.exists(file)) {
+					if(!Files.isDirectory(file.getParent())) {
+						sendEmpty(exchange, HttpStatus.SC_CONFLICT);
+						return;
+					}
+					// lock-null resource
+					Files.createFile(file);
+					status = HttpStatus.SC_CREATED;
+				}
+				Element owner = getChild(request.getDocumentElement(), "owner");
+				lock = new Lock(path, "opaquelocktoken:" + UUID.randomUUID(), (owner != null ? owner.getTextContent() : null), timeout);
+				locks.put(path, lock);
+			}
+		}
+		exchange.getResponseHeaders().set("Lock-Token", "<" + lock.token + ">");
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		sb.append("<D:prop xmlns:D=\"DAV:\"><D:lockdiscovery>").append(lock.toXml()).append("</D:lockdiscovery></D:prop>");
+		sendXml(exchange, status, sb);
+	}
+
+	private void unlock(HttpExchange exchange, String path) throws IOException {
+		drain(exchange);
+		String token = exchange.getRequestHeaders().getFirst("Lock-Token");
+		token = (token != null ? token.replace("<", "").replace(">", "").trim() : null);
+		Lock lock = getLock(path);
+		if(lock == null || !lock.token.equals(token)) {
+			sendEmpty(exchange, HttpStatus.SC_CONFLICT);
+			return;
+		}
+		locks.remove(path);
+		sendEmpty(exchange, HttpStatus.SC_NO_CONTENT);
+	}
+
+	private Lock getLock(String path) {
+		Lock lock = locks.get(path);
+		if(lock != null && lock.expires < System.currentTimeMillis()) {
+			locks.remove(path, lock);
+			return null;
+		}
+		return lock;
+	}
+
+	private boolean isAuthorized(HttpExchange exchange) throws IOException {
+		if(authentication == Authentication.NONE) {
+			return true;
+		}
+		String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if(authorization == null) {
+			return false;
+		}
+		if(authentication == Authentication.BASIC) {
+			if(!authorization.startsWith("Basic ")) {
+				return false;
+			}
+			String credentials = new String(Base64.getDecoder().decode(authorization.substring(6).trim()), StandardCharsets.UTF_8);
+			return credentials.equals(user + ":" + password);
+		}
+		if(!authorization.startsWith("Digest ")) {
+			return false;
+		}
+		Map<String, String> parameters = new HashMap<String, String>();
+		Matcher m = DIGEST_PARAMETER.matcher(authorization.substring(7));
+		while(m.find()) {
+			parameters.put(m.group(1), m.group(2) != null ? m.group(2) : m.group(3));
+		}
+		String nonce = parameters.get("nonce");
+		if(nonce == null || !nonces.contains(nonce) || !user.equals(parameters.get("username"))) {
+			return false;
+		}
+		String ha1 = md5(user + ":" + REALM + ":" + password);
+		String ha2 = md5(exchange.getRequestMethod() + ":" + parameters.get("uri"));
+		String expected = ("auth".equals(parameters.get("qop"))
+				? md5(ha1 + ":" + nonce + ":" + parameters.get("nc") + ":" + parameters.get("cnonce") + ":auth:" + ha2)
+				: md5(ha1 + ":" + nonce + ":" + ha2));
+		return expected.equals(parameters.get("response"));
+	}
+
+	private void sendChallenge(HttpExchange exchange) throws IOException {
+		drain(exchange);
+		if(authentication == Authentication.BASIC) {
+			exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"" + REALM + "\"");
+		} else {
+			String nonce = UUID.randomUUID().toString().replace("-", "");
+			nonces.add(nonce);
+			exchange.getResponseHeaders().set("WWW-Authenticate",
+					"Digest realm=\"" + REALM + "\", qop=\"auth\", algorithm=MD5, nonce=\"" + nonce + "\", opaque=\"" + md5(REALM) + "\"");
+		}
+		sendEmpty(exchange, HttpStatus.SC_UNAUTHORIZED);
+	}
+
+	/**
+	 * @return the path below the context path, decoded, starting with /; null when the uri is outside the context
+	 */
+	private String getPath(URI uri) {
+		String path = uri.getPath();
+		if(path == null || !path.startsWith(contextPath)) {
+			return null;
+		}
+		path = path.substring(contextPath.length());
+		if(path.isEmpty()) {
+			return "/";
+		}
+		if(!path.startsWith("/") || path.contains("/../") || path.endsWith("/..")) {
+			return null;
+		}
+		return (path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+	}
+
+	private Path resolve(String path) {
+		return (path.equals("/") ? root : root.resolve(path.substring(1)));
+	}
+
+	private String getHref(String path, boolean collection) {
+		try {
+			String href = new URI(null, null, contextPath + path, null).toASCIIString();
+			return (collection && !href.endsWith("/") ? href + "/" : href);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private InputStream getRequestBody(HttpExchange exchange) {
+		InputStream is = exchange.getRequestBody();
+		return (bandwidth > 0 ? new ThrottledInputStream(is, bandwidth) : is);
+	}
+
+	private OutputStream getResponseBody(HttpExchange exchange) {
+		OutputStream os = exchange.getResponseBody();
+		return (bandwidth > 0 ? new ThrottledOutputStream(os, bandwidth) : os);
+	}
+
+	private Document parse(HttpExchange exchange) throws IOException {
+		byte[] body = readAll(exchange.getRequestBody());
+		if(body.length == 0) {
+			return null;
+		}
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			return factory.newDocumentBuilder().parse(new ByteArrayInputStream(body));
+		} catch(Exception e) {
+			throw new IOException("invalid request body", e);
+		}
+	}
+
+	private static StringBuilder startMultiStatus() {
+		return new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<D:multistatus xmlns:D=\"DAV:\">\n");
+	}
+
+	private void sendMultiStatus(HttpExchange exchange, StringBuilder sb) throws IOException {
+		sb.append("</D:multistatus>\n");
+		sendXml(exchange, HttpStatus.SC_MULTI_STATUS, sb);
+	}
+
+	private void sendXml(HttpExchange exchange, int status, StringBuilder sb) throws IOException {
+		byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = getResponseBody(exchange)) {
+			os.write(body);
+		}
+	}
+
+	private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	private static void appendProperty(StringBuilder sb, String key, String value) {
+		int separator = key.indexOf(' ');
+		String namespace = key.substring(0, separator);
+		String name = key.substring(separator + 1);
+		if(DAV_NAMESPACE.equals(namespace)) {
+			sb.append("<D:").append(name);
+			sb.append(value == null || value.isEmpty() ? "/>" : ">" + value + "</D:" + name + ">");
+		} else {
+			sb.append("<X:").append(name).append(" xmlns:X=\"").append(escape(namespace)).append("\"");
+			sb.append(value == null || value.isEmpty() ? "/>" : ">" + value + "</X:" + name + ">");
+		}
+	}
+
+	private static String getKey(String namespace, String name) {
+		return (namespace != null ? namespace : "") + " " + name;
+	}
+
+	private void removeMetadata(String path) {
+		removeTree(deadProperties.keySet(), path);
+		removeTree(locks.keySet(), path);
+	}
+
+	private static void removeTree(Set<String> paths, String path) {
+		String prefix = path + "/";
+		Iterator<String> it = paths.iterator();
+		while(it.hasNext()) {
+			String key = it.next();
+			if(key.equals(path) || key.startsWith(prefix)) {
+				it.remove();
+			}
+		}
+	}
+
+	private void copyMetadata(String source, String target) {
+		String prefix = source + "/";
+		for(Map.Entry<String, Map<String, String>> e : new TreeMap<String, Map<String, String>>(deadProperties).entrySet()) {
+			if(e.getKey().equals(source) || e.getKey().startsWith(prefix)) {
+				deadProperties.put(target + e.getKey().substring(source.length()), new ConcurrentHashMap<String, String>(e.getValue()));
+			}
+		}
+	}
+
+	private static List<Element> getChildren(Element parent) {
+		List<Element> children = new ArrayList<Element>();
+		NodeList nodes = parent.getChildNodes();
+		for(int i=0; i<nodes.getLength(); i++) {
+			if(nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+				children.add((Element)nodes.item(i));
+			}
+		}
+		return children;
+	}
+
+	private static Element getChild(Element parent, String localName) {
+		for(Element child : getChildren(parent)) {
+			if(localName.equals(child.getLocalName()) && DAV_NAMESPACE.equals(child.getNamespaceURI())) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	private static long getTimeout(String header) {
+		if(header != null && header.startsWith("Second-")) {
+			try {
+				return Long.parseLong(header.substring(7).split(",")[0].trim());
+			} catch(NumberFormatException e) {
+				// Infinite or malformed
+			}
+		}
+		return 3600;
+	}
+
+	private static String getEtag(BasicFileAttributes attributes) {
+		return "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(attributes.lastModifiedTime().toMillis()) + "\"";
+	}
+
+	private static String getContentType(Path file) throws IOException {
+		String contentType = Files.probeContentType(file);
+		return (contentType != null ? contentType : "application/octet-stream");
+	}
+
+	private static String formatHttpDate(long millis) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(millis));
+	}
+
+	private static String formatIsoDate(long millis) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(millis));
+	}
+
+	private static String escape(String s) {
+		return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	private static String md5(String s) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for(byte b : MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.ISO_8859_1))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void drain(HttpExchange exchange) throws IOException {
+		readAll(exchange.getRequestBody());
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int n;
+		while((n = is.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static void skipFully(InputStream is, long n) throws IOException {
+		while(n > 0) {
+			long skipped = is.skip(n);
+			if(skipped <= 0) {
+				throw new IOException("unexpected end of file");
+			}
+			n -= skipped;
+		}
+	}
+
+	private static void copyTree(final Path source, final Path target, boolean shallow) throws IOException {
+		if(shallow || !Files.isDirectory(source)) {
+			Files.copy(source, target);
+			return;
+		}
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				Files.createDirectory(target.resolve(source.relativize(dir).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.copy(file, target.resolve(source.relativize(file).toString()));
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static void deleteTree(Path path) throws IOException {
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static class Lock {
+		private final String path;
+		private final String token;
+		private final String owner;
+		private volatile long timeout;
+		private volatile long expires;
+
+		private Lock(String path, String token, String owner, long timeout) {
+			this.path = path;
+			this.token = token;
+			this.owner = owner;
+			this.timeout = timeout;
+			this.expires = System.currentTimeMillis() + timeout * 1000;
+		}
+
+		private String toXml() {
+			StringBuilder sb = new StringBuilder("<D:activelock><D:locktype><D:write/></D:locktype><D:lockscope><D:exclusive/></D:lockscope><D:depth>0</D:depth>");
+			if(owner != null) {
+				sb.append("<D:owner>").append(escape(owner)).append("</D:owner>");
+			}
+			sb.append("<D:timeout>Second-").append(timeout).append("</D:timeout>");
+			sb.append("<D:locktoken><D:href>").append(token).append("</D:href></D:locktoken>");
+			sb.append("<D:lockroot><D:href>").append(escape(path)).append("</D:href></D:lockroot></D:activelock>");
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Sleeps so that no more than bytesPerSecond pass through on average
+	 */
+	private static class Throttle {
+		private final long bytesPerSecond;
+		private final long start = System.nanoTime();
+		private long bytes;
+
+		private Throttle(long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		private void pass(int n) throws IOException {
+			bytes += n;
+			long due = bytes * 1000000000L / bytesPerSecond;
+			long sleep = (due - (System.nanoTime() - start)) / 1000000L;
+			if(sleep > 0) {
+				try {
+					Thread.sleep(sleep);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	private static class ThrottledInputStream extends FilterInputStream {
+		private final Throttle throttle;
+
+		private ThrottledInputStream(InputStream in, long bytesPerSecond) {
+			super(in);
+			this.throttle = new Throttle(bytesPerSecond);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1) {
+				throttle.pass(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			// small reads keep the transfer smooth
+			int n = super.read(b, off, Math.min(len, 4096));
+			if(n > 0) {
+				throttle.pass(n);
+			}
+			return n;
+		}
+	}
+
+	private static class ThrottledOutputStream extends FilterOutputStream {
+		private final Throttle throttle;
+
+		private ThrottledOutputStream(OutputStream out, long bytesPerSecond) {
+			super(out);
+			this.throttle = new Throttle(bytesPerSecond);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			throttle.pass(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while(len > 0) {
+				int n = Math.min(len, 4096);
+				out.write(b, off, n);
+				throttle.pass(n);
+				off += n;
+				len -= n;
+			}
+		}
+	}
+}
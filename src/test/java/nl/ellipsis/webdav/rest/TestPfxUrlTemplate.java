@@ -0,0 +1,45 @@
+package nl.ellipsis.webdav.rest;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestPfxUrlTemplate {
+
+	@Test
+	public void testRender() {
+		Map<String,String> values = new HashMap<String,String>();
+		values.put("domain", "ellipsis");
+		values.put("filename", "sample.pdf");
+		PfxUrlTemplate template = PfxUrlTemplate.compile("/PFX/{domain}/{assessmentIdentifier}/{filename}");
+		assertEquals(Arrays.asList("domain", "assessmentIdentifier", "filename"), template.getPlaceholders());
+		assertEquals("/PFX/ellipsis/{assessmentIdentifier}/sample.pdf", template.render(values));
+		assertEquals("/PFX/{domain}/{assessmentIdentifier}/{filename}", template.render(null));
+		assertSame(template, PfxUrlTemplate.compile("/PFX/{domain}/{assessmentIdentifier}/{filename}"));
+	}
+
+	@Test
+	public void testRenderSeveralPlaceholdersPerSegment() {
+		Map<String,String> values = new HashMap<String,String>();
+		values.put("name", "sample");
+		values.put("extension", "pdf");
+		assertEquals("/PFX/tn_sample.pdf?x={y", PfxUrlTemplate.compile("/PFX/tn_{name}.{extension}?x={y").render(values));
+		assertEquals("/PFX/plain", PfxUrlTemplate.compile("/PFX/plain").render(values));
+	}
+
+	@Test
+	public void testDocumentUrls() {
+		Map<String,String> urlMap = new HashMap<String,String>();
+		urlMap.put(PfxDocumentJSONObject.KEY_WEBDAV_UPLOAD_RESOURCE_URL, "/PFX/{domain}/{filename}");
+		Map<String,String> fileparts = new HashMap<String,String>();
+		fileparts.put("domain", "ellipsis");
+		fileparts.put(PfxDocumentConstants.PfxFilePartKeys.FILENAME, "sample.pdf");
+		PfxDocumentJSONObject document = new PfxDocumentJSONObject(fileparts, 1L, false);
+		assertEquals("/PFX/ellipsis/sample.pdf", document.getResourceUrl(urlMap));
+		assertNull(document.getTempResourceUrl(urlMap));
+	}
+}
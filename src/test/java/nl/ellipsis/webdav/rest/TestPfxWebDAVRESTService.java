@@ -0,0 +1,152 @@
+package nl.ellipsis.webdav.rest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.ellipsis.webdav.client.WebDAVClientImpl;
+import nl.ellipsis.webdav.client.WebDAVResourceStream;
+import nl.ellipsis.webdav.client.WebDAVTestServer;
+
+public class TestPfxWebDAVRESTService {
+
+	private final static byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+	private WebDAVTestServer server;
+	private WebDAVClientImpl client;
+	private PfxWebDAVRESTService service;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new WebDAVTestServer().start();
+		Path dir = Files.createDirectory(server.getRoot().resolve("PFX"));
+		Files.write(dir.resolve("sample.pdf"), CONTENT);
+		client = new WebDAVClientImpl(null, null, server.getServerUri());
+		service = new PfxWebDAVRESTService(client);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	public void testGetResourcePassesHeadersThrough() throws Exception {
+		Response response = service.getResources("/PFX/sample.pdf", "bytes=2-4", null);
+		assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 2-4/10", response.getHeaderString("Content-Range"));
+		String etag = response.getHeaderString("ETag");
+		assertNotNull(etag);
+		assertEquals("3", response.getHeaderString("Content-Length"));
+		assertEquals("234", write(response));
+
+		// the range is only applied while the resource has the same ETag
+		response = service.getResources("/PFX/sample.pdf", "bytes=2-4", etag);
+		assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getStatus());
+		write(response);
+		response = service.getResources("/PFX/sample.pdf", "bytes=2-4", "\"other\"");
+		assertEquals(HttpStatus.SC_OK, response.getStatus());
+		assertEquals("0123456789", write(response));
+	}
+
+	@Test
+	public void testRangeNotSatisfiable() throws Exception {
+		Response response = service.getResources("/PFX/sample.pdf", "bytes=20-", null);
+		assertEquals(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */10", response.getHeaderString("Content-Range"));
+		assertEquals(HttpStatus.SC_NOT_FOUND, service.getResources("/PFX/missing.pdf", "bytes=20-", null).getStatus());
+	}
+
+	@Test
+	public void testGetCollectionIsStreamedAsListing() throws Exception {
+		Response response = service.getResources("/PFX", null, null);
+		assertEquals(HttpStatus.SC_OK, response.getStatus());
+		assertTrue(response.getEntity() instanceof GetResourcesStreamingOutput);
+		assertTrue(write(response).contains("sample.pdf"));
+		assertEquals(HttpStatus.SC_BAD_REQUEST, service.getResources(null, null, null).getStatus());
+	}
+
+	@Test
+	public void testAbortOnClientDisconnect() throws Exception {
+		final boolean[] aborted = new boolean[1];
+		HttpGet request = new HttpGet("http://localhost/PFX/sample.pdf") {
+			@Override
+			public void abort() {
+				aborted[0] = true;
+			}
+		};
+		WebDAVResourceStream stream = new WebDAVResourceStream(URI.create("/PFX/sample.pdf"), createResponse(HttpStatus.SC_OK), request, new ByteArrayInputStream(CONTENT));
+		try {
+			new PfxWebDAVRESTService.ResourceStreamOutput(stream).write(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					throw new IOException("Broken pipe");
+				}
+			});
+			fail("IOException expected");
+		} catch (IOException e) {
+			assertTrue(aborted[0]);
+		}
+	}
+
+	@Test
+	public void testPutResourceStreamsBody() throws Exception {
+		Response response = service.putResource("/PFX/upload.txt", 10L, "text/plain", new ByteArrayInputStream(CONTENT));
+		assertEquals(HttpStatus.SC_OK, response.getStatus());
+		assertNotNull(response.getHeaderString("ETag"));
+		assertArrayEquals(CONTENT, Files.readAllBytes(server.getRoot().resolve("PFX/upload.txt")));
+		assertTrue(write(response).contains("upload.txt"));
+	}
+
+	@Test
+	public void testRejectedPutPassesStatusOn() throws Exception {
+		// an existing resource must not be answered with its previous version
+		server.failNext("PUT", 1, HttpStatus.SC_LOCKED);
+		Response response = service.putResource("/PFX/sample.pdf", 3L, "text/plain", new ByteArrayInputStream("new".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(HttpStatus.SC_LOCKED, response.getStatus());
+		assertNull(response.getHeaderString("ETag"));
+		assertArrayEquals(CONTENT, Files.readAllBytes(server.getRoot().resolve("PFX/sample.pdf")));
+
+		// nor a new one with 404
+		response = service.putResource("/PFX/missing/upload.txt", 10L, "text/plain", new ByteArrayInputStream(CONTENT));
+		assertEquals(HttpStatus.SC_CONFLICT, response.getStatus());
+	}
+
+	private static String write(Response response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingOutput)response.getEntity()).write(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static CloseableHttpResponse createResponse(int status) {
+		final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+		return (CloseableHttpResponse)Proxy.newProxyInstance(CloseableHttpResponse.class.getClassLoader(), new Class<?>[] { CloseableHttpResponse.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				return ("close".equals(method.getName()) ? null : method.invoke(response, args));
+			}
+		});
+	}
+}
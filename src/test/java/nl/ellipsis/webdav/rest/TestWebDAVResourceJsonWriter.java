@@ -0,0 +1,63 @@
+package nl.ellipsis.webdav.rest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.datatype.DatatypeFactory;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVPropertyType;
+import nl.ellipsis.pfxwebdav.rest.v1.WebDAVResourceType;
+
+public class TestWebDAVResourceJsonWriter {
+
+	@Test
+	public void testWriteResources() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (WebDAVResourceJsonWriter writer = new WebDAVResourceJsonWriter(out)) {
+			for(int i=0; i<100; i++) {
+				writer.handleResource(createResource(i));
+			}
+			assertEquals(100, writer.getCount());
+		}
+		String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		JsonArray resources = new JsonParser().parse(json).getAsJsonObject().getAsJsonArray(WebDAVResourceJsonWriter.KEY_RESOURCES);
+		assertEquals(100, resources.size());
+		JsonObject resource = resources.get(42).getAsJsonObject();
+		assertEquals("file-42.pdf", resource.get("displayName").getAsString());
+		assertEquals("/PFX/file-42.pdf", resource.get("uri").getAsString());
+		assertEquals("\"42\"", resource.get("etag").getAsString());
+		assertEquals("checksum", resource.getAsJsonArray("properties").get(0).getAsJsonObject().get("name").getAsString());
+		assertFalse(resource.has("collection"));
+		assertFalse(resource.has("lastModified"));
+		assertTrue(json.contains("\"creationDate\":\"2017-03-01T10:15:30Z\""));
+	}
+
+	@Test
+	public void testWriteEmptyListing() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WebDAVResourceJsonWriter(out).close();
+		assertEquals("{\"resources\":[]}", new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	private static WebDAVResourceType createResource(int i) throws Exception {
+		WebDAVResourceType resource = new WebDAVResourceType();
+		resource.setCreationDate(DatatypeFactory.newInstance().newXMLGregorianCalendar("2017-03-01T10:15:30Z"));
+		resource.setDisplayName("file-" + i + ".pdf");
+		resource.setHref("/webdav/PFX/file-" + i + ".pdf");
+		resource.setUri("/PFX/file-" + i + ".pdf");
+		resource.setEtag("\"" + i + "\"");
+		WebDAVPropertyType property = new WebDAVPropertyType();
+		property.setName("checksum");
+		property.setValue(Integer.toHexString(i));
+		resource.getProperties().add(property);
+		return resource;
+	}
+}